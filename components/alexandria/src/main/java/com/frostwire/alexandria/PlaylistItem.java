@@ -22,6 +22,7 @@ public class PlaylistItem extends Entity<PlaylistItemDB> {
     private String trackNumber;
     private String trackYear;
     private boolean starred;
+    private long sortIndex;
 
     public PlaylistItem(Playlist playlist) {
         super(new PlaylistItemDB(playlist != null ? playlist.db.getDatabase() : null));
@@ -189,6 +190,18 @@ public class PlaylistItem extends Entity<PlaylistItemDB> {
         this.starred = starred;
     }
 
+    /**
+     * Position of the item in its playlist as last saved, only the order of the
+     * values matters.
+     */
+    public long getSortIndex() {
+        return sortIndex;
+    }
+
+    public void setSortIndex(long sortIndex) {
+        this.sortIndex = sortIndex;
+    }
+
     public void save() {
         if (db != null) {
             db.save(this);
@@ -0,0 +1,404 @@
+package com.frostwire.alexandria.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small JDBC connection pool with one writer and a bounded set of readers.
+ *
+ * Writes (update, insert and transactions) are serialized on the single writer
+ * connection, queries are spread over the readers, so with an MVCC database a
+ * long write doesn't stall the readers. Every connection keeps its own cache of
+ * prepared statements keyed by SQL string.
+ */
+public final class ConnectionPool {
+
+    public static final int DEFAULT_MAX_READERS = 4;
+
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final long READER_WAIT_MILLIS = 1000;
+
+    private final String _url;
+    private final String _user;
+    private final String _password;
+    private final int _maxReaders;
+
+    private final PooledConnection _writer;
+    private final ReentrantLock _writeLock;
+
+    private final BlockingQueue<PooledConnection> _idleReaders;
+    private final AtomicInteger _numReaders;
+
+    private volatile boolean _closed;
+
+    /**
+     * Opens the writer connection right away, so an invalid url or a missing
+     * database (with IFEXISTS=TRUE) fails here.
+     */
+    public ConnectionPool(String url, String user, String password, int maxReaders) throws SQLException {
+        _url = url;
+        _user = user;
+        _password = password;
+        _maxReaders = Math.max(1, maxReaders);
+
+        _writer = new PooledConnection(DriverManager.getConnection(url, user, password));
+        _writeLock = new ReentrantLock();
+
+        _idleReaders = new ArrayBlockingQueue<PooledConnection>(_maxReaders);
+        _numReaders = new AtomicInteger();
+    }
+
+    public boolean isClosed() {
+        return _closed;
+    }
+
+    /**
+     * Runs the query on a reader connection and materializes the whole result.
+     */
+    public List<List<Object>> query(String sql, Object... arguments) throws SQLException {
+        final List<List<Object>> result = new ArrayList<List<Object>>();
+
+        query(new RowHandler() {
+            private int numColumns = -1;
+
+            public boolean handle(ResultSet rs) throws SQLException {
+                if (numColumns == -1) {
+                    numColumns = rs.getMetaData().getColumnCount();
+                }
+                List<Object> row = new ArrayList<Object>(numColumns);
+                for (int i = 1; i <= numColumns; i++) {
+                    row.add(rs.getObject(i));
+                }
+                result.add(row);
+                return true;
+            }
+        }, sql, arguments);
+
+        return result;
+    }
+
+    /**
+     * Runs the query on a reader connection and hands every row to the
+     * <code>handler</code>, nothing is materialized.
+     */
+    public void query(RowHandler handler, String sql, Object... arguments) throws SQLException {
+        PooledConnection reader = acquireReader();
+        try {
+            reader.query(handler, sql, arguments);
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * @return the number of rows affected
+     */
+    public int update(String sql, Object... arguments) throws SQLException {
+        _writeLock.lock();
+        try {
+            checkClosed();
+            return _writer.update(sql, arguments);
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the generated key of the inserted row, -1 if there is none
+     */
+    public int insert(String sql, Object... arguments) throws SQLException {
+        _writeLock.lock();
+        try {
+            checkClosed();
+            return _writer.insert(sql, arguments);
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs <code>transaction</code> on the writer connection with auto commit
+     * off, commits if it returns normally and rolls back otherwise.
+     */
+    public <T> T transaction(Transaction<T> transaction) throws SQLException {
+        _writeLock.lock();
+        try {
+            checkClosed();
+
+            Connection connection = _writer.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                T result = transaction.run(_writer);
+                connection.commit();
+                return result;
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            } catch (RuntimeException e) {
+                rollback(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    /**
+     * Closes every connection, with <code>shutdown</code> the database is
+     * closed too (H2 SHUTDOWN statement).
+     */
+    public void close(boolean shutdown) {
+        _writeLock.lock();
+        try {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+
+            PooledConnection reader;
+            while ((reader = _idleReaders.poll()) != null) {
+                reader.close();
+            }
+
+            if (shutdown) {
+                try {
+                    Statement statement = _writer.getConnection().createStatement();
+                    statement.execute("SHUTDOWN");
+                    statement.close();
+                } catch (SQLException e) {
+                    // the database is gone anyway
+                }
+            }
+            _writer.close();
+        } finally {
+            _writeLock.unlock();
+        }
+    }
+
+    private PooledConnection acquireReader() throws SQLException {
+        checkClosed();
+
+        PooledConnection reader = _idleReaders.poll();
+        if (reader != null) {
+            return reader;
+        }
+
+        if (_numReaders.incrementAndGet() <= _maxReaders) {
+            try {
+                return new PooledConnection(DriverManager.getConnection(_url, _user, _password));
+            } catch (SQLException e) {
+                _numReaders.decrementAndGet();
+                throw e;
+            }
+        }
+        _numReaders.decrementAndGet();
+
+        try {
+            while ((reader = _idleReaders.poll(READER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkClosed();
+            }
+            return reader;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection");
+        }
+    }
+
+    private void releaseReader(PooledConnection reader) {
+        if (_closed || !_idleReaders.offer(reader)) {
+            _numReaders.decrementAndGet();
+            reader.close();
+        }
+    }
+
+    private void checkClosed() throws SQLException {
+        if (_closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+    }
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            // the original error is more interesting
+        }
+    }
+
+    /**
+     * Row callback for streaming queries.
+     */
+    public interface RowHandler {
+
+        /**
+         * @param rs positioned in the current row, don't call next() on it
+         * @return false to stop reading rows
+         */
+        public boolean handle(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Unit of work executed by {@link ConnectionPool#transaction(Transaction)}.
+     */
+    public interface Transaction<T> {
+
+        public T run(PooledConnection connection) throws SQLException;
+    }
+
+    /**
+     * A connection with its cache of prepared statements, only used by one thread
+     * at a time.
+     */
+    public static final class PooledConnection {
+
+        private final Connection _connection;
+        private final Map<String, PreparedStatement> _statements;
+
+        PooledConnection(Connection connection) {
+            _connection = connection;
+            _statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 3846113290327216407L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public Connection getConnection() {
+            return _connection;
+        }
+
+        /**
+         * Returns the cached statement for <code>sql</code>, preparing it the first time.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return prepare(sql, false);
+        }
+
+        /**
+         * Same as {@link #prepare(String)} but the statement returns generated keys.
+         */
+        public PreparedStatement prepareWithKeys(String sql) throws SQLException {
+            return prepare(sql, true);
+        }
+
+        public int update(String sql, Object... arguments) throws SQLException {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, arguments);
+            return statement.executeUpdate();
+        }
+
+        public int insert(String sql, Object... arguments) throws SQLException {
+            PreparedStatement statement = prepareWithKeys(sql);
+            bind(statement, arguments);
+            statement.executeUpdate();
+            return getGeneratedKey(statement);
+        }
+
+        /**
+         * Runs the statement once per element of <code>arguments</code>, all in
+         * a single JDBC batch.
+         *
+         * @return the number of rows affected by each run
+         */
+        public int[] batch(String sql, List<Object[]> arguments) throws SQLException {
+            if (arguments.isEmpty()) {
+                return new int[0];
+            }
+            PreparedStatement statement = prepare(sql);
+            for (Object[] row : arguments) {
+                bind(statement, row);
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+
+        /**
+         * Streams the rows to the <code>handler</code>, inside a transaction
+         * it sees the uncommitted changes of this connection.
+         */
+        public void query(RowHandler handler, String sql, Object... arguments) throws SQLException {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, arguments);
+            ResultSet rs = statement.executeQuery();
+            try {
+                while (rs.next() && handler.handle(rs)) {
+                }
+            } finally {
+                rs.close();
+            }
+        }
+
+        void close() {
+            for (PreparedStatement statement : _statements.values()) {
+                closeQuietly(statement);
+            }
+            _statements.clear();
+
+            try {
+                _connection.close();
+            } catch (SQLException e) {
+                // nothing to do
+            }
+        }
+
+        private PreparedStatement prepare(String sql, boolean generatedKeys) throws SQLException {
+            String key = generatedKeys ? "K:" + sql : sql;
+            PreparedStatement statement = _statements.get(key);
+            if (statement == null) {
+                statement = generatedKeys ? _connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : _connection.prepareStatement(sql);
+                _statements.put(key, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+    }
+
+    public static int getGeneratedKey(Statement statement) throws SQLException {
+        ResultSet keys = statement.getGeneratedKeys();
+        try {
+            return keys.next() ? keys.getInt(1) : -1;
+        } finally {
+            keys.close();
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object... arguments) throws SQLException {
+        if (arguments != null) {
+            for (int i = 0; i < arguments.length; i++) {
+                statement.setObject(i + 1, arguments[i]);
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // nothing to do
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.frostwire.alexandria.db;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -85,21 +87,21 @@ public class LibraryDB extends ObjectDB<Library> {
     public Playlist getStarredPlaylist(Library library) {
         String query = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred " + "FROM PlaylistItems WHERE starred = ?";
 
-        List<List<Object>> result = db.query(query, true);
+        final Playlist playlist = new Playlist(library, LibraryDatabase.STARRED_PLAYLIST_ID, "starred", "starred");
 
-        Playlist playlist = new Playlist(library, LibraryDatabase.STARRED_PLAYLIST_ID, "starred", "starred");
+        final List<PlaylistItem> items = new ArrayList<PlaylistItem>();
+        final Set<String> paths = new HashSet<String>();
 
-        List<PlaylistItem> items = new ArrayList<PlaylistItem>(result.size());
-        Set<String> paths = new HashSet<String>();
-
-        for (List<Object> row : result) {
-            PlaylistItem item = new PlaylistItem(playlist);
-            item.getDB().fill(row, item);
-            if (!paths.contains(item.getFilePath())) {
-                items.add(item);
-                paths.add(item.getFilePath());
+        db.query(new ConnectionPool.RowHandler() {
+            public boolean handle(ResultSet rs) throws SQLException {
+                PlaylistItem item = new PlaylistItem(playlist);
+                item.getDB().fill(rs, item);
+                if (paths.add(item.getFilePath())) {
+                    items.add(item);
+                }
+                return true;
             }
-        }
+        }, query, true);
 
         playlist.getItems().addAll(items);
 
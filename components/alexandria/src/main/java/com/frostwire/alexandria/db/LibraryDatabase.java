@@ -1,16 +1,16 @@
 package com.frostwire.alexandria.db;
 
 import java.io.File;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import com.frostwire.alexandria.db.ConnectionPool.RowHandler;
+import com.frostwire.alexandria.db.ConnectionPool.Transaction;
 
 public class LibraryDatabase {
 
@@ -18,14 +18,16 @@ public class LibraryDatabase {
     public static final int OBJECT_INVALID_ID = -2;
     public static final int STARRED_PLAYLIST_ID = -3;
 
-    public static final int LIBRARY_DATABASE_VERSION = 3;
+    public static final int LIBRARY_DATABASE_VERSION = 4;
 
     private final File _databaseFile;
     private final String _name;
 
-    private Connection _connection;
+    private final ConnectionPool _pool;
+
+    private volatile boolean _closed;
 
-    private boolean _closed;
+    private volatile Set<String> _starredPaths;
 
     static {
         try {
@@ -41,7 +43,8 @@ public class LibraryDatabase {
         File path = databaseFile;
         _name = databaseFile.getName();
 
-        _connection = openOrCreateDatabase(path, _name);
+        _pool = openOrCreateDatabase(path, _name);
+        _closed = _pool == null;
     }
 
     public File getDatabaseFile() {
@@ -56,35 +59,58 @@ public class LibraryDatabase {
         return _closed;
     }
 
-    public synchronized List<List<Object>> query(String statementSql, Object... arguments) {
+    /**
+     * Queries run concurrently on the pool readers.
+     */
+    public List<List<Object>> query(String statementSql, Object... arguments) {
         if (isClosed()) {
             return new ArrayList<List<Object>>();
         }
 
-        return query(_connection, statementSql, arguments);
+        try {
+            return _pool.query(statementSql, arguments);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return new ArrayList<List<Object>>();
+    }
+
+    /**
+     * Streams the rows to the <code>handler</code> instead of materializing them.
+     */
+    public void query(RowHandler handler, String statementSql, Object... arguments) {
+        if (isClosed()) {
+            return;
+        }
+
+        try {
+            _pool.query(handler, statementSql, arguments);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     /**
-     * This method is synchronized due to possible concurrent issues, specially
-     * during recently generated id retrieval.
+     * Writes are serialized on the pool writer connection.
      * @param expression
      * @return
      */
-    public synchronized int update(String statementSql, Object... arguments) {
+    public int update(String statementSql, Object... arguments) {
         if (isClosed()) {
             return -1;
         }
 
-        return update(_connection, statementSql, arguments);
+        return update(_pool, statementSql, arguments);
     }
 
     /**
-     * This method is synchronized due to possible concurrent issues, specially
-     * during recently generated id retrieval.
+     * The id of the new row comes from the generated keys of the same
+     * statement, no need for CALL IDENTITY().
      * @param expression
      * @return
      */
-    public synchronized int insert(String statementSql, Object... arguments) {
+    public int insert(String statementSql, Object... arguments) {
         if (isClosed()) {
             return OBJECT_INVALID_ID;
         }
@@ -93,13 +119,68 @@ public class LibraryDatabase {
             return OBJECT_INVALID_ID;
         }
 
-        if (update(statementSql, arguments) != -1) {
-            return getIdentity();
+        try {
+            int id = _pool.insert(statementSql, arguments);
+            return id != -1 ? id : OBJECT_INVALID_ID;
+        } catch (Exception e) {
+            e.printStackTrace();
         }
 
         return OBJECT_INVALID_ID;
     }
 
+    /**
+     * Runs the <code>transaction</code> on the pool writer, everything it does
+     * is committed at once or rolled back.
+     * @return the result of the transaction, null if it failed
+     */
+    public <T> T transaction(Transaction<T> transaction) {
+        if (isClosed()) {
+            return null;
+        }
+
+        try {
+            return _pool.transaction(transaction);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * The paths of the starred files, loaded on first use. The writers keep it
+     * in sync with the starred column, so a save doesn't have to look up the
+     * star of every item by path. Deletes drop it with
+     * {@link #invalidateStarredPaths()}, the last row of a path may be gone.
+     */
+    Set<String> getStarredPaths() {
+        Set<String> paths = _starredPaths;
+        if (paths == null) {
+            synchronized (this) {
+                paths = _starredPaths;
+                if (paths == null) {
+                    final Set<String> loaded = Collections.synchronizedSet(new HashSet<String>());
+                    query(new RowHandler() {
+                        public boolean handle(ResultSet rs) throws SQLException {
+                            loaded.add(rs.getString(1));
+                            return true;
+                        }
+                    }, "SELECT DISTINCT filePath FROM PlaylistItems WHERE starred = TRUE");
+                    _starredPaths = paths = loaded;
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Makes the next {@link #getStarredPaths()} read the starred paths again.
+     */
+    synchronized void invalidateStarredPaths() {
+        _starredPaths = null;
+    }
+
     public synchronized void close() {
         if (isClosed()) {
             return;
@@ -108,9 +189,7 @@ public class LibraryDatabase {
         _closed = true;
 
         try {
-            Statement statement = _connection.createStatement();
-            statement.execute("SHUTDOWN");
-            _connection.close();
+            _pool.close(true);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -128,204 +207,134 @@ public class LibraryDatabase {
         }
     }
 
-    protected Connection onUpdateDatabase(Connection connection, int oldVersion, int newVersion) {
+    protected ConnectionPool onUpdateDatabase(ConnectionPool pool, int oldVersion, int newVersion) {
 
         if (oldVersion == 1 && newVersion > 2) {
-            setupInternetRadioStationsTable(connection);
-            setupLuceneIndex(connection);
+            setupInternetRadioStationsTable(pool);
+            setupLuceneIndex(pool);
         }
 
-        if (oldVersion == 2 && newVersion == 3) {
-            setupLuceneIndex(connection);
+        if (oldVersion == 2 && newVersion > 2) {
+            setupLuceneIndex(pool);
         }
 
-        update(connection, "UPDATE Library SET version = ?", LIBRARY_DATABASE_VERSION);
+        if (oldVersion < 4 && newVersion > 3) {
+            setupSortIndex(pool);
+        }
+
+        update(pool, "UPDATE Library SET version = ?", LIBRARY_DATABASE_VERSION);
 
-        return connection;
+        return pool;
     }
 
-    private Connection openConnection(File path, String name, boolean createIfNotExists) {
+    private ConnectionPool openConnectionPool(File path, String name, boolean createIfNotExists) {
         try {
             StringBuilder sb = new StringBuilder();
             sb.append("jdbc:h2:");
             sb.append(new File(path, name).getAbsolutePath());
+            sb.append(";MVCC=TRUE");
 
             if (!createIfNotExists) {
                 sb.append(";ifexists=true");
             }
-            return DriverManager.getConnection(sb.toString(), "SA", "");
+            return new ConnectionPool(sb.toString(), "SA", "", ConnectionPool.DEFAULT_MAX_READERS);
         } catch (Exception e) {
             return null;
         }
     }
 
-    private Connection createDatabase(File path, String name) {
-        Connection connection = openConnection(path, name, true);
+    private ConnectionPool createDatabase(File path, String name) {
+        ConnectionPool pool = openConnectionPool(path, name, true);
+
+        if (pool == null) {
+            return null;
+        }
 
         // STRUCTURE CREATION
 
-        //update(connection, "DROP TABLE Library IF EXISTS CASCADE");
-        update(connection, "CREATE TABLE Library (libraryId INTEGER IDENTITY, name VARCHAR(500), version INTEGER)");
+        //update(pool, "DROP TABLE Library IF EXISTS CASCADE");
+        update(pool, "CREATE TABLE Library (libraryId INTEGER IDENTITY, name VARCHAR(500), version INTEGER)");
 
-        //update(connection, "DROP TABLE Playlists IF EXISTS CASCADE");
-        update(connection, "CREATE TABLE Playlists (playlistId INTEGER IDENTITY, name VARCHAR(500), description VARCHAR(10000))");
-        update(connection, "CREATE INDEX idx_Playlists_name ON Playlists (name)");
+        //update(pool, "DROP TABLE Playlists IF EXISTS CASCADE");
+        update(pool, "CREATE TABLE Playlists (playlistId INTEGER IDENTITY, name VARCHAR(500), description VARCHAR(10000))");
+        update(pool, "CREATE INDEX idx_Playlists_name ON Playlists (name)");
 
-        //update(connection, "DROP TABLE PlaylistItems IF EXISTS CASCADE");
-        update(connection,
-                "CREATE TABLE PlaylistItems (playlistItemId INTEGER IDENTITY, filePath VARCHAR(10000), fileName VARCHAR(500), fileSize BIGINT, fileExtension VARCHAR(10), trackTitle VARCHAR(500), trackDurationInSecs REAL, trackArtist VARCHAR(500), trackAlbum VARCHAR(500), coverArtPath VARCHAR(10000), trackBitrate VARCHAR(10), trackComment VARCHAR(500), trackGenre VARCHAR(20), trackNumber VARCHAR(6), trackYear VARCHAR(6), playlistId INTEGER, starred BOOLEAN)");
-        update(connection, "CREATE INDEX idx_PlaylistItems_filePath ON PlaylistItems (filePath)");
-        update(connection, "CREATE INDEX idx_PlaylistItems_starred ON PlaylistItems (starred)");
+        //update(pool, "DROP TABLE PlaylistItems IF EXISTS CASCADE");
+        update(pool,
+                "CREATE TABLE PlaylistItems (playlistItemId INTEGER IDENTITY, filePath VARCHAR(10000), fileName VARCHAR(500), fileSize BIGINT, fileExtension VARCHAR(10), trackTitle VARCHAR(500), trackDurationInSecs REAL, trackArtist VARCHAR(500), trackAlbum VARCHAR(500), coverArtPath VARCHAR(10000), trackBitrate VARCHAR(10), trackComment VARCHAR(500), trackGenre VARCHAR(20), trackNumber VARCHAR(6), trackYear VARCHAR(6), playlistId INTEGER, starred BOOLEAN, sortIndex BIGINT)");
+        update(pool, "CREATE INDEX idx_PlaylistItems_filePath ON PlaylistItems (filePath)");
+        update(pool, "CREATE INDEX idx_PlaylistItems_starred ON PlaylistItems (starred)");
+        update(pool, "CREATE INDEX idx_PlaylistItems_playlistId_sortIndex ON PlaylistItems (playlistId, sortIndex)");
 
-        setupInternetRadioStationsTable(connection);
+        setupInternetRadioStationsTable(pool);
 
-        setupLuceneIndex(connection);
+        setupLuceneIndex(pool);
 
         // INITIAL DATA
-        update(connection, "INSERT INTO Library (name , version) VALUES (?, ?)", name, LIBRARY_DATABASE_VERSION);
+        update(pool, "INSERT INTO Library (name , version) VALUES (?, ?)", name, LIBRARY_DATABASE_VERSION);
 
-        return connection;
+        return pool;
     }
 
-    private Connection openOrCreateDatabase(File path, String name) {
-        Connection connection = openConnection(path, name, false);
-        if (connection == null) {
+    private ConnectionPool openOrCreateDatabase(File path, String name) {
+        ConnectionPool pool = openConnectionPool(path, name, false);
+        if (pool == null) {
             return createDatabase(path, name);
         } else {
-            int databaseVersion = getDatabaseVersion(connection);
+            int databaseVersion = getDatabaseVersion(pool);
             if (databaseVersion < LIBRARY_DATABASE_VERSION) {
-                return onUpdateDatabase(connection, databaseVersion, LIBRARY_DATABASE_VERSION);
+                return onUpdateDatabase(pool, databaseVersion, LIBRARY_DATABASE_VERSION);
             } else {
-                return connection;
+                return pool;
             }
         }
     }
 
-    private List<List<Object>> convertResultSetToList(ResultSet resultSet) throws SQLException {
-        ResultSetMetaData meta = resultSet.getMetaData();
-        int numColums = meta.getColumnCount();
-        int i;
-
-        List<List<Object>> result = new LinkedList<List<Object>>();
-
-        while (resultSet.next()) {
-            List<Object> row = new ArrayList<Object>(numColums);
-            for (i = 1; i <= numColums; i++) {
-                row.add(resultSet.getObject(i));
-            }
-            result.add(row);
-        }
-        return result;
-    }
-
-    private int getIdentity() {
-        if (isClosed()) {
-            return OBJECT_INVALID_ID;
-        }
-
-        Statement statement = null;
-        ResultSet resultSet = null;
-
+    private int update(ConnectionPool pool, String statementSql, Object... arguments) {
         try {
-            statement = _connection.createStatement();
-            resultSet = statement.executeQuery("CALL IDENTITY()");
-
-            resultSet.next();
-
-            return resultSet.getInt(1);
+            return pool.update(statementSql, arguments);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
         }
 
-        return OBJECT_INVALID_ID;
-    }
-
-    private List<List<Object>> query(Connection connection, String statementSql, Object... arguments) {
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
-
-        try {
-            statement = connection.prepareStatement(statementSql);
-
-            if (arguments != null) {
-                for (int i = 0; i < arguments.length; i++) {
-                    statement.setObject(i + 1, arguments[i]);
-                }
-            }
-
-            resultSet = statement.executeQuery();
-
-            return convertResultSetToList(resultSet);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
-        }
-
-        return new ArrayList<List<Object>>();
+        return -1;
     }
 
-    private int update(Connection connection, String statementSql, Object... arguments) {
-
-        PreparedStatement statement = null;
-
+    private int getDatabaseVersion(ConnectionPool pool) {
         try {
-            statement = connection.prepareStatement(statementSql);
-
-            if (arguments != null) {
-                for (int i = 0; i < arguments.length; i++) {
-                    statement.setObject(i + 1, arguments[i]);
-                }
-            }
-
-            return statement.executeUpdate();
-        } catch (Exception e) {
+            List<List<Object>> query = pool.query("SELECT version FROM Library");
+            return query.size() > 0 ? (Integer) query.get(0).get(0) : -1;
+        } catch (SQLException e) {
             e.printStackTrace();
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
         }
-
         return -1;
     }
 
-    private int getDatabaseVersion(Connection connection) {
-        List<List<Object>> query = query(connection, "SELECT version FROM Library");
-        return query.size() > 0 ? (Integer) query.get(0).get(0) : -1;
-    }
-
-    private void setupInternetRadioStationsTable(final Connection connection) {
-        update(connection, "CREATE TABLE InternetRadioStations (internetRadioStationId INTEGER IDENTITY, name VARCHAR(10000), description VARCHAR(10000), url VARCHAR(10000), bitrate VARCHAR(100), type VARCHAR(100), website VARCHAR(10000), genre VARCHAR(10000), pls VARCHAR(100000), bookmarked BOOLEAN)");
-        update(connection, "CREATE INDEX idx_InternetRadioStations_name ON InternetRadioStations (name)");
+    private void setupInternetRadioStationsTable(final ConnectionPool pool) {
+        update(pool, "CREATE TABLE InternetRadioStations (internetRadioStationId INTEGER IDENTITY, name VARCHAR(10000), description VARCHAR(10000), url VARCHAR(10000), bitrate VARCHAR(100), type VARCHAR(100), website VARCHAR(10000), genre VARCHAR(10000), pls VARCHAR(100000), bookmarked BOOLEAN)");
+        update(pool, "CREATE INDEX idx_InternetRadioStations_name ON InternetRadioStations (name)");
         
         InternetRadioStationsData data = new InternetRadioStationsData();
 
         for (List<Object> row : data.getData()) {
-            update(connection, "INSERT INTO InternetRadioStations (name, description, url, bitrate, type, website, genre, pls, bookmarked) VALUES (LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 100), LEFT(?, 100), LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 100000), false)", row.toArray());
+            update(pool, "INSERT INTO InternetRadioStations (name, description, url, bitrate, type, website, genre, pls, bookmarked) VALUES (LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 100), LEFT(?, 100), LEFT(?, 10000), LEFT(?, 10000), LEFT(?, 100000), false)", row.toArray());
         }
     }
 
-    private void setupLuceneIndex(final Connection connection) {
-        update(connection, "CREATE ALIAS IF NOT EXISTS FTL_INIT FOR \"org.h2.fulltext.FullTextLucene2.init\"");
-        update(connection, "CALL FTL_INIT()");
+    /**
+     * The items kept the insertion order, so their ids give the initial sort index.
+     */
+    private void setupSortIndex(final ConnectionPool pool) {
+        update(pool, "ALTER TABLE PlaylistItems ADD COLUMN sortIndex BIGINT");
+        update(pool, "UPDATE PlaylistItems SET sortIndex = playlistItemId * ?", PlaylistDB.SORT_INDEX_GAP);
+        update(pool, "CREATE INDEX idx_PlaylistItems_playlistId_sortIndex ON PlaylistItems (playlistId, sortIndex)");
+    }
+
+    private void setupLuceneIndex(final ConnectionPool pool) {
+        update(pool, "CREATE ALIAS IF NOT EXISTS FTL_INIT FOR \"org.h2.fulltext.FullTextLucene2.init\"");
+        update(pool, "CALL FTL_INIT()");
 
-        update(connection, "CALL FTL_CREATE_INDEX('PUBLIC', 'PLAYLISTITEMS', 'FILEPATH, TRACKTITLE, TRACKARTIST, TRACKALBUM, TRACKGENRE, TRACKYEAR')");
-        update(connection, "CALL FTL_CREATE_INDEX('PUBLIC', 'INTERNETRADIOSTATIONS', 'NAME, DESCRIPTION, GENRE')");
+        update(pool, "CALL FTL_CREATE_INDEX('PUBLIC', 'PLAYLISTITEMS', 'FILEPATH, TRACKTITLE, TRACKARTIST, TRACKALBUM, TRACKGENRE, TRACKYEAR')");
+        update(pool, "CALL FTL_CREATE_INDEX('PUBLIC', 'INTERNETRADIOSTATIONS', 'NAME, DESCRIPTION, GENRE')");
     }
 }
@@ -1,13 +1,28 @@
 package com.frostwire.alexandria.db;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
+import com.frostwire.alexandria.db.ConnectionPool.PooledConnection;
+import com.frostwire.alexandria.db.ConnectionPool.RowHandler;
+import com.frostwire.alexandria.db.ConnectionPool.Transaction;
 
 public class PlaylistDB extends ObjectDB<Playlist> {
 
+    /**
+     * Distance between the sort indexes of consecutive items when they are
+     * numbered, an item moved between two others takes the middle value.
+     */
+    public static final long SORT_INDEX_GAP = 1L << 20;
+
     public PlaylistDB(LibraryDatabase db) {
         super(db);
     }
@@ -30,46 +45,66 @@ public class PlaylistDB extends ObjectDB<Playlist> {
         obj.setDescription(description);
     }
 
-    public void save(Playlist obj) {
-        if (obj.getId() == LibraryDatabase.OBJECT_INVALID_ID) {
+    /**
+     * Writes only what changed since the items were loaded or last saved: the
+     * new items, the removed ones and the sort index of the moved ones, all in
+     * one transaction with a JDBC batch per kind of change.
+     */
+    public void save(final Playlist obj) {
+        if (obj.getId() == LibraryDatabase.OBJECT_INVALID_ID || obj.isStarred()) {
             return;
         }
 
         if (obj.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
             int id = db.insert("INSERT INTO Playlists (name, description) VALUES (LEFT(?, 500), LEFT(?, 10000))", obj.getName(), obj.getDescription());
             obj.setId(id);
+            if (id == LibraryDatabase.OBJECT_INVALID_ID) {
+                return;
+            }
         } else {
-            db.update("DELETE FROM PlaylistItems WHERE playlistId = ?", obj.getId());
             Object[] statementObjects = createPlaylistUpdateStatement(obj);
             db.update((String) statementObjects[0], (Object[]) statementObjects[1]);
         }
-        
-        List<PlaylistItem> items = new ArrayList<PlaylistItem>(obj.getItems());
 
-        for (PlaylistItem item : items) {
-            item.setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
-            item.save();
+        final List<PlaylistItem> items = new ArrayList<PlaylistItem>(obj.getItems());
+        final Set<String> starredPaths = db.getStarredPaths();
+        final Set<String> newStarredPaths = new HashSet<String>();
+
+        Boolean deleted = db.transaction(new Transaction<Boolean>() {
+            public Boolean run(PooledConnection connection) throws SQLException {
+                return saveItems(connection, obj.getId(), items, starredPaths, newStarredPaths);
+            }
+        });
+
+        if (deleted != null) {
+            starredPaths.addAll(newStarredPaths);
+            if (deleted) {
+                db.invalidateStarredPaths();
+            }
         }
     }
 
     public void delete(Playlist obj) {
         db.update("DELETE FROM PlaylistItems WHERE playlistId = ?", obj.getId());
         db.update("DELETE FROM Playlists WHERE playlistId = ?", obj.getId());
+        db.invalidateStarredPaths();
     }
 
-    public List<PlaylistItem> getLibraryItems(Playlist playlist) {
-        String query = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred "
-                + "FROM PlaylistItems WHERE playlistId = ?";
+    public List<PlaylistItem> getLibraryItems(final Playlist playlist) {
+        String query = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex "
+                + "FROM PlaylistItems WHERE playlistId = ? ORDER BY sortIndex, playlistItemId";
 
-        List<List<Object>> result = db.query(query, playlist.getId());
+        final List<PlaylistItem> items = new ArrayList<PlaylistItem>();
 
-        List<PlaylistItem> items = new ArrayList<PlaylistItem>(result.size());
-
-        for (List<Object> row : result) {
-            PlaylistItem item = new PlaylistItem(playlist);
-            item.getDB().fill(row, item);
-            items.add(item);
-        }
+        db.query(new ConnectionPool.RowHandler() {
+            public boolean handle(ResultSet rs) throws SQLException {
+                PlaylistItem item = new PlaylistItem(playlist);
+                item.getDB().fill(rs, item);
+                item.setSortIndex(rs.getLong(17));
+                items.add(item);
+                return true;
+            }
+        }, query, playlist.getId());
 
         return items;
     }
@@ -80,4 +115,207 @@ public class PlaylistDB extends ObjectDB<Playlist> {
         return new Object[] { sql, values };
     }
 
+    /**
+     * @return true if items were deleted
+     */
+    private static boolean saveItems(PooledConnection connection, int playlistId, List<PlaylistItem> items, Set<String> starredPaths, Set<String> newStarredPaths)
+            throws SQLException {
+        // what the database has now, the items may have been saved one by one since they were loaded
+        final Map<Integer, Long> savedIndexes = new HashMap<Integer, Long>();
+        connection.query(new RowHandler() {
+            public boolean handle(ResultSet rs) throws SQLException {
+                savedIndexes.put(rs.getInt(1), rs.getLong(2));
+                return true;
+            }
+        }, "SELECT playlistItemId, sortIndex FROM PlaylistItems WHERE playlistId = ?", playlistId);
+
+        int n = items.size();
+        long[] indexes = new long[n];
+        boolean[] saved = new boolean[n];
+
+        int maxSavedId = Integer.MIN_VALUE;
+        Set<Integer> keptIds = new HashSet<Integer>();
+        for (int i = 0; i < n; i++) {
+            PlaylistItem item = items.get(i);
+            Long index = savedIndexes.get(item.getId());
+            // the same item twice in the list is saved again as a new one
+            if (index != null && keptIds.add(item.getId())) {
+                saved[i] = true;
+                indexes[i] = index;
+                maxSavedId = Math.max(maxSavedId, item.getId());
+            }
+        }
+
+        boolean[] moved = assignSortIndexes(indexes, saved);
+
+        List<Object[]> deletes = new ArrayList<Object[]>();
+        for (Integer id : savedIndexes.keySet()) {
+            if (!keptIds.contains(id)) {
+                deletes.add(new Object[] { id });
+            }
+        }
+        connection.batch("DELETE FROM PlaylistItems WHERE playlistItemId = ?", deletes);
+
+        List<Object[]> moves = new ArrayList<Object[]>();
+        List<Object[]> inserts = new ArrayList<Object[]>();
+        List<Object[]> stars = new ArrayList<Object[]>();
+        Map<Long, PlaylistItem> inserted = new HashMap<Long, PlaylistItem>();
+        String insertSql = null;
+
+        for (int i = 0; i < n; i++) {
+            PlaylistItem item = items.get(i);
+            item.setSortIndex(indexes[i]);
+
+            if (saved[i]) {
+                if (moved[i]) {
+                    moves.add(new Object[] { indexes[i], item.getId() });
+                }
+            } else {
+                String path = item.getFilePath();
+                boolean pathStarred = starredPaths.contains(path) || newStarredPaths.contains(path);
+                if (item.isStarred() && !pathStarred) {
+                    stars.add(new Object[] { true, path });
+                    newStarredPaths.add(path);
+                }
+                item.setStarred(item.isStarred() || pathStarred);
+                item.setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
+
+                Object[] sqlAndValues = PlaylistItemDB.createPlaylistItemInsert(item);
+                insertSql = (String) sqlAndValues[0];
+                Object[] values = (Object[]) sqlAndValues[1];
+                values[0] = playlistId;
+                inserts.add(values);
+                inserted.put(indexes[i], item);
+            }
+        }
+
+        connection.batch("UPDATE PlaylistItems SET sortIndex = ? WHERE playlistItemId = ?", moves);
+
+        if (insertSql != null) {
+            connection.batch(insertSql, inserts);
+            connection.batch("UPDATE PlaylistItems SET starred = ? WHERE filePath = LEFT(?, 10000)", stars);
+            readInsertedIds(connection, playlistId, maxSavedId, inserted);
+        }
+
+        return !deletes.isEmpty();
+    }
+
+    /**
+     * The batch doesn't return the generated keys, but the ids only grow and the
+     * sort index identifies the new rows in the playlist.
+     */
+    private static void readInsertedIds(PooledConnection connection, int playlistId, int maxSavedId, final Map<Long, PlaylistItem> inserted) throws SQLException {
+        connection.query(new RowHandler() {
+            public boolean handle(ResultSet rs) throws SQLException {
+                PlaylistItem item = inserted.get(rs.getLong(2));
+                if (item != null) {
+                    item.setId(rs.getInt(1));
+                }
+                return true;
+            }
+        }, "SELECT playlistItemId, sortIndex FROM PlaylistItems WHERE playlistId = ? AND playlistItemId > ?", playlistId, maxSavedId);
+    }
+
+    /**
+     * Keeps the sort index of the longest run of saved items that is still in
+     * order and gives the rest values between their neighbors, so moving one item
+     * changes one row. If there is no room left between two neighbors every item
+     * is numbered again.
+     *
+     * @param indexes the saved sort indexes, replaced by the new ones
+     * @param saved which items have a saved sort index
+     * @return which saved items got a new sort index
+     */
+    static boolean[] assignSortIndexes(long[] indexes, boolean[] saved) {
+        int n = indexes.length;
+        boolean[] kept = longestIncreasing(indexes, saved);
+        boolean[] moved = new boolean[n];
+
+        int i = 0;
+        while (i < n) {
+            if (kept[i]) {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            while (i < n && !kept[i]) {
+                i++;
+            }
+            int count = i - start;
+
+            long low;
+            long step;
+            if (start == 0 && i == n) {
+                low = 0;
+                step = SORT_INDEX_GAP;
+            } else if (start == 0) {
+                low = indexes[i] - (count + 1) * SORT_INDEX_GAP;
+                step = SORT_INDEX_GAP;
+            } else if (i == n) {
+                low = indexes[start - 1];
+                step = SORT_INDEX_GAP;
+            } else {
+                low = indexes[start - 1];
+                step = (indexes[i] - low) / (count + 1);
+                if (step == 0) {
+                    return renumber(indexes, saved);
+                }
+            }
+
+            for (int j = 0; j < count; j++) {
+                indexes[start + j] = low + (j + 1) * step;
+                moved[start + j] = saved[start + j];
+            }
+        }
+
+        return moved;
+    }
+
+    private static boolean[] renumber(long[] indexes, boolean[] saved) {
+        boolean[] moved = new boolean[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            long index = (i + 1) * SORT_INDEX_GAP;
+            moved[i] = saved[i] && indexes[i] != index;
+            indexes[i] = index;
+        }
+        return moved;
+    }
+
+    /**
+     * Patience sorting over the saved items, O(n log n).
+     */
+    private static boolean[] longestIncreasing(long[] indexes, boolean[] saved) {
+        int n = indexes.length;
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (!saved[i]) {
+                continue;
+            }
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (indexes[tails[mid]] < indexes[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            previous[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+
+        boolean[] kept = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            kept[i] = true;
+        }
+        return kept;
+    }
 }
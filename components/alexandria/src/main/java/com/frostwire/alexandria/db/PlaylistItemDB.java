@@ -1,8 +1,14 @@
 package com.frostwire.alexandria.db;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Set;
 
 import com.frostwire.alexandria.PlaylistItem;
+import com.frostwire.alexandria.db.ConnectionPool.PooledConnection;
+import com.frostwire.alexandria.db.ConnectionPool.RowHandler;
+import com.frostwire.alexandria.db.ConnectionPool.Transaction;
 
 public class PlaylistItemDB extends ObjectDB<PlaylistItem> {
 
@@ -56,37 +62,96 @@ public class PlaylistItemDB extends ObjectDB<PlaylistItem> {
         obj.setStarred(starred);
     }
 
-    public void save(PlaylistItem obj) {
+    /**
+     * Same as {@link #fill(List, PlaylistItem)} reading straight from the current row
+     * of a query with the same column order.
+     */
+    public void fill(ResultSet rs, PlaylistItem obj) throws SQLException {
+        obj.setId(rs.getInt(1));
+        obj.setFilePath(rs.getString(2));
+        obj.setFileName(rs.getString(3));
+        obj.setFileSize(rs.getLong(4));
+        obj.setFileExtension(rs.getString(5));
+        obj.setTrackTitle(rs.getString(6));
+        obj.setTrackDurationInSecs(rs.getFloat(7));
+        obj.setTrackArtist(rs.getString(8));
+        obj.setTrackAlbum(rs.getString(9));
+        obj.setCoverArtPath(rs.getString(10));
+        obj.setTrackBitrate(rs.getString(11));
+        obj.setTrackComment(rs.getString(12));
+        obj.setTrackGenre(rs.getString(13));
+        obj.setTrackNumber(rs.getString(14));
+        obj.setTrackYear(rs.getString(15));
+        obj.setStarred(rs.getBoolean(16));
+    }
+
+    /**
+     * A new item goes to the end of its playlist, {@link PlaylistDB#save(com.frostwire.alexandria.Playlist)}
+     * puts it in place. The star is shared by all the items of the same file.
+     */
+    public void save(final PlaylistItem obj) {
         if (obj.getId() == LibraryDatabase.OBJECT_INVALID_ID || obj.getPlaylist() == null) {
             return;
         }
 
+        final Set<String> starredPaths = db.getStarredPaths();
+        final boolean pathStarred = starredPaths.contains(obj.getFilePath());
+
+        Boolean saved;
+
         if (obj.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
-            obj.setStarred(isStarred(obj) || obj.isStarred());
-            Object[] sqlAndValues = createPlaylistItemInsert(obj);
-            int id = db.insert((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
-            obj.setId(id);
-            sqlAndValues = updateStarred(obj);
-            db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+            obj.setStarred(pathStarred || obj.isStarred());
+            saved = db.transaction(new Transaction<Boolean>() {
+                public Boolean run(PooledConnection connection) throws SQLException {
+                    obj.setSortIndex(nextSortIndex(connection, obj.getPlaylist().getId()));
+                    Object[] sqlAndValues = createPlaylistItemInsert(obj);
+                    int id = connection.insert((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+                    obj.setId(id != -1 ? id : LibraryDatabase.OBJECT_INVALID_ID);
+                    if (obj.isStarred() != pathStarred) {
+                        sqlAndValues = updateStarred(obj);
+                        connection.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+                    }
+                    return true;
+                }
+            });
+            if (saved == null) {
+                obj.setId(LibraryDatabase.OBJECT_INVALID_ID);
+            }
         } else {
-            Object[] sqlAndValues = createPlaylistItemUpdate(obj);
-            db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
-            sqlAndValues = updateStarred(obj);
-            db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+            saved = db.transaction(new Transaction<Boolean>() {
+                public Boolean run(PooledConnection connection) throws SQLException {
+                    Object[] sqlAndValues = createPlaylistItemUpdate(obj);
+                    connection.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+                    if (obj.isStarred() != pathStarred) {
+                        sqlAndValues = updateStarred(obj);
+                        connection.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+                    }
+                    return true;
+                }
+            });
+        }
+
+        if (saved != null && obj.isStarred() != pathStarred) {
+            if (obj.isStarred()) {
+                starredPaths.add(obj.getFilePath());
+            } else {
+                starredPaths.remove(obj.getFilePath());
+            }
         }
     }
 
     public void delete(PlaylistItem obj) {
         db.update("DELETE FROM PlaylistItems WHERE playlistItemId = ?", obj.getId());
+        db.invalidateStarredPaths();
     }
     
-    private Object[] createPlaylistItemInsert(PlaylistItem item) {
-        String sql = "INSERT INTO PlaylistItems (playlistId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred) "
-                + " VALUES (?, LEFT(?, 10000), LEFT(?, 500), ?, LEFT(?, 10), LEFT(?, 500), ?, LEFT(?, 500), LEFT(?, 500), LEFT(?, 10000), LEFT(?, 10), LEFT(?, 500), LEFT(?, 20), LEFT(?, 6), LEFT(?, 6), ?)";
+    static Object[] createPlaylistItemInsert(PlaylistItem item) {
+        String sql = "INSERT INTO PlaylistItems (playlistId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex) "
+                + " VALUES (?, LEFT(?, 10000), LEFT(?, 500), ?, LEFT(?, 10), LEFT(?, 500), ?, LEFT(?, 500), LEFT(?, 500), LEFT(?, 10000), LEFT(?, 10), LEFT(?, 500), LEFT(?, 20), LEFT(?, 6), LEFT(?, 6), ?, ?)";
 
         Object[] values = new Object[] { item.getPlaylist().getId(), item.getFilePath(), item.getFileName(), item.getFileSize(), item.getFileExtension(), item.getTrackTitle(),
                 item.getTrackDurationInSecs(), item.getTrackArtist(), item.getTrackAlbum(), item.getCoverArtPath(), item.getTrackBitrate(), item.getTrackComment(),
-                item.getTrackGenre(), item.getTrackNumber(), item.getTrackYear(), item.isStarred() };
+                item.getTrackGenre(), item.getTrackNumber(), item.getTrackYear(), item.isStarred(), item.getSortIndex() };
 
         return new Object[] { sql, values };
     }
@@ -101,21 +166,22 @@ public class PlaylistItemDB extends ObjectDB<PlaylistItem> {
         return new Object[] { sql, values };
     }
 
-    private Object[] updateStarred(PlaylistItem item) {
+    static Object[] updateStarred(PlaylistItem item) {
         String sql = "UPDATE PlaylistItems SET starred = ? WHERE filePath = LEFT(?, 10000)";
 
         Object[] values = new Object[] { item.isStarred(), item.getFilePath() };
 
         return new Object[] { sql, values };
     }
-    
-    private boolean isStarred(PlaylistItem item) {
-        List<List<Object>> result = db
-                .query("SELECT starred FROM PlaylistItems WHERE filePath = ? LIMIT 1", item.getFilePath());
-        if (result.size() > 0) {
-            return (Boolean) result.get(0).get(0);
-        }
-        
-        return false;
+
+    private static long nextSortIndex(PooledConnection connection, int playlistId) throws SQLException {
+        final long[] max = { 0 };
+        connection.query(new RowHandler() {
+            public boolean handle(ResultSet rs) throws SQLException {
+                max[0] = rs.getLong(1);
+                return false;
+            }
+        }, "SELECT MAX(sortIndex) FROM PlaylistItems WHERE playlistId = ?", playlistId);
+        return max[0] + PlaylistDB.SORT_INDEX_GAP;
     }
 }
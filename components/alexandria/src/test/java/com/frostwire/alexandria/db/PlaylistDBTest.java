@@ -0,0 +1,88 @@
+package com.frostwire.alexandria.db;
+
+import junit.framework.Test;
+
+import org.limewire.util.BaseTestCase;
+
+public class PlaylistDBTest extends BaseTestCase {
+
+    private static final long GAP = PlaylistDB.SORT_INDEX_GAP;
+
+    public PlaylistDBTest(String name) {
+        super(name);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        return buildTestSuite(PlaylistDBTest.class);
+    }
+
+    public void testKeepsOrderedIndexes() {
+        long[] indexes = { GAP, 2 * GAP, 5 * GAP };
+        boolean[] moved = PlaylistDB.assignSortIndexes(indexes, new boolean[] { true, true, true });
+
+        assertEquals(GAP, indexes[0]);
+        assertEquals(2 * GAP, indexes[1]);
+        assertEquals(5 * GAP, indexes[2]);
+        assertMoved(moved, false, false, false);
+    }
+
+    public void testMovesOneItem() {
+        // the last item was moved up one place
+        long[] indexes = { GAP, 3 * GAP, 2 * GAP };
+        boolean[] moved = PlaylistDB.assignSortIndexes(indexes, new boolean[] { true, true, true });
+
+        assertIncreasing(indexes);
+        assertEquals(GAP, indexes[0]);
+        assertEquals(2 * GAP, indexes[2]);
+        assertEquals(GAP + GAP / 2, indexes[1]);
+        assertMoved(moved, false, true, false);
+    }
+
+    public void testInsertsBetweenItems() {
+        long[] indexes = { GAP, 0, 0, 2 * GAP };
+        boolean[] moved = PlaylistDB.assignSortIndexes(indexes, new boolean[] { true, false, false, true });
+
+        assertEquals(GAP, indexes[0]);
+        assertEquals(GAP + GAP / 3, indexes[1]);
+        assertEquals(GAP + 2 * (GAP / 3), indexes[2]);
+        assertEquals(2 * GAP, indexes[3]);
+        assertMoved(moved, false, false, false, false);
+    }
+
+    public void testInsertsAtBothEnds() {
+        long[] indexes = { 0, 4 * GAP, 0 };
+        boolean[] moved = PlaylistDB.assignSortIndexes(indexes, new boolean[] { false, true, false });
+
+        assertEquals(3 * GAP, indexes[0]);
+        assertEquals(4 * GAP, indexes[1]);
+        assertEquals(5 * GAP, indexes[2]);
+        assertMoved(moved, false, false, false);
+    }
+
+    public void testRenumbersWhenGapRunsOut() {
+        long[] indexes = { 7, 0, 8, 20 };
+        boolean[] moved = PlaylistDB.assignSortIndexes(indexes, new boolean[] { true, false, true, true });
+
+        for (int i = 0; i < indexes.length; i++) {
+            assertEquals((i + 1) * GAP, indexes[i]);
+        }
+        assertMoved(moved, true, false, true, true);
+    }
+
+    private static void assertIncreasing(long[] indexes) {
+        for (int i = 1; i < indexes.length; i++) {
+            assertTrue("index " + i + " out of order", indexes[i - 1] < indexes[i]);
+        }
+    }
+
+    private static void assertMoved(boolean[] moved, boolean... expected) {
+        assertEquals(expected.length, moved.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("item " + i, expected[i], moved[i]);
+        }
+    }
+}
@@ -74,6 +74,35 @@ CacheFileManagerStats
 	public long
 	getFileWriteCount();
 	
+		// share of the bytes read that came from the cache, 0 to 1
+	
+	public float
+	getHitRatio();
+	
+		// entries and bytes flushed out to make space for new ones
+	
+	public long
+	getEvictionCount();
+	
+	public long
+	getEvictedBytes();
+	
+	public long
+	getFlushCount();
+	
+		// millis, fractional as a flush often takes less than one
+	
+	public float
+	getAverageFlushTime();
+	
+		// times a thread waited for the cache lock and for how long in total (millis)
+	
+	public long
+	getLockWaitCount();
+	
+	public long
+	getLockWaitTime();
+	
 		// returns the number of bytes in the requested range that are in cache
 	
 	public boolean[] getBytesInCache(TOTorrent torrent, long[] absoluteOffsets, long[] lengths);
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aelitis.azureus.core.diskmanager.cache.impl;
+
+import java.io.*;
+import java.net.URL;
+import java.util.Random;
+
+import org.gudy.azureus2.core3.torrent.TOTorrent;
+import org.gudy.azureus2.core3.torrent.TOTorrentFactory;
+import org.gudy.azureus2.core3.torrent.TOTorrentFile;
+import org.gudy.azureus2.core3.util.*;
+
+import com.aelitis.azureus.core.diskmanager.cache.*;
+
+/**
+ * Synthetic multi torrent workloads for the disk cache, run with:
+ *
+ * 	java com.aelitis.azureus.core.diskmanager.cache.impl.CacheBenchmark [dir]
+ *
+ * The scan test reads a hot set of pieces of one torrent, as peers requesting the
+ * same pieces do, while another torrent is read from start to end, as a recheck
+ * or a single fast peer does, and reports the hit ratio of the hot reads.
+ *
+ * The concurrency test has one thread per torrent reading and writing random
+ * blocks, and reports the throughput.
+ */
+
+public class
+CacheBenchmark
+{
+	protected static final int	CACHE_SIZE	= 8*1024*1024;
+	protected static final int	PIECE_SIZE	= 128*1024;
+	protected static final int	BLOCK_SIZE	= 16*1024;
+
+	protected static final int	HOT_PIECES	= 32;
+	protected static final int	HOT_READS	= 4000;
+
+	protected static final int	THREADS			= 8;
+	protected static final int	THREAD_OPS		= 20000;
+
+	public static void
+	main(
+		String	[]args )
+	{
+		File	dir = new File( args.length > 0 ? args[0] : System.getProperty( "java.io.tmpdir" ), "cachebenchmark" );
+
+		try{
+			FileUtil.recursiveDelete( dir );
+
+			dir.mkdirs();
+
+			CacheFileManagerImpl	manager = (CacheFileManagerImpl)CacheFileManagerFactory.getSingleton();
+
+			manager.initialise( true, true, true, CACHE_SIZE, 1024 );
+
+			CacheBenchmark	benchmark = new CacheBenchmark( manager, dir );
+
+			benchmark.scanTest();
+
+			benchmark.concurrencyTest();
+
+			System.out.println(
+					"evictions=" + manager.getEvictionCount() + " (" + ( manager.getEvictedBytes()/1024 ) + " KB)" +
+					", flushes=" + manager.getFlushCount() + " (" + manager.getFlushTime() + " ms)" +
+					", lock waits=" + manager.getLockWaitCount() + " (" + manager.getLockWaitTime() + " ms)" );
+
+		}catch( Throwable e ){
+
+			Debug.printStackTrace( e );
+
+		}finally{
+
+			FileUtil.recursiveDelete( dir );
+		}
+	}
+
+	protected CacheFileManagerImpl	manager;
+	protected File					dir;
+	protected Random				random	= new Random(0);
+
+	protected
+	CacheBenchmark(
+		CacheFileManagerImpl	_manager,
+		File					_dir )
+	{
+		manager	= _manager;
+		dir		= _dir;
+	}
+
+	protected void
+	scanTest()
+
+		throws Exception
+	{
+		CacheFile	hot		= createFile( "hot", 16*1024*1024 );
+		CacheFile	scan	= createFile( "scan", 64*1024*1024 );
+
+		long	scan_length		= scan.getLength();
+		long	scan_position	= 0;
+
+		long	hot_bytes		= 0;
+		long	hot_cache_bytes	= 0;
+
+		long	start = SystemTime.getHighPrecisionCounter();
+
+		for (int i=0;i<HOT_READS;i++){
+
+			long	piece_position = (long)random.nextInt( HOT_PIECES ) * PIECE_SIZE;
+
+			long	cache_before = manager.getBytesReadFromCache();
+
+			read( hot, piece_position, PIECE_SIZE );
+
+			hot_cache_bytes += manager.getBytesReadFromCache() - cache_before;
+
+			hot_bytes += PIECE_SIZE;
+
+				// the scan goes twice as fast as the hot reads
+
+			read( scan, scan_position, 2*PIECE_SIZE );
+
+			scan_position = ( scan_position + 2*PIECE_SIZE ) % scan_length;
+		}
+
+		long	elapsed = ( SystemTime.getHighPrecisionCounter() - start )/1000000;
+
+		System.out.println(
+				"scan test: hot hit ratio=" + ( 100*hot_cache_bytes/hot_bytes ) + "%" +
+				", total hit ratio=" + (int)( 100*manager.getStats().getHitRatio()) + "%" +
+				", time=" + elapsed + " ms" );
+
+		hot.close();
+		scan.close();
+	}
+
+	protected void
+	concurrencyTest()
+
+		throws Exception
+	{
+		final CacheFile[]	files = new CacheFile[THREADS];
+
+		for (int i=0;i<files.length;i++){
+
+			files[i] = createFile( "thread" + i, 4*1024*1024 );
+		}
+
+		long	waits_before = manager.getLockWaitCount();
+
+		final Throwable[]	error = { null };
+
+		Thread[]	threads = new Thread[THREADS];
+
+		long	start = SystemTime.getHighPrecisionCounter();
+
+		for (int i=0;i<threads.length;i++){
+
+			final CacheFile	file = files[i];
+
+			final Random	thread_random = new Random( i );
+
+			threads[i] =
+				new Thread( "CacheBenchmark:" + i )
+				{
+					public void
+					run()
+					{
+						try{
+							int	blocks = (int)( file.getLength() / BLOCK_SIZE );
+
+							for (int j=0;j<THREAD_OPS;j++){
+
+								long	position = (long)thread_random.nextInt( blocks ) * BLOCK_SIZE;
+
+								if ( thread_random.nextInt( 4 ) == 0 ){
+
+									write( file, position );
+
+								}else{
+
+									read( file, position, BLOCK_SIZE );
+								}
+							}
+						}catch( Throwable e ){
+
+							error[0] = e;
+						}
+					}
+				};
+
+			threads[i].start();
+		}
+
+		for (int i=0;i<threads.length;i++){
+
+			threads[i].join();
+		}
+
+		long	elapsed = Math.max( 1, ( SystemTime.getHighPrecisionCounter() - start )/1000000 );
+
+		if ( error[0] != null ){
+
+			throw( new Exception( "concurrency test failed", error[0] ));
+		}
+
+		for (int i=0;i<files.length;i++){
+
+			files[i].flushCache();
+
+			files[i].close();
+		}
+
+		System.out.println(
+				"concurrency test: threads=" + THREADS + ", ops/s=" + ( 1000L*THREADS*THREAD_OPS/elapsed ) +
+				", lock waits=" + ( manager.getLockWaitCount() - waits_before ) + ", time=" + elapsed + " ms" );
+	}
+
+	protected void
+	read(
+		CacheFile	file,
+		long		position,
+		int			length )
+
+		throws CacheFileManagerException
+	{
+		DirectByteBuffer	buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, BLOCK_SIZE );
+
+		try{
+			for (int done=0;done<length;done+=BLOCK_SIZE){
+
+				buffer.position( DirectByteBuffer.SS_OTHER, 0 );
+
+				file.read( buffer, position + done, CacheFile.CP_READ_CACHE );
+			}
+		}finally{
+
+			buffer.returnToPool();
+		}
+	}
+
+	protected void
+	write(
+		CacheFile	file,
+		long		position )
+
+		throws CacheFileManagerException
+	{
+		DirectByteBuffer	buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, BLOCK_SIZE );
+
+		boolean	handed_over = false;
+
+		try{
+			file.writeAndHandoverBuffer( buffer, position );
+
+			handed_over = true;
+
+		}finally{
+
+			if ( !handed_over ){
+
+				buffer.returnToPool();
+			}
+		}
+	}
+
+	protected CacheFile
+	createFile(
+		String	name,
+		int		length )
+
+		throws Exception
+	{
+		final File	data_dir	= new File( dir, name );
+		final File	control_dir	= new File( dir, name + ".control" );
+
+		data_dir.mkdirs();
+		control_dir.mkdirs();
+
+		final File	data_file = new File( data_dir, name + ".dat" );
+
+		FileOutputStream	fos = new FileOutputStream( data_file );
+
+		try{
+			byte[]	buffer = new byte[64*1024];
+
+			for (int done=0;done<length;done+=buffer.length){
+
+				random.nextBytes( buffer );
+
+				fos.write( buffer );
+			}
+		}finally{
+
+			fos.close();
+		}
+
+		TOTorrent	torrent =
+			TOTorrentFactory.createFromFileOrDirWithFixedPieceLength(
+				data_file,
+				new URL( "http://a.b.c/" ),
+				PIECE_SIZE ).create();
+
+		final TOTorrentFile	torrent_file = torrent.getFiles()[0];
+
+		CacheFile	cache_file = manager.createFile(
+			new CacheFileOwner()
+			{
+				public String
+				getCacheFileOwnerName()
+				{
+					return( data_file.getAbsolutePath());
+				}
+
+				public TOTorrentFile
+				getCacheFileTorrentFile()
+				{
+					return( torrent_file );
+				}
+
+				public File
+				getCacheFileControlFileDir()
+				{
+					return( control_dir );
+				}
+
+				public int
+				getCacheMode()
+				{
+					return( CacheFileOwner.CACHE_MODE_NORMAL );
+				}
+			},
+			data_file, CacheFile.CT_LINEAR );
+
+		cache_file.setAccessMode( CacheFile.CF_WRITE );
+
+		return( cache_file );
+	}
+}
@@ -51,6 +51,11 @@ CacheEntry
 	protected int				entry_type;
 	protected int				usage_count;
 	
+		// managed by CacheFileManagerImpl under the lock of the file's segment
+	
+	protected boolean			frequent;		// in the protected LRU rather than the probation FIFO
+	protected long				stamp;			// cache clock at insertion, and at every use once frequent
+	
 	/**
 	 * Constructs a dummy cache entry used to search in a Set 
 	 * @param offset
@@ -29,6 +29,8 @@ package com.aelitis.azureus.core.diskmanager.cache.impl;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.gudy.azureus2.core3.config.COConfigurationManager;
 import org.gudy.azureus2.core3.logging.LogEvent;
@@ -42,6 +44,17 @@ import com.aelitis.azureus.core.diskmanager.cache.*;
 import com.aelitis.azureus.core.diskmanager.file.*;
 import com.aelitis.azureus.core.util.CaseSensitiveFileMap;
 
+/**
+ * The cache entries are kept in segments, one lock each, and every file always
+ * maps to the same segment, so files of different torrents don't contend.
+ * 
+ * Inside a segment the entries follow 2Q: new blocks wait in a probation FIFO and
+ * only blocks requested again after leaving it (remembered in the ghost list) get
+ * into the protected LRU. A sequential pass over a torrent, such as a recheck or
+ * seeding read-ahead, cycles through probation without evicting the hot pieces
+ * of other torrents.
+ */
+
 public class 
 CacheFileManagerImpl 
 	implements CacheFileManager, AEDiagnosticsEvidenceGenerator
@@ -53,6 +66,14 @@ CacheFileManagerImpl
 	
 	public static final int		STATS_UPDATE_FREQUENCY		= 1*1000;	// 1 sec
 	public static final long	DIRTY_CACHE_WRITE_MAX_AGE	= 120*1000;	// 2 mins
+	
+	public static final int		SEGMENT_COUNT				= 16;
+	
+		// share of the cache the probation FIFO can fill before it's evicted first,
+		// and bytes of evicted probation entries remembered in each ghost list
+	
+	public static final int		PROBATION_PERCENT			= 25;
+	public static final int		GHOST_PERCENT				= 50;
 		
 	static{
 		if ( DEBUG ){
@@ -113,7 +134,10 @@ CacheFileManagerImpl
 	protected long		cache_files_not_smaller_than;
 	
 	protected long		cache_minimum_free_size;
-	protected long		cache_space_free;
+	protected final AtomicLong	cache_space_free	= new AtomicLong();
+	
+	protected long		probation_target;
+	protected long		ghost_target;
 
 	private long	cache_file_id_next	= 0;
 	
@@ -124,24 +148,36 @@ CacheFileManagerImpl
 	protected WeakHashMap		cache_files			= new WeakHashMap();
 	protected WeakHashMap		updated_cache_files	= null;
 	
-		// access order
+	protected CacheSegment[]	segments;
+	
+	protected final AtomicLong	cache_clock		= new AtomicLong();
+	protected final AtomicLong	probation_size	= new AtomicLong();
 	
-	protected LinkedHashMap		cache_entries = new LinkedHashMap(1024, 0.75f, true );
+		// set while the thread flushes entries to make space, their releases are evictions
+	
+	protected final ThreadLocal<Boolean>	evicting	= new ThreadLocal<Boolean>();
 	
 	protected CacheFileManagerStatsImpl	stats;
 	
 
 	protected Map	torrent_to_cache_file_map	= new LightHashMap();
 	
-	protected long				cache_bytes_written;
-	protected long				cache_bytes_read;
-	protected long				file_bytes_written;
-	protected long				file_bytes_read;
+	protected final AtomicLong	cache_bytes_written	= new AtomicLong();
+	protected final AtomicLong	cache_bytes_read	= new AtomicLong();
+	protected final AtomicLong	file_bytes_written	= new AtomicLong();
+	protected final AtomicLong	file_bytes_read		= new AtomicLong();
+	
+	protected final AtomicLong	cache_read_count	= new AtomicLong();
+	protected final AtomicLong	cache_write_count	= new AtomicLong();
+	protected final AtomicLong	file_read_count		= new AtomicLong();
+	protected final AtomicLong	file_write_count	= new AtomicLong();
 	
-	protected long				cache_read_count;
-	protected long				cache_write_count;
-	protected long				file_read_count;
-	protected long				file_write_count;
+	protected final AtomicLong	eviction_count		= new AtomicLong();
+	protected final AtomicLong	evicted_bytes		= new AtomicLong();
+	protected final AtomicLong	flush_count			= new AtomicLong();
+	protected final AtomicLong	flush_time			= new AtomicLong();		// nanos
+	protected final AtomicLong	lock_wait_count		= new AtomicLong();
+	protected final AtomicLong	lock_wait_time		= new AtomicLong();		// nanos
 	
 	protected AEMonitor			this_mon	= new AEMonitor( "CacheFileManager" );
 	
@@ -198,9 +234,27 @@ CacheFileManagerImpl
 		
 		cache_files_not_smaller_than	= not_smaller_than;
 		
-		cache_minimum_free_size	= cache_size/4;
+			// released per eviction, small enough to spare the hot entries that
+			// follow the victim in its file
+		
+		cache_minimum_free_size	= cache_size/16;
 		
-		cache_space_free		= cache_size;
+		cache_space_free.set( cache_size );
+		
+		probation_target		= cache_size*PROBATION_PERCENT/100;
+		
+			// not divided between the segments, a single busy torrent may have them all
+		
+		ghost_target			= cache_size*GHOST_PERCENT/100;
+		
+		probation_size.set( 0 );
+		
+		segments = new CacheSegment[ SEGMENT_COUNT ];
+		
+		for (int i=0;i<segments.length;i++){
+			
+			segments[i] = new CacheSegment();
+		}
 		
 		stats = new CacheFileManagerStatsImpl( this );
 		
@@ -360,88 +414,80 @@ CacheFileManagerImpl
 	
 		throws CacheFileManagerException
 	{
-		boolean	ok 	= false;
 		boolean	log	= false;		
 		
-		while( !ok ){
+		while( true ){
 			
-				// musn't invoke synchronised CacheFile methods while holding manager lock as this
-				// can cause deadlocks (as CacheFile calls manager methods with locks)
+			long	old_free	= cache_space_free.get();
+			
+			if ( length < old_free || old_free == cache_size ){
+				
+				break;
+			}
 			
-			CacheEntry	oldest_entry	= null;
+				// musn't invoke synchronised CacheFile methods while holding a segment lock as this
+				// can cause deadlocks (as CacheFile calls manager methods with locks)
 			
-			try{
-				this_mon.enter();
+			CacheEntry	victim = selectVictim();
 			
-				if ( length < cache_space_free || cache_space_free == cache_size ){
+			if ( victim == null ){
 				
-					ok	= true;
-					
-				}else{
-					
-					oldest_entry = (CacheEntry)cache_entries.keySet().iterator().next();
-				}
-			}finally{
+					// the space is held by entries other threads are adding right now
 				
-				this_mon.exit();
+				break;
 			}
 			
-			if ( !ok ){
+			log	= true;
+			
+			CacheFileWithCache	victim_file = victim.getFile();
+			
+			long	start = System.nanoTime();
+			
+			evicting.set( Boolean.TRUE );
+			
+			try{
 				
-				log	= true;
+				victim_file.flushCache( victim.getFilePosition(), true, Math.max( length, cache_minimum_free_size ));
 				
-				long	old_free	= cache_space_free;
-			
-				CacheFileWithCache	oldest_file = oldest_entry.getFile();
+			}catch( CacheFileManagerException e ){
 				
-				try{
-					
-					oldest_file.flushCache( oldest_entry.getFilePosition(), true, cache_minimum_free_size );
-					
-				}catch( CacheFileManagerException e ){
+					// if the flush failed on a file other than this one then we don't report the error here,
+					// rather we tag the existing file as failed so that when it is next accessed the error
+					// will be reported
+				
+				if ( victim_file != file ){
+											
+					victim_file.setPendingException( e );
 					
-						// if the flush failed on a file other than this one then we don't report the error here,
-						// rather we tag the existing file as failed so that when it is next accessed the error
-						// will be reported
+				}else{
 					
-					if ( oldest_file != file ){
-												
-						oldest_file.setPendingException( e );
-						
-					}else{
-						
-						throw( e );
-					}
+					throw( e );
 				}
+			}finally{
 				
-				long	flushed = cache_space_free - old_free;
+				evicting.remove();
 				
-				if (Logger.isEnabled()) {
-					TOTorrentFile tf = file.getTorrentFile();
-					TOTorrent torrent = tf == null ? null : tf.getTorrent();
-					Logger.log(new LogEvent(torrent, LOGID,
-							"DiskCache: cache full, flushed " + flushed + " from "
-									+ oldest_file.getName()));
-				}
+				flush_count.incrementAndGet();
 				
-				if ( flushed == 0 ){
+				flush_time.addAndGet( System.nanoTime() - start );
+			}
+			
+			long	flushed = cache_space_free.get() - old_free;
+			
+			if (Logger.isEnabled()) {
+				TOTorrentFile tf = file.getTorrentFile();
+				TOTorrent torrent = tf == null ? null : tf.getTorrent();
+				Logger.log(new LogEvent(torrent, LOGID,
+						"DiskCache: cache full, flushed " + flushed + " from "
+								+ victim_file.getName()));
+			}
+			
+			if ( flushed <= 0 && isCached( victim )){
+			
+					// hmm, something wrong with cache as the flush should have got rid
+					// of at least the victim
 				
-					try{
-						this_mon.enter();
-						
-						if (	cache_entries.size() > 0 &&
-								(CacheEntry)cache_entries.keySet().iterator().next() == oldest_entry ){
-							
-								// hmm, something wrong with cache as the flush should have got rid
-								// of at least the oldest entry
-							
-							throw( new CacheFileManagerException( null, "Cache inconsistent: 0 flushed"));
-						}
-					}finally{
-						
-						this_mon.exit();
-					}
-				}
+				throw( new CacheFileManagerException( null, "Cache inconsistent: 0 flushed"));
 			}
 		}
 					
@@ -459,6 +505,96 @@ CacheFileManagerImpl
 		return( entry );
 	}
 	
+		/**
+		 * The oldest probation entry once probation is over its share of the cache,
+		 * the least recently used protected entry otherwise
+		 */
+	
+	protected CacheEntry
+	selectVictim()
+	{
+		boolean	from_probation = probation_size.get() > probation_target;
+		
+		CacheEntry	victim = selectVictim( !from_probation );
+		
+		if ( victim == null ){
+			
+			victim = selectVictim( from_probation );
+		}
+		
+		return( victim );
+	}
+	
+	protected CacheEntry
+	selectVictim(
+		boolean		frequent )
+	{
+		CacheEntry	victim			= null;
+		long		victim_stamp	= 0;
+		
+		for (int i=0;i<segments.length;i++){
+			
+			CacheSegment	segment = segments[i];
+			
+			lockSegment( segment );
+			
+			try{
+				CacheEntry	head = segment.getHead( frequent );
+				
+				if ( head != null && ( victim == null || head.stamp < victim_stamp )){
+					
+					victim			= head;
+					victim_stamp	= head.stamp;
+				}
+			}finally{
+				
+				segment.lock.unlock();
+			}
+		}
+		
+		return( victim );
+	}
+	
+	protected boolean
+	isCached(
+		CacheEntry	entry )
+	{
+		CacheSegment	segment = getSegment( entry.getFile());
+		
+		lockSegment( segment );
+		
+		try{
+			return( segment.contains( entry ));
+			
+		}finally{
+			
+			segment.lock.unlock();
+		}
+	}
+	
+	protected CacheSegment
+	getSegment(
+		CacheFileWithCache	file )
+	{
+		return( segments[( System.identityHashCode( file ) & 0x7fffffff ) % segments.length] );
+	}
+	
+	protected void
+	lockSegment(
+		CacheSegment	segment )
+	{
+		if ( !segment.lock.tryLock()){
+			
+			long	start = System.nanoTime();
+			
+			segment.lock.lock();
+			
+			lock_wait_count.incrementAndGet();
+			
+			lock_wait_time.addAndGet( System.nanoTime() - start );
+		}
+	}
+	
 	protected void
 	cacheStatsAndCleaner()
 	{
@@ -484,7 +620,7 @@ CacheFileManagerImpl
       				
       				cleaner_ticks	= CACHE_CLEANER_TICKS;
       				
-      				final Set	dirty_files	= new HashSet();
+      				Set<CacheFileWithCache>	dirty_files	= new HashSet<CacheFileWithCache>();
       	
       				final long	oldest	=SystemTime.getCurrentTime() - DIRTY_CACHE_WRITE_MAX_AGE;
       				
@@ -498,23 +634,6 @@ CacheFileManagerImpl
       						updated_cache_files	= null;
       					}
 
-      					if ( cache_entries.size() > 0 ){
-      						
-      						Iterator it = cache_entries.keySet().iterator();
-      						
-      						while( it.hasNext()){
-      							
-      							CacheEntry	entry = (CacheEntry)it.next();
-      								
-      							// System.out.println( "oldest entry = " + ( now - entry.getLastUsed()));
-      							
-      							if ( entry.isDirty()){
-      								
-      								dirty_files.add( entry.getFile());
-      							}
-      						}
-      					}
-      					
       					// System.out.println( "cache file = " + cache_files.size() + ", torrent map = " + torrent_to_cache_file_map.size());
       					
       				}finally{
@@ -522,11 +641,33 @@ CacheFileManagerImpl
       					this_mon.exit();
       				}
       				
-      				Iterator	it = dirty_files.iterator();
+      				for (int i=0;i<segments.length;i++){
+      					
+      					CacheSegment	segment = segments[i];
+      					
+      					lockSegment( segment );
+      					
+      					try{
+      						segment.addDirtyFiles( dirty_files );
+      						
+      					}finally{
+      						
+      						segment.lock.unlock();
+      					}
+      				}
+      				
+      					// each file writes its blocks in offset order, writing the files of a
+      					// torrent in their order too keeps the disk going one way
+      				
+      				List<CacheFileWithCache>	sorted_dirty_files = new ArrayList<CacheFileWithCache>( dirty_files );
+      				
+      				Collections.sort( sorted_dirty_files, FILE_ORDER );
+      				
+      				Iterator<CacheFileWithCache>	it = sorted_dirty_files.iterator();
       				
       				while( it.hasNext()){
       					
-      					CacheFileWithCache	file = (CacheFileWithCache)it.next();
+      					CacheFileWithCache	file = it.next();
 
       					try{
       						
@@ -573,62 +714,38 @@ CacheFileManagerImpl
 	
 		throws CacheFileManagerException
 	{
+		cache_space_free.addAndGet( -new_entry.getLength());
+		
+			// 	System.out.println( "Total cache space = " + cache_space_free );
+		
+		CacheFileWithCache	file	= new_entry.getFile();
+		
+		CacheSegment	segment = getSegment( file );
+		
+		lockSegment( segment );
+		
 		try{
-			this_mon.enter();
-			
-			cache_space_free	-= new_entry.getLength();
+			new_entry.stamp	= cache_clock.incrementAndGet();
 			
-				// 	System.out.println( "Total cache space = " + cache_space_free );
-		
-			cache_entries.put( new_entry, new_entry );
+			if ( segment.add( new_entry )){
+				
+				probation_size.addAndGet( new_entry.getLength());
+			}
 			
 			if ( DEBUG ){
 				
-				CacheFileWithCache	file	= new_entry.getFile();
-								
-				long	total_cache_size	= 0;
-				
-				int		my_count = 0;
-
-				Iterator it = cache_entries.keySet().iterator();
-				
-				while( it.hasNext()){
-					
-					CacheEntry	entry = (CacheEntry)it.next();
-					
-					total_cache_size	+= entry.getLength();
-					
-					if ( entry.getFile() == file ){
-						
-						my_count++;
-					}
-				}
+				int	my_count = segment.count( file );
 			
 				if ( my_count != file.cache.size()){
 					
 					Debug.out( "Cache inconsistency: my count = " + my_count + ", file = " + file.cache.size());
 					
 					throw( new CacheFileManagerException( null, "Cache inconsistency: counts differ"));
-					
-				}else{
-					
-					//System.out.println( "Cache: file_count = " + my_count );
-				}
-				
-				if ( total_cache_size != cache_size - cache_space_free ){
-					
-					Debug.out( "Cache inconsistency: used_size = " + total_cache_size + ", free = " + cache_space_free + ", size = " + cache_size );
-					
-					throw( new CacheFileManagerException( null, "Cache inconsistency: sizes differ"));
-					
-				}else{
-					
-					//System.out.println( "Cache: usage = " + total_cache_size );
 				}
 			}
 		}finally{
 			
-			this_mon.exit();
+			segment.lock.unlock();
 		}
 	}
 	
@@ -638,24 +755,36 @@ CacheFileManagerImpl
 	
 		throws CacheFileManagerException
 	{
-		try{
-			this_mon.enter();
+		CacheSegment	segment = getSegment( entry.getFile());
+		
+		boolean	missing;
+		
+		lockSegment( segment );
 		
-				// note that the "get" operation update the MRU in cache_entries
+		try{
+				// note that the "get" operation updates the protected LRU order
 			
-			if ( cache_entries.get( entry ) == null ){
-				
-				Debug.out( "Cache inconsistency: entry missing on usage" );
-				
-				throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on usage"));
+			missing = !segment.touch( entry );
+			
+			if ( !missing ){
 				
-			}else{
+				if ( entry.frequent ){
+					
+					entry.stamp = cache_clock.incrementAndGet();
+				}
 				
 				entry.used();
 			}
 		}finally{
 			
-			this_mon.exit();
+			segment.lock.unlock();
+		}
+		
+		if ( missing ){
+			
+			Debug.out( "Cache inconsistency: entry missing on usage" );
+			
+			throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on usage"));
 		}
 	}
 	
@@ -667,37 +796,67 @@ CacheFileManagerImpl
 	{
 		entry.getBuffer().returnToPool();
 		
+		cache_space_free.addAndGet( entry.getLength());
+		
+		boolean	evicted = evicting.get() != null;
+		
+		if ( evicted ){
+			
+			eviction_count.incrementAndGet();
+			
+			evicted_bytes.addAndGet( entry.getLength());
+		}
+		
+		CacheSegment	segment = getSegment( entry.getFile());
+		
+		boolean	missing;
+		
+		lockSegment( segment );
+		
 		try{
-			this_mon.enter();
+			boolean	was_probation = !entry.frequent;
 			
-			cache_space_free	+= entry.getLength();
+			missing = !segment.remove( entry );
 			
-			if ( cache_entries.remove( entry ) == null ){
-				
-				Debug.out( "Cache inconsistency: entry missing on removal" );
-
-				throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on removal"));
-			}
-
-			/*
-			if ( 	entry.getType() == CacheEntry.CT_READ_AHEAD ){
+			if ( !missing && was_probation ){
 				
-				if ( entry.getUsageCount() < 2 ){
+				probation_size.addAndGet( -entry.getLength());
 				
-					System.out.println( "ra: not used" );
+					// only remember entries pushed out by the space demand of others, a
+					// block requested again after that is worth protecting
 				
-				}else{
-				
-					System.out.println( "ra: used" );
+				if ( evicted ){
+					
+					segment.addGhost( entry, ghost_target );
 				}
 			}
-			*/
-			
-			// System.out.println( "Total cache space = " + cache_space_free );
 		}finally{
 			
-			this_mon.exit();
+			segment.lock.unlock();
+		}
+		
+		if ( missing ){
+			
+			Debug.out( "Cache inconsistency: entry missing on removal" );
+
+			throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on removal"));
+		}
+			
+		/*
+		if ( 	entry.getType() == CacheEntry.CT_READ_AHEAD ){
+			
+			if ( entry.getUsageCount() < 2 ){
+			
+				System.out.println( "ra: not used" );
+			
+			}else{
+			
+				System.out.println( "ra: used" );
+			}
 		}
+		*/
+		
+		// System.out.println( "Total cache space = " + cache_space_free );
 	}
 	
 	protected long
@@ -709,7 +868,7 @@ CacheFileManagerImpl
 	protected long
 	getCacheUsed()
 	{
-		long free = cache_space_free;
+		long free = cache_space_free.get();
 		
 		if ( free < 0 ){
 			
@@ -723,115 +882,132 @@ CacheFileManagerImpl
 	cacheBytesWritten(
 		long		num )
 	{
-		try{
-			this_mon.enter();
-			
-			cache_bytes_written	+= num;
-			
-			cache_write_count++;
-			
-		}finally{
-			
-			this_mon.exit();
-		}
+		cache_bytes_written.addAndGet( num );
+		
+		cache_write_count.incrementAndGet();
 	}
 	
 	protected void
 	cacheBytesRead(
 		int		num )
 	{
-		try{
-			this_mon.enter();
-			
-			cache_bytes_read	+= num;
-			
-			cache_read_count++;
-			
-		}finally{
-			
-			this_mon.exit();
-		}
+		cache_bytes_read.addAndGet( num );
+		
+		cache_read_count.incrementAndGet();
 	}
 	
 	protected void
 	fileBytesWritten(
 		long	num )
 	{
-		try{
-			this_mon.enter();
-			
-			file_bytes_written	+= num;
-			
-			file_write_count++;
-			
-		}finally{
-			
-			this_mon.exit();
-		}
+		file_bytes_written.addAndGet( num );
+		
+		file_write_count.incrementAndGet();
 	}
 	
 	protected void
 	fileBytesRead(
-		int		num )
+		int	num )
 	{
-		try{
-			this_mon.enter();
-			
-			file_bytes_read	+= num;
-			
-			file_read_count++;
-		}finally{
-			
-			this_mon.exit();
-		}
+		file_bytes_read.addAndGet( num );
+		
+		file_read_count.incrementAndGet();
 	}
 	
 	protected long
 	getBytesWrittenToCache()
 	{
-		return( cache_bytes_written );
+		return( cache_bytes_written.get());
 	}
 	
 	protected long
 	getBytesWrittenToFile()
 	{
-		return( file_bytes_written );
+		return( file_bytes_written.get());
 	}
 	
 	protected long
 	getBytesReadFromCache()
 	{
-		return( cache_bytes_read );
+		return( cache_bytes_read.get());
 	}
 	
 	protected long
 	getBytesReadFromFile()
 	{
-		return( file_bytes_read );
+		return( file_bytes_read.get());
 	}
 	
 	public long
 	getCacheReadCount()
 	{
-		return( cache_read_count );
+		return( cache_read_count.get());
 	}
 	
 	public long
 	getCacheWriteCount()
 	{
-		return( cache_write_count );
+		return( cache_write_count.get());
 	}
 	
 	public long
 	getFileReadCount()
 	{
-		return( file_read_count );
+		return( file_read_count.get());
 	}
 	
 	public long
 	getFileWriteCount()
 	{
-		return( file_write_count );
+		return( file_write_count.get());
+	}
+	
+	protected long
+	getProbationSize()
+	{
+		return( probation_size.get());
+	}
+	
+	protected long
+	getEvictionCount()
+	{
+		return( eviction_count.get());
+	}
+	
+	protected long
+	getEvictedBytes()
+	{
+		return( evicted_bytes.get());
+	}
+	
+	protected long
+	getFlushCount()
+	{
+		return( flush_count.get());
+	}
+	
+	protected long
+	getFlushTime()
+	{
+		return( flush_time.get()/1000000 );
+	}
+	
+	protected long
+	getFlushTimeNanos()
+	{
+		return( flush_time.get());
+	}
+	
+	protected long
+	getLockWaitCount()
+	{
+		return( lock_wait_count.get());
+	}
+	
+	protected long
+	getLockWaitTime()
+	{
+		return( lock_wait_time.get()/1000000 );
 	}
 	
 	protected void
@@ -968,17 +1144,27 @@ CacheFileManagerImpl
 				// grab a copy to avoid potential deadlock as we never take the manager monitor
 				// and then the file's own monitor, always the other way around
 			
-			try{
-				this_mon.enter();
-
-				it = new ArrayList( cache_entries.keySet()).iterator();
-
-			}finally{
+			List<CacheEntry>	entries = new ArrayList<CacheEntry>();
+			
+			for (int i=0;i<segments.length;i++){
 				
-				this_mon.exit();
+				CacheSegment	segment = segments[i];
+				
+				lockSegment( segment );
+				
+				try{
+					segment.addEntries( entries );
+					
+				}finally{
+					
+					segment.lock.unlock();
+				}
 			}
 			
-			writer.println( "Entries = " + cache_entries.size());
+			it = entries.iterator();
+			
+			writer.println( "Entries = " + entries.size() + ", probation = " + probation_size.get() + ", evicted = " + evicted_bytes.get() + 
+							", flushes = " + flush_count.get() + " (" + getFlushTime() + " ms), lock waits = " + lock_wait_count.get() + " (" + getLockWaitTime() + " ms)" );
 							
 			Set	files = new HashSet();
 			
@@ -1029,4 +1215,192 @@ CacheFileManagerImpl
 	{
 		file_manager.setFileLinks( torrent, links );
 	}
+	
+	protected static final Comparator<CacheFileWithCache>	FILE_ORDER = 
+		new Comparator<CacheFileWithCache>()
+		{
+			public int
+			compare(
+				CacheFileWithCache	f1,
+				CacheFileWithCache	f2 )
+			{
+				int	t1 = System.identityHashCode( f1.torrent );
+				int	t2 = System.identityHashCode( f2.torrent );
+				
+				if ( t1 != t2 ){
+					
+					return( t1 < t2 ? -1 : 1 );
+				}
+				
+				long	diff = f1.file_offset_in_torrent - f2.file_offset_in_torrent;
+				
+				return( diff < 0 ? -1 : ( diff > 0 ? 1 : 0 ));
+			}
+		};
+	
+		/**
+		 * The entries of the files that map to it, only used with its lock held
+		 */
+	
+	protected static class
+	CacheSegment
+	{
+		protected final ReentrantLock	lock		= new ReentrantLock();
+		
+			// insertion order, then access order
+		
+		protected final LinkedHashMap<CacheEntry,CacheEntry>	probation	= new LinkedHashMap<CacheEntry,CacheEntry>( 256 );
+		protected final LinkedHashMap<CacheEntry,CacheEntry>	frequent	= new LinkedHashMap<CacheEntry,CacheEntry>( 256, 0.75f, true );
+		
+			// file and position of evicted probation entries, to their length
+		
+		protected final LinkedHashMap<Long,Integer>	ghosts		= new LinkedHashMap<Long,Integer>( 256 );
+		protected long									ghost_size;
+		
+			/**
+			 * @return true if the entry went to probation, false if it was a ghost
+			 */
+		
+		protected boolean
+		add(
+			CacheEntry	entry )
+		{
+			Integer	ghost = ghosts.remove( ghostKey( entry ));
+			
+			if ( ghost != null ){
+				
+				ghost_size -= ghost.intValue();
+				
+				entry.frequent = true;
+				
+				frequent.put( entry, entry );
+				
+				return( false );
+			}
+			
+			entry.frequent = false;
+			
+			probation.put( entry, entry );
+			
+			return( true );
+		}
+		
+		protected boolean
+		touch(
+			CacheEntry	entry )
+		{
+			return( entry.frequent ? frequent.get( entry ) != null : probation.containsKey( entry ));
+		}
+		
+		protected boolean
+		contains(
+			CacheEntry	entry )
+		{
+			return( entry.frequent ? frequent.containsKey( entry ) : probation.containsKey( entry ));
+		}
+		
+		protected boolean
+		remove(
+			CacheEntry	entry )
+		{
+			return(( entry.frequent ? frequent.remove( entry ) : probation.remove( entry )) != null );
+		}
+		
+		protected CacheEntry
+		getHead(
+			boolean		from_frequent )
+		{
+			LinkedHashMap<CacheEntry,CacheEntry>	map = from_frequent ? frequent : probation;
+			
+			return( map.isEmpty() ? null : map.keySet().iterator().next());
+		}
+		
+		protected void
+		addGhost(
+			CacheEntry	entry,
+			long		target )
+		{
+			Integer	old = ghosts.put( ghostKey( entry ), new Integer( entry.getLength()));
+			
+			if ( old != null ){
+				
+				ghost_size -= old.intValue();
+			}
+			
+			ghost_size += entry.getLength();
+			
+			Iterator<Integer>	it = ghosts.values().iterator();
+			
+			while( ghost_size > target && it.hasNext()){
+				
+				ghost_size -= it.next().intValue();
+				
+				it.remove();
+			}
+		}
+		
+		protected void
+		addDirtyFiles(
+			Set<CacheFileWithCache>		files )
+		{
+			addDirtyFiles( probation, files );
+			addDirtyFiles( frequent, files );
+		}
+		
+		private static void
+		addDirtyFiles(
+			LinkedHashMap<CacheEntry,CacheEntry>	entries,
+			Set<CacheFileWithCache>					files )
+		{
+			Iterator<CacheEntry>	it = entries.keySet().iterator();
+			
+			while( it.hasNext()){
+				
+				CacheEntry	entry = it.next();
+				
+				if ( entry.isDirty()){
+					
+					files.add( entry.getFile());
+				}
+			}
+		}
+		
+		protected void
+		addEntries(
+			List<CacheEntry>	entries )
+		{
+			entries.addAll( probation.keySet());
+			entries.addAll( frequent.keySet());
+		}
+		
+		protected int
+		count(
+			CacheFileWithCache	file )
+		{
+			int	count = 0;
+			
+			List<CacheEntry>	entries = new ArrayList<CacheEntry>();
+			
+			addEntries( entries );
+			
+			for (int i=0;i<entries.size();i++){
+				
+				if ( entries.get(i).getFile() == file ){
+					
+					count++;
+				}
+			}
+			
+			return( count );
+		}
+		
+			// collisions only make a block look hotter than it is
+		
+		private static Long
+		ghostKey(
+			CacheEntry	entry )
+		{
+			return( new Long( entry.getFilePosition() * 31 + System.identityHashCode( entry.getFile())));
+		}
+	}
 }
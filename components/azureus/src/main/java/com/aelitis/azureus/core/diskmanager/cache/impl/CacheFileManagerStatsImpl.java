@@ -195,6 +195,53 @@ CacheFileManagerStatsImpl
 		return( manager.getFileWriteCount());
 	}
 	
+	public float
+	getHitRatio()
+	{
+		long	cache_read	= manager.getBytesReadFromCache();
+		long	total		= cache_read + manager.getBytesReadFromFile();
+		
+		return( total == 0 ? 0 : (float)cache_read/total );
+	}
+	
+	public long
+	getEvictionCount()
+	{
+		return( manager.getEvictionCount());
+	}
+	
+	public long
+	getEvictedBytes()
+	{
+		return( manager.getEvictedBytes());
+	}
+	
+	public long
+	getFlushCount()
+	{
+		return( manager.getFlushCount());
+	}
+	
+	public float
+	getAverageFlushTime()
+	{
+		long	count = manager.getFlushCount();
+		
+		return( count == 0 ? 0 : manager.getFlushTimeNanos()/1000000f/count );
+	}
+	
+	public long
+	getLockWaitCount()
+	{
+		return( manager.getLockWaitCount());
+	}
+	
+	public long
+	getLockWaitTime()
+	{
+		return( manager.getLockWaitTime());
+	}
+	
 	public boolean[] getBytesInCache(TOTorrent torrent, long[] absoluteOffsets, long[] lengths)
 	{
 		return manager.getBytesInCache( torrent, absoluteOffsets, lengths);
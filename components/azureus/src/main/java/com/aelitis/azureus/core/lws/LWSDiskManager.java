@@ -533,6 +533,12 @@ LWSDiskManager
 		return( -1 );
 	}
 	
+	public long
+	getCheckRate()
+	{
+		return( 0 );
+	}
+	
 	public boolean 
 	checkBlockConsistencyForWrite(
 		String				originator,
@@ -214,6 +214,11 @@ public class MetadataDiskManager implements DiskManager {
         return 0;
     }
 
+    @Override
+    public long getCheckRate() {
+        return 0;
+    }
+
     @Override
     public int getCacheMode() {
         return 0;
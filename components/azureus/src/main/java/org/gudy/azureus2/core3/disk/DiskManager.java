@@ -243,6 +243,14 @@ DiskManager
 	
 	public int 
 	getCompleteRecheckStatus();
+	
+		/**
+		 * returns the bytes/sec being read by a recheck, 0 if none in progress
+		 * @return
+		 */
+	
+	public long
+	getCheckRate();
   
 		/**
 		 * method for checking that the block details are sensible
@@ -39,6 +39,17 @@ DiskManagerCheckRequest
 	public boolean
 	isLowPriority();
 	
+		/**
+		 * marks a check made by a whole torrent recheck, these can be read ahead
+		 */
+	
+	public void
+	setRecheck(
+		boolean	recheck );
+	
+	public boolean
+	isRecheck();
+	
 	public void
 	setAdHoc(
 		boolean	adhoc );
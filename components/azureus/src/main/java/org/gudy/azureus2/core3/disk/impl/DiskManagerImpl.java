@@ -1752,6 +1752,11 @@ DiskManagerImpl
       return ( checker.getCompleteRecheckStatus());
     }
 
+    public long getCheckRate()
+    {
+      return ( checker.getCheckRate());
+    }
+
 	public void
 	setPieceCheckingEnabled(
 		boolean		enabled )
@@ -29,18 +29,21 @@ DiskManagerRecheckInstance
 	private long						metric;
 	private int							piece_length;
 	private boolean						low_priority;
+	private String						device;
 	
 	protected
 	DiskManagerRecheckInstance(
 		DiskManagerRecheckScheduler	_scheduler,
 		long						_size,
 		int							_piece_length,
-		boolean						_low_priority )
+		boolean						_low_priority,
+		String						_device )
 	{
 		scheduler		= _scheduler;
 		metric			= (_low_priority?0:0x7000000000000000L) + _size;
 		piece_length	= _piece_length;
 		low_priority	= _low_priority;
+		device			= _device;
 	}
 	
 	protected long
@@ -61,6 +64,16 @@ DiskManagerRecheckInstance
 		return( low_priority );
 	}
 	
+		/**
+		 * @return the file system the data lives on, rechecks on different ones run concurrently
+		 */
+	
+	protected String
+	getDevice()
+	{
+		return( device );
+	}
+	
 	public boolean
 	getPermission()
 	{
@@ -22,6 +22,9 @@
 
 package org.gudy.azureus2.core3.disk.impl;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -30,7 +33,9 @@ import java.util.List;
 import org.gudy.azureus2.core3.config.COConfigurationManager;
 import org.gudy.azureus2.core3.config.ParameterListener;
 import org.gudy.azureus2.core3.util.AEMonitor;
+import org.gudy.azureus2.core3.util.Constants;
 import org.gudy.azureus2.core3.util.RealTimeInfo;
+import org.gudy.azureus2.core3.util.SystemTime;
 
 public class 
 DiskManagerRecheckScheduler 
@@ -57,6 +62,9 @@ DiskManagerRecheckScheduler
  				param_listener );
     }
     
+	private static List<String>	mount_points;
+	private static long		mount_points_time;
+	
 	private List		instances		= new ArrayList();
 	private AEMonitor	instance_mon	= new AEMonitor( "DiskManagerRecheckScheduler" );
 	
@@ -74,7 +82,8 @@ DiskManagerRecheckScheduler
 						this, 
 						helper.getTorrent().getSize(),
 						(int)helper.getTorrent().getPieceLength(),
-						low_priority );
+						low_priority,
+						getDevice( helper.getSaveLocation()));
 			
 			instances.add( res );
 			
@@ -124,7 +133,23 @@ DiskManagerRecheckScheduler
 		try{
 			instance_mon.enter();
 
-			if ( instances.get(0) == instance ){
+				// one recheck per device, those on different disks don't compete for seeks
+			
+			DiskManagerRecheckInstance	first = null;
+			
+			for (int i=0;i<instances.size();i++){
+				
+				DiskManagerRecheckInstance	inst = (DiskManagerRecheckInstance)instances.get(i);
+				
+				if ( inst.getDevice().equals( instance.getDevice())){
+					
+					first = inst;
+					
+					break;
+				}
+			}
+			
+			if ( first == instance ){
 					    
 				boolean	low_priority = instance.isLowPriority();
 				
@@ -142,7 +167,7 @@ DiskManagerRecheckScheduler
 		            	
 		            }else if ( !low_priority ){
 		            	
-		            	delay	= 1;	// high priority recheck, just a smidge of a delay
+		            	delay	= 0;	// high priority recheck, the pieces outstanding bound it
 		            	
 		            }else{
 		            	
@@ -177,6 +202,120 @@ DiskManagerRecheckScheduler
 		return( result );
 	}
 	
+		/**
+		 * Best effort, the mount point on unix, the drive on windows. Paths we can't tell
+		 * apart end up on the same device, which is how things were before
+		 */
+	
+	protected static String
+	getDevice(
+		File	location )
+	{
+		if ( location == null ){
+			
+			return( "" );
+		}
+		
+		String	path = location.getAbsolutePath();
+		
+		if ( Constants.isWindows ){
+			
+			if ( path.startsWith( "\\\\" )){
+				
+					// \\server\share
+				
+				int	pos = path.indexOf( '\\', 2 );
+				
+				if ( pos != -1 ){
+					
+					pos = path.indexOf( '\\', pos + 1 );
+				}
+				
+				return(( pos==-1?path:path.substring( 0, pos )).toLowerCase());
+			}
+			
+			return( path.length() >= 2 && path.charAt(1) == ':'?path.substring( 0, 2 ).toLowerCase():"" );
+		}
+		
+		if ( Constants.isOSX ){
+			
+			if ( path.startsWith( "/Volumes/" )){
+				
+				int	pos = path.indexOf( '/', 9 );
+				
+				return( pos==-1?path:path.substring( 0, pos ));
+			}
+			
+			return( "/" );
+		}
+		
+		String	device = "/";
+		
+		List<String>	mounts = getMountPoints();
+		
+		for (int i=0;i<mounts.size();i++){
+			
+			String	mount = mounts.get(i);
+			
+			if ( mount.length() > device.length() && ( path.equals( mount ) || path.startsWith( mount + "/" ))){
+				
+				device = mount;
+			}
+		}
+		
+		return( device );
+	}
+	
+	protected static synchronized List<String>
+	getMountPoints()
+	{
+		long	now = SystemTime.getMonotonousTime();
+		
+		if ( mount_points == null || now - mount_points_time > 60*1000 ){
+			
+			List<String>	mounts = new ArrayList<String>();
+			
+			File	file = new File( "/proc/mounts" );
+			
+			if ( file.canRead()){
+				
+				try{
+					BufferedReader	reader = new BufferedReader( new FileReader( file ));
+					
+					try{
+						while( true ){
+							
+							String	line = reader.readLine();
+							
+							if ( line == null ){
+								
+								break;
+							}
+							
+							String[]	bits = line.split( " " );
+							
+							if ( bits.length > 1 ){
+								
+									// spaces etc are octal escaped
+								
+								mounts.add( bits[1].replace( "\\040", " " ));
+							}
+						}
+					}finally{
+						
+						reader.close();
+					}
+				}catch( Throwable e ){
+				}
+			}
+			
+			mount_points		= mounts;
+			mount_points_time	= now;
+		}
+		
+		return( mount_points );
+	}
+	
 	protected void
 	unregister(
 		DiskManagerRecheckInstance	instance )
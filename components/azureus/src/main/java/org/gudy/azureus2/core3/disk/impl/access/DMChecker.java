@@ -59,6 +59,20 @@ DMChecker
 	public int 
 	getCompleteRecheckStatus();
 	
+		/**
+		 * @return the number of check requests a recheck should keep outstanding
+		 */
+	
+	public int
+	getRecheckConcurrency();
+	
+		/**
+		 * @return bytes/sec being read by a recheck, 0 if none
+		 */
+	
+	public long
+	getCheckRate();
+	
 	public void
 	setCheckingEnabled(
 		boolean		enabled );
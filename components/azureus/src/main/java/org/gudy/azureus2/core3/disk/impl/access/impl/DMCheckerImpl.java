@@ -51,6 +51,7 @@ DMCheckerImpl
     
 	private static boolean	flush_pieces;
 	private static boolean	checking_read_priority;
+	private static boolean	friendly_hashing;
 	
 	private static AEMonitor		class_mon	= new AEMonitor( "DMChecker:class" );
 	private static List				async_check_queue		= new ArrayList();
@@ -108,13 +109,15 @@ DMCheckerImpl
     	    {
     	   	    flush_pieces				= COConfigurationManager.getBooleanParameter( "diskmanager.perf.cache.flushpieces" );
        	   	  	checking_read_priority		= COConfigurationManager.getBooleanParameter( "diskmanager.perf.checking.read.priority" );
+       	   	  	friendly_hashing			= COConfigurationManager.getBooleanParameter( "diskmanager.friendly.hashchecking" );
      	    }
     	 };
 
  		COConfigurationManager.addAndFireParameterListeners( 
  			new String[]{
  				"diskmanager.perf.cache.flushpieces",
- 				"diskmanager.perf.checking.read.priority" },
+ 				"diskmanager.perf.checking.read.priority",
+ 				"diskmanager.friendly.hashchecking" },
  				param_listener );
     }
    
@@ -135,6 +138,8 @@ DMCheckerImpl
 	
 	private boolean				checking_enabled		= true;
 	
+	private DMCheckerRecheckReader	recheck_reader;
+	
 	protected AEMonitor	this_mon	= new AEMonitor( "DMChecker" );
 		
 	public
@@ -265,6 +270,20 @@ DMCheckerImpl
 	   }
 	}
 	  
+	public int
+	getRecheckConcurrency()
+	{
+		return( DMCheckerRecheckReader.getQueueSize((int)disk_manager.getTorrent().getPieceLength()));
+	}
+	
+	public long
+	getCheckRate()
+	{
+		DMCheckerRecheckReader	reader = recheck_reader;
+		
+		return( reader==null?0:reader.getRate());
+	}
+	
 	public void
 	setCheckingEnabled(
 		boolean		enabled )
@@ -307,7 +326,7 @@ DMCheckerImpl
 		  				
 		  				int	checks_submitted	= 0;
 		  				           
-			            final AESemaphore	 run_sem = new AESemaphore( "DMChecker::completeRecheck:runsem", 2 );
+			            final AESemaphore	 run_sem = new AESemaphore( "DMChecker::completeRecheck:runsem", getRecheckConcurrency());
 			            
 			            int nbPieces = disk_manager.getNbPieces();
 			            
@@ -339,6 +358,8 @@ DMCheckerImpl
 			  					
 			  					final DiskManagerCheckRequest this_request = createCheckRequest( i, request.getUserData());
 			  					
+			  					this_request.setRecheck( true );
+			  					
 			  					enqueueCheckRequest( 
 			  						this_request,
 			  	       				new DiskManagerCheckRequestListener()
@@ -621,6 +642,8 @@ DMCheckerImpl
 			
 			final DMPieceList pieceList = disk_manager.getPieceList(pieceNumber);
 
+			boolean	all_linear;
+			
 			try{
 					// there are other comments in the code about the existence of 0 length piece lists
 					// just in case these still occur for who knows what reason ensure that a 0 length list
@@ -629,6 +652,8 @@ DMCheckerImpl
 				
 				boolean	all_compact = pieceList.size() > 0;
 				
+				all_linear = true;
+				
 				for (int i = 0; i < pieceList.size(); i++) {
 					
 					DMPieceMapEntry piece_entry = pieceList.get(i);
@@ -644,9 +669,14 @@ DMCheckerImpl
 						return;
 					}
 					
-					if ( all_compact ){
+					int st = cache_file.getStorageType();
+					
+					if ( st != CacheFile.CT_LINEAR ){
 						
-						int st = cache_file.getStorageType();
+						all_linear = false;
+					}
+					
+					if ( all_compact ){
 						
 						if (( st != CacheFile.CT_COMPACT && st != CacheFile.CT_PIECE_REORDER_COMPACT ) || file_info.getNbPieces() <= 2 ){
 										
@@ -695,6 +725,16 @@ DMCheckerImpl
 		   		this_mon.exit();
 		   	}
 		   	
+		   		// rechecks of linear files are read sequentially in large regions, the recheck
+		   		// keeps enough pieces queued for this. Friendly hashing wants the throttled path
+		   	
+		   	if ( request.isRecheck() && all_linear && !friendly_hashing ){
+		   		
+		   		getRecheckReader().queue( request, pieceList, required_hash, this_piece_length, listener );
+		   		
+		   		return;
+		   	}
+		   	
 		   	read_request.setFlush( read_flush );
 		   	
 		   	read_request.setUseCache( !request.isAdHoc());
@@ -708,26 +748,16 @@ DMCheckerImpl
 						DiskManagerReadRequest 	read_request, 
 						DirectByteBuffer 		buffer )
 					{
-						complete();
+						readComplete();
 						
-					   	try{
-					   		this_mon.enter();
-					   	
-							if ( stopped ){
-								
-								buffer.returnToPool();
+						if ( !checkStarts()){
+							
+							buffer.returnToPool();
 								
-								listener.checkCancelled( request );
+							listener.checkCancelled( request );
 								
-								return;
-							}
-							
-							async_checks++;
-					   		
-					   	}finally{
-					   		
-					   		this_mon.exit();
-					   	}
+							return;
+						}
 						
 						try{
 					    	final	DirectByteBuffer	f_buffer	= buffer;
@@ -812,19 +842,7 @@ DMCheckerImpl
 						    						
 					    						}finally{
 					    							
-					    							try{
-					    								this_mon.enter();
-					    							
-					    								async_checks--;
-					    								
-					    								if ( stopped ){
-					    									  
-					    									async_check_sem.release();
-					    								}
-					    							}finally{
-					    								
-					    								this_mon.exit();
-					    							}
+					    							checkEnds();
 					    						}
 					    					}
 					    				}
@@ -848,7 +866,7 @@ DMCheckerImpl
 						DiskManagerReadRequest 	read_request, 
 						Throwable		 		cause )
 					{
-						complete();
+						readComplete();
 						
 						listener.checkFailed( request, cause );
 					}
@@ -863,24 +881,6 @@ DMCheckerImpl
 					requestExecuted(long bytes) 
 					{							
 					}
-					
-					protected void
-					complete()
-					{
-						try{
-							this_mon.enter();
-
-							async_reads--;
-
-							if ( stopped ){
-
-								async_read_sem.release();
-							}
-						}finally{
-
-							this_mon.exit();
-						}
-					}
 				});
 				
 		}catch( Throwable e ){
@@ -892,4 +892,90 @@ DMCheckerImpl
 			listener.checkFailed( request, e );
 		}
 	}	 
+	
+	protected DMCheckerRecheckReader
+	getRecheckReader()
+	{
+		try{
+			this_mon.enter();
+			
+			if ( recheck_reader == null ){
+				
+				recheck_reader = new DMCheckerRecheckReader( this );
+			}
+			
+			return( recheck_reader );
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
+	
+	protected boolean
+	isStopped()
+	{
+		return( stopped );
+	}
+	
+	protected void
+	readComplete()
+	{
+		try{
+			this_mon.enter();
+
+			async_reads--;
+
+			if ( stopped ){
+
+				async_read_sem.release();
+			}
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+	
+		/**
+		 * @return false if stopped, the check mustn't go ahead
+		 */
+	
+	protected boolean
+	checkStarts()
+	{
+	   	try{
+	   		this_mon.enter();
+	   	
+			if ( stopped ){
+				
+				return( false );
+			}
+			
+			async_checks++;
+			
+			return( true );
+	   		
+	   	}finally{
+	   		
+	   		this_mon.exit();
+	   	}
+	}
+	
+	protected void
+	checkEnds()
+	{
+		try{
+			this_mon.enter();
+		
+			async_checks--;
+			
+			if ( stopped ){
+				  
+				async_check_sem.release();
+			}
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
 }
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gudy.azureus2.core3.disk.impl.access.impl;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.gudy.azureus2.core3.disk.*;
+import org.gudy.azureus2.core3.disk.impl.piecemapper.DMPieceList;
+import org.gudy.azureus2.core3.disk.impl.piecemapper.DMPieceMapEntry;
+import org.gudy.azureus2.core3.util.*;
+
+import com.aelitis.azureus.core.diskmanager.cache.CacheFile;
+import com.aelitis.azureus.core.diskmanager.cache.CacheFileManagerException;
+
+/**
+ * Reads the pieces of a recheck in large sequential regions, consecutive pieces
+ * being coalesced into one read per file, and hashes them on all cores while the
+ * next region is read.
+ *
+ * The pieces queued ahead by the recheck are the read-ahead, the amount of them
+ * is given by getQueueSize(). Only pieces whose files are all stored linearly
+ * come through here, the others go through the disk manager one by one.
+ */
+
+public class
+DMCheckerRecheckReader
+{
+	protected static final int	REGION_SIZE		= 8*1024*1024;
+	protected static final int	QUEUE_SIZE		= 4*REGION_SIZE;
+
+	protected static final int	IDLE_TIMEOUT	= 10*1000;
+
+	private static ThreadPool	hash_pool;
+
+	protected static synchronized ThreadPool
+	getHashPool()
+	{
+		if ( hash_pool == null ){
+
+			hash_pool = new ThreadPool( "DMChecker:recheckHasher", Math.max( 1, Runtime.getRuntime().availableProcessors()), true );
+		}
+
+		return( hash_pool );
+	}
+
+	private DMCheckerImpl	checker;
+
+	private LinkedList<Object[]>	pending		= new LinkedList<Object[]>();
+	private AEMonitor		pending_mon	= new AEMonitor( "DMCheckerRecheckReader" );
+	private AESemaphore		pending_sem	= new AESemaphore( "DMCheckerRecheckReader" );
+
+	private boolean			reader_active;
+
+	private Average			read_rate	= Average.getInstance( 1000, 5 );
+	private volatile long	last_read;
+
+	protected
+	DMCheckerRecheckReader(
+		DMCheckerImpl	_checker )
+	{
+		checker	= _checker;
+	}
+
+		/**
+		 * @return the number of pieces a recheck should keep queued
+		 */
+
+	protected static int
+	getQueueSize(
+		int		piece_length )
+	{
+		int	num = QUEUE_SIZE / Math.max( 1, piece_length );
+
+		num = Math.min( num, 512 );
+
+		return( Math.max( num, 2 ));
+	}
+
+		/**
+		 * @return bytes/sec read recently, 0 if idle
+		 */
+
+	protected long
+	getRate()
+	{
+		if ( SystemTime.getMonotonousTime() - last_read > 2000 ){
+
+			return( 0 );
+		}
+
+		return( read_rate.getAverage());
+	}
+
+	protected void
+	queue(
+		DiskManagerCheckRequest			request,
+		DMPieceList						piece_list,
+		byte[]							required_hash,
+		int								piece_length,
+		DiskManagerCheckRequestListener	listener )
+	{
+		boolean	start_reader = false;
+
+		try{
+			pending_mon.enter();
+
+			pending.add( new Object[]{ request, piece_list, required_hash, new Integer( piece_length ), listener });
+
+			if ( !reader_active ){
+
+				reader_active	= true;
+
+				start_reader	= true;
+			}
+		}finally{
+
+			pending_mon.exit();
+		}
+
+		pending_sem.release();
+
+		if ( start_reader ){
+
+			new AEThread2( "DMChecker:recheckReader", true )
+			{
+				public void
+				run()
+				{
+					readLoop();
+				}
+			}.start();
+		}
+	}
+
+	protected void
+	readLoop()
+	{
+		while( true ){
+
+			if ( !pending_sem.reserve( IDLE_TIMEOUT )){
+
+				try{
+					pending_mon.enter();
+
+					if ( pending.isEmpty()){
+
+						reader_active = false;
+
+						return;
+					}
+				}finally{
+
+					pending_mon.exit();
+				}
+
+				continue;
+			}
+
+			List<Object[]>	region = new ArrayList<Object[]>();
+
+			try{
+				pending_mon.enter();
+
+				Object[]	first = pending.removeFirst();
+
+				region.add( first );
+
+				int	last_piece	= ((DiskManagerCheckRequest)first[0]).getPieceNumber();
+				int	size		= ((Integer)first[3]).intValue();
+
+					// take the consecutive pieces already queued, their data follows on disk
+
+				while( !pending.isEmpty()){
+
+					Object[]	next = pending.getFirst();
+
+					int	next_piece	= ((DiskManagerCheckRequest)next[0]).getPieceNumber();
+					int	next_length	= ((Integer)next[3]).intValue();
+
+					if ( next_piece != last_piece + 1 || size + next_length > REGION_SIZE ){
+
+						break;
+					}
+
+					pending.removeFirst();
+
+					region.add( next );
+
+					last_piece	= next_piece;
+					size		+= next_length;
+				}
+			}finally{
+
+				pending_mon.exit();
+			}
+
+			for (int i=1;i<region.size();i++){
+
+				pending_sem.reserve();
+			}
+
+			readRegion( region );
+		}
+	}
+
+	protected void
+	readRegion(
+		List<Object[]>	region )
+	{
+		if ( checker.isStopped()){
+
+			for (int i=0;i<region.size();i++){
+
+				Object[]	entry = region.get(i);
+
+				checker.readComplete();
+
+				((DiskManagerCheckRequestListener)entry[4]).checkCancelled((DiskManagerCheckRequest)entry[0]);
+			}
+
+			return;
+		}
+
+		int	size = 0;
+
+		for (int i=0;i<region.size();i++){
+
+			size += ((Integer)region.get(i)[3]).intValue();
+		}
+
+		final DirectByteBuffer	buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_DM_CHECK, size );
+
+		try{
+			CacheFile	read_file	= null;
+			long		read_offset	= 0;
+			int			read_start	= 0;
+			int			position	= 0;
+
+			for (int i=0;i<region.size();i++){
+
+				DMPieceList	piece_list = (DMPieceList)region.get(i)[1];
+
+				for (int j=0;j<piece_list.size();j++){
+
+					DMPieceMapEntry	piece_entry = piece_list.get(j);
+
+					CacheFile	file = piece_entry.getFile().getCacheFile();
+
+					if ( file != read_file || piece_entry.getOffset() != read_offset + ( position - read_start )){
+
+						read( read_file, read_offset, buffer, read_start, position );
+
+						read_file	= file;
+						read_offset	= piece_entry.getOffset();
+						read_start	= position;
+					}
+
+					position += piece_entry.getLength();
+				}
+			}
+
+			read( read_file, read_offset, buffer, read_start, position );
+
+			read_rate.addValue( size );
+
+			last_read = SystemTime.getMonotonousTime();
+
+		}catch( Throwable e ){
+
+			buffer.returnToPool();
+
+			checker.disk_manager.setFailed( "Disk read error - " + Debug.getNestedExceptionMessage(e));
+
+			Debug.printStackTrace( e );
+
+			for (int i=0;i<region.size();i++){
+
+				Object[]	entry = region.get(i);
+
+				checker.readComplete();
+
+				((DiskManagerCheckRequestListener)entry[4]).checkFailed((DiskManagerCheckRequest)entry[0], e );
+			}
+
+			return;
+		}
+
+		final int[]	remaining = { region.size() };
+
+		ByteBuffer	data = buffer.getBuffer( DirectByteBuffer.SS_DR );
+
+		int	piece_start = 0;
+
+		for (int i=0;i<region.size();i++){
+
+			Object[]	entry = region.get(i);
+
+			final DiskManagerCheckRequest			request			= (DiskManagerCheckRequest)entry[0];
+			final byte[]							required_hash	= (byte[])entry[2];
+			final int								piece_length	= ((Integer)entry[3]).intValue();
+			final DiskManagerCheckRequestListener	listener		= (DiskManagerCheckRequestListener)entry[4];
+
+			ByteBuffer	piece_data = data.duplicate();
+
+			piece_data.limit( piece_start + piece_length );
+			piece_data.position( piece_start );
+
+			final ByteBuffer	f_piece_data = piece_data.slice();
+
+			piece_start += piece_length;
+
+			checker.readComplete();
+
+			if ( !checker.checkStarts()){
+
+				release( buffer, remaining );
+
+				listener.checkCancelled( request );
+
+				continue;
+			}
+
+			getHashPool().run(
+				new AERunnable()
+				{
+					public void
+					runSupport()
+					{
+						try{
+							byte[]	actual_hash = new SHA1Hasher().calculateHash( f_piece_data );
+
+							request.setHash( actual_hash );
+
+							release( buffer, remaining );
+
+							listener.checkCompleted( request, Arrays.equals( actual_hash, required_hash ));
+
+						}catch( Throwable e ){
+
+							release( buffer, remaining );
+
+							listener.checkFailed( request, e );
+
+						}finally{
+
+							checker.checkEnds();
+						}
+					}
+				});
+		}
+	}
+
+	protected void
+	read(
+		CacheFile			file,
+		long				offset,
+		DirectByteBuffer	buffer,
+		int					start,
+		int					end )
+
+		throws CacheFileManagerException
+	{
+		if ( file == null || end == start ){
+
+			return;
+		}
+
+		buffer.limit( DirectByteBuffer.SS_DR, end );
+		buffer.position( DirectByteBuffer.SS_DR, start );
+
+		file.read( buffer, offset, CacheFile.CP_NONE );
+
+			// short file, as with piece reads the check just fails. don't leave pooled data about
+			// as it could be a previous read of this very piece
+
+		while( buffer.position( DirectByteBuffer.SS_DR ) < end ){
+
+			buffer.put( DirectByteBuffer.SS_DR, (byte)0 );
+		}
+	}
+
+	protected void
+	release(
+		DirectByteBuffer	buffer,
+		int[]				remaining )
+	{
+		boolean	last;
+
+		synchronized( remaining ){
+
+			last = --remaining[0] == 0;
+		}
+
+		if ( last ){
+
+			buffer.returnToPool();
+		}
+	}
+}
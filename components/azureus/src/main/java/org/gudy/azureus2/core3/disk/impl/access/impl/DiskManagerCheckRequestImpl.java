@@ -33,6 +33,7 @@ DiskManagerCheckRequestImpl
 	private Object	user_data;
 	private boolean	low_priority;
 	private boolean	ad_hoc		= true;
+	private boolean	recheck;
 	
 	private byte[]	hash;
 	
@@ -48,7 +49,7 @@ DiskManagerCheckRequestImpl
 	protected String
 	getName()
 	{
-		return( "Check: " + piece_number + ",lp=" + low_priority + ",ah=" + ad_hoc );
+		return( "Check: " + piece_number + ",lp=" + low_priority + ",ah=" + ad_hoc + ",rc=" + recheck );
 	}
 	
 	public int 
@@ -76,6 +77,19 @@ DiskManagerCheckRequestImpl
 		return( low_priority );
 	}
 	
+	public void
+	setRecheck(
+		boolean	_recheck )
+	{
+		recheck	= _recheck;
+	}
+	
+	public boolean
+	isRecheck()
+	{
+		return( recheck );
+	}
+	
 	public void
 	setAdHoc(
 		boolean	_ad_hoc )
@@ -151,9 +151,11 @@ RDResumeHandler
 				
 		DiskManagerRecheckInstance	recheck_inst = disk_manager.getRecheckScheduler().register( disk_manager, false );
 
-        final AESemaphore	 run_sem = new AESemaphore( "RDResumeHandler::checkAllPieces:runsem", 2 );
+        final AESemaphore	 run_sem = new AESemaphore( "RDResumeHandler::checkAllPieces:runsem", checker.getRecheckConcurrency());
 
-        final List<DiskManagerCheckRequest>	failed_pieces = new ArrayList<DiskManagerCheckRequest>();
+        	// checks complete on the hashing threads
+        
+        final List<DiskManagerCheckRequest>	failed_pieces = Collections.synchronizedList( new ArrayList<DiskManagerCheckRequest>());
         
 		try{
 			boolean	resume_data_complete = false;
@@ -408,6 +410,8 @@ RDResumeHandler
 										
 										request.setLowPriority( true );
 										
+										request.setRecheck( true );
+										
 										checker.enqueueCheckRequest(
 											request,
 											new DiskManagerCheckRequestListener()
@@ -556,6 +560,8 @@ RDResumeHandler
 							DiskManagerCheckRequest	request = disk_manager.createCheckRequest( i, null );
 							
 							request.setLowPriority( true );
+							
+							request.setRecheck( true );
 	
 							checker.enqueueCheckRequest(
 									request, 
@@ -206,6 +206,8 @@ public class GlobalManagerImpl
    boolean loadingComplete = false;
    /** Monitor to block adding torrents while loading existing torrent list */
    AESemaphore loadingSem = new AESemaphore("Loading Torrents");
+   /** Time taken by each phase of loading the existing torrents, for the log and evidence */
+   volatile String load_timings;
 
    AEMonitor addingDM_monitor = new AEMonitor("addingDM");
    /** List of torrents being added, but not added to the GM list yet */ 
@@ -1690,8 +1692,12 @@ public class GlobalManagerImpl
 
 	  
 	  try{
+		  long	load_start = SystemTime.getMonotonousTime();
+		  
 		  DownloadManagerStateFactory.loadGlobalStateCache();
 		  
+		  long	state_cache_done = SystemTime.getMonotonousTime();
+		  
 		  int triggerOnCount = 2;
 		  ArrayList downloadsAdded = new ArrayList();
 		  long lastListenerUpdate = 0;
@@ -1702,6 +1708,8 @@ public class GlobalManagerImpl
 			  
 			  Map map = FileUtil.readResilientConfigFile("downloads.config");
 	
+			  long	config_done = SystemTime.getMonotonousTime();
+			  
 			  boolean debug = Boolean.getBoolean("debug");
 	
 			  Iterator iter = null;
@@ -1846,6 +1854,8 @@ public class GlobalManagerImpl
 				  }
 			  }
 	
+			  long	downloads_done = SystemTime.getMonotonousTime();
+			  
 			  // This is set to true by default, but once the downloads have been loaded, we have no reason to ever
 			  // to do this check again - we only want to do it once to upgrade the state of existing downloads
 			  // created before this code was around.
@@ -1881,8 +1891,15 @@ public class GlobalManagerImpl
 			  // Someone could have mucked with the config file and set weird positions,
 			  // so fix them up.
 			  fixUpDownloadManagerPositions();
+			  
+			  load_timings = 
+				  "state cache " + (state_cache_done - load_start) +
+				  "ms, config " + (config_done - state_cache_done) +
+				  "ms, downloads " + (downloads_done - config_done) +
+				  "ms, total " + (SystemTime.getMonotonousTime() - load_start) + "ms";
+			  
 			  Logger.log(new LogEvent(LOGID, "Loaded " + managers_cow.size()
-					  + " torrents"));
+					  + " torrents (" + load_timings + ")"));
 	
 		  }catch( Throwable e ){
 			  // there's been problems with corrupted download files stopping AZ from starting
@@ -2942,6 +2959,11 @@ public class GlobalManagerImpl
 	    	managers_mon.enter();
 	    	
 			writer.println( "  managers: " + managers_cow.size());
+			
+			if ( load_timings != null ){
+				
+				writer.println( "  load: " + load_timings );
+			}
 		
 			for (int i=0;i<managers_cow.size();i++){
 				
@@ -0,0 +1,615 @@
+/*
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gudy.azureus2.core3.ipfilter.impl;
+
+import java.io.*;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import org.gudy.azureus2.core3.ipfilter.IpRange;
+import org.gudy.azureus2.core3.tracker.protocol.PRHelpers;
+import org.gudy.azureus2.core3.util.*;
+
+/**
+ * The ranges of an auto-loaded blocklist, held in arrays rather than as IpRange
+ * objects as lists run to hundreds of thousands of entries. The entries are sorted
+ * by start and also merged into disjoint ranges for lookups. IpRange objects are
+ * only created for the entries that match.
+ *
+ * Addresses are held with the sign bit flipped so that int comparison orders them
+ * as unsigned.
+ *
+ * The list is saved to a binary cache, mapped when loaded, so a blocklist is only
+ * parsed when its file changes.
+ */
+
+public class
+IPAddressBlocklist
+{
+	private static final int	CACHE_MAGIC		= 0x49504246;
+	private static final int	CACHE_VERSION	= 1;
+
+	private static final int	HEADER_SIZE		= 48;
+
+	private final int[]		starts;
+	private final int[]		ends;
+	private final int[]		descs;
+
+	private final byte[]	desc_data;
+	private final int[]		desc_offsets;
+
+	private final int[]		merged_starts;
+	private final int[]		merged_ends;
+
+	protected
+	IPAddressBlocklist(
+		int[]		_starts,
+		int[]		_ends,
+		int[]		_descs,
+		byte[]		_desc_data,
+		int[]		_desc_offsets,
+		int[]		_merged_starts,
+		int[]		_merged_ends )
+	{
+		starts			= _starts;
+		ends			= _ends;
+		descs			= _descs;
+		desc_data		= _desc_data;
+		desc_offsets	= _desc_offsets;
+		merged_starts	= _merged_starts;
+		merged_ends		= _merged_ends;
+	}
+
+	protected static int
+	toSortable(
+		int		address )
+	{
+		return( address ^ 0x80000000 );
+	}
+
+	protected static int
+	fromSortable(
+		int		value )
+	{
+		return( value ^ 0x80000000 );
+	}
+
+		/**
+		 * @return the index of the last value <= key in the sorted values, -1 if none
+		 */
+
+	protected static int
+	findLastNotAbove(
+		int[]		values,
+		int			num,
+		int			key )
+	{
+		int	bottom	= 0;
+		int	top		= num - 1;
+
+		while( bottom <= top ){
+
+			int	mid = ( bottom + top ) >>> 1;
+
+			if ( values[mid] <= key ){
+
+				bottom	= mid + 1;
+
+			}else{
+
+				top		= mid - 1;
+			}
+		}
+
+		return( top );
+	}
+
+	public int
+	size()
+	{
+		return( starts.length );
+	}
+
+	protected int[]
+	getMergedStarts()
+	{
+		return( merged_starts );
+	}
+
+	protected int[]
+	getMergedEnds()
+	{
+		return( merged_ends );
+	}
+
+		/**
+		 * @param address		sortable address
+		 * @param merged_start	start of the merged range the address is in, entries before it can't match
+		 * @return the index of an entry containing the address, -1 if none
+		 */
+
+	protected int
+	find(
+		int		address,
+		int		merged_start )
+	{
+		for (int i=findLastNotAbove( starts, starts.length, address );i>=0 && starts[i]>=merged_start;i--){
+
+			if ( ends[i] >= address ){
+
+				return( i );
+			}
+		}
+
+		return( -1 );
+	}
+
+	protected IpRange
+	getRange(
+		int		index )
+	{
+		int	desc = descs[index];
+
+		byte[]	bytes = new byte[desc_offsets[desc+1] - desc_offsets[desc]];
+
+		System.arraycopy( desc_data, desc_offsets[desc], bytes, 0, bytes.length );
+
+		return( new IpRangeImpl( fromSortable( starts[index] ), fromSortable( ends[index] ), bytes ));
+	}
+
+		/**
+		 * @return the list cached for the source file, null if there isn't an up to date one
+		 */
+
+	public static IPAddressBlocklist
+	load(
+		File		cache_file,
+		File		source_file )
+	{
+		if ( !cache_file.exists()){
+
+			return( null );
+		}
+
+		try{
+			RandomAccessFile	raf = new RandomAccessFile( cache_file, "r" );
+
+			try{
+				FileChannel	channel = raf.getChannel();
+
+				long	file_length = channel.size();
+
+				if ( file_length < HEADER_SIZE || file_length > Integer.MAX_VALUE ){
+
+					return( null );
+				}
+
+				ByteBuffer	buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, file_length );
+
+				if ( 	buffer.getInt() != CACHE_MAGIC ||
+						buffer.getInt() != CACHE_VERSION ){
+
+					return( null );
+				}
+
+				int	num				= buffer.getInt();
+				int	merged_num		= buffer.getInt();
+				int	desc_num		= buffer.getInt();
+				int	desc_length		= buffer.getInt();
+
+				long	source_length	= buffer.getLong();
+				long	source_modified	= buffer.getLong();
+				int		source_hash		= buffer.getInt();
+
+				buffer.getInt();
+
+				if ( 	source_length != source_file.length() ||
+						source_modified != source_file.lastModified() ||
+						source_hash != source_file.getAbsolutePath().hashCode()){
+
+					return( null );
+				}
+
+				if ( 	num < 0 || merged_num < 0 || desc_num < 0 || desc_length < 0 ||
+						HEADER_SIZE + 4L*( 3L*num + 2L*merged_num + desc_num + 1 ) + desc_length != file_length ){
+
+					return( null );
+				}
+
+				int[]	starts			= new int[num];
+				int[]	ends			= new int[num];
+				int[]	descs			= new int[num];
+				int[]	merged_starts	= new int[merged_num];
+				int[]	merged_ends		= new int[merged_num];
+				int[]	desc_offsets	= new int[desc_num+1];
+
+				byte[]	desc_data		= new byte[desc_length];
+
+				getInts( buffer, starts );
+				getInts( buffer, ends );
+				getInts( buffer, descs );
+				getInts( buffer, merged_starts );
+				getInts( buffer, merged_ends );
+				getInts( buffer, desc_offsets );
+
+				buffer.get( desc_data );
+
+				return( new IPAddressBlocklist( starts, ends, descs, desc_data, desc_offsets, merged_starts, merged_ends ));
+
+			}finally{
+
+				raf.close();
+			}
+		}catch( Throwable e ){
+
+			Debug.out( "Failed to read IP filter cache", e );
+
+			return( null );
+		}
+	}
+
+	protected static void
+	getInts(
+		ByteBuffer	buffer,
+		int[]		values )
+	{
+		buffer.asIntBuffer().get( values );
+
+		buffer.position( buffer.position() + 4*values.length );
+	}
+
+	public void
+	save(
+		File		cache_file,
+		File		source_file )
+	{
+		File	temp = new File( cache_file.getParentFile(), cache_file.getName() + ".tmp" );
+
+		try{
+			DataOutputStream	dos = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ), 65536 ));
+
+			try{
+				dos.writeInt( CACHE_MAGIC );
+				dos.writeInt( CACHE_VERSION );
+				dos.writeInt( starts.length );
+				dos.writeInt( merged_starts.length );
+				dos.writeInt( desc_offsets.length - 1 );
+				dos.writeInt( desc_data.length );
+				dos.writeLong( source_file.length());
+				dos.writeLong( source_file.lastModified());
+				dos.writeInt( source_file.getAbsolutePath().hashCode());
+				dos.writeInt( 0 );
+
+				putInts( dos, starts );
+				putInts( dos, ends );
+				putInts( dos, descs );
+				putInts( dos, merged_starts );
+				putInts( dos, merged_ends );
+				putInts( dos, desc_offsets );
+
+				dos.write( desc_data );
+
+			}finally{
+
+				dos.close();
+			}
+
+			cache_file.delete();
+
+			if ( !temp.renameTo( cache_file )){
+
+				temp.delete();
+			}
+		}catch( Throwable e ){
+
+			temp.delete();
+
+			Debug.out( "Failed to write IP filter cache", e );
+		}
+	}
+
+	protected static void
+	putInts(
+		DataOutputStream	dos,
+		int[]				values )
+
+		throws IOException
+	{
+		for (int i=0;i<values.length;i++){
+
+			dos.writeInt( values[i] );
+		}
+	}
+
+	public static class
+	Builder
+	{
+		private int[]	starts	= new int[1024];
+		private int[]	ends	= new int[1024];
+		private int[]	descs	= new int[1024];
+		private int		num;
+
+		private Map<String,Integer>		desc_map	= new HashMap<String,Integer>();
+		private ByteArrayOutputStream	desc_data	= new ByteArrayOutputStream();
+		private int[]					desc_offsets = new int[1024];
+		private int						desc_num;
+
+		public int
+		size()
+		{
+			return( num );
+		}
+
+			/**
+			 * @return false if either address is invalid
+			 */
+
+		public boolean
+		add(
+			String		start,
+			String		end,
+			String		description )
+		{
+			long	start_address	= parseAddress( start );
+			long	end_address		= parseAddress( end );
+
+			if ( start_address < 0 || end_address < 0 ){
+
+				return( false );
+			}
+
+			add((int)start_address, (int)end_address, description );
+
+			return( true );
+		}
+
+		public void
+		add(
+			int			start,
+			int			end,
+			String		description )
+		{
+			int	s = toSortable( start );
+			int	e = toSortable( end );
+
+				// same as IpRangeImpl.isValid
+
+			if ( e < s ){
+
+				return;
+			}
+
+			if ( num == starts.length ){
+
+				starts	= grow( starts );
+				ends	= grow( ends );
+				descs	= grow( descs );
+			}
+
+			starts[num]	= s;
+			ends[num]	= e;
+			descs[num]	= getDescription( description );
+
+			num++;
+		}
+
+		protected int
+		getDescription(
+			String		description )
+		{
+			Integer	index = desc_map.get( description );
+
+			if ( index == null ){
+
+				try{
+					desc_data.write( description.getBytes( "UTF-8" ));
+
+				}catch( IOException e ){
+				}
+
+				if ( desc_num + 1 == desc_offsets.length ){
+
+					desc_offsets = grow( desc_offsets );
+				}
+
+				index = new Integer( desc_num++ );
+
+				desc_offsets[desc_num] = desc_data.size();
+
+				desc_map.put( description, index );
+			}
+
+			return( index.intValue());
+		}
+
+		public IPAddressBlocklist
+		build()
+		{
+				// sort by start then index, the start in the top half is signed as the sortable
+				// form is, so long ordering is the same
+
+			long[]	keys = new long[num];
+
+			for (int i=0;i<num;i++){
+
+				keys[i] = ((long)starts[i] << 32 ) | i;
+			}
+
+			Arrays.sort( keys );
+
+			int[]	s_starts	= new int[num];
+			int[]	s_ends		= new int[num];
+			int[]	s_descs		= new int[num];
+
+			for (int i=0;i<num;i++){
+
+				int	index = (int)keys[i];
+
+				s_starts[i]	= starts[index];
+				s_ends[i]	= ends[index];
+				s_descs[i]	= descs[index];
+			}
+
+			int[][]	merged = merge( s_starts, s_ends, num, null, null, 0 );
+
+			int[]	offsets = new int[desc_num+1];
+
+			System.arraycopy( desc_offsets, 0, offsets, 0, desc_num + 1 );
+
+			return( new IPAddressBlocklist( s_starts, s_ends, s_descs, desc_data.toByteArray(), offsets, merged[0], merged[1] ));
+		}
+	}
+
+		/**
+		 * merges two lists of ranges, each sorted by start, into disjoint ranges
+		 */
+
+	protected static int[][]
+	merge(
+		int[]	starts1,
+		int[]	ends1,
+		int		num1,
+		int[]	starts2,
+		int[]	ends2,
+		int		num2 )
+	{
+		int[]	m_starts	= new int[num1+num2];
+		int[]	m_ends		= new int[num1+num2];
+
+		int	num	= 0;
+
+		int	i1	= 0;
+		int	i2	= 0;
+
+		while( i1 < num1 || i2 < num2 ){
+
+			int	start;
+			int	end;
+
+			if ( i2 == num2 || ( i1 < num1 && starts1[i1] <= starts2[i2] )){
+
+				start	= starts1[i1];
+				end		= ends1[i1++];
+
+			}else{
+
+				start	= starts2[i2];
+				end		= ends2[i2++];
+			}
+
+			if ( num > 0 && start <= m_ends[num-1] ){
+
+				if ( end > m_ends[num-1] ){
+
+					m_ends[num-1] = end;
+				}
+			}else{
+
+				m_starts[num]	= start;
+				m_ends[num]		= end;
+
+				num++;
+			}
+		}
+
+		if ( num < m_starts.length ){
+
+			int[]	temp = new int[num];
+
+			System.arraycopy( m_starts, 0, temp, 0, num );
+
+			m_starts = temp;
+
+			temp = new int[num];
+
+			System.arraycopy( m_ends, 0, temp, 0, num );
+
+			m_ends = temp;
+		}
+
+		return( new int[][]{ m_starts, m_ends });
+	}
+
+		/**
+		 * @return the address as an unsigned int, -1 if invalid
+		 */
+
+	protected static long
+	parseAddress(
+		String		address )
+	{
+			// blocklists are dotted quads, often zero padded, so avoid the resolver for them
+
+		int	len 	= address.length();
+
+		long	result	= 0;
+		int		value	= 0;
+		int		digits	= 0;
+		int		dots	= 0;
+
+		for (int i=0;i<=len;i++){
+
+			char	c = i==len?'.':address.charAt(i);
+
+			if ( c >= '0' && c <= '9' ){
+
+				value = value*10 + ( c - '0' );
+
+				if ( ++digits > 3 ){
+
+					break;
+				}
+			}else if ( c == '.' && digits > 0 && value <= 255 ){
+
+				result = ( result << 8 ) | value;
+
+				value	= 0;
+				digits	= 0;
+
+				if ( ++dots == 4 ){
+
+					return( i==len?result:-1 );
+				}
+			}else{
+
+				break;
+			}
+		}
+
+		try{
+			return( PRHelpers.addressToInt( address ) & 0xffffffffL );
+
+		}catch( UnknownHostException e ){
+
+			return( -1 );
+		}
+	}
+
+	protected static int[]
+	grow(
+		int[]	array )
+	{
+		int[]	res = new int[array.length*2];
+
+		System.arraycopy( array, 0, res, 0, array.length );
+
+		return( res );
+	}
+}
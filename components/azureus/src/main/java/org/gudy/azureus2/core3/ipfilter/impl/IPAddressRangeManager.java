@@ -45,12 +45,14 @@ IPAddressRangeManager
 
 	protected ArrayList entries = new ArrayList();
 	
-	protected long		total_span;
+	protected volatile IPAddressBlocklist	blocklist;
 	
-	protected boolean	rebuild_required;
-	protected long		last_rebuild_time;
+	protected volatile boolean	rebuild_required;
+	protected long				last_rebuild_time;
 	
-	protected IpRange[] mergedRanges = new IpRange[0];
+		// replaced as a whole on rebuild so that lookups don't need the monitor
+	
+	protected volatile MergedRanges	merged_ranges = new MergedRanges( new IpRange[0], null );
 	
 	protected AEMonitor	this_mon	= new AEMonitor( "IPAddressRangeManager" );
 
@@ -93,33 +95,26 @@ IPAddressRangeManager
 		}
 	}
 	
-	public Object
-	isInRange(
-		String	ip )
+		/**
+		 * replaces the auto-loaded blocklist, the rebuild is done here rather than on
+		 * the next lookup
+		 */
+	
+	protected void
+	setBlocklist(
+		IPAddressBlocklist	list )
 	{
-			// optimise for pretty normal case where there are no ranges
-		
-		if ( entries.size() == 0 ){
-			
-			return( null );
-		}
-		
 		try{
 			this_mon.enter();
 			
-			long address_long = addressToInt( ip );
+			blocklist	= list;
 			
-			if ( address_long < 0 ){
-				
-				address_long += 0x100000000L;
-			}
+			last_rebuild_time	= SystemTime.getCurrentTime();
 			
-			Object res = isInRange( address_long );
+			rebuild_required	= false;
 			
-			// LGLogger.log( "IPAddressRangeManager: checking '" + ip + "' against " + entries.size() + "/" + merged_entries.length + " -> " + res );
+			rebuild();
 			
-			return( res );
-						
 		}finally{
 			
 			this_mon.exit();
@@ -128,135 +123,53 @@ IPAddressRangeManager
 	
 	public Object
 	isInRange(
-		InetAddress	ip )
+		String	ip )
 	{
 			// optimise for pretty normal case where there are no ranges
 		
-		if ( entries.size() == 0 ){
+		if ( entries.size() == 0 && blocklist == null ){
 			
 			return( null );
 		}
 		
-		try{
-			this_mon.enter();
-			
-			long address_long = addressToInt( ip );
-			
-			if ( address_long < 0 ){
-				
-				address_long += 0x100000000L;
-			}
-			
-			Object res = isInRange( address_long );
-			
-			// LGLogger.log( "IPAddressRangeManager: checking '" + ip + "' against " + entries.size() + "/" + merged_entries.length + " -> " + res );
-			
-			return( res );
-						
-		}finally{
+		long address_long = addressToInt( ip );
+		
+		if ( address_long < 0 ){
 			
-			this_mon.exit();
+			address_long += 0x100000000L;
 		}
+		
+		return( isInRange( address_long ));
 	}
 	
-	protected Object
+	public Object
 	isInRange(
-		long	address_long )
+		InetAddress	ip )
 	{
-		try{
-			this_mon.enter();
-			
-			checkRebuild();
-			
-			if ( mergedRanges.length == 0 ){
-				
-				return( null );
-			}
-				
-				// assisted binary chop 
-			
-			int	bottom 	= 0;
-			int	top		= mergedRanges.length-1;
-			
-			int	current	= -1;
-			
-			while( top >= 0 && bottom < mergedRanges.length && bottom <= top){
-				
-				current = (bottom+top)/2;
-				
-				IpRange	e = mergedRanges[current];
-				
-				long	this_start 	= e.getStartIpLong();
-				long 	this_end	= e.getMergedEndLong();
-				
-				if ( address_long == this_start ){
-					
-					break;
-					
-				}else if ( address_long > this_start ){
-					
-					if ( address_long <= this_end ){
-						
-						break;
-					}
-					
-						// lies to the right of this entry
-					
-					bottom	= current + 1;
-					
-				}else if ( address_long == this_end ){
-					
-					break;
-					
-				}else{
-					// < this_end
-					
-					if ( address_long >= this_start ){
-						
-						break;
-					}
-					
-					top = current - 1;
-				}
-			}
-			
-			if ( top >= 0 && bottom < mergedRanges.length && bottom <= top ){
-	
-				IpRange	e = mergedRanges[current];
-			
-				if ( address_long <= e.getEndIpLong()){
-					
-					return( e );
-				}
-				
-				IpRange[]	merged = e.getMergedEntries();
-				
-				if ( merged == null ){
-					
-					Debug.out( "IPAddressRangeManager: inconsistent merged details - no entries" );
-					
-					return( null );
-				}
-				
-				for (int i=0;i<merged.length;i++){
-					
-					IpRange	me = merged[i];
-					
-					if ( me.getStartIpLong() <= address_long && me.getEndIpLong() >= address_long ){
-						
-						return( me );
-					}
-				}
-				
-				Debug.out( "IPAddressRangeManager: inconsistent merged details - entry not found" );
-			}
+			// optimise for pretty normal case where there are no ranges
+		
+		if ( entries.size() == 0 && blocklist == null ){
 			
 			return( null );
+		}
+		
+		long address_long = addressToInt( ip );
+		
+		if ( address_long < 0 ){
 			
-		}finally{
-			
-			this_mon.exit();
+			address_long += 0x100000000L;
 		}
+		
+		return( isInRange( address_long ));
+	}
+	
+	protected Object
+	isInRange(
+		long	address_long )
+	{
+		checkRebuild();
+		
+		return( merged_ranges.find( address_long ));
 	}
 	
 	protected int
@@ -282,6 +195,11 @@ IPAddressRangeManager
 	protected void
 	checkRebuild()
 	{
+		if ( !rebuild_required ){
+			
+			return;
+		}
+		
 		try{
 			this_mon.enter();
 		
@@ -317,17 +235,12 @@ IPAddressRangeManager
 	{
 		if (Logger.isEnabled())
 			Logger.log(new LogEvent(LOGID, "IPAddressRangeManager: rebuilding "
-					+ entries.size() + " entries starts"));
+					+ getRangeCount() + " entries starts"));
 
 		IpRange[]	ents = new IpRange[entries.size()];
 		
 		entries.toArray(ents);
 		
-		for (int i=0;i<ents.length;i++){
-			
-			ents[i].resetMergeInfo();
-		}
-		
 			// sort based on start address
 		
 		Arrays.sort( 
@@ -357,79 +270,11 @@ IPAddressRangeManager
 				}
 			});
 		
-			// now merge overlapping ranges
-		
-		List me = new ArrayList( ents.length );
-		
-		for (int i=0;i<ents.length;i++){
-			
-			IpRange	entry = ents[i];
-			
-			if ( entry.getMerged()){
-				
-				continue;
-			}
-			
-			me.add( entry );
-			
-			int	pos = i+1;
-			
-			while( pos < ents.length ){
-				
-				long	end_pos = entry.getMergedEndLong();
-				
-				IpRange	e2 = ents[pos++];
-				
-				if (!e2.getMerged()){
-					
-					if ( end_pos >= e2.getStartIpLong()){
-						
-						e2.setMerged();
-						
-						if ( e2.getEndIpLong() > end_pos ){
-							
-							entry.setMergedEnd( e2.getEndIpLong() );
-							
-							entry.addMergedEntry( e2 );
-						}
-					}else{
-						
-						break;
-					}	
-				}
-			}
-		}
-		
-		/*
-		for (int i=0;i<ents.length;i++){
-			
-			entry	e = ents[i];
-			
-			System.out.println( Long.toHexString(e.getStart()) + " - " + Long.toHexString(e.getEnd()) + ": " + e.getMerged() + "/" + Long.toHexString(e.getMergedEnd()));
-		}
-		*/
-		
-		mergedRanges = new IpRange[me.size()];
-		
-		me.toArray( mergedRanges );
-		
-		total_span	= 0;
-		
-		for (int i=0;i<mergedRanges.length;i++){
-			
-			IpRange	e = mergedRanges[i];
-			
-				// span is inclusive
-			
-			long	span = ( e.getMergedEndLong() - e.getStartIpLong()) + 1;
-			
-			total_span	+= span;
-		}
-			//	System.out.println( "non_merged = " + merged_entries.length );
+		merged_ranges = new MergedRanges( ents, blocklist );
 		
 		if (Logger.isEnabled())
 			Logger.log(new LogEvent(LOGID, "IPAddressRangeManager: rebuilding "
-					+ entries.size() + " entries ends"));
+					+ getRangeCount() + " entries ends"));
 
 	}
 	
@@ -454,9 +299,16 @@ IPAddressRangeManager
 	{
 		checkRebuild();
 		
-		return( total_span );
+		return( merged_ranges.getTotalSpan());
 	}
 	
+	protected int
+	getRangeCount()
+	{
+		IPAddressBlocklist	list = blocklist;
+		
+		return( entries.size() + ( list==null?0:list.size()));
+	}
 	
 	public static void
 	main(
@@ -575,6 +427,8 @@ IPAddressRangeManager
 		
 			entries.clear();
 		
+			blocklist	= null;
+			
 			IpFilterManagerFactory.getSingleton().deleteAllDescriptions();
 			
 			rebuild_required	= true;
@@ -584,4 +438,113 @@ IPAddressRangeManager
 			this_mon.exit();
 		}
 	}
+	
+		/**
+		 * the ranges merged into disjoint ones, sorted by start, along with the ranges
+		 * they came from. addresses are in IPAddressBlocklist's sortable form
+		 */
+	
+	protected static class
+	MergedRanges
+	{
+		private final int[]					starts;
+		private final int[]					ends;
+		
+		private final IpRange[]				ranges;
+		private final int[]					range_starts;
+		private final int[]					range_ends;
+		
+		private final IPAddressBlocklist	blocklist;
+		
+		private final long					total_span;
+		
+		protected
+		MergedRanges(
+			IpRange[]			_ranges,
+			IPAddressBlocklist	_blocklist )
+		{
+			ranges		= _ranges;
+			blocklist	= _blocklist;
+			
+			range_starts	= new int[ranges.length];
+			range_ends		= new int[ranges.length];
+			
+			for (int i=0;i<ranges.length;i++){
+				
+				range_starts[i]	= IPAddressBlocklist.toSortable((int)ranges[i].getStartIpLong());
+				range_ends[i]	= IPAddressBlocklist.toSortable((int)ranges[i].getEndIpLong());
+			}
+			
+			int[][]	merged;
+			
+			if ( blocklist == null ){
+				
+				merged = IPAddressBlocklist.merge( range_starts, range_ends, ranges.length, null, null, 0 );
+				
+			}else{
+				
+				int[]	list_starts = blocklist.getMergedStarts();
+				
+				merged = IPAddressBlocklist.merge( list_starts, blocklist.getMergedEnds(), list_starts.length, range_starts, range_ends, ranges.length );
+			}
+			
+			starts	= merged[0];
+			ends	= merged[1];
+			
+			long	span = 0;
+			
+			for (int i=0;i<starts.length;i++){
+				
+					// span is inclusive
+				
+				span += ((long)ends[i] - starts[i]) + 1;
+			}
+			
+			total_span	= span;
+		}
+		
+		protected long
+		getTotalSpan()
+		{
+			return( total_span );
+		}
+		
+		protected Object
+		find(
+			long		address_long )
+		{
+			int	address = IPAddressBlocklist.toSortable((int)address_long );
+			
+			int	i = IPAddressBlocklist.findLastNotAbove( starts, starts.length, address );
+			
+			if ( i < 0 || ends[i] < address ){
+				
+				return( null );
+			}
+			
+			int	merged_start = starts[i];
+			
+			for (int j=IPAddressBlocklist.findLastNotAbove( range_starts, range_starts.length, address );j>=0 && range_starts[j]>=merged_start;j--){
+				
+				if ( range_ends[j] >= address ){
+					
+					return( ranges[j] );
+				}
+			}
+			
+			if ( blocklist != null ){
+				
+				int	index = blocklist.find( address, merged_start );
+				
+				if ( index != -1 ){
+					
+					return( blocklist.getRange( index ));
+				}
+			}
+			
+			Debug.out( "IPAddressRangeManager: inconsistent merged details - entry not found" );
+			
+			return( null );
+		}
+	}
 }
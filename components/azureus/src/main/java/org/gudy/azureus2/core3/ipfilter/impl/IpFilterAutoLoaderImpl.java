@@ -23,9 +23,6 @@ package org.gudy.azureus2.core3.ipfilter.impl;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -33,7 +30,6 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import org.gudy.azureus2.core3.config.COConfigurationManager;
-import org.gudy.azureus2.core3.ipfilter.IpRange;
 import org.gudy.azureus2.core3.logging.LogEvent;
 import org.gudy.azureus2.core3.logging.LogIDs;
 import org.gudy.azureus2.core3.logging.Logger;
@@ -60,6 +56,8 @@ public class IpFilterAutoLoaderImpl
 	public static final String CFG_AUTOLOAD_LAST = "Ip Filter Autoload Last Date";
 	
 	public static final String CFG_AUTOLOAD_FILE = "Ip Filter Autoload File";
+
+	private static final String CACHE_FILE = "ipfilter.bin";
   
 
 	private static AEMonitor class_mon = new AEMonitor(
@@ -78,158 +76,140 @@ public class IpFilterAutoLoaderImpl
 	/**
 	 * Load dat filter as specified at http://wiki.phoenixlabs.org/wiki/DAT_Format
 	 * @param fin 
-	 * @throws Exception
+	 * @param builder 
+	 * @return true if the whole file was read
 	 *
 	 * @since 3.0.1.5
 	 */
-	private void loadDATFilters(InputStream fin) {
+	private boolean loadDATFilters(InputStream fin,
+			IPAddressBlocklist.Builder builder) {
+		InputStreamReader streamReader = null;
+		BufferedReader reader = null;
 		try {
-			class_mon.enter();
+			Pattern pattern = Pattern.compile("^(.*):([0-9\\.]+)[^0-9]+([0-9\\.]+).*");
+			int parseMode = -1;
 
-			List new_ipRanges = new ArrayList(1024);
+			//open the file
+			// TODO: test charset fallback (should fallback to ascii)
+			streamReader = new InputStreamReader(fin, "utf8");
+			reader = new BufferedReader(streamReader);
 
-			InputStreamReader streamReader = null;
-			BufferedReader reader = null;
-			try {
-				Pattern pattern = Pattern.compile("^(.*):([0-9\\.]+)[^0-9]+([0-9\\.]+).*");
-				int parseMode = -1;
-
-				//open the file
-				// TODO: test charset fallback (should fallback to ascii)
-				streamReader = new InputStreamReader(fin, "utf8");
-				reader = new BufferedReader(streamReader);
+			int numConsecutiveUnknowns = 0;
 
-				int numConsecutiveUnknowns = 0;
-
-				while (numConsecutiveUnknowns < 1000) {
-					String line = reader.readLine();
-					//System.out.println("line=" + line);
-					if (line == null) {
-						break;
-					}
+			while (numConsecutiveUnknowns < 1000) {
+				String line = reader.readLine();
+				//System.out.println("line=" + line);
+				if (line == null) {
+					break;
+				}
 
-					line = line.trim();
+				line = line.trim();
 
-					if (line.startsWith("#") || line.length() == 0) {
-						continue;
-					}
+				if (line.startsWith("#") || line.length() == 0) {
+					continue;
+				}
 
-					String description = "";
-					String startIp = null;
-					String endIp = null;
-					int level = 0;
+				String description = "";
+				String startIp = null;
+				String endIp = null;
+				int level = 0;
 
-					if (parseMode <= 0 || parseMode == 1) {
-						Matcher matcher = pattern.matcher(line);
-						if (matcher.find()) {
-							if (parseMode != 1) {
-								parseMode = 1;
-							}
-							description = matcher.group(1);
-							startIp = matcher.group(2);
-							endIp = matcher.group(3);
-						} else {
-							Logger.log(new LogEvent(LOGID, LogEvent.LT_WARNING,
-									"unrecognized line while reading ip filter: " + line));
+				if (parseMode <= 0 || parseMode == 1) {
+					Matcher matcher = pattern.matcher(line);
+					if (matcher.find()) {
+						if (parseMode != 1) {
+							parseMode = 1;
 						}
+						description = matcher.group(1);
+						startIp = matcher.group(2);
+						endIp = matcher.group(3);
+					} else {
+						Logger.log(new LogEvent(LOGID, LogEvent.LT_WARNING,
+								"unrecognized line while reading ip filter: " + line));
 					}
+				}
 
-					if (parseMode != 1) {
-						if (parseMode != 2) {
-							parseMode = 2;
-						}
-
-						// spec says:
-						//    1.1.1.1, 1.1.1.2, 100, moo
-						// but I've seen dash format, such as
-						//    1.1.1.1 - 1.1.1.2, 100, moo
-						// so 	 for both
-						String[] sections = line.split(" *[-,] *", 4);
-
-						if (sections.length >= 2) {
-							if (sections[0].indexOf('.') < 0 || sections[1].indexOf('.') < 0
-									|| sections[0].length() > 15 || sections[1].length() > 15
-									|| sections[0].length() < 7 || sections[1].length() < 7) {
-								numConsecutiveUnknowns++;
-								continue;
-							}
-						}
+				if (parseMode != 1) {
+					if (parseMode != 2) {
+						parseMode = 2;
+					}
 
-						if (sections.length >= 4) {
-							// simple format:
-							// startip, endip, level, desc
-							startIp = sections[0];
-							endIp = sections[1];
-							description = sections[3];
-							try {
-								level = Integer.parseInt(sections[2]);
-							} catch (NumberFormatException e) {
-								description = sections[2] + " " + description;
-							}
-							for (int i = 4; i < sections.length; i++) {
-								description += " " + sections[i];
-							}
-							numConsecutiveUnknowns = 0;
-						} else if (sections.length == 3) {
-							startIp = sections[0];
-							endIp = sections[1];
-							description = sections[2];
-							numConsecutiveUnknowns = 0;
-						} else if (sections.length == 2) {
-							startIp = sections[0];
-							endIp = sections[1];
-							numConsecutiveUnknowns = 0;
-						} else {
+					// spec says:
+					//    1.1.1.1, 1.1.1.2, 100, moo
+					// but I've seen dash format, such as
+					//    1.1.1.1 - 1.1.1.2, 100, moo
+					// so 	 for both
+					String[] sections = line.split(" *[-,] *", 4);
+
+					if (sections.length >= 2) {
+						if (sections[0].indexOf('.') < 0 || sections[1].indexOf('.') < 0
+								|| sections[0].length() > 15 || sections[1].length() > 15
+								|| sections[0].length() < 7 || sections[1].length() < 7) {
 							numConsecutiveUnknowns++;
 							continue;
 						}
+					}
 
-						if (level >= 128) {
-							continue;
+					if (sections.length >= 4) {
+						// simple format:
+						// startip, endip, level, desc
+						startIp = sections[0];
+						endIp = sections[1];
+						description = sections[3];
+						try {
+							level = Integer.parseInt(sections[2]);
+						} catch (NumberFormatException e) {
+							description = sections[2] + " " + description;
+						}
+						for (int i = 4; i < sections.length; i++) {
+							description += " " + sections[i];
 						}
+						numConsecutiveUnknowns = 0;
+					} else if (sections.length == 3) {
+						startIp = sections[0];
+						endIp = sections[1];
+						description = sections[2];
+						numConsecutiveUnknowns = 0;
+					} else if (sections.length == 2) {
+						startIp = sections[0];
+						endIp = sections[1];
+						numConsecutiveUnknowns = 0;
+					} else {
+						numConsecutiveUnknowns++;
+						continue;
 					}
 
-					if (startIp == null || endIp == null) {
+					if (level >= 128) {
 						continue;
 					}
-
-					IpRangeImpl ipRange = new IpRangeImpl(description, startIp, endIp,
-							true);
-
-					//System.out.println(parseMode + ":" + description + ";" + ipRange.getStartIp());
-					ipRange.setAddedToRangeList(true);
-
-					new_ipRanges.add(ipRange);
 				}
-			} catch (IOException e) {
-				Debug.out(e);
-			} finally {
 
-				if (reader != null) {
-					try {
-						reader.close();
-					} catch (Throwable e) {
-					}
-				}
-				if (streamReader != null) {
-					try {
-						streamReader.close();
-					} catch (Throwable e) {
-					}
+				if (startIp == null || endIp == null) {
+					continue;
 				}
 
-				Iterator it = new_ipRanges.iterator();
-
-				while (it.hasNext()) {
+				builder.add(startIp, endIp, description);
+			}
 
-					((IpRange) it.next()).checkValid();
-				}
+			return true;
+		} catch (IOException e) {
+			Debug.out(e);
 
-				ipFilter.markAsUpToDate();
-			}
+			return false;
 		} finally {
 
-			class_mon.exit();
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (Throwable e) {
+				}
+			}
+			if (streamReader != null) {
+				try {
+					streamReader.close();
+				} catch (Throwable e) {
+				}
+			}
 		}
 	}
 
@@ -274,7 +254,11 @@ public class IpFilterAutoLoaderImpl
 		try {
 			class_mon.enter();
 
-			List new_ipRanges = new ArrayList(1024);
+			// the blocklist is kept compact in arrays rather than as IpRanges, and
+			// cached so that it's only parsed again when the file changes
+			IPAddressBlocklist.Builder builder = new IPAddressBlocklist.Builder();
+			File sourceFile = null;
+			boolean complete = false;
 
 			InputStream fin = null;
 			BufferedInputStream bin = null;
@@ -319,6 +303,18 @@ public class IpFilterAutoLoaderImpl
 					}
 				}
 
+				sourceFile = filtersFile;
+
+				IPAddressBlocklist cached = IPAddressBlocklist.load(
+						FileUtil.getUserFile(CACHE_FILE), sourceFile);
+
+				if (cached != null) {
+					Logger.log(new LogEvent(LOGID, "IP Filter: " + cached.size()
+							+ " ranges loaded from cache"));
+					ipFilter.setBlocklist(cached);
+					return;
+				}
+
 				fin = new FileInputStream(filtersFile);
 				bin = new BufferedInputStream(fin, 16384);
 
@@ -359,7 +355,7 @@ public class IpFilterAutoLoaderImpl
 
 				if (p2bVersion < 1 || p2bVersion > 3) {
 					bin.reset();
-					loadDATFilters(bin);
+					complete = loadDATFilters(bin, builder);
 					return;
 				}
 
@@ -382,13 +378,9 @@ public class IpFilterAutoLoaderImpl
 						}
 						int endIp = ByteFormatter.byteArrayToInt(ipBytes);
 
-						IpRangeImpl ipRange = new IpRangeImpl(description, startIp, endIp,
-								true);
-
-						ipRange.setAddedToRangeList(true);
-
-						new_ipRanges.add(ipRange);
+						builder.add(startIp, endIp, description);
 					}
+					complete = true;
 				} else { // version 3
 					int read = bin.read(ipBytes);
 					if (read < 4) {
@@ -427,13 +419,9 @@ public class IpFilterAutoLoaderImpl
 						String description = descIdx < descs.length && descIdx >= 0
 								? descs[descIdx] : "";
 
-						IpRangeImpl ipRange = new IpRangeImpl(description, startIp, endIp,
-								true);
-
-						ipRange.setAddedToRangeList(true);
-
-						new_ipRanges.add(ipRange);
+						builder.add(startIp, endIp, description);
 					}
+					complete = true;
 				}
 			} catch (IOException e) {
 				Debug.out(e);
@@ -452,15 +440,16 @@ public class IpFilterAutoLoaderImpl
 					}
 				}
 
-				Iterator it = new_ipRanges.iterator();
-
-				while (it.hasNext()) {
-
-					((IpRange) it.next()).checkValid();
+				if (builder.size() > 0) {
+					IPAddressBlocklist list = builder.build();
+					if (complete) {
+						list.save(FileUtil.getUserFile(CACHE_FILE), sourceFile);
+					}
+					ipFilter.setBlocklist(list);
+				} else {
+					ipFilter.markAsUpToDate();
 				}
 
-				ipFilter.markAsUpToDate();
-
 				if (!isURL) {
 					setFileReloadTimer();
 				}
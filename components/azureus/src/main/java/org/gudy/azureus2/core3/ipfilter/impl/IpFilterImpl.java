@@ -903,9 +903,21 @@ IpFilterImpl
 	}
 	
 	public int getNbRanges() {
-		List entries = range_manager.getEntries();
-
-	  return entries.size();
+		return( range_manager.getRangeCount());
+	}
+	
+		/**
+		 * the ranges of the auto-loaded blocklist aren't IpRange objects so aren't
+		 * returned by getRanges, they only count towards getNbRanges
+		 */
+	
+	protected void
+	setBlocklist(
+		IPAddressBlocklist	list )
+	{
+		range_manager.setBlocklist( list );
+		
+		markAsUpToDate();
 	}
 	
 	protected void
@@ -105,6 +105,19 @@ public class IpRangeImpl implements IpRange
 		checkValid();
 	}
 
+	/**
+	 * For ranges that aren't held in the filter's list, such as the entries of a
+	 * blocklist that match. Nothing is validated or added to the description cache.
+	 */
+	protected IpRangeImpl(int _startIp, int _endIp, byte[] _description) {
+		flags = FLAG_SESSION_ONLY;
+
+		ipStart = _startIp;
+		ipEnd = _endIp;
+
+		descRef = new Object[] { _description, null };
+	}
+
 	public void checkValid() {
 		((IpFilterImpl) IpFilterImpl.getInstance()).setValidOrNot(this, isValid());
 	}
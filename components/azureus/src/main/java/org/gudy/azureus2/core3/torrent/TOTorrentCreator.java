@@ -38,6 +38,20 @@ TOTorrentCreator
 	public void
 	cancel();
 	
+		/**
+		 * @return bytes/sec hashed so far, 0 before hashing starts
+		 */
+	
+	public long
+	getHashRate();
+	
+		/**
+		 * @return estimated seconds until hashing completes, -1 if unknown
+		 */
+	
+	public long
+	getETA();
+	
 	public void
 	addListener(
 		TOTorrentProgressListener	listener );
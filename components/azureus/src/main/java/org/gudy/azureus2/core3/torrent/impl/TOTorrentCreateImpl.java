@@ -48,6 +48,10 @@ TOTorrentCreateImpl
 	protected List							progress_listeners = new ArrayList();
 	
 	protected int	reported_progress;
+	protected long	reported_time;
+	
+	protected volatile long	hash_start;
+	protected volatile long	hashed_bytes;
 		
 	protected Set	ignore_set = new HashSet();
 	
@@ -171,6 +175,8 @@ TOTorrentCreateImpl
 		
 		report( "Torrent.create.progress.hashing");
 
+		hash_start	= SystemTime.getMonotonousTime();
+
 		for (int i=0;i<progress_listeners.size();i++){
 					
 			((TOTorrentProgressListener)progress_listeners.get(i)).reportProgress( 0 );
@@ -183,6 +189,7 @@ TOTorrentCreateImpl
 					add_other_hashes,
 					add_other_per_file_hashes,
 					(int)_piece_length, 
+					piece_count,
 					progress_listeners.size()==0?null:this );
 		
 		if ( cancelled ){
@@ -308,19 +315,62 @@ TOTorrentCreateImpl
 	pieceHashed(
 		int		piece_number )
 	{
-		for (int i=0;i<progress_listeners.size();i++){
+		hashed_bytes = piece_number*piece_length;
+		
+		int	this_progress = (int)((piece_number*100)/piece_count );
 		
-			int	this_progress = (int)((piece_number*100)/piece_count );
+		long	now = SystemTime.getMonotonousTime();
+		
+			// report at least once a second so the rate and eta stay live
+		
+		if ( this_progress != reported_progress || now - reported_time >= 1000 ){
 			
-			if ( this_progress != reported_progress ){
-				
-				reported_progress = this_progress;
+			reported_progress	= this_progress;
+			reported_time		= now;
+			
+			for (int i=0;i<progress_listeners.size();i++){
 				
 				((TOTorrentProgressListener)progress_listeners.get(i)).reportProgress( reported_progress );
 			}
 		}
 	}
 	
+		/**
+		 * @return bytes/sec hashed so far
+		 */
+	
+	protected long
+	getHashRate()
+	{
+		long	elapsed = SystemTime.getMonotonousTime() - hash_start;
+		
+		if ( hash_start == 0 || elapsed <= 0 ){
+			
+			return( 0 );
+		}
+		
+		return( hashed_bytes*1000/elapsed );
+	}
+	
+		/**
+		 * @return seconds left, -1 if unknown
+		 */
+	
+	protected long
+	getETA()
+	{
+		long	rate = getHashRate();
+		
+		if ( rate <= 0 ){
+			
+			return( -1 );
+		}
+		
+		long	remaining = piece_count*piece_length - hashed_bytes;
+		
+		return( Math.max( 0, remaining/rate ));
+	}
+	
 	protected long
 	calculateNumberOfPieces(
 		File				_file,
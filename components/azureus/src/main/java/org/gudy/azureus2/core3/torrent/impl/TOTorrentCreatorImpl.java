@@ -58,6 +58,18 @@ TOTorrentCreatorImpl
 		torrent.cancel();
 	}
 	
+	public long
+	getHashRate()
+	{
+		return( torrent.getHashRate());
+	}
+	
+	public long
+	getETA()
+	{
+		return( torrent.getETA());
+	}
+	
 	public void
 	addListener(
 		TOTorrentProgressListener	listener )
@@ -24,6 +24,7 @@ package org.gudy.azureus2.core3.torrent.impl;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.gudy.azureus2.core3.html.HTMLUtils;
@@ -207,7 +208,20 @@ TOTorrentDeserialiseImpl
 		throws TOTorrentException
 	{
 		try{
-			Map meta_data = BDecoder.decode(bytes);
+				// only the parts we use get decoded, in particular the pieces and the info
+				// dictionary aren't copied when the encoding is canonical
+			
+			Map meta_data;
+			
+			try{
+				meta_data = BDecoderView.decode( bytes );
+				
+			}catch( BEncodingException e ){
+				
+					// BDecoder copes with some broken encodings
+				
+				meta_data = BDecoder.decode(bytes);
+			}
 	
 			// print( "", "", meta_data );
 			
@@ -410,7 +424,7 @@ TOTorrentDeserialiseImpl
 					
 				}else{
 					
-					Object	prop = meta_data.get( key );
+					Object	prop = BDecoderView.materialize( meta_data.get( key ));
 					
 					if ( prop instanceof byte[] ){
 						
@@ -575,7 +589,7 @@ TOTorrentDeserialiseImpl
 							// we don't skip TK_PATH_UTF8 because some code might assume getAdditionalProperty can get it
 						}else{
 							
-							file.setAdditionalProperty( key, file_map.get( key ));
+							file.setAdditionalProperty( key, BDecoderView.materialize( file_map.get( key )));
 						}
 					}
 				}
@@ -583,13 +597,27 @@ TOTorrentDeserialiseImpl
 				setFiles( files );
 			}
 							
-			byte[]	flat_pieces = (byte[])info.get( TK_PIECES );
+			ByteBuffer	flat_pieces;
+			
+			if ( info instanceof BDecoderView.MapView ){
+				
+				flat_pieces = ((BDecoderView.MapView)info).getSlice( TK_PIECES );
+				
+				if ( flat_pieces == null ){
+					
+					throw( new TOTorrentException( "Decode fails, 'pieces' element not found'",
+							TOTorrentException.RT_DECODE_FAILS ));
+				}
+			}else{
+				
+				flat_pieces = ByteBuffer.wrap((byte[])info.get( TK_PIECES ));
+			}
 			
 				// work out how many pieces we require for the torrent
 			
 			int	pieces_required = (int)((total_length + (piece_length-1)) / piece_length);
 			
-			int		pieces_supplied = flat_pieces.length/20;
+			int		pieces_supplied = flat_pieces.remaining()/20;
 			
 			if ( pieces_supplied < pieces_required ){
 				
@@ -606,7 +634,7 @@ TOTorrentDeserialiseImpl
 			
 			for (int i=0;i<pieces.length;i++){
 				
-				System.arraycopy( flat_pieces, i*20, pieces[i], 0, 20 );
+				flat_pieces.get( pieces[i] );
 			}	
 				
 			setPieces( pieces );	
@@ -629,7 +657,7 @@ TOTorrentDeserialiseImpl
 									
 				}else{
 					
-					addAdditionalInfoProperty( key, info.get( key ));
+					addAdditionalInfoProperty( key, BDecoderView.materialize( info.get( key )));
 				}
 			}
 
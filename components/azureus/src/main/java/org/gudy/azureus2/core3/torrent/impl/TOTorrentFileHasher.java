@@ -25,25 +25,72 @@ package org.gudy.azureus2.core3.torrent.impl;
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 import org.gudy.azureus2.core3.torrent.*;
 import org.gudy.azureus2.core3.util.*;
 
+/**
+ * Pieces are read sequentially into a small set of direct buffers and hashed on a
+ * pool of threads while the next ones are read. The other hashes need the data in
+ * order so they are computed on a single thread each, the overall hashes on one and
+ * the per-file ones on another.
+ */
+
 public class 
 TOTorrentFileHasher 
 {
+	protected static final int	MAX_BUFFER_BYTES	= 64*1024*1024;
+	
+		// largest buffer DirectByteBufferPool hands out, its MAX_SIZE
+	
+	protected static final int	MAX_POOL_BUFFER_BYTES	= 32*1024*1024;
+	
+	private static ThreadPool	hash_pool;
+	
+	private static final ThreadLocal	piece_hasher = 
+		new ThreadLocal()
+		{
+			protected Object
+			initialValue()
+			{
+				return( new SHA1Hasher());
+			}
+		};
+		
+	protected static synchronized ThreadPool
+	getHashPool()
+	{
+		if ( hash_pool == null ){
+			
+			hash_pool = new ThreadPool( "TOTorrentFileHasher", Math.max( 1, Runtime.getRuntime().availableProcessors()), true );
+		}
+		
+		return( hash_pool );
+	}
+	
 	protected boolean	do_other_per_file_hash;
 	protected int		piece_length;
 	
-	protected Vector	pieces = new Vector();
+	protected byte[][]	pieces;
+	protected int		piece_count;
+	protected int		pieces_hashed;
+	
+	protected PieceBuffer[]	buffers;
+	protected LinkedList	free_buffers	= new LinkedList();
+	protected AESemaphore	free_sem		= new AESemaphore( "TOTorrentFileHasher:free" );
 	
-	protected byte[]	buffer;
-	protected int		buffer_pos;
+	protected PieceBuffer	buffer;
 	 
 	protected SHA1Hasher					overall_sha1_hash;
 	protected ED2KHasher					overall_ed2k_hash;
 	
+	protected AsyncDispatcher				overall_lane;
+	protected byte[]						overall_scratch;
+	protected AsyncDispatcher				file_lane;
+	
 	protected byte[]						sha1_digest;
 	protected byte[]						ed2k_digest;
 	
@@ -52,26 +99,41 @@ TOTorrentFileHasher
 	
 	protected TOTorrentFileHasherListener	listener;
 		
-	protected boolean						cancelled;
+	protected volatile boolean				cancelled;
+	protected volatile Throwable			hash_error;
+	
+	protected AEMonitor						this_mon	= new AEMonitor( "TOTorrentFileHasher" );
 	
 	protected
 	TOTorrentFileHasher(
 		boolean							_do_other_overall_hashes,
 		boolean							_do_other_per_file_hash,				
 		int								_piece_length,
+		long							_piece_count,
 		TOTorrentFileHasherListener		_listener )
 	{
 		if ( _do_other_overall_hashes ){
 		  overall_sha1_hash 	= new SHA1Hasher();
 						
 		  overall_ed2k_hash 	= new ED2KHasher();
+		  
+		  overall_lane			= new AsyncDispatcher( "TOTorrentFileHasher:overall" );
+		  
+		  overall_scratch		= new byte[65536];
 		}
 		
 		do_other_per_file_hash	= _do_other_per_file_hash;
 		piece_length			= _piece_length;
 		listener				= _listener;
 		
-		buffer = new byte[piece_length];
+		if ( do_other_per_file_hash ){
+			
+			file_lane	= new AsyncDispatcher( "TOTorrentFileHasher:file" );
+		}
+		
+			// files can change size while we're at it, getPieces trims/grows as required
+		
+		pieces = new byte[(int)Math.max( 1, Math.min( _piece_count, Integer.MAX_VALUE ))][];
 	}
 		
 	long
@@ -82,65 +144,64 @@ TOTorrentFileHasher
 	{
 		long		file_length = 0;
 		
-		InputStream is = null;
+		FileInputStream is = null;
+		
+		final SHA1Hasher	sha1_hash;
+		final ED2KHasher	ed2k_hash;
+		final byte[]		ed2k_scratch;
 		
-		SHA1Hasher	sha1_hash		= null;
-		ED2KHasher	ed2k_hash		= null;
+		if ( do_other_per_file_hash ){
+			
+			sha1_hash		= new SHA1Hasher();
+			ed2k_hash		= new ED2KHasher();
+			ed2k_scratch	= new byte[65536];
+			
+		}else{
+			
+			sha1_hash		= null;
+			ed2k_hash		= null;
+			ed2k_scratch	= null;
+		}
 		
 		try{
-			if ( do_other_per_file_hash ){
-				
-				sha1_hash		= new SHA1Hasher();
-				ed2k_hash		= new ED2KHasher();
-			}
+			is = new FileInputStream( _file );
 			
-			is = new BufferedInputStream(new FileInputStream( _file ), 65536);
+			FileChannel	channel = is.getChannel();
 
 			while(true){
 	
-				if ( cancelled ){
-						
-					throw( new TOTorrentException( 	"TOTorrentCreate: operation cancelled",
-													TOTorrentException.RT_CANCELLED ));
+				checkState();
+				
+				if ( buffer == null ){
+					
+					buffer = allocateBuffer();
 				}
 				
-				int	len = is.read( buffer, buffer_pos, piece_length - buffer_pos );
+				ByteBuffer	bb = buffer.getBuffer();
+				
+				int	buffer_pos = bb.position();
+				
+				int	len = channel.read( bb );
 				
 				if ( len > 0 ){
 					
 					if ( do_other_per_file_hash ){
 						
-						sha1_hash.update( buffer, buffer_pos, len );
-						ed2k_hash.update( buffer, buffer_pos, len );
+						ByteBuffer	data = bb.duplicate();
+						
+						data.limit( buffer_pos + len );
+						data.position( buffer_pos );
+						
+						dispatch( file_lane, buffer, sha1_hash, ed2k_hash, data, ed2k_scratch );
 					}
 					
-					
 					file_length += len;
 					
-					buffer_pos += len;
-					
-					if ( buffer_pos == piece_length ){
-						
-						// hash this piece
-						
-						byte[] hash = new SHA1Hasher().calculateHash(buffer);
-
-						if ( overall_sha1_hash != null ){
-							
-							overall_sha1_hash.update( buffer );
-							overall_ed2k_hash.update( buffer );
-						}
-						
-						pieces.add( hash );
+					if ( !bb.hasRemaining()){
 						
-						if ( listener != null ){
-							
-							listener.pieceHashed( pieces.size() );
-						}
-						
-						buffer_pos = 0;					
+						submitPiece();
 					}
-				}else{
+				}else if ( len < 0 ){
 					
 					break;
 				}		
@@ -148,16 +209,36 @@ TOTorrentFileHasher
 			
 			if ( do_other_per_file_hash ){
 				
-				per_file_sha1_digest = sha1_hash.getDigest();
-				per_file_ed2k_digest = ed2k_hash.getDigest();
+				final AESemaphore	sem = new AESemaphore( "TOTorrentFileHasher:fileDigest" );
+				
+				file_lane.dispatch(
+					new AERunnable()
+					{
+						public void
+						runSupport()
+						{
+							per_file_sha1_digest = sha1_hash.getDigest();
+							per_file_ed2k_digest = ed2k_hash.getDigest();
+							
+							sem.release();
+						}
+					});
+				
+				sem.reserve();
+				
+				checkState();
 			}
 			
 		}catch( TOTorrentException e ){
 			
+			releaseBuffers();
+			
 			throw( e );
 			
 		}catch( Throwable e ){
 			
+			releaseBuffers();
+			
 			throw( new TOTorrentException( 	"TOTorrentFileHasher: file read fails '" + e.toString() + "'",
 											TOTorrentException.RT_READ_FAILS ));
 		}finally {
@@ -173,6 +254,262 @@ TOTorrentFileHasher
 		return( file_length );
 	}
 	
+	protected void
+	checkState()
+	
+		throws TOTorrentException
+	{
+		if ( cancelled ){
+			
+			throw( new TOTorrentException( 	"TOTorrentCreate: operation cancelled",
+											TOTorrentException.RT_CANCELLED ));
+		}
+		
+		Throwable	error = hash_error;
+		
+		if ( error != null ){
+			
+			throw( new TOTorrentException( 	"TOTorrentFileHasher: hash fails '" + error.toString() + "'",
+											TOTorrentException.RT_READ_FAILS ));
+		}
+	}
+	
+		/**
+		 * hands the current buffer over to the hashers, it's returned once they're done with it
+		 */
+	
+	protected void
+	submitPiece()
+	{
+		final PieceBuffer	piece_buffer = buffer;
+		
+		buffer	= null;
+		
+		final ByteBuffer	data = piece_buffer.getBuffer().duplicate();
+		
+		data.flip();
+		
+		final int	piece_number;
+		
+		try{
+			this_mon.enter();
+			
+			piece_number = piece_count++;
+			
+			if ( piece_number == pieces.length ){
+				
+				byte[][]	new_pieces = new byte[pieces.length*2][];
+				
+				System.arraycopy( pieces, 0, new_pieces, 0, pieces.length );
+				
+				pieces = new_pieces;
+			}
+		}finally{
+			
+			this_mon.exit();
+		}
+		
+		if ( overall_lane != null ){
+			
+			dispatch( overall_lane, piece_buffer, overall_sha1_hash, overall_ed2k_hash, data.duplicate(), overall_scratch );
+		}
+		
+		piece_buffer.addRef();
+		
+		getHashPool().run(
+			new AERunnable()
+			{
+				public void
+				runSupport()
+				{
+					try{
+						if ( cancelled ){
+							
+							return;
+						}
+						
+						byte[]	hash = ((SHA1Hasher)piece_hasher.get()).calculateHash( data );
+						
+						try{
+							this_mon.enter();
+							
+							pieces[piece_number] = hash;
+							
+							pieces_hashed++;
+							
+							if ( listener != null ){
+								
+								listener.pieceHashed( pieces_hashed );
+							}
+						}finally{
+							
+							this_mon.exit();
+						}
+					}catch( Throwable e ){
+						
+						hash_error = e;
+						
+					}finally{
+						
+						piece_buffer.release();
+					}
+				}
+			});
+		
+			// drop the reader's reference
+		
+		piece_buffer.release();
+	}
+	
+	protected void
+	dispatch(
+		AsyncDispatcher		lane,
+		final PieceBuffer	piece_buffer,
+		final SHA1Hasher	sha1_hash,
+		final ED2KHasher	ed2k_hash,
+		final ByteBuffer	data,
+		final byte[]		scratch )
+	{
+		piece_buffer.addRef();
+		
+		lane.dispatch(
+			new AERunnable()
+			{
+				public void
+				runSupport()
+				{
+					try{
+						if ( cancelled ){
+							
+							return;
+						}
+						
+						ByteBuffer	ed2k_data = data.duplicate();
+						
+						sha1_hash.update( data );
+						
+							// ed2k works on arrays
+						
+						while( ed2k_data.hasRemaining()){
+							
+							int	len = Math.min( scratch.length, ed2k_data.remaining());
+							
+							ed2k_data.get( scratch, 0, len );
+							
+							ed2k_hash.update( scratch, 0, len );
+						}
+					}catch( Throwable e ){
+						
+						hash_error = e;
+						
+					}finally{
+						
+						piece_buffer.release();
+					}
+				}
+			});
+	}
+	
+	protected PieceBuffer
+	allocateBuffer()
+	{
+		if ( buffers == null ){
+			
+			int	num = Runtime.getRuntime().availableProcessors() + 2;
+			
+			num = Math.min( num, MAX_BUFFER_BYTES / piece_length );
+			
+			num = Math.max( num, 2 );
+			
+				// only published once complete, releaseBuffers waits for every one of them
+			
+			PieceBuffer[]	new_buffers = new PieceBuffer[num];
+			
+			for (int i=0;i<num;i++){
+				
+				DirectByteBuffer	dbb;
+				
+					// the pool doesn't hand out buffers that big
+				
+				if ( piece_length > MAX_POOL_BUFFER_BYTES ){
+					
+					dbb = new DirectByteBuffer( ByteBuffer.allocateDirect( piece_length ));
+					
+				}else{
+					
+					dbb = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, piece_length );
+				}
+				
+				new_buffers[i] = new PieceBuffer( dbb );
+			}
+			
+			for (int i=0;i<num;i++){
+				
+				new_buffers[i].release();
+			}
+			
+			buffers = new_buffers;
+		}
+		
+		free_sem.reserve();
+		
+		try{
+			this_mon.enter();
+			
+			PieceBuffer	res = (PieceBuffer)free_buffers.removeFirst();
+			
+			res.addRef();
+			
+			return( res );
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+	}
+	
+		/**
+		 * waits for the hashing in progress and gives the buffers back to the pool
+		 */
+	
+	protected void
+	releaseBuffers()
+	{
+		if ( buffers == null ){
+			
+			return;
+		}
+		
+		if ( buffer != null ){
+			
+			buffer.release();
+			
+			buffer = null;
+		}
+		
+		for (int i=0;i<buffers.length;i++){
+			
+			free_sem.reserve();
+		}
+		
+		try{
+			this_mon.enter();
+			
+			free_buffers.clear();
+			
+		}finally{
+			
+			this_mon.exit();
+		}
+		
+		for (int i=0;i<buffers.length;i++){
+			
+			buffers[i].destroy();
+		}
+		
+		buffers = null;
+	}
+	
 	protected byte[]
 	getPerFileSHA1Digest()
 	{
@@ -191,40 +528,31 @@ TOTorrentFileHasher
 		throws TOTorrentException
 	{
 		try{
-			if ( buffer_pos > 0 ){
-								
-				byte[] rem = new byte[buffer_pos];
-				
-				System.arraycopy( buffer, 0, rem, 0, buffer_pos );
+			if ( buffer != null && buffer.getBuffer().position() > 0 ){
 				
-				pieces.addElement(new SHA1Hasher().calculateHash(rem));
-				
-				if ( overall_sha1_hash != null ){
-					
-					overall_sha1_hash.update( rem );
-					overall_ed2k_hash.update( rem );
-				}
-				
-				if ( listener != null ){
-							
-					listener.pieceHashed( pieces.size() );
-				}
-				
-				buffer_pos = 0;
+				submitPiece();
 			}
 		
+			releaseBuffers();
+			
+			checkState();
+			
 			if ( overall_sha1_hash != null && sha1_digest == null ){
 				
 				sha1_digest	= overall_sha1_hash.getDigest();
 				ed2k_digest	= overall_ed2k_hash.getDigest();
 			}
 			
-			byte[][] res = new byte[pieces.size()][];
+			byte[][] res = new byte[piece_count][];
 		
-			pieces.copyInto( res );
+			System.arraycopy( pieces, 0, res, 0, piece_count );
 		
 			return( res );
 			
+		}catch( TOTorrentException e ){
+			
+			throw( e );
+			
 		}catch( Throwable e ){
 			
 			throw( new TOTorrentException( 	"TOTorrentFileHasher: file read fails '" + e.toString() + "'",
@@ -263,4 +591,74 @@ TOTorrentFileHasher
 	{
 		cancelled	= true;
 	}
+	
+	protected class
+	PieceBuffer
+	{
+		private DirectByteBuffer	dbb;
+		private ByteBuffer			bb;
+		
+		private int					refs	= 1;
+		
+		protected
+		PieceBuffer(
+			DirectByteBuffer	_dbb )
+		{
+			dbb	= _dbb;
+			bb	= dbb.getBuffer( DirectByteBuffer.SS_OTHER );
+		}
+		
+		protected ByteBuffer
+		getBuffer()
+		{
+			return( bb );
+		}
+		
+		protected void
+		addRef()
+		{
+			try{
+				this_mon.enter();
+				
+				refs++;
+				
+			}finally{
+				
+				this_mon.exit();
+			}
+		}
+		
+		protected void
+		release()
+		{
+			try{
+				this_mon.enter();
+				
+				if ( --refs > 0 ){
+					
+					return;
+				}
+				
+					// pool buffers are rounded up in size, a piece ends at piece_length
+				
+				bb.clear();
+				
+				bb.limit( piece_length );
+				
+				free_buffers.add( this );
+				
+			}finally{
+				
+				this_mon.exit();
+			}
+			
+			free_sem.release();
+		}
+		
+		protected void
+		destroy()
+		{
+			dbb.returnToPool();
+		}
+	}
 }
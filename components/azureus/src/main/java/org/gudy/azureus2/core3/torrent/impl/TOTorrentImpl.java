@@ -664,8 +664,17 @@ TOTorrentImpl
 			if ( torrent_hash_override == null ){
 				
 				SHA1Hasher s = new SHA1Hasher();
+				
+					// no need to re-encode if the encoding is what BEncoder would produce
+				
+				if ( info instanceof BDecoderView.MapView && ((BDecoderView.MapView)info).isCanonical()){
+					
+					torrent_hash = s.calculateHash(((BDecoderView.MapView)info).getRaw());
 					
-				torrent_hash = s.calculateHash(BEncoder.encode(info));
+				}else{
+					
+					torrent_hash = s.calculateHash(BEncoder.encode(info));
+				}
 		
 			}else{
 				
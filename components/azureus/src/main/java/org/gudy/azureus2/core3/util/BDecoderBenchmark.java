@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gudy.azureus2.core3.util;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.gudy.azureus2.core3.torrent.TOTorrentFactory;
+
+/**
+ * Compares BDecoder with BDecoderView on synthetic large torrents and resume data, run with:
+ *
+ * 	java org.gudy.azureus2.core3.util.BDecoderBenchmark [files]
+ *
+ * For each input it reports the time and, where the VM gives it, the bytes allocated per
+ * run of a full decode, a view reading a few keys, a view materialized, and for the torrent
+ * a complete deserialise and a view of the file mapped.
+ */
+
+public class
+BDecoderBenchmark
+{
+	protected static final int	WARMUP		= 5;
+	protected static final int	RUNS		= 20;
+
+	public static void
+	main(
+		String	[]args )
+	{
+		int	files = args.length > 0 ? Integer.parseInt( args[0] ) : 50000;
+
+		File	temp = null;
+
+		try{
+			final byte[]	torrent = BEncoder.encode( createTorrent( files ));
+			final byte[]	resume	= BEncoder.encode( createResume( files ));
+
+			temp = File.createTempFile( "bdecoderbenchmark", ".torrent" );
+
+			FileUtil.writeBytesAsFile( temp.getAbsolutePath(), torrent );
+
+			final File	torrent_file = temp;
+
+			System.out.println( "torrent: " + files + " files, " + torrent.length + " bytes" );
+
+			run( "  decode", new Test(){ public void run() throws Exception { BDecoder.decode( torrent ); }});
+
+			run( "  view, few keys", new Test(){ public void run() throws Exception { readTorrentKeys( BDecoderView.decode( torrent )); }});
+
+			run( "  view, mapped file", new Test(){ public void run() throws Exception { readTorrentKeys( BDecoderView.decode( torrent_file )); }});
+
+			run( "  view, materialize", new Test(){ public void run() throws Exception { BDecoderView.decode( torrent ).materialize(); }});
+
+			run( "  deserialise", new Test(){ public void run() throws Exception { TOTorrentFactory.deserialiseFromBEncodedByteArray( torrent ); }});
+
+			System.out.println( "resume: " + files + " files, " + resume.length + " bytes" );
+
+			run( "  decode", new Test(){ public void run() throws Exception { BDecoder.decode( resume ); }});
+
+			run( "  view, few keys", new Test(){ public void run() throws Exception { readResumeKeys( BDecoderView.decode( resume )); }});
+
+			run( "  view, materialize", new Test(){ public void run() throws Exception { BDecoderView.decode( resume ).materialize(); }});
+
+		}catch( Throwable e ){
+
+			Debug.printStackTrace( e );
+
+		}finally{
+
+			if ( temp != null ){
+
+				temp.delete();
+			}
+		}
+	}
+
+	protected static void
+	readTorrentKeys(
+		Map<String,Object>		map )
+	{
+		BDecoderView.MapView	info = (BDecoderView.MapView)map.get( "info" );
+
+		info.get( "name" );
+		info.get( "piece length" );
+		info.getSlice( "pieces" );
+
+		((List<?>)info.get( "files" )).size();
+	}
+
+	protected static void
+	readResumeKeys(
+		Map<String,Object>		map )
+	{
+		Map<?,?>	resume = (Map<?,?>)((Map<?,?>)map.get( "data" )).get( "resume" );
+
+		resume.get( "state" );
+		resume.get( "valid" );
+	}
+
+	protected static void
+	run(
+		String		name,
+		Test		test )
+
+		throws Exception
+	{
+		for (int i=0;i<WARMUP;i++){
+
+			test.run();
+		}
+
+		long	alloc_before	= getAllocatedBytes();
+		long	start			= SystemTime.getHighPrecisionCounter();
+
+		for (int i=0;i<RUNS;i++){
+
+			test.run();
+		}
+
+		long	elapsed		= ( SystemTime.getHighPrecisionCounter() - start )/RUNS;
+		long	alloc_after	= getAllocatedBytes();
+
+		System.out.println(
+				name + ": " + ( elapsed/1000 ) + " us/run" +
+				( alloc_before < 0 ? "" : ", " + (( alloc_after - alloc_before )/RUNS/1024 ) + " KB/run" ));
+	}
+
+	protected static long
+	getAllocatedBytes()
+	{
+		try{
+			Object	bean = ManagementFactory.getThreadMXBean();
+
+			if ( bean instanceof com.sun.management.ThreadMXBean ){
+
+				return(((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes( Thread.currentThread().getId()));
+			}
+		}catch( Throwable e ){
+		}
+
+		return( -1 );
+	}
+
+	protected static Map<String,Object>
+	createTorrent(
+		int		num_files )
+	{
+		Random	random = new Random(0);
+
+		long	piece_length	= 256*1024;
+		long	total			= 0;
+
+		List<Map<String,Object>>	files = new ArrayList<Map<String,Object>>();
+
+		for (int i=0;i<num_files;i++){
+
+			Map<String,Object>	file = new HashMap<String,Object>();
+
+			long	length = 1 + random.nextInt( 4*1024*1024 );
+
+			file.put( "length", new Long( length ));
+
+			List<byte[]>	path = new ArrayList<byte[]>();
+
+			path.add(( "directory " + ( i/100 )).getBytes());
+			path.add(( "file number " + i + ".dat" ).getBytes());
+
+			file.put( "path", path );
+
+			files.add( file );
+
+			total += length;
+		}
+
+		byte[]	pieces = new byte[(int)(( total + piece_length - 1 )/piece_length )*20];
+
+		random.nextBytes( pieces );
+
+		Map<String,Object>	info = new HashMap<String,Object>();
+
+		info.put( "name", "benchmark".getBytes());
+		info.put( "piece length", new Long( piece_length ));
+		info.put( "pieces", pieces );
+		info.put( "files", files );
+
+		Map<String,Object>	torrent = new HashMap<String,Object>();
+
+		torrent.put( "announce", "http://tracker.example.com/announce".getBytes());
+		torrent.put( "comment", "synthetic".getBytes());
+		torrent.put( "creation date", new Long( 1234567890 ));
+		torrent.put( "info", info );
+
+		return( torrent );
+	}
+
+	protected static Map<String,Object>
+	createResume(
+		int		num_files )
+	{
+		Random	random = new Random(1);
+
+		List<Map<String,Object>>	files = new ArrayList<Map<String,Object>>();
+
+		for (int i=0;i<num_files;i++){
+
+			Map<String,Object>	file = new HashMap<String,Object>();
+
+			file.put( "priority", new Long( random.nextInt( 2 )));
+			file.put( "mtime", new Long( 1234567890000L + random.nextInt()));
+			file.put( "storage_type", new Long( 1 ));
+
+			files.add( file );
+		}
+
+		byte[]	blocks = new byte[num_files*8];
+
+		random.nextBytes( blocks );
+
+		Map<String,Object>	resume = new HashMap<String,Object>();
+
+		resume.put( "state", new Long( 1 ));
+		resume.put( "valid", new Long( 1 ));
+		resume.put( "blocks", blocks );
+		resume.put( "files", files );
+
+		Map<String,Object>	data = new HashMap<String,Object>();
+
+		data.put( "resume", resume );
+
+		Map<String,Object>	root = new HashMap<String,Object>();
+
+		root.put( "data", data );
+
+		return( root );
+	}
+
+	protected interface
+	Test
+	{
+		public void
+		run()
+
+			throws Exception;
+	}
+}
@@ -0,0 +1,1190 @@
+/*
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.gudy.azureus2.core3.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A lazy view of bencoded data, the alternative to BDecoder when only part of a
+ * large structure is needed.
+ *
+ * The data is checked once up front, after that dictionaries and lists are only
+ * indexed (by offset) when first accessed and values are decoded when asked for.
+ * Byte strings come back as byte[] copies through the Map/List interfaces, as with
+ * BDecoder, or as read-only slices of the data through getSlice. The views are
+ * read-only, materialize gives the same HashMap/ArrayList tree BDecoder does.
+ *
+ * Views keep the whole of the underlying data alive so don't hold onto them.
+ */
+
+public class
+BDecoderView
+{
+	public static MapView
+	decode(
+		byte[]		data )
+
+		throws BEncodingException
+	{
+		return( decode( ByteBuffer.wrap( data )));
+	}
+
+		/**
+		 * @param buffer the data from position to limit, the buffer itself isn't changed
+		 */
+
+	public static MapView
+	decode(
+		ByteBuffer	buffer )
+
+		throws BEncodingException
+	{
+		ByteBuffer	data = buffer.slice();
+
+		if ( !data.hasRemaining()){
+
+			throw( new BEncodingException( "BDecoderView: zero length file" ));
+		}
+
+		if ( data.get( 0 ) != 'd' ){
+
+			throw( new BEncodingException( "BDecoderView: top level isn't a Map" ));
+		}
+
+		Containers	containers = new Containers( data );
+
+		return( new MapView( containers, 0, validate( containers, 0 )));
+	}
+
+		/**
+		 * maps the file read-only, note that on windows the file can't be deleted until
+		 * the mapping has been garbage collected
+		 */
+
+	public static MapView
+	decode(
+		File		file )
+
+		throws IOException
+	{
+		RandomAccessFile	raf = new RandomAccessFile( file, "r" );
+
+		try{
+			FileChannel	channel = raf.getChannel();
+
+			return( decode( channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+
+		}finally{
+
+			raf.close();
+		}
+	}
+
+		/**
+		 * @return the object with any views replaced by their BDecoder equivalent
+		 */
+
+	public static Object
+	materialize(
+		Object		obj )
+	{
+		if ( obj instanceof MapView ){
+
+			return(((MapView)obj).materialize());
+
+		}else if ( obj instanceof ListView ){
+
+			return(((ListView)obj).materialize());
+		}
+
+		return( obj );
+	}
+
+		/**
+		 * checks the structure and numbers of the value, recording where the dictionaries and
+		 * lists end so that they don't need walking again
+		 */
+
+	protected static int
+	validate(
+		Containers	containers,
+		int			pos )
+
+		throws BEncodingException
+	{
+		ByteBuffer	data	= containers.data;
+
+		int	limit = data.limit();
+
+		if ( pos >= limit ){
+
+			throw( truncated());
+		}
+
+		byte	b = data.get( pos );
+
+		if ( b == 'd' || b == 'l' ){
+
+			int	slot = containers.add( pos );
+
+			pos++;
+
+			while( true ){
+
+				if ( pos >= limit ){
+
+					throw( truncated());
+				}
+
+				if ( data.get( pos ) == 'e' ){
+
+					containers.setEnd( slot, pos + 1 );
+
+					return( pos + 1 );
+				}
+
+				if ( b == 'd' ){
+
+					pos = skipString( data, pos );
+				}
+
+				pos = validate( containers, pos );
+			}
+		}else if ( b == 'i' ){
+
+			int	end = find( data, pos + 1, 'e' );
+
+			parseLong( data, pos + 1, end );
+
+			return( end + 1 );
+
+		}else if ( b >= '0' && b <= '9' ){
+
+			return( skipString( data, pos ));
+		}
+
+		throw( new BEncodingException( "BDecoderView: unknown command '" + b + "' at " + pos ));
+	}
+
+	protected static int
+	skipString(
+		ByteBuffer	data,
+		int			pos )
+
+		throws BEncodingException
+	{
+		int	colon 	= find( data, pos, ':' );
+
+		long	length	= parseLong( data, pos, colon );
+
+		if ( length < 0 || length > data.limit() - colon - 1 ){
+
+			throw( truncated());
+		}
+
+		return( colon + 1 + (int)length );
+	}
+
+	protected static int
+	find(
+		ByteBuffer	data,
+		int			pos,
+		char		c )
+
+		throws BEncodingException
+	{
+		int	limit = data.limit();
+
+		while( pos < limit ){
+
+			if ( data.get( pos ) == c ){
+
+				return( pos );
+			}
+
+			pos++;
+		}
+
+		throw( truncated());
+	}
+
+		/**
+		 * an empty number is 0 as some borked encoders do this, as is one starting with 0,
+		 * see BDecoder
+		 */
+
+	protected static long
+	parseLong(
+		ByteBuffer	data,
+		int			start,
+		int			end )
+
+		throws BEncodingException
+	{
+		if ( end - start > 1 && data.get( start ) == '0' ){
+
+			return( 0 );
+		}
+
+		if ( end - start > 18 ){
+
+			char[]	chars = new char[end-start];
+
+			for (int i=0;i<chars.length;i++){
+
+				chars[i] = (char)data.get( start + i );
+			}
+
+			try{
+				return( Long.parseLong( new String( chars )));
+
+			}catch( NumberFormatException e ){
+
+				throw( new BEncodingException( "BDecoderView: invalid number '" + new String( chars ) + "'" ));
+			}
+		}
+
+		boolean	negative = false;
+
+		if ( start < end && data.get( start ) == '-' ){
+
+			negative = true;
+
+			start++;
+		}
+
+		long	value = 0;
+
+		for (int i=start;i<end;i++){
+
+			int	digit = data.get( i ) - '0';
+
+			if ( digit < 0 || digit > 9 ){
+
+				throw( new BEncodingException( "BDecoderView: invalid number at " + i ));
+			}
+
+			value = value*10 + digit;
+		}
+
+		return( negative?-value:value );
+	}
+
+		/**
+		 * @return the end of the value if it is encoded exactly as BEncoder would encode
+		 * its decoded form, -1 otherwise
+		 */
+
+	protected static int
+	canonicalEnd(
+		ByteBuffer	data,
+		int			pos )
+
+		throws BEncodingException
+	{
+		byte	b = data.get( pos );
+
+		if ( b == 'd' ){
+
+			pos++;
+
+			int	last_key		= -1;
+			int	last_key_len	= 0;
+
+			while( data.get( pos ) != 'e' ){
+
+				int	colon = find( data, pos, ':' );
+
+				if ( !canonicalNumber( data, pos, colon, false )){
+
+					return( -1 );
+				}
+
+				int	key		= colon + 1;
+				int	key_len	= (int)parseLong( data, pos, colon );
+
+					// BEncoder sorts keys and writes them as UTF-8
+
+				for (int i=key;i<key+key_len;i++){
+
+					if (( data.get( i ) & 0x80 ) != 0 ){
+
+						return( -1 );
+					}
+				}
+
+				if ( last_key != -1 && compare( data, last_key, last_key_len, key, key_len ) >= 0 ){
+
+					return( -1 );
+				}
+
+				last_key		= key;
+				last_key_len	= key_len;
+
+				pos = canonicalEnd( data, key + key_len );
+
+				if ( pos == -1 ){
+
+					return( -1 );
+				}
+			}
+
+			return( pos + 1 );
+
+		}else if ( b == 'l' ){
+
+			pos++;
+
+			while( data.get( pos ) != 'e' ){
+
+				pos = canonicalEnd( data, pos );
+
+				if ( pos == -1 ){
+
+					return( -1 );
+				}
+			}
+
+			return( pos + 1 );
+
+		}else if ( b == 'i' ){
+
+			int	end = find( data, pos + 1, 'e' );
+
+			return( canonicalNumber( data, pos + 1, end, true )?end + 1:-1 );
+
+		}else{
+
+			int	colon = find( data, pos, ':' );
+
+			return( canonicalNumber( data, pos, colon, false )?skipString( data, pos ):-1 );
+		}
+	}
+
+	protected static boolean
+	canonicalNumber(
+		ByteBuffer	data,
+		int			start,
+		int			end,
+		boolean		allow_negative )
+	{
+		if ( allow_negative && start < end && data.get( start ) == '-' ){
+
+			start++;
+
+				// no "-0"
+
+			if ( start < end && data.get( start ) == '0' ){
+
+				return( false );
+			}
+		}
+
+		if ( start == end || end - start > 18 ){
+
+			return( false );
+		}
+
+		return( data.get( start ) != '0' || end - start == 1 );
+	}
+
+	protected static int
+	compare(
+		ByteBuffer	data,
+		int			pos1,
+		int			len1,
+		int			pos2,
+		int			len2 )
+	{
+		int	len = Math.min( len1, len2 );
+
+		for (int i=0;i<len;i++){
+
+			int	diff = ( data.get( pos1 + i ) & 0xff ) - ( data.get( pos2 + i ) & 0xff );
+
+			if ( diff != 0 ){
+
+				return( diff );
+			}
+		}
+
+		return( len1 - len2 );
+	}
+
+	protected static Object
+	decodeValue(
+		Containers	containers,
+		int			pos,
+		int			end )
+
+		throws BEncodingException
+	{
+		ByteBuffer	data	= containers.data;
+
+		byte	b = data.get( pos );
+
+		if ( b == 'd' ){
+
+			return( new MapView( containers, pos, end ));
+
+		}else if ( b == 'l' ){
+
+			return( new ListView( containers, pos, end ));
+
+		}else if ( b == 'i' ){
+
+			return( new Long( parseLong( data, pos + 1, find( data, pos + 1, 'e' ))));
+
+		}else{
+
+			return( getBytes( data, pos ));
+		}
+	}
+
+	protected static byte[]
+	getBytes(
+		ByteBuffer	data,
+		int			pos )
+
+		throws BEncodingException
+	{
+		int	colon = find( data, pos, ':' );
+
+		byte[]	bytes = new byte[(int)parseLong( data, pos, colon )];
+
+		ByteBuffer	temp = data.duplicate();
+
+		temp.position( colon + 1 );
+
+		temp.get( bytes );
+
+		return( bytes );
+	}
+
+	protected static ByteBuffer
+	getSlice(
+		ByteBuffer	data,
+		int			start,
+		int			end )
+	{
+		ByteBuffer	temp = data.duplicate();
+
+		temp.limit( end );
+		temp.position( start );
+
+		return( temp.slice().asReadOnlyBuffer());
+	}
+
+	protected static String
+	getString(
+		ByteBuffer	data,
+		int			pos,
+		int			len )
+	{
+		char[]	chars = new char[len];
+
+		for (int i=0;i<len;i++){
+
+			chars[i] = (char)( data.get( pos + i ) & 0xff );
+		}
+
+		return( StringInterner.intern( new String( chars )));
+	}
+
+	protected static Object
+	materialize(
+		Containers	containers,
+		int			pos )
+
+		throws BEncodingException
+	{
+		ByteBuffer	data	= containers.data;
+
+		byte	b = data.get( pos );
+
+		if ( b == 'd' ){
+
+			LightHashMap<String,Object>	map = new LightHashMap<String,Object>();
+
+			pos++;
+
+			while( data.get( pos ) != 'e' ){
+
+				int	colon 	= find( data, pos, ':' );
+				int	key_len	= (int)parseLong( data, pos, colon );
+
+				String	key = getString( data, colon + 1, key_len );
+
+				pos = colon + 1 + key_len;
+
+				map.put( key, materialize( containers, pos ));
+
+				pos = containers.skip( pos );
+			}
+
+			map.compactify( -0.9f );
+
+			return( map );
+
+		}else if ( b == 'l' ){
+
+			ArrayList<Object>	list = new ArrayList<Object>();
+
+			pos++;
+
+			while( data.get( pos ) != 'e' ){
+
+				list.add( materialize( containers, pos ));
+
+				pos = containers.skip( pos );
+			}
+
+			list.trimToSize();
+
+			return( list );
+
+		}else if ( b == 'i' ){
+
+			return( new Long( parseLong( data, pos + 1, find( data, pos + 1, 'e' ))));
+
+		}else{
+
+			return( getBytes( data, pos ));
+		}
+	}
+
+	protected static BEncodingException
+	truncated()
+	{
+		return( new BEncodingException( "BDecoderView: invalid input data, truncated" ));
+	}
+
+	protected static RuntimeException
+	unexpected(
+		BEncodingException	e )
+	{
+			// the data was checked when the view was created so this can't happen
+
+		return( new RuntimeException( "BDecoderView: " + e.getMessage()));
+	}
+
+	public static class
+	MapView
+		extends AbstractMap<String,Object>
+	{
+		private final Containers	containers;
+		private final ByteBuffer	data;
+		private final int			start;
+		private final int			end;
+
+		private int			size	= -1;
+		private int[]		entries;	// key, value and value end of each entry
+
+		private String[]	keys;
+		private Object[]	values;
+
+		private Boolean		canonical;
+
+		private Set<Map.Entry<String,Object>>	entry_set;
+
+		protected
+		MapView(
+			Containers	_containers,
+			int			_start,
+			int			_end )
+		{
+			containers	= _containers;
+			data		= containers.data;
+			start	= _start;
+			end		= _end;
+		}
+
+		protected synchronized void
+		index()
+		{
+			if ( size != -1 ){
+
+				return;
+			}
+
+			int[]	ents	= new int[3*8];
+
+			int	num	= 0;
+			int	pos	= start + 1;
+
+			try{
+				while( data.get( pos ) != 'e' ){
+
+					if ( 3*num == ents.length ){
+
+						ents	= grow( ents );
+					}
+
+					int	colon = find( data, pos, ':' );
+
+					int	key		= colon + 1;
+					int	value	= key + (int)parseLong( data, pos, colon );
+
+					pos = containers.skip( value );
+
+					ents[3*num]		= key;
+					ents[3*num+1]	= value;
+					ents[3*num+2]	= pos;
+
+					num++;
+				}
+			}catch( BEncodingException e ){
+
+				throw( unexpected( e ));
+			}
+
+			entries	= ents;
+
+			keys	= new String[num];
+			values	= new Object[num];
+
+			size	= num;
+		}
+
+		protected int
+		indexOf(
+			Object		key )
+		{
+			if ( !( key instanceof String )){
+
+				return( -1 );
+			}
+
+			index();
+
+			String	str = (String)key;
+
+			int	len	= str.length();
+
+				// last one wins for duplicates, as with BDecoder
+
+			for (int i=size-1;i>=0;i--){
+
+				int	pos = entries[3*i];
+
+				if ( entries[3*i+1] - pos != len ){
+
+					continue;
+				}
+
+				boolean	match = true;
+
+				for (int j=0;j<len;j++){
+
+					if ( str.charAt( j ) != ( data.get( pos + j ) & 0xff )){
+
+						match = false;
+
+						break;
+					}
+				}
+
+				if ( match ){
+
+					return( i );
+				}
+			}
+
+			return( -1 );
+		}
+
+		protected synchronized String
+		getKey(
+			int		i )
+		{
+			String	key = keys[i];
+
+			if ( key == null ){
+
+				key = keys[i] = getString( data, entries[3*i], entries[3*i+1] - entries[3*i] );
+			}
+
+			return( key );
+		}
+
+		protected synchronized Object
+		getValue(
+			int		i )
+		{
+			Object	value = values[i];
+
+			if ( value == null ){
+
+				try{
+					value = values[i] = decodeValue( containers, entries[3*i+1], entries[3*i+2] );
+
+				}catch( BEncodingException e ){
+
+					throw( unexpected( e ));
+				}
+			}
+
+			return( value );
+		}
+
+		public int
+		size()
+		{
+			index();
+
+			return( size );
+		}
+
+		public boolean
+		containsKey(
+			Object		key )
+		{
+			return( indexOf( key ) != -1 );
+		}
+
+		public Object
+		get(
+			Object		key )
+		{
+			int	i = indexOf( key );
+
+			return( i==-1?null:getValue( i ));
+		}
+
+			/**
+			 * @return the byte string value without copying, null if missing or not a byte string
+			 */
+
+		public ByteBuffer
+		getSlice(
+			String		key )
+		{
+			int	i = indexOf( key );
+
+			if ( i == -1 ){
+
+				return( null );
+			}
+
+			int	pos = entries[3*i+1];
+
+			byte	b = data.get( pos );
+
+			if ( b < '0' || b > '9' ){
+
+				return( null );
+			}
+
+			try{
+				int	colon = find( data, pos, ':' );
+
+				return( BDecoderView.getSlice( data, colon + 1, entries[3*i+2] ));
+
+			}catch( BEncodingException e ){
+
+				throw( unexpected( e ));
+			}
+		}
+
+			/**
+			 * @return the encoded form of this dictionary as found in the data
+			 */
+
+		public ByteBuffer
+		getRaw()
+		{
+			return( BDecoderView.getSlice( data, start, end ));
+		}
+
+			/**
+			 * @return true if the raw form is what BEncoder gives for the materialized form,
+			 * i.e. hashes of either are the same
+			 */
+
+		public synchronized boolean
+		isCanonical()
+		{
+			if ( canonical == null ){
+
+				try{
+					canonical = Boolean.valueOf( canonicalEnd( data, start ) == end );
+
+				}catch( BEncodingException e ){
+
+					throw( unexpected( e ));
+				}
+			}
+
+			return( canonical.booleanValue());
+		}
+
+		@SuppressWarnings("unchecked")
+		public Map<String,Object>
+		materialize()
+		{
+			try{
+				return((Map<String,Object>)BDecoderView.materialize( containers, start ));
+
+			}catch( BEncodingException e ){
+
+				throw( unexpected( e ));
+			}
+		}
+
+		public Set<Map.Entry<String,Object>>
+		entrySet()
+		{
+			if ( entry_set == null ){
+
+				entry_set =
+					new AbstractSet<Map.Entry<String,Object>>()
+					{
+						public int
+						size()
+						{
+							return( MapView.this.size());
+						}
+
+						public Iterator<Map.Entry<String,Object>>
+						iterator()
+						{
+							index();
+
+							return(
+								new Iterator<Map.Entry<String,Object>>()
+								{
+									private int	pos;
+
+									public boolean
+									hasNext()
+									{
+										return( pos < size );
+									}
+
+									public Map.Entry<String,Object>
+									next()
+									{
+										if ( pos >= size ){
+
+											throw( new NoSuchElementException());
+										}
+
+										return( new Entry( pos++ ));
+									}
+
+									public void
+									remove()
+									{
+										throw( new UnsupportedOperationException());
+									}
+								});
+						}
+					};
+			}
+
+			return( entry_set );
+		}
+
+			// values are decoded on demand so iterating the keys doesn't decode them
+
+		private class
+		Entry
+			implements Map.Entry<String,Object>
+		{
+			private final int	index;
+
+			private
+			Entry(
+				int		_index )
+			{
+				index	= _index;
+			}
+
+			public String
+			getKey()
+			{
+				return( MapView.this.getKey( index ));
+			}
+
+			public Object
+			getValue()
+			{
+				return( MapView.this.getValue( index ));
+			}
+
+			public Object
+			setValue(
+				Object	value )
+			{
+				throw( new UnsupportedOperationException());
+			}
+
+			public boolean
+			equals(
+				Object	o )
+			{
+				if ( !( o instanceof Map.Entry )){
+
+					return( false );
+				}
+
+				Map.Entry<?,?>	e = (Map.Entry<?,?>)o;
+
+				return( getKey().equals( e.getKey()) && getValue().equals( e.getValue()));
+			}
+
+			public int
+			hashCode()
+			{
+				return( getKey().hashCode() ^ getValue().hashCode());
+			}
+		}
+	}
+
+	public static class
+	ListView
+		extends AbstractList<Object>
+	{
+		private final Containers	containers;
+		private final ByteBuffer	data;
+		private final int			start;
+		private final int			end;
+
+		private int			size	= -1;
+		private int[]		value_pos;
+		private Object[]	values;
+
+		protected
+		ListView(
+			Containers	_containers,
+			int			_start,
+			int			_end )
+		{
+			containers	= _containers;
+			data		= containers.data;
+			start	= _start;
+			end		= _end;
+		}
+
+		protected synchronized void
+		index()
+		{
+			if ( size != -1 ){
+
+				return;
+			}
+
+			int[]	vp	= new int[8];
+
+			int	num	= 0;
+			int	pos	= start + 1;
+
+			try{
+				while( data.get( pos ) != 'e' ){
+
+					if ( num == vp.length ){
+
+						vp	= grow( vp );
+					}
+
+					vp[num++] = pos;
+
+					pos = containers.skip( pos );
+				}
+			}catch( BEncodingException e ){
+
+				throw( unexpected( e ));
+			}
+
+			value_pos	= vp;
+			values		= new Object[num];
+			size		= num;
+		}
+
+		public int
+		size()
+		{
+			index();
+
+			return( size );
+		}
+
+		public synchronized Object
+		get(
+			int		i )
+		{
+			index();
+
+			if ( i < 0 || i >= size ){
+
+				throw( new IndexOutOfBoundsException( "Index: " + i + ", Size: " + size ));
+			}
+
+			Object	value = values[i];
+
+			if ( value == null ){
+
+				try{
+					value = values[i] = decodeValue( containers, value_pos[i], i+1<size?value_pos[i+1]:end-1 );
+
+				}catch( BEncodingException e ){
+
+					throw( unexpected( e ));
+				}
+			}
+
+			return( value );
+		}
+
+			/**
+			 * @return the encoded form of this list as found in the data
+			 */
+
+		public ByteBuffer
+		getRaw()
+		{
+			return( BDecoderView.getSlice( data, start, end ));
+		}
+
+		@SuppressWarnings("unchecked")
+		public List<Object>
+		materialize()
+		{
+			try{
+				return((List<Object>)BDecoderView.materialize( containers, start ));
+
+			}catch( BEncodingException e ){
+
+				throw( unexpected( e ));
+			}
+		}
+	}
+
+		/**
+		 * where each dictionary and list starts and ends, in order of start
+		 */
+
+	protected static class
+	Containers
+	{
+		private final ByteBuffer	data;
+
+		private int[]	starts	= new int[16];
+		private int[]	ends	= new int[16];
+		private int[]	nexts	= new int[16];	// the slot after the contents
+		private int		num;
+
+			// views mostly walk siblings or go down into the first child, hint is the
+			// slot following the last one looked up
+
+		private int		hint;
+
+		protected
+		Containers(
+			ByteBuffer	_data )
+		{
+			data	= _data;
+		}
+
+		protected int
+		add(
+			int		start )
+		{
+			if ( num == starts.length ){
+
+				starts	= grow( starts );
+				ends	= grow( ends );
+				nexts	= grow( nexts );
+			}
+
+			starts[num] = start;
+
+			return( num++ );
+		}
+
+		protected void
+		setEnd(
+			int		slot,
+			int		end )
+		{
+			ends[slot]	= end;
+			nexts[slot]	= num;
+		}
+
+		protected int
+		getEnd(
+			int		start )
+		{
+			int	slot = hint;
+
+			if ( slot >= num || starts[slot] != start ){
+
+				slot++;
+
+				if ( slot >= num || starts[slot] != start ){
+
+					slot = Arrays.binarySearch( starts, 0, num, start );
+				}
+			}
+
+			hint = nexts[slot];
+
+			return( ends[slot] );
+		}
+
+			/**
+			 * @return the end of the value at pos, which has been validated
+			 */
+
+		protected int
+		skip(
+			int		pos )
+
+			throws BEncodingException
+		{
+			byte	b = data.get( pos );
+
+			if ( b == 'd' || b == 'l' ){
+
+				return( getEnd( pos ));
+
+			}else if ( b == 'i' ){
+
+				return( find( data, pos + 1, 'e' ) + 1 );
+
+			}else{
+
+				return( skipString( data, pos ));
+			}
+		}
+	}
+
+	protected static int[]
+	grow(
+		int[]	array )
+	{
+		int[]	res = new int[array.length*2];
+
+		System.arraycopy( array, 0, res, 0, array.length );
+
+		return( res );
+	}
+}
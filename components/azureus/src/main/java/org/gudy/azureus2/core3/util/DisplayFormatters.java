@@ -607,6 +607,15 @@ DisplayFormatters
   		return "";
 	}
 
+	private static String
+	formatCheckRate(
+		DiskManager		diskManager )
+	{
+		long rate = diskManager == null ? 0 : diskManager.getCheckRate();
+
+		return( rate > 0 ? " (" + formatByteCountToKiBEtcPerSec( rate ) + ")" : "" );
+	}
+
 	public static String
 	formatDownloadStatus(
 		DownloadManager		manager )
@@ -638,7 +647,7 @@ DisplayFormatters
 					}
 
 					tmp = ManagerItem_seeding + " + " + ManagerItem_checking + ": "
-							+ formatPercentFromThousands(done);
+							+ formatPercentFromThousands(done) + formatCheckRate(diskManager);
 
 				} else if (manager.getPeerManager() != null
 						&& manager.getPeerManager().isSuperSeedMode()) {
@@ -678,7 +687,8 @@ DisplayFormatters
 			}
 			case DownloadManager.STATE_CHECKING:
 				tmp = ManagerItem_checking + ": "
-						+ formatPercentFromThousands(manager.getStats().getCompleted());
+						+ formatPercentFromThousands(manager.getStats().getCompleted())
+						+ formatCheckRate(manager.getDiskManager());
 				break;
 
 			case DownloadManager.STATE_FINISHING:
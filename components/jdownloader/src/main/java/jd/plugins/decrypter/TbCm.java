@@ -63,6 +63,7 @@ import com.frostwire.mp4.DefaultMp4Builder;
 import com.frostwire.mp4.IsoFile;
 import com.frostwire.mp4.Movie;
 import com.frostwire.mp4.MovieCreator;
+import com.frostwire.mp4.Mp4AudioDemuxer;
 import com.frostwire.mp4.Track;
 import com.frostwire.mp4.boxes.Box;
 import com.frostwire.mp4.boxes.FileTypeBox;
@@ -716,10 +717,46 @@ public class TbCm extends PluginForDecrypt {
         String filename = dl.getFileOutput();
         try {
             String mp4Filename = filename.replace(".m4a", ".mp4");
-            final String jpgFilename = filename.replace(".m4a", ".jpg");
+            String jpgFilename = filename.replace(".m4a", ".jpg");
             downloadThumbnail(dl, jpgFilename);
             new File(filename).renameTo(new File(mp4Filename));
-            FileInputStream fis = new FileInputStream(mp4Filename);
+
+            boolean demuxed;
+            try {
+                // only the moov box is held in memory, the samples are copied file to file
+                Mp4AudioDemuxer.demux(new File(mp4Filename), new File(filename), addThumbnailBox(jpgFilename));
+                demuxed = true;
+            } catch (IOException e) {
+                TbCm.LOG.info("Unable to stream MP4 audio (" + e.getMessage() + "), rebuilding it in memory - " + filename);
+                demuxed = demuxMP4AudioInMemory(mp4Filename, filename, jpgFilename);
+            }
+
+            if (!demuxed) {
+                return false;
+            }
+
+            if (!new File(mp4Filename).delete()) {
+                new File(mp4Filename).deleteOnExit();
+            }
+            File jpgFile = new File(jpgFilename);
+            if (jpgFile.exists() && !jpgFile.delete()) {
+                jpgFile.deleteOnExit();
+            }
+
+            return true;
+        } catch (Throwable e) {
+            TbCm.LOG.info("Error demuxing MP4 audio - " + filename);
+            return false;
+        }
+    }
+
+    /**
+     * Fallback for the files {@link Mp4AudioDemuxer} can't stream, it loads the
+     * whole movie before writing the audio track.
+     */
+    private static boolean demuxMP4AudioInMemory(String mp4Filename, String audioFilename, final String jpgFilename) throws IOException {
+        FileInputStream fis = new FileInputStream(mp4Filename);
+        try {
             FileChannel inFC = fis.getChannel();
             Movie inVideo = MovieCreator.build(inFC);
 
@@ -733,7 +770,7 @@ public class TbCm extends PluginForDecrypt {
             }
 
             if (audioTrack == null) {
-                TbCm.LOG.info("No Audio track in MP4 file!!! - " + filename);
+                TbCm.LOG.info("No Audio track in MP4 file!!! - " + mp4Filename);
                 return false;
             }
 
@@ -745,26 +782,17 @@ public class TbCm extends PluginForDecrypt {
                     return addThumbnailBox(jpgFilename);
                 };
             }.build(outMovie);
-            String audioFilename = filename;
             FileOutputStream fos = new FileOutputStream(audioFilename);
-            out.getBoxes(FileTypeBox.class).get(0).setMajorBrand("M4A ");
-            out.getBox(fos.getChannel());
-            fos.close();
-
-            if (!new File(mp4Filename).delete()) {
-                new File(mp4Filename).deleteOnExit();
-            }
-            File jpgFile = new File(jpgFilename);
-            if (jpgFile.exists() && !jpgFile.delete()) {
-                jpgFile.deleteOnExit();
+            try {
+                out.getBoxes(FileTypeBox.class).get(0).setMajorBrand("M4A ");
+                out.getBox(fos.getChannel());
+            } finally {
+                fos.close();
             }
 
-            fis.close();
-
             return true;
-        } catch (Throwable e) {
-            TbCm.LOG.info("Error demuxing MP4 audio - " + filename);
-            return false;
+        } finally {
+            fis.close();
         }
     }
     
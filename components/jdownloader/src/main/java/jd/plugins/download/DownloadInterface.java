@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import jd.controlling.GarbageController;
@@ -98,6 +99,12 @@ abstract public class DownloadInterface {
 
         private boolean                         clonedconnection     = false;
 
+        private long                            writeTime            = 0;
+
+        private long                            startTime            = 0;
+
+        private long                            endTime              = 0;
+
         /**
          * Die Connection wird entsprechend der start und endbytes neu
          * aufgebaut.
@@ -129,6 +136,26 @@ abstract public class DownloadInterface {
             chunkBytesLoaded += limit;
         }
 
+        private void addWriteTime(long nanos) {
+            writeTime += nanos;
+        }
+
+        /**
+         * time this chunk spent writing its buffer to the file, in ms
+         */
+        public long getWriteTime() {
+            return writeTime / 1000000;
+        }
+
+        /**
+         * average speed of this chunk since it started, in bytes/s
+         */
+        public long getAverageSpeed() {
+            if (startTime <= 0) return 0;
+            long elapsed = (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+            return elapsed > 0 ? chunkBytesLoaded * 1000 / elapsed : 0;
+        }
+
         /**
          * is this Chunk still in progress?
          * 
@@ -278,6 +305,7 @@ abstract public class DownloadInterface {
             if (endByte > 0) bytes2Do = (endByte - startByte) + 1;
             try {
                 chunkinprogress = true;
+                startTime = System.currentTimeMillis();
                 connection.setReadTimeout(getReadTimeout());
                 connection.setConnectTimeout(getRequestTimeout());
                 inputStream = new MeteredThrottledInputStream(connection.getInputStream(), new AverageSpeedMeter(10));
@@ -415,6 +443,7 @@ abstract public class DownloadInterface {
                 ReusableByteArrayOutputStreamPool.reuseReusableByteArrayOutputStream(buffer);
                 buffer = null;
                 chunkinprogress = false;
+                endTime = System.currentTimeMillis();
                 try {
                     inputStream.close();
                 } catch (Throwable e) {
@@ -757,6 +786,10 @@ abstract public class DownloadInterface {
 
     protected long                            totaleLinkBytesLoaded            = 0;
 
+    private final AtomicLong                  bytesWritten                     = new AtomicLong();
+
+    private final AtomicLong                  writeTime                        = new AtomicLong();
+
     public long getTotaleLinkBytesLoaded() {
         return totaleLinkBytesLoaded;
     }
@@ -1421,18 +1454,43 @@ abstract public class DownloadInterface {
         }
     }
 
-    protected synchronized boolean writeBytes(Chunk chunk) {
-        return writeChunkBytes(chunk);
+    /**
+     * not synchronized, chunks write their own ranges of the file at the same
+     * time, writeChunkBytes has to be thread safe
+     */
+    protected boolean writeBytes(Chunk chunk) {
+        int size = chunk.buffer.size();
+        long start = System.nanoTime();
+        try {
+            return writeChunkBytes(chunk);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            chunk.addWriteTime(elapsed);
+            writeTime.addAndGet(elapsed);
+            bytesWritten.addAndGet(size);
+        }
     }
 
     /**
-     * Schreibt den puffer eines chunks in die zugehoerige Datei
+     * Schreibt den puffer eines chunks in die zugehoerige Datei. Wird von
+     * allen chunks gleichzeitig aufgerufen.
      * 
      * @param buffer
      * @param currentBytePosition
      */
     abstract protected boolean writeChunkBytes(Chunk chunk);
 
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * time all chunks together spent writing, in ms
+     */
+    public long getWriteTime() {
+        return writeTime.get() / 1000000;
+    }
+
     public void setFilesizeCheck(boolean b) {
         this.doFileSizeCheck = b;
     }
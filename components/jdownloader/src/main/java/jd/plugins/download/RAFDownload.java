@@ -20,7 +20,12 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 
 import jd.controlling.JDLogger;
@@ -38,13 +43,23 @@ import org.appwork.utils.IO;
 import org.appwork.utils.Regex;
 import org.appwork.utils.formatter.TimeFormatter;
 import org.appwork.utils.logging.Log;
+import org.jdownloader.settings.FileAllocation;
 import org.jdownloader.settings.GeneralSettings;
 import org.jdownloader.translate._JDT;
 
 public class RAFDownload extends DownloadInterface {
 
-    public static final Object HASHCHECKLOCK = new Object();
-    private RandomAccessFile   outputFile;
+    public static final Object                   HASHCHECKLOCK     = new Object();
+
+    /*
+     * chunk buffers are heap arrays, they are copied to direct buffers for the
+     * channel, a few are kept for all downloads
+     */
+    private static final int                     WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final BlockingQueue<ByteBuffer> WRITE_BUFFERS     = new ArrayBlockingQueue<ByteBuffer>(16);
+
+    private RandomAccessFile                     outputFile;
+    private FileChannel                          outputChannel;
 
     public RAFDownload(PluginForHost plugin, DownloadLink downloadLink, Request request) throws IOException, PluginException {
         super(plugin, downloadLink, request);
@@ -58,6 +73,10 @@ public class RAFDownload extends DownloadInterface {
                 c.closeConnections();
             }
         } finally {
+            logger.info("Wrote " + getBytesWritten() + " bytes, " + getWriteTime() + " ms in writes");
+            for (Chunk c : this.getChunks()) {
+                logger.info("Chunk " + c.getID() + ": " + (c.getAverageSpeed() / 1024) + " KB/s, " + c.getWriteTime() + " ms in writes");
+            }
             logger.info("Close File. Let AV programs run");
             try {
                 outputFile.close();
@@ -214,7 +233,7 @@ public class RAFDownload extends DownloadInterface {
         }
     }
 
-    private void setupVirginStart() throws FileNotFoundException {
+    private void setupVirginStart() throws IOException {
         Chunk chunk;
         totaleLinkBytesLoaded = 0;
         downloadLink.setDownloadCurrent(0);
@@ -236,6 +255,7 @@ public class RAFDownload extends DownloadInterface {
         logger.finer("Start Download in " + getChunkNum() + " chunks. Chunksize: " + partSize);
 
         createOutputChannel();
+        allocateOutputFile();
         downloadLink.setChunksProgress(new long[chunkNum]);
 
         addToChunksInProgress(getChunkNum());
@@ -270,6 +290,27 @@ public class RAFDownload extends DownloadInterface {
             new File(downloadLink.getFileOutput()).getParentFile().mkdirs();
         }
         outputFile = new RandomAccessFile(downloadLink.getFileOutput() + ".part", "rw");
+        outputChannel = outputFile.getChannel();
+    }
+
+    private void allocateOutputFile() throws IOException {
+        FileAllocation allocation = JsonConfig.create(GeneralSettings.class).getFileAllocation();
+        if (fileSize <= 0 || allocation == null || allocation == FileAllocation.NONE) return;
+        long length = outputFile.length();
+        if (length >= fileSize) return;
+        logger.finer("Allocate " + allocation + ": " + fileSize);
+        if (allocation == FileAllocation.SPARSE) {
+            outputFile.setLength(fileSize);
+        } else {
+            ByteBuffer zeros = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            while (length < fileSize) {
+                zeros.clear();
+                zeros.limit((int) Math.min(zeros.capacity(), fileSize - length));
+                while (zeros.hasRemaining()) {
+                    length += outputChannel.write(zeros, length);
+                }
+            }
+        }
     }
 
     private void setupResume() throws FileNotFoundException {
@@ -294,22 +335,51 @@ public class RAFDownload extends DownloadInterface {
 
     }
 
+    /**
+     * positional writes, chunks write to their own ranges without a lock
+     */
     @Override
     protected boolean writeChunkBytes(Chunk chunk) {
+        ByteBuffer buffer = WRITE_BUFFERS.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        }
         try {
-            synchronized (outputFile) {
-                outputFile.seek(chunk.getWritePosition());
-                outputFile.write(chunk.buffer.getInternalBuffer(), 0, chunk.buffer.size());
-                if (chunk.getID() >= 0) {
-                    downloadLink.getChunksProgress()[chunk.getID()] = chunk.getCurrentBytesPosition() - 1;
+            byte[] data = chunk.buffer.getInternalBuffer();
+            int size = chunk.buffer.size();
+            long position = chunk.getWritePosition();
+            int offset = 0;
+            while (offset < size) {
+                int length = Math.min(buffer.capacity(), size - offset);
+                buffer.clear();
+                buffer.put(data, offset, length);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += outputChannel.write(buffer, position);
                 }
-                return true;
+                offset += length;
+            }
+            if (chunk.getID() >= 0) {
+                downloadLink.getChunksProgress()[chunk.getID()] = chunk.getCurrentBytesPosition() - 1;
+            }
+            return true;
+        } catch (ClosedChannelException e) {
+            /* an interrupted chunk closes the channel for all of them */
+            if (externalDownloadStop() || Thread.currentThread().isInterrupted()) {
+                logger.info("Write aborted: " + e);
+                return false;
             }
+            JDLogger.exception(e);
+            error(LinkStatus.ERROR_LOCAL_IO, Exceptions.getStackTrace(e));
+            addException(e);
+            return false;
         } catch (Exception e) {
             JDLogger.exception(e);
             error(LinkStatus.ERROR_LOCAL_IO, Exceptions.getStackTrace(e));
             addException(e);
             return false;
+        } finally {
+            WRITE_BUFFERS.offer(buffer);
         }
     }
 
@@ -0,0 +1,10 @@
+package org.jdownloader.settings;
+
+public enum FileAllocation {
+    /* the file grows while chunks write to it */
+    NONE,
+    /* the length is set up front, most file systems keep it sparse */
+    SPARSE,
+    /* the whole file is written with zeros up front */
+    FULL
+}
@@ -98,6 +98,11 @@ public interface GeneralSettings extends ConfigInterface {
     @DefaultEnumValue("ASK_FOR_EACH_FILE")
     IfFileExistsAction getIfFileExistsAction();
 
+    @AboutConfig
+    @Description("allocate the file before a download starts: NONE, SPARSE (set the length only) or FULL (write zeros)")
+    @DefaultEnumValue("NONE")
+    FileAllocation getFileAllocation();
+
     @AboutConfig
     @Description("max buffer size for write operations in kb")
     @SpinnerValidator(min = 100, max = 10240)
@@ -222,6 +227,8 @@ public interface GeneralSettings extends ConfigInterface {
 
     void setDownloadSpeedLimitEnabled(boolean b);
 
+    void setFileAllocation(FileAllocation allocation);
+
     void setFilterRegex(boolean b);
 
     void setFlushBufferLevel(int level);
@@ -12,6 +12,16 @@ public class Mp3File extends FileWrapper {
 	private static final int XING_MARKER_OFFSET_1 = 13;
 	private static final int XING_MARKER_OFFSET_2 = 21;
 	private static final int XING_MARKER_OFFSET_3 = 36;
+	private static final int VBRI_MARKER_OFFSET = 36;
+	
+	/** How far after the ID3v2 tag the estimation looks for the first frame */
+	private static final int MAX_SYNC_SEARCH_LENGTH = 1024 * 1024;
+	private static final int SYNC_SEARCH_BUFFER_LENGTH = 16384;
+	/** The longest frame, MPEG 2.5 layer II at 160 kbps and 8 kHz, plus the next header */
+	private static final int MAX_FRAME_PAIR_SPAN = 2881 + 4;
+	/** Runs of frames read at evenly spaced offsets when there is no VBR header */
+	private static final int SAMPLE_RUNS = 16;
+	private static final int SAMPLE_BUFFER_LENGTH = 16384;
 
 	protected int bufferLength;
 	private int xingOffset = -1;
@@ -21,6 +31,7 @@ public class Mp3File extends FileWrapper {
 	private Map<Integer, MutableInteger> bitrates = new HashMap<Integer, MutableInteger>();
 	private int xingBitrate;
 	private double bitrate = 0;
+	private long lengthInMilliseconds = -1;
 	private String channelMode;
 	private String emphasis;
 	private String layer;
@@ -37,18 +48,29 @@ public class Mp3File extends FileWrapper {
 	protected Mp3File() {
 	}
 
+	/**
+	 * Reads the tags and estimates the length and bitrate from the frame headers,
+	 * see {@link #Mp3File(String, int, boolean)}.
+	 */
 	public Mp3File(String filename) throws IOException, UnsupportedTagException, InvalidDataException {
-		this(filename, DEFAULT_BUFFER_LENGTH, true);
+		this(filename, DEFAULT_BUFFER_LENGTH, false);
 	}
 
 	public Mp3File(String filename, int bufferLength) throws IOException, UnsupportedTagException, InvalidDataException {
-		this(filename, bufferLength, true);
+		this(filename, bufferLength, false);
 	}
 	
 	public Mp3File(String filename, boolean scanFile) throws IOException, UnsupportedTagException, InvalidDataException {
 		this(filename, DEFAULT_BUFFER_LENGTH, scanFile);
 	}
 	
+	/**
+	 * Without <code>scanFile</code> the length and bitrate come from the Xing, Info
+	 * or VBRI header of the first frame, or else from a sample of frames, reading a
+	 * few KB whatever the size of the file. With it every frame is read, which is
+	 * exact but reads the whole file, and the data after the last frame is kept as
+	 * the custom tag.
+	 */
 	public Mp3File(String filename, int bufferLength, boolean scanFile) throws IOException, UnsupportedTagException, InvalidDataException {		
 		super(filename);
 		if (bufferLength < MINIMUM_BUFFER_LENGTH + 1) throw new IllegalArgumentException("Buffer too small");
@@ -61,7 +83,11 @@ public class Mp3File extends FileWrapper {
 		RandomAccessFile file = new RandomAccessFile(filename, "r");
 		try {
 			initId3v1Tag(file);
-			scanFile(file);
+			if (scanFile) {
+				scanFile(file);
+			} else {
+				estimateFile(file);
+			}
 			if (startOffset < 0) {
 				throw new InvalidDataException("No mpegs frames found");
 			}
@@ -110,9 +136,6 @@ public class Mp3File extends FileWrapper {
 						int offset = 0;
 						if (startOffset < 0) {
 							offset = scanBlockForStart(bytes, bytesRead, fileOffset, offset);
-							if (startOffset >= 0 && ! scanFile) {
-								return;
-							}
 							lastOffset = startOffset;
 						}
 						offset = scanBlock(bytes, bytesRead, fileOffset, offset);
@@ -138,6 +161,202 @@ public class Mp3File extends FileWrapper {
 		}
 	}
 
+	private void estimateFile(RandomAccessFile file) throws IOException {
+		int frameOffset = findFirstFrame(file);
+		if (frameOffset < 0) {
+			return;
+		}
+
+		byte[] bytes = new byte[SAMPLE_BUFFER_LENGTH];
+		file.seek(frameOffset);
+		int bytesRead = file.read(bytes, 0, bytes.length);
+
+		MpegFrame frame;
+		try {
+			frame = new MpegFrame(bytes[0], bytes[1], bytes[2], bytes[3]);
+		} catch (InvalidDataException e) {
+			return;
+		}
+
+		channelMode = frame.getChannelMode();
+		emphasis = frame.getEmphasis();
+		layer = frame.getLayer();
+		modeExtension = frame.getModeExtension();
+		sampleRate = frame.getSampleRate();
+		version = frame.getVersion();
+		copyright = frame.isCopyright();
+		original = frame.isOriginal();
+
+		long headerFrames = -1;
+		long headerBytes = -1;
+
+		int xingMarker = xingMarkerOffset(bytes, 0);
+		if (xingMarker >= 0 && xingMarker + 16 <= bytesRead) {
+			int flags = BufferTools.unpackInteger(bytes[xingMarker + 4], bytes[xingMarker + 5], bytes[xingMarker + 6], bytes[xingMarker + 7]);
+			int pos = xingMarker + 8;
+			if ((flags & 1) != 0) {
+				headerFrames = unpackUnsignedInteger(bytes, pos);
+				pos += 4;
+			}
+			if ((flags & 2) != 0) {
+				headerBytes = unpackUnsignedInteger(bytes, pos);
+			}
+		} else if (bytesRead >= VBRI_MARKER_OFFSET + 18 && "VBRI".equals(BufferTools.byteBufferToString(bytes, VBRI_MARKER_OFFSET, 4))) {
+			headerBytes = unpackUnsignedInteger(bytes, VBRI_MARKER_OFFSET + 10);
+			headerFrames = unpackUnsignedInteger(bytes, VBRI_MARKER_OFFSET + 14);
+		} else {
+			xingMarker = -2;
+		}
+
+		if (xingMarker != -2) {
+			// the header frame carries no audio
+			xingOffset = frameOffset;
+			xingBitrate = frame.getBitrate();
+			startOffset = frameOffset + frame.getLengthInBytes();
+		} else {
+			startOffset = frameOffset;
+		}
+		endOffset = maxEndOffset() - 1;
+
+		double sampledBitrate = sampleFrames(file, frame);
+
+		if (headerFrames > 0 && sampleRate > 0) {
+			frameCount = (int) headerFrames;
+			lengthInMilliseconds = headerFrames * frame.getSamplesPerFrame() * 1000 / sampleRate;
+			long audioBytes = headerBytes > 0 ? headerBytes : endOffset - startOffset + 1;
+			if (lengthInMilliseconds > 0) {
+				bitrate = 8.0 * audioBytes / lengthInMilliseconds;
+			}
+		} else if (sampledBitrate > 0) {
+			bitrate = sampledBitrate;
+			frameCount = (int) ((endOffset - startOffset + 1) / (frame.getSamplesPerFrame() / 8.0 * bitrate * 1000 / sampleRate));
+		} else {
+			bitrate = frame.getBitrate();
+		}
+	}
+
+	/**
+	 * @return the offset of the first frame header followed by another one of the
+	 * same stream, -1 if there is none near the start
+	 */
+	private int findFirstFrame(RandomAccessFile file) throws IOException {
+		byte[] bytes = new byte[SYNC_SEARCH_BUFFER_LENGTH];
+		int fileOffset = preScanFile(file);
+		int limit = Math.min(maxEndOffset(), fileOffset + MAX_SYNC_SEARCH_LENGTH);
+
+		while (fileOffset < limit) {
+			file.seek(fileOffset);
+			int bytesRead = file.read(bytes, 0, bytes.length);
+			if (bytesRead < MINIMUM_BUFFER_LENGTH) {
+				break;
+			}
+			int offset = findFrame(bytes, bytesRead, null);
+			if (offset >= 0) {
+				return fileOffset + offset;
+			}
+			if (bytesRead < bytes.length) {
+				break;
+			}
+			// overlap the blocks so a frame pair split between them is found
+			int advance = bytesRead - MAX_FRAME_PAIR_SPAN;
+			if (advance <= 0) {
+				break;
+			}
+			fileOffset += advance;
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads runs of consecutive frames at evenly spaced offsets of the audio,
+	 * counting their bitrates.
+	 * 
+	 * @return the average bitrate of the sampled frames, 0 if none was found
+	 */
+	private double sampleFrames(RandomAccessFile file, MpegFrame first) throws IOException {
+		byte[] bytes = new byte[SAMPLE_BUFFER_LENGTH];
+		long span = endOffset + 1 - startOffset;
+		int sum = 0;
+		int count = 0;
+
+		for (int i = 0; i < SAMPLE_RUNS; i++) {
+			long fileOffset = startOffset + span * i / SAMPLE_RUNS;
+			file.seek(fileOffset);
+			int bytesRead = file.read(bytes, 0, bytes.length);
+			if (bytesRead < MINIMUM_BUFFER_LENGTH) {
+				continue;
+			}
+			int offset = findFrame(bytes, bytesRead, first);
+			if (offset < 0) {
+				continue;
+			}
+			try {
+				while (offset + 4 <= bytesRead) {
+					MpegFrame frame = new MpegFrame(bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3]);
+					if (! isSameStream(frame, first)) {
+						break;
+					}
+					countBitrate(frame.getBitrate());
+					sum += frame.getBitrate();
+					count++;
+					offset += frame.getLengthInBytes();
+				}
+			} catch (InvalidDataException e) {
+				// the run ends at the first damaged frame
+			}
+		}
+
+		return count > 0 ? (double) sum / count : 0;
+	}
+
+	/**
+	 * @param like if not null, the frame must belong to the same stream
+	 * @return the offset in the block of the first frame header followed by another
+	 * one of the same stream, -1 if there is none
+	 */
+	private static int findFrame(byte[] bytes, int bytesRead, MpegFrame like) {
+		for (int offset = 0; offset + 4 <= bytesRead; offset++) {
+			if (bytes[offset] != (byte)0xFF || (bytes[offset + 1] & (byte)0xE0) != (byte)0xE0) {
+				continue;
+			}
+			try {
+				MpegFrame frame = new MpegFrame(bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3]);
+				if (like != null && ! isSameStream(frame, like)) {
+					continue;
+				}
+				int next = offset + frame.getLengthInBytes();
+				if (next + 4 > bytesRead) {
+					continue;
+				}
+				MpegFrame nextFrame = new MpegFrame(bytes[next], bytes[next + 1], bytes[next + 2], bytes[next + 3]);
+				if (isSameStream(frame, nextFrame)) {
+					return offset;
+				}
+			} catch (InvalidDataException e) {
+				// not a frame header
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isSameStream(MpegFrame frame, MpegFrame other) {
+		return frame.getSampleRate() == other.getSampleRate() && frame.getLayer().equals(other.getLayer()) && frame.getVersion().equals(other.getVersion());
+	}
+
+	private static long unpackUnsignedInteger(byte[] bytes, int offset) {
+		return BufferTools.unpackInteger(bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3]) & 0xFFFFFFFFL;
+	}
+
+	private void countBitrate(int bitrate) {
+		Integer key = new Integer(bitrate);
+		MutableInteger count = bitrates.get(key);
+		if (count != null) {
+			count.increment();
+		} else {
+			bitrates.put(key, new MutableInteger(1));
+		}
+	}
+
 	private int scanBlockForStart(byte[] bytes, int bytesRead, int absoluteOffset, int offset) {
 		while (offset < bytesRead - MINIMUM_BUFFER_LENGTH) {
 			if (bytes[offset] == (byte)0xFF && (bytes[offset + 1] & (byte)0xE0) == (byte)0xE0) {
@@ -196,19 +415,21 @@ public class Mp3File extends FileWrapper {
 	}
 
 	private boolean isXingFrame(byte[] bytes, int offset) {
-		if (bytes.length >= offset + XING_MARKER_OFFSET_1 + 3) {
-			if ("Xing".equals(BufferTools.byteBufferToString(bytes, offset + XING_MARKER_OFFSET_1, 4))) return true;
-			if ("Info".equals(BufferTools.byteBufferToString(bytes, offset + XING_MARKER_OFFSET_1, 4))) return true;
-			if (bytes.length >= offset + XING_MARKER_OFFSET_2 + 3) {
-				if ("Xing".equals(BufferTools.byteBufferToString(bytes, offset + XING_MARKER_OFFSET_2, 4))) return true;
-				if ("Info".equals(BufferTools.byteBufferToString(bytes, offset + XING_MARKER_OFFSET_2, 4))) return true;
-				if (bytes.length >= offset + XING_MARKER_OFFSET_3 + 3) {
-					if ("Xing".equals(BufferTools.byteBufferToString(bytes, offset + XING_MARKER_OFFSET_3, 4))) return true;
-					if ("Info".equals(BufferTools.byteBufferToString(bytes, offset + XING_MARKER_OFFSET_3, 4))) return true;
-				}
-			}
+		return xingMarkerOffset(bytes, offset) >= 0;
+	}
+
+	/**
+	 * @return the offset of the Xing or Info marker in the frame, -1 if there is none
+	 */
+	private static int xingMarkerOffset(byte[] bytes, int offset) {
+		int[] markerOffsets = {XING_MARKER_OFFSET_1, XING_MARKER_OFFSET_2, XING_MARKER_OFFSET_3};
+		for (int markerOffset : markerOffsets) {
+			int pos = offset + markerOffset;
+			if (bytes.length < pos + 4) break;
+			String marker = BufferTools.byteBufferToString(bytes, pos, 4);
+			if ("Xing".equals(marker) || "Info".equals(marker)) return pos;
 		}
-		return false;
+		return -1;
 	}
 	
 	private void sanityCheckFrame(MpegFrame frame, int offset) throws InvalidDataException {
@@ -219,13 +440,7 @@ public class Mp3File extends FileWrapper {
 	}
 	
 	private void addBitrate(int bitrate) {
-		Integer key = new Integer(bitrate);
-		MutableInteger count = bitrates.get(key);
-		if (count != null) {
-			count.increment();
-		} else {
-			bitrates.put(key, new MutableInteger(1));
-		}
+		countBitrate(bitrate);
 		this.bitrate = ((this.bitrate * (frameCount - 1)) + bitrate) / frameCount;
 	}
 	
@@ -287,6 +502,7 @@ public class Mp3File extends FileWrapper {
 	}
 
 	public long getLengthInMilliseconds() {
+		if (lengthInMilliseconds >= 0) return lengthInMilliseconds;
 		double d = 8 * (endOffset - startOffset); 
 		return (long)((d / bitrate) + 0.5); 
 	}
@@ -349,9 +349,18 @@ public class MpegFrame {
 		else pad = 0;
 		if (layer == 1) {
 			length = ((48000 * bitrate) / sampleRate) + (pad * 4);
+		} else if (layer == 3 && ! MPEG_VERSION_1_0.equals(version)) {
+			// MPEG 2 and 2.5 layer III frames have half the samples
+			length = ((72000 * bitrate) / sampleRate) + pad;
 		} else {
 			length = ((144000 * bitrate) / sampleRate) + pad;
 		}
 		return (int)length;
 	}
+
+	public int getSamplesPerFrame() {
+		if (layer == 1) return 384;
+		if (layer == 3 && ! MPEG_VERSION_1_0.equals(version)) return 576;
+		return 1152;
+	}
 }
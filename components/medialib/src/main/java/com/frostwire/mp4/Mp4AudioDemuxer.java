@@ -0,0 +1,272 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.mp4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.frostwire.mp4.boxes.Box;
+import com.frostwire.mp4.boxes.ChunkOffsetBox;
+import com.frostwire.mp4.boxes.FileTypeBox;
+import com.frostwire.mp4.boxes.MovieBox;
+import com.frostwire.mp4.boxes.MovieHeaderBox;
+import com.frostwire.mp4.boxes.SampleSizeBox;
+import com.frostwire.mp4.boxes.SampleTableBox;
+import com.frostwire.mp4.boxes.StaticChunkOffsetBox;
+import com.frostwire.mp4.boxes.TrackBox;
+
+/**
+ * Extracts the audio track of an MP4 file into an M4A file, in constant memory.
+ *
+ * Only the moov box of the source is parsed. The output moov is the same one
+ * with the audio track alone and new chunk offsets, and it's written before the
+ * media data, which is copied chunk by chunk from the source with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * so the samples never go through the heap.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class Mp4AudioDemuxer {
+
+    /** A moov this big is not a moov */
+    private static final long MAX_MOOV_SIZE = 64 * 1024 * 1024;
+
+    private Mp4AudioDemuxer() {
+    }
+
+    /**
+     * @param udta user data box for the output, null for none
+     * @throws IOException if the input has no audio track or a layout this
+     * demuxer doesn't handle (64 bit chunk offsets, fragments)
+     */
+    public static void demux(File input, File output, Box udta) throws IOException {
+        FileInputStream fis = new FileInputStream(input);
+        try {
+            FileChannel in = fis.getChannel();
+
+            MovieBox moov = readMovieBox(in);
+
+            TrackBox track = findAudioTrack(moov);
+            if (track == null) {
+                throw new IOException("No audio track in " + input);
+            }
+
+            SampleTableBox stbl = track.getSampleTableBox();
+            ChunkOffsetBox stco = stbl.getChunkOffsetBox();
+            if (stco == null || stbl.getSampleSizeBox() == null || stbl.getSampleToChunkBox() == null) {
+                throw new IOException("Unsupported sample table in " + input);
+            }
+
+            long[] chunkOffsets = stco.getChunkOffsets();
+            long[] chunkSizes = getChunkSizes(stbl, chunkOffsets.length);
+
+            // the audio track alone, with its own user data
+            for (Box box : new ArrayList<Box>(moov.getBoxes())) {
+                if (!(box instanceof MovieHeaderBox) && box != track) {
+                    moov.removeBox(box);
+                }
+            }
+            if (udta != null) {
+                moov.addBox(udta);
+            }
+
+            MovieHeaderBox mvhd = moov.getMovieHeaderBox();
+            mvhd.setDuration(track.getTrackHeaderBox().getDuration());
+            mvhd.setNextTrackId(track.getTrackHeaderBox().getTrackId() + 1);
+
+            // same size whatever the offsets, so the layout can be computed first
+            StaticChunkOffsetBox newStco = new StaticChunkOffsetBox();
+            newStco.setChunkOffsets(new long[chunkOffsets.length]);
+            stbl.setChunkOffsetBox(newStco);
+
+            FileTypeBox ftyp = new FileTypeBox("M4A ", 0, Arrays.asList("M4A ", "mp42", "isom"));
+
+            long dataSize = 0;
+            for (long size : chunkSizes) {
+                dataSize += size;
+            }
+
+            long offset = ftyp.getSize() + moov.getSize() + 8;
+            if (offset + dataSize > 0xFFFFFFFFL) {
+                throw new IOException("Audio track too big for 32 bit chunk offsets");
+            }
+
+            long[] newChunkOffsets = new long[chunkOffsets.length];
+            for (int i = 0; i < chunkOffsets.length; i++) {
+                newChunkOffsets[i] = offset;
+                offset += chunkSizes[i];
+            }
+            newStco.setChunkOffsets(newChunkOffsets);
+
+            FileOutputStream fos = new FileOutputStream(output);
+            try {
+                FileChannel out = fos.getChannel();
+
+                ftyp.getBox(out);
+                moov.getBox(out);
+
+                ByteBuffer mdatHeader = ByteBuffer.allocate(8);
+                mdatHeader.putInt((int) (8 + dataSize));
+                mdatHeader.put(IsoFile.fourCCtoBytes("mdat"));
+                mdatHeader.flip();
+                while (mdatHeader.hasRemaining()) {
+                    out.write(mdatHeader);
+                }
+
+                copyChunks(in, out, chunkOffsets, chunkSizes);
+            } finally {
+                fos.close();
+            }
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Parses the moov box alone, skipping every other top level box with a seek.
+     */
+    private static MovieBox readMovieBox(FileChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long length = in.size();
+        long pos = 0;
+
+        while (pos + 8 <= length) {
+            header.clear();
+            header.limit((int) Math.min(header.capacity(), length - pos));
+            readFully(in, header, pos);
+            header.flip();
+
+            long size = header.getInt() & 0xFFFFFFFFL;
+            String type = IsoFile.bytesToFourCC(new byte[] { header.get(), header.get(), header.get(), header.get() });
+            if (size == 1) {
+                size = header.getLong();
+            } else if (size == 0) {
+                size = length - pos;
+            }
+            if (size < 8) {
+                break;
+            }
+
+            if (type.equals(MovieBox.TYPE)) {
+                if (size > MAX_MOOV_SIZE) {
+                    throw new IOException("moov box too big: " + size);
+                }
+                ByteBuffer moovBytes = ByteBuffer.allocate((int) size);
+                readFully(in, moovBytes, pos);
+                moovBytes.flip();
+
+                IsoFile moovFile = new IsoFile(new ByteBufferByteChannel(moovBytes));
+                MovieBox moov = moovFile.getMovieBox();
+                if (moov == null) {
+                    break;
+                }
+                for (Box box : moov.getBoxes()) {
+                    if (box.getType().equals("mvex")) {
+                        throw new IOException("Fragmented MP4 files are not supported");
+                    }
+                }
+                return moov;
+            }
+
+            pos += size;
+        }
+
+        throw new IOException("No moov box found");
+    }
+
+    private static TrackBox findAudioTrack(MovieBox moov) {
+        for (TrackBox track : moov.getBoxes(TrackBox.class)) {
+            if (track.getMediaBox() != null && track.getMediaBox().getHandlerBox() != null && "soun".equals(track.getMediaBox().getHandlerBox().getHandlerType())) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    private static long[] getChunkSizes(SampleTableBox stbl, int numChunks) throws IOException {
+        long[] samplesPerChunk = stbl.getSampleToChunkBox().blowup(numChunks);
+
+        SampleSizeBox stsz = stbl.getSampleSizeBox();
+        long constantSize = stsz.getSampleSize();
+        long[] sampleSizes = stsz.getSampleSizes();
+        long numSamples = stsz.getSampleCount();
+
+        long[] chunkSizes = new long[numChunks];
+        int sample = 0;
+
+        for (int i = 0; i < numChunks; i++) {
+            long size = 0;
+            for (long j = 0; j < samplesPerChunk[i]; j++, sample++) {
+                if (sample >= numSamples) {
+                    throw new IOException("Sample to chunk table beyond the last sample");
+                }
+                size += constantSize > 0 ? constantSize : sampleSizes[sample];
+            }
+            chunkSizes[i] = size;
+        }
+
+        return chunkSizes;
+    }
+
+    /**
+     * Copies the chunks in order, merging the ones that follow each other in the
+     * source into a single transfer.
+     */
+    private static void copyChunks(FileChannel in, FileChannel out, long[] chunkOffsets, long[] chunkSizes) throws IOException {
+        int i = 0;
+        while (i < chunkOffsets.length) {
+            long start = chunkOffsets[i];
+            long size = chunkSizes[i];
+            i++;
+
+            while (i < chunkOffsets.length && chunkOffsets[i] == start + size) {
+                size += chunkSizes[i];
+                i++;
+            }
+
+            long position = start;
+            long end = start + size;
+            while (position < end) {
+                long transferred = in.transferTo(position, end - position, out);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of file copying media data");
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = in.read(dst, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+    }
+}
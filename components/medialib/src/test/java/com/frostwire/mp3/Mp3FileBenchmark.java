@@ -0,0 +1,145 @@
+package com.frostwire.mp3;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the full frame scan of Mp3File with the header based estimation,
+ * in time and in length error, over a corpus of generated MP3 files: constant
+ * bitrate, variable bitrate with a Xing header and variable bitrate without
+ * one, all with random audio data and an ID3v2 tag.
+ *
+ * Usage: Mp3FileBenchmark [files per kind] [minutes per file]
+ */
+public final class Mp3FileBenchmark {
+
+	private static final int SAMPLE_RATE = 44100;
+	private static final int SAMPLES_PER_FRAME = 1152;
+	/** MPEG 1 layer III bitrate indexes 1 to 14 */
+	private static final int[] BITRATES = {32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+
+	private Mp3FileBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		int filesPerKind = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		File dir = new File(System.getProperty("java.io.tmpdir"), "mp3-benchmark");
+		dir.mkdirs();
+
+		Random random = new Random(1);
+		List<File> files = new ArrayList<File>();
+		List<Double> lengths = new ArrayList<Double>();
+		String[] kinds = {"cbr", "vbr-xing", "vbr"};
+
+		for (String kind : kinds) {
+			for (int i = 0; i < filesPerKind; i++) {
+				File file = new File(dir, kind + "-" + i + ".mp3");
+				lengths.add(generate(file, kind, minutes * 60, random));
+				files.add(file);
+			}
+		}
+
+		for (int k = 0; k < kinds.length; k++) {
+			double scanMillis = 0;
+			double estimateMillis = 0;
+			double scanError = 0;
+			double estimateError = 0;
+
+			for (int i = k * filesPerKind; i < (k + 1) * filesPerKind; i++) {
+				String path = files.get(i).getAbsolutePath();
+				double expected = lengths.get(i);
+
+				long start = System.nanoTime();
+				Mp3File scanned = new Mp3File(path, true);
+				scanMillis += (System.nanoTime() - start) / 1e6;
+				scanError = Math.max(scanError, Math.abs(scanned.getLengthInMilliseconds() - expected) / expected);
+
+				start = System.nanoTime();
+				Mp3File estimated = new Mp3File(path);
+				estimateMillis += (System.nanoTime() - start) / 1e6;
+				estimateError = Math.max(estimateError, Math.abs(estimated.getLengthInMilliseconds() - expected) / expected);
+			}
+
+			System.out.println(String.format("%-9s scan: %8.2f ms/file, error %6.3f%%   estimate: %6.2f ms/file, error %6.3f%%", kinds[k], scanMillis / filesPerKind, scanError * 100, estimateMillis / filesPerKind, estimateError * 100));
+		}
+
+		for (File file : files) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * @return the length of the audio in milliseconds
+	 */
+	private static double generate(File file, String kind, int seconds, Random random) throws IOException {
+		int numFrames = (int) ((long) seconds * SAMPLE_RATE / SAMPLES_PER_FRAME);
+
+		int[] bitrateIndexes = new int[numFrames];
+		long audioBytes = 0;
+		int cbrIndex = 7 + random.nextInt(6);
+		for (int i = 0; i < numFrames; i++) {
+			// variable bitrates drift around a level, like real encoders
+			bitrateIndexes[i] = kind.equals("cbr") ? cbrIndex : Math.max(1, Math.min(14, cbrIndex + random.nextInt(7) - 3));
+			audioBytes += frameLength(bitrateIndexes[i], false);
+		}
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		try {
+			writeId3v2Tag(out, 1024 + random.nextInt(8192));
+
+			if (kind.equals("vbr-xing")) {
+				byte[] frame = new byte[frameLength(9, false)];
+				writeHeader(frame, 9, false);
+				frame[36] = 'X';
+				frame[37] = 'i';
+				frame[38] = 'n';
+				frame[39] = 'g';
+				frame[43] = 3; // frames and bytes
+				System.arraycopy(BufferTools.packInteger(numFrames), 0, frame, 44, 4);
+				System.arraycopy(BufferTools.packInteger((int) audioBytes), 0, frame, 48, 4);
+				out.write(frame);
+			}
+
+			byte[] frame = new byte[frameLength(14, true)];
+			for (int i = 0; i < numFrames; i++) {
+				int length = frameLength(bitrateIndexes[i], false);
+				random.nextBytes(frame);
+				writeHeader(frame, bitrateIndexes[i], false);
+				out.write(frame, 0, length);
+			}
+		} finally {
+			out.close();
+		}
+
+		return (double) numFrames * SAMPLES_PER_FRAME * 1000 / SAMPLE_RATE;
+	}
+
+	private static void writeId3v2Tag(OutputStream out, int size) throws IOException {
+		byte[] tag = new byte[10 + size];
+		tag[0] = 'I';
+		tag[1] = 'D';
+		tag[2] = '3';
+		tag[3] = 3;
+		BufferTools.packSynchsafeInteger(size, tag, 6);
+		out.write(tag);
+	}
+
+	private static void writeHeader(byte[] frame, int bitrateIndex, boolean padding) {
+		frame[0] = (byte) 0xFF;
+		frame[1] = (byte) 0xFB; // MPEG 1, layer III, no CRC
+		frame[2] = (byte) ((bitrateIndex << 4) | (padding ? 2 : 0)); // 44100 Hz
+		frame[3] = (byte) 0x00; // stereo
+	}
+
+	private static int frameLength(int bitrateIndex, boolean padding) {
+		return 144000 * BITRATES[bitrateIndex - 1] / SAMPLE_RATE + (padding ? 1 : 0);
+	}
+}
@@ -26,22 +26,29 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseInterceptor;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.params.ConnManagerPNames;
+import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
@@ -50,6 +57,7 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
@@ -59,12 +67,17 @@ import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
+import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.FileUtils;
 
 /**
- * A Blocking HttpClient.
- * Use fetch() to retrieve the byte[]
+ * Http client over a shared pool of keep-alive connections.
+ * 
+ * Every request streams its body to a {@link HttpFetcherStreamListener}, on a
+ * background thread with fetchAsync(), or on the calling thread for fetch(),
+ * save() and post(), which collect it. Every request updates the
+ * {@link HttpHostStats} of its host, the stats of the least recently used hosts
+ * are dropped past a few hundred.
  * 
  * @author gubatron
  * @author aldenml
@@ -72,20 +85,44 @@ import org.limewire.util.FileUtils;
  */
 public class HttpFetcher {
 
+    private static final Log LOG = LogFactory.getLog(HttpFetcher.class);
+
     private static final String DEFAULT_USER_AGENT = UserAgentGenerator.getUserAgent();
     private static final int DEFAULT_TIMEOUT = 10000;
 
-    private static HttpClient DEFAULT_HTTP_CLIENT;
-    private static HttpClient DEFAULT_HTTP_CLIENT_GZIP;
+    private static final int MAX_CONNECTIONS_PER_HOST = 20;
+    private static final int MAX_TOTAL_CONNECTIONS = 200;
+
+    /** Used when the server doesn't say how long it keeps an idle connection */
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+    private static final long IDLE_CHECK_INTERVAL_MILLIS = 10000;
+
+    private static final int ASYNC_THREADS = 8;
+    private static final int MAX_HOST_STATS = 256;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ThreadSafeClientConnManager CONNECTION_MANAGER;
+    private static final DefaultHttpClient HTTP_CLIENT;
+    private static final ExecutorService ASYNC_EXECUTOR = ExecutorsHelper.newFixedSizeThreadPool(ASYNC_THREADS, "HttpFetcher");
+
+    private static final Map<String, HttpHostStats> HOST_STATS = new LinkedHashMap<String, HttpHostStats>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HttpHostStats> eldest) {
+            return size() > MAX_HOST_STATS;
+        }
+    };
+
+    private static volatile long lastIdleCheck;
 
     private final URI _uri;
     private final String _userAgent;
     private final int _timeout;
 
-    private byte[] body = null;
-
     static {
-        setupHttpClients();
+        CONNECTION_MANAGER = setupConnectionManager();
+        HTTP_CLIENT = setupHttpClient(CONNECTION_MANAGER);
     }
 
     public HttpFetcher(URI uri, String userAgent, int timeout) {
@@ -118,69 +155,20 @@ public class HttpFetcher {
         return fetch(gzip, null);
     }
 
+    /**
+     * @return the body (byte[]) and the last modified date (Long, 0 if unknown)
+     */
     public Object[] fetch(boolean gzip, String referer) throws IOException {
-        HttpHost httpHost = new HttpHost(_uri.getHost(), _uri.getPort());
-        HttpGet httpGet = new HttpGet(_uri);
-        httpGet.addHeader("Connection", "close");
-        if (referer != null) {
-            httpGet.addHeader("Referer", referer);
-        }
-
-        HttpParams params = httpGet.getParams();
-        HttpConnectionParams.setConnectionTimeout(params, _timeout);
-        HttpConnectionParams.setSoTimeout(params, _timeout);
-        HttpConnectionParams.setStaleCheckingEnabled(params, true);
-        HttpConnectionParams.setTcpNoDelay(params, true);
-        HttpClientParams.setRedirecting(params, true);
-        HttpProtocolParams.setUseExpectContinue(params, false);
-        HttpProtocolParams.setUserAgent(params, _userAgent);
-
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
-        try {
-
-            HttpResponse response = (gzip ? DEFAULT_HTTP_CLIENT_GZIP : DEFAULT_HTTP_CLIENT).execute(httpHost, httpGet);
-
-            if (response.getStatusLine().getStatusCode() < 200 || response.getStatusLine().getStatusCode() >= 300) {
-                throw new IOException("bad status code, downloading file " + response.getStatusLine().getStatusCode());
-            }
+        long date = execute(newGet(gzip, referer), new OutputStreamListener(baos));
 
-            Long date = Long.valueOf(0);
-
-            Header[] headers = response.getAllHeaders();
-            for (int i = 0; i < headers.length; i++) {
-                if (headers[i].getName().startsWith("Last-Modified")) {
-                    try {
-                        date = DateUtils.parseDate(headers[i].getValue()).getTime();
-                    } catch (Exception e) {
-                    }
-                    break;
-                }
-            }
-
-            if (response.getEntity() != null) {
-                if (gzip) {
-                    String str = EntityUtils.toString(response.getEntity());
-                    baos.write(str.getBytes());
-                } else {
-                    response.getEntity().writeTo(baos);
-                }
-            }
-
-            body = baos.toByteArray();
-
-            if (body == null || body.length == 0) {
-                throw new IOException("invalid response");
-            }
-
-            return new Object[] { body, date };
-
-        } finally {
-            try {
-                baos.close();
-            } catch (IOException e) {
-            }
+        byte[] body = baos.toByteArray();
+        if (body.length == 0) {
+            throw new IOException("invalid response");
         }
+
+        return new Object[] { body, Long.valueOf(date) };
     }
 
     public byte[] fetch() {
@@ -198,36 +186,37 @@ public class HttpFetcher {
         return null;
     }
 
-    public void save(File file) throws IOException {
-        HttpHost httpHost = new HttpHost(_uri.getHost(), _uri.getPort());
-        HttpGet httpGet = new HttpGet(_uri);
-        httpGet.addHeader("Connection", "close");
-
-        HttpParams params = httpGet.getParams();
-        HttpConnectionParams.setConnectionTimeout(params, _timeout);
-        HttpConnectionParams.setSoTimeout(params, _timeout);
-        HttpConnectionParams.setStaleCheckingEnabled(params, true);
-        HttpConnectionParams.setTcpNoDelay(params, true);
-        HttpClientParams.setRedirecting(params, true);
-        HttpProtocolParams.setUseExpectContinue(params, false);
-        HttpProtocolParams.setUserAgent(params, _userAgent);
-
-        FileOutputStream output = null;
-
-        try {
-
-            output = new FileOutputStream(file);
+    /**
+     * Same as {@link #fetch()} but failures are thrown instead of returning null.
+     */
+    public byte[] fetchBody() throws IOException {
+        return (byte[]) fetch(false)[0];
+    }
 
-            HttpResponse response = DEFAULT_HTTP_CLIENT.execute(httpHost, httpGet);
+    /**
+     * Streams the body to <code>listener</code> from a pooled background thread,
+     * the call returns right away.
+     */
+    public void fetchAsync(boolean gzip, String referer, final HttpFetcherStreamListener listener) {
+        final HttpRequestBase request = newGet(gzip, referer);
 
-            if (response.getStatusLine().getStatusCode() < 200 || response.getStatusLine().getStatusCode() >= 300) {
-                throw new IOException("bad status code, downloading file " + response.getStatusLine().getStatusCode());
-            }
-
-            if (response.getEntity() != null) {
-                writeEntity(response.getEntity(), output);
+        ASYNC_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                try {
+                    execute(request, listener);
+                } catch (Throwable e) {
+                    listener.onError(e);
+                    return;
+                }
+                listener.onComplete();
             }
+        });
+    }
 
+    public void save(File file) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            execute(newGet(false, null), new OutputStreamListener(output));
         } finally {
             FileUtils.close(output);
         }
@@ -238,119 +227,36 @@ public class HttpFetcher {
     }
 
     public byte[] post(String postBody, String contentType) throws IOException {
-        HttpHost httpHost = new HttpHost(_uri.getHost(), _uri.getPort());
         HttpPost httpPost = new HttpPost(_uri);
-
-        StringEntity stringEntity = new StringEntity(postBody);
         httpPost.setHeader("Accept", contentType);
         httpPost.setHeader("Content-type", contentType);
-        httpPost.setEntity(stringEntity);
-
-        HttpParams params = httpPost.getParams();
-        HttpConnectionParams.setConnectionTimeout(params, _timeout);
-        HttpConnectionParams.setSoTimeout(params, _timeout);
-        HttpConnectionParams.setStaleCheckingEnabled(params, true);
-        HttpConnectionParams.setTcpNoDelay(params, true);
-        HttpClientParams.setRedirecting(params, true);
-        HttpProtocolParams.setUseExpectContinue(params, false);
-        HttpProtocolParams.setUserAgent(params, DEFAULT_USER_AGENT);
+        httpPost.setEntity(new StringEntity(postBody));
+        setParams(httpPost, DEFAULT_USER_AGENT);
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
-        try {
-
-            HttpResponse response = DEFAULT_HTTP_CLIENT.execute(httpHost, httpPost);
-
-            if (response.getStatusLine().getStatusCode() < 200 || response.getStatusLine().getStatusCode() >= 300)
-                throw new IOException("bad status code, upload file " + response.getStatusLine().getStatusCode());
+        execute(httpPost, new OutputStreamListener(baos));
 
-            if (response.getEntity() != null) {
-                response.getEntity().writeTo(baos);
-            }
-
-            body = baos.toByteArray();
-
-            if (body == null || body.length == 0) {
-                throw new IOException("invalid response");
-            }
-
-            return body;
-        } catch (IOException e) {
-            throw e;
-        } catch (Exception e) {
-            new IOException("Http error: " + e.getMessage(), e);
-        } finally {
-            try {
-                baos.close();
-            } catch (IOException e) {
-            }
+        byte[] body = baos.toByteArray();
+        if (body.length == 0) {
+            throw new IOException("invalid response");
         }
 
-        return null;
+        return body;
     }
 
     public void post(File file) throws IOException {
-        HttpHost httpHost = new HttpHost(_uri.getHost(), _uri.getPort());
-        HttpPost httpPost = new HttpPost(_uri);
         FileEntity fileEntity = new FileEntity(file, "binary/octet-stream");
         fileEntity.setChunked(true);
-        httpPost.setEntity(fileEntity);
-
-        HttpParams params = httpPost.getParams();
-        HttpConnectionParams.setConnectionTimeout(params, _timeout);
-        HttpConnectionParams.setSoTimeout(params, _timeout);
-        HttpConnectionParams.setStaleCheckingEnabled(params, true);
-        HttpConnectionParams.setTcpNoDelay(params, true);
-        HttpClientParams.setRedirecting(params, true);
-        HttpProtocolParams.setUseExpectContinue(params, false);
-        HttpProtocolParams.setUserAgent(params, DEFAULT_USER_AGENT);
-
-        try {
-
-            HttpResponse response = DEFAULT_HTTP_CLIENT.execute(httpHost, httpPost);
-
-            if (response.getStatusLine().getStatusCode() < 200 || response.getStatusLine().getStatusCode() >= 300)
-                throw new IOException("bad status code, upload file " + response.getStatusLine().getStatusCode());
-
-        } catch (IOException e) {
-            throw e;
-        } catch (Exception e) {
-            new IOException("Http error: " + e.getMessage(), e);
-        } finally {
-            //
-        }
+        post(fileEntity);
     }
 
     public void post(FileEntity fileEntity) throws IOException {
-        HttpClient httpClient = setupHttpClient(false);
-        
-        HttpHost httpHost = new HttpHost(_uri.getHost(), _uri.getPort());
         HttpPost httpPost = new HttpPost(_uri);
         httpPost.setEntity(fileEntity);
+        setParams(httpPost, DEFAULT_USER_AGENT);
 
-        HttpParams params = httpPost.getParams();
-        HttpConnectionParams.setConnectionTimeout(params, _timeout);
-        HttpConnectionParams.setSoTimeout(params, _timeout);
-        HttpConnectionParams.setStaleCheckingEnabled(params, true);
-        HttpConnectionParams.setTcpNoDelay(params, true);
-        HttpClientParams.setRedirecting(params, true);
-        HttpProtocolParams.setUseExpectContinue(params, false);
-        HttpProtocolParams.setUserAgent(params, DEFAULT_USER_AGENT);
-
-        try {
-
-            HttpResponse response = httpClient.execute(httpHost, httpPost);
-
-            if (response.getStatusLine().getStatusCode() < 200 || response.getStatusLine().getStatusCode() >= 300)
-                throw new IOException("bad status code, upload file " + response.getStatusLine().getStatusCode());
-
-        } catch (IOException e) {
-            throw e;
-        } catch (Exception e) {
-            new IOException("Http error: " + e.getMessage(), e);
-        } finally {
-            httpClient.getConnectionManager().shutdown();
-        }
+        execute(httpPost, null);
     }
 
     public void asyncPostJSON(String json, HttpFetcherListener listener) {
@@ -358,7 +264,7 @@ public class HttpFetcher {
     }
 
     public void asyncPost(final String body, final String contentType, final HttpFetcherListener listener) {
-        Thread thread = new Thread(new Runnable() {
+        ASYNC_EXECUTOR.execute(new Runnable() {
             public void run() {
                 try {
                     byte[] post = post(body, contentType);
@@ -366,12 +272,12 @@ public class HttpFetcher {
                         listener.onSuccess(post);
                     }
                 } catch (Throwable e) {
-                    listener.onError(e);
+                    if (listener != null) {
+                        listener.onError(e);
+                    }
                 }
             }
         });
-        thread.setName("HttpFetcher-asyncPost");
-        thread.start();
     }
 
     public void asyncRequest(HttpRequestInfo reqInfo, HttpFetcherListener listener) {
@@ -383,65 +289,239 @@ public class HttpFetcher {
     }
 
     private void asyncGet(final HttpFetcherListener listener) {
-        Thread thread = new Thread(new Runnable() {
-            public void run() {
-                byte[] fetch = fetch();
-                if (fetch == null) {
-                    listener.onError(new Exception("HttpFetch.fetch() failed."));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        fetchAsync(false, null, new OutputStreamListener(baos) {
+            @Override
+            public void onComplete() {
+                if (baos.size() == 0) {
+                    listener.onError(new IOException("invalid response"));
                 } else {
-                    listener.onSuccess(fetch);
+                    listener.onSuccess(baos.toByteArray());
                 }
             }
 
+            @Override
+            public void onError(Throwable e) {
+                listener.onError(e);
+            }
         });
-        thread.setName("HttpFetcher-asyncGet");
-        thread.start();
     }
 
-    private static void setupHttpClients() {
-        DEFAULT_HTTP_CLIENT = setupHttpClient(false);
-        DEFAULT_HTTP_CLIENT_GZIP = setupHttpClient(true);
+    /**
+     * The statistics of <code>host</code>, null if no recent request was made to it.
+     */
+    public static HttpHostStats getHostStats(String host) {
+        synchronized (HOST_STATS) {
+            return HOST_STATS.get(host);
+        }
     }
 
-    private static HttpClient setupHttpClient(boolean gzip) {
+    public static List<HttpHostStats> getHostStats() {
+        synchronized (HOST_STATS) {
+            return new ArrayList<HttpHostStats>(HOST_STATS.values());
+        }
+    }
 
+    private HttpRequestBase newGet(boolean gzip, String referer) {
+        HttpGet httpGet = new HttpGet(_uri);
+        if (gzip) {
+            httpGet.addHeader("Accept-Encoding", "gzip");
+        }
+        if (referer != null) {
+            httpGet.addHeader("Referer", referer);
+        }
+        setParams(httpGet, _userAgent);
+        return httpGet;
+    }
+
+    /**
+     * Only what changes per fetcher, the rest comes from the client defaults.
+     */
+    private void setParams(HttpRequestBase request, String userAgent) {
+        HttpParams params = request.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, _timeout);
+        HttpConnectionParams.setSoTimeout(params, _timeout);
+        // waiting for a pooled connection counts too, or a busy host blocks the caller
+        ConnManagerParams.setTimeout(params, _timeout);
+        HttpProtocolParams.setUserAgent(params, userAgent);
+    }
+
+    /**
+     * Executes the request, streams the body to <code>listener</code> (or discards
+     * it if null) and releases the connection back to the pool. Completion and
+     * errors are left to the caller.
+     * 
+     * @return the last modified date of the response, 0 if unknown
+     */
+    private static long execute(HttpRequestBase request, HttpFetcherStreamListener listener) throws IOException {
+        closeIdleConnections();
+
+        HttpHostStats stats = getOrCreateStats(request.getURI().getHost());
+        stats.onRequest();
+
+        boolean completed = false;
+        long start = System.nanoTime();
+
+        try {
+            HttpResponse response = HTTP_CLIENT.execute(request);
+            long responseTime = System.nanoTime();
+            stats.onResponse(responseTime - start);
+
+            HttpEntity entity = response.getEntity();
+
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                if (entity != null) {
+                    entity.consumeContent();
+                }
+                completed = true;
+                throw new IOException("bad status code, " + request.getMethod() + " " + request.getURI() + " " + statusCode);
+            }
+
+            long date = getLastModified(response);
+
+            if (listener != null) {
+                listener.onStart(entity != null ? entity.getContentLength() : 0, date);
+            }
+
+            if (entity != null) {
+                long bytes = listener != null ? copy(entity, listener) : 0;
+                entity.consumeContent();
+                stats.onTransfer(bytes, System.nanoTime() - responseTime);
+            }
+
+            completed = true;
+
+            return date;
+        } catch (IOException e) {
+            stats.onError();
+            throw e;
+        } catch (RuntimeException e) {
+            stats.onError();
+            throw new IOException("Http error: " + e.getMessage(), e);
+        } finally {
+            if (!completed) {
+                // the connection is in an unknown state, don't give it back to the pool
+                request.abort();
+            }
+        }
+    }
+
+    private static long copy(HttpEntity entity, HttpFetcherStreamListener listener) throws IOException {
+        InputStream instream = entity.getContent();
+        if (instream == null) {
+            return 0;
+        }
+        long total = 0;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = instream.read(buffer)) != -1) {
+                listener.onData(buffer, 0, n);
+                total += n;
+            }
+        } finally {
+            instream.close();
+        }
+        return total;
+    }
+
+    private static long getLastModified(HttpResponse response) {
+        Header header = response.getFirstHeader("Last-Modified");
+        if (header != null) {
+            try {
+                return DateUtils.parseDate(header.getValue()).getTime();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        return 0;
+    }
+
+    private static HttpHostStats getOrCreateStats(String host) {
+        if (host == null) {
+            host = "";
+        }
+        synchronized (HOST_STATS) {
+            HttpHostStats stats = HOST_STATS.get(host);
+            if (stats == null) {
+                stats = new HttpHostStats(host);
+                HOST_STATS.put(host, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Evicts the connections the servers are likely to have closed already,
+     * at most once every few seconds.
+     */
+    private static void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck > IDLE_CHECK_INTERVAL_MILLIS) {
+            lastIdleCheck = now;
+            try {
+                CONNECTION_MANAGER.closeExpiredConnections();
+                CONNECTION_MANAGER.closeIdleConnections(DEFAULT_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (Throwable e) {
+                LOG.warn("Error closing idle http connections", e);
+            }
+        }
+    }
+
+    private static ThreadSafeClientConnManager setupConnectionManager() {
         SSLSocketFactory.getSocketFactory().setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
         SchemeRegistry schemeRegistry = new SchemeRegistry();
         schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
         schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
         BasicHttpParams params = new BasicHttpParams();
-        params.setParameter(ConnManagerPNames.MAX_CONNECTIONS_PER_ROUTE, new ConnPerRouteBean(20));
-        params.setIntParameter(ConnManagerPNames.MAX_TOTAL_CONNECTIONS, 200);
-        ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(params, schemeRegistry);
+        params.setParameter(ConnManagerPNames.MAX_CONNECTIONS_PER_ROUTE, new ConnPerRouteBean(MAX_CONNECTIONS_PER_HOST));
+        params.setIntParameter(ConnManagerPNames.MAX_TOTAL_CONNECTIONS, MAX_TOTAL_CONNECTIONS);
+        return new ThreadSafeClientConnManager(params, schemeRegistry);
+    }
+
+    private static DefaultHttpClient setupHttpClient(ThreadSafeClientConnManager cm) {
+        BasicHttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, DEFAULT_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(params, DEFAULT_TIMEOUT);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        HttpClientParams.setRedirecting(params, true);
+        HttpProtocolParams.setUseExpectContinue(params, false);
+        HttpProtocolParams.setUserAgent(params, DEFAULT_USER_AGENT);
 
-        DefaultHttpClient httpClient = new DefaultHttpClient(cm, new BasicHttpParams());
+        DefaultHttpClient httpClient = new DefaultHttpClient(cm, params);
         httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
 
-        if (gzip) {
-            httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
-                public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
-                    if (!request.containsHeader("Accept-Encoding")) {
-                        request.addHeader("Accept-Encoding", "gzip");
-                    }
+        httpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+            private final ConnectionKeepAliveStrategy defaultStrategy = new DefaultConnectionKeepAliveStrategy();
+
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = defaultStrategy.getKeepAliveDuration(response, context);
+                return duration > 0 ? Math.min(duration, DEFAULT_KEEP_ALIVE_MILLIS) : DEFAULT_KEEP_ALIVE_MILLIS;
+            }
+        });
+
+        // gzip is only requested per request (see fetch(boolean)), but decoded here for any response
+        httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
+            public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+                HttpEntity entity = response.getEntity();
+                if (entity == null) {
+                    return;
                 }
-            });
-
-            httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
-                public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
-                    HttpEntity entity = response.getEntity();
-                    Header ceheader = entity.getContentEncoding();
-                    if (ceheader != null) {
-                        HeaderElement[] codecs = ceheader.getElements();
-                        for (int i = 0; i < codecs.length; i++) {
-                            if (codecs[i].getName().equalsIgnoreCase("gzip")) {
-                                response.setEntity(new GzipDecompressingEntity(response.getEntity()));
-                                return;
-                            }
+                Header ceheader = entity.getContentEncoding();
+                if (ceheader != null) {
+                    HeaderElement[] codecs = ceheader.getElements();
+                    for (int i = 0; i < codecs.length; i++) {
+                        if (codecs[i].getName().equalsIgnoreCase("gzip")) {
+                            response.setEntity(new GzipDecompressingEntity(entity));
+                            return;
                         }
                     }
                 }
-            });
-        }
+            }
+        });
 
         return httpClient;
     }
@@ -450,24 +530,8 @@ public class HttpFetcher {
         if (entity == null) {
             throw new IllegalArgumentException("HTTP entity may not be null");
         }
-        InputStream instream = entity.getContent();
-        if (instream == null) {
-            return;
-        }
-        int i = (int) entity.getContentLength();
-        if (i < 0) {
-            i = 4096;
-        }
-        try {
-            byte[] tmp = new byte[4096];
-            int l;
-            while ((l = instream.read(tmp)) != -1) {
-                output.write(tmp, 0, l);
-                output.flush();
-            }
-        } finally {
-            instream.close();
-        }
+        copy(entity, new OutputStreamListener(output));
+        output.flush();
     }
 
     private static URI convert(String uri) {
@@ -504,6 +568,31 @@ public class HttpFetcher {
 
     }
 
+    /**
+     * Collects the body into a stream, for the calls that return or save it.
+     */
+    private static class OutputStreamListener implements HttpFetcherStreamListener {
+
+        private final OutputStream _output;
+
+        public OutputStreamListener(OutputStream output) {
+            _output = output;
+        }
+
+        public void onStart(long contentLength, long lastModified) {
+        }
+
+        public void onData(byte[] buffer, int offset, int length) throws IOException {
+            _output.write(buffer, offset, length);
+        }
+
+        public void onComplete() {
+        }
+
+        public void onError(Throwable e) {
+        }
+    }
+
     private static final class GzipDecompressingEntity extends HttpEntityWrapper {
 
         public GzipDecompressingEntity(final HttpEntity entity) {
@@ -0,0 +1,26 @@
+package com.frostwire;
+
+import java.io.IOException;
+
+/**
+ * Receives the body of an {@link HttpFetcher#fetchAsync} request as it arrives.
+ */
+public interface HttpFetcherStreamListener {
+
+    /**
+     * Called once with the response headers, before any data.
+     *
+     * @param contentLength -1 if unknown or if the body is gzip encoded
+     * @param lastModified 0 if the server didn't send it
+     */
+    public void onStart(long contentLength, long lastModified);
+
+    /**
+     * The buffer is reused after the call returns, throw to abort the request.
+     */
+    public void onData(byte[] buffer, int offset, int length) throws IOException;
+
+    public void onComplete();
+
+    public void onError(Throwable e);
+}
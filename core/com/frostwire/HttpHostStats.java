@@ -0,0 +1,102 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counters of a single host, updated by {@link HttpFetcher}.
+ *
+ * Latency is the time until the response headers arrive, throughput only counts
+ * the time spent reading bodies.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class HttpHostStats {
+
+    private final String _host;
+
+    private final AtomicLong _requests = new AtomicLong();
+    private final AtomicLong _responses = new AtomicLong();
+    private final AtomicLong _errors = new AtomicLong();
+    private final AtomicLong _latencyNanos = new AtomicLong();
+    private final AtomicLong _bytes = new AtomicLong();
+    private final AtomicLong _transferNanos = new AtomicLong();
+
+    HttpHostStats(String host) {
+        _host = host;
+    }
+
+    public String getHost() {
+        return _host;
+    }
+
+    public long getRequests() {
+        return _requests.get();
+    }
+
+    public long getErrors() {
+        return _errors.get();
+    }
+
+    public long getBytes() {
+        return _bytes.get();
+    }
+
+    /**
+     * Average milliseconds until the response headers, of the requests that got a response.
+     */
+    public double getAverageLatency() {
+        long responses = _responses.get();
+        return responses > 0 ? _latencyNanos.get() / 1000000.0 / responses : 0;
+    }
+
+    /**
+     * Bytes per second read from response bodies.
+     */
+    public double getThroughput() {
+        long nanos = _transferNanos.get();
+        return nanos > 0 ? _bytes.get() * 1000000000.0 / nanos : 0;
+    }
+
+    void onRequest() {
+        _requests.incrementAndGet();
+    }
+
+    void onResponse(long latencyNanos) {
+        _responses.incrementAndGet();
+        _latencyNanos.addAndGet(latencyNanos);
+    }
+
+    void onTransfer(long bytes, long nanos) {
+        _bytes.addAndGet(bytes);
+        _transferNanos.addAndGet(nanos);
+    }
+
+    void onError() {
+        _errors.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d requests, %d errors, %.1f ms latency, %.1f KB/s", _host, getRequests(), getErrors(), getAverageLatency(), getThroughput() / 1024);
+    }
+}
@@ -20,21 +20,40 @@ package com.frostwire;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.OSUtils;
 
 import com.limegroup.gnutella.settings.SharingSettings;
 import com.limegroup.gnutella.util.FrostWireUtils;
 
 /**
+ * Two tier cache of images: decoded images in memory, bounded by their pixel
+ * memory and evicted least recently used first, and the original downloaded
+ * bytes on disk.
+ *
+ * Disk reads, downloads and decoding run in a small fixed pool, and concurrent
+ * requests of the same URL share a single load.
+ *
  * @author gubatron
  * @author aldenml
  *
@@ -43,6 +62,11 @@ public class ImageCache {
 
     private static final Log LOG = LogFactory.getLog(ImageCache.class);
 
+    private static final int LOADER_THREADS = 4;
+
+    /** Bytes of decoded pixels kept in memory, a bigger image is never kept */
+    private static final long MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+
     private static ImageCache instance;
 
     public synchronized static ImageCache instance() {
@@ -52,17 +76,107 @@ public class ImageCache {
         return instance;
     }
 
+    private final ExecutorService _loaders;
+
+    private final LinkedHashMap<String, BufferedImage> _memory;
+    private long _memoryBytes;
+
+    /** Listeners of the loads in progress, by URL */
+    private final Map<String, List<OnLoadedListener>> _pending;
+
+    private final AtomicLong _memoryHits = new AtomicLong();
+    private final AtomicLong _diskHits = new AtomicLong();
+    private final AtomicLong _downloads = new AtomicLong();
+    private final AtomicLong _coalesced = new AtomicLong();
+    private final AtomicLong _failures = new AtomicLong();
+    private final AtomicLong _diskNanos = new AtomicLong();
+    private final AtomicLong _downloadNanos = new AtomicLong();
+
     private ImageCache() {
+        _loaders = ExecutorsHelper.newFixedSizeThreadPool(LOADER_THREADS, "ImageCache");
+        _memory = new LinkedHashMap<String, BufferedImage>(64, 0.75f, true);
+        _pending = new HashMap<String, List<OnLoadedListener>>();
     }
 
+    /**
+     * Returns the image right away, and calls the listener in the caller thread,
+     * if it's decoded in memory. Otherwise returns null and the listener is
+     * called from a loader thread once the image is read from disk or downloaded.
+     */
     public BufferedImage getImage(URL url, OnLoadedListener listener) {
-        if (isCached(url)) {
-            return loadFromCache(url, listener);
-        } else if (!url.getProtocol().equals("http")) {
-            return loadFromResource(url, listener);
-        } else {
-            loadFromUrl(url, listener);
-            return null;
+        String key = url.toString();
+
+        BufferedImage image = getFromMemory(key);
+        if (image != null) {
+            _memoryHits.incrementAndGet();
+            if (listener != null) {
+                listener.onLoaded(url, image, true, false);
+            }
+            return image;
+        }
+
+        synchronized (_pending) {
+            List<OnLoadedListener> listeners = _pending.get(key);
+            if (listeners != null) {
+                _coalesced.incrementAndGet();
+                listeners.add(listener);
+                return null;
+            }
+            listeners = new ArrayList<OnLoadedListener>(1);
+            listeners.add(listener);
+            _pending.put(key, listeners);
+        }
+
+        _loaders.execute(new LoadTask(url, key));
+
+        return null;
+    }
+
+    public long getMemoryHits() {
+        return _memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return _diskHits.get();
+    }
+
+    /**
+     * Loads that missed both tiers, downloads and local resources.
+     */
+    public long getMisses() {
+        return _downloads.get();
+    }
+
+    /**
+     * Requests that joined a load already in progress.
+     */
+    public long getCoalescedRequests() {
+        return _coalesced.get();
+    }
+
+    public long getFailures() {
+        return _failures.get();
+    }
+
+    /**
+     * Average milliseconds to read and decode an image from disk.
+     */
+    public double getAverageDiskLatency() {
+        long hits = _diskHits.get();
+        return hits > 0 ? _diskNanos.get() / 1000000.0 / hits : 0;
+    }
+
+    /**
+     * Average milliseconds to download and decode an image.
+     */
+    public double getAverageMissLatency() {
+        long downloads = _downloads.get();
+        return downloads > 0 ? _downloadNanos.get() / 1000000.0 / downloads : 0;
+    }
+
+    public long getMemoryBytes() {
+        synchronized (_memory) {
+            return _memoryBytes;
         }
     }
 
@@ -99,91 +213,196 @@ public class ImageCache {
         return file.exists();
     }
 
-    private BufferedImage loadFromCache(URL url, OnLoadedListener listener) {
-        try {
-            File file = getCacheFile(url);
-            BufferedImage image = ImageIO.read(file);
-            listener.onLoaded(url, image, true, false);
-            return image;
-        } catch (Throwable e) {
-            LOG.error("Failed to load image from cache: " + url, e);
-            if (e instanceof OutOfMemoryError) {
-                e.printStackTrace(); // this is a special condition
-            }
-            listener.onLoaded(url, null, false, true);
-            return null;
+    private BufferedImage getFromMemory(String key) {
+        synchronized (_memory) {
+            return _memory.get(key);
         }
     }
 
-    private BufferedImage loadFromResource(URL url, OnLoadedListener listener) {
-        try {
-            BufferedImage image = ImageIO.read(url);
-            saveToCache(url, image, 0);
-            listener.onLoaded(url, image, false, false);
-            return image;
-        } catch (Throwable e) {
-            LOG.error("Failed to load image from resource: " + url, e);
-            listener.onLoaded(url, null, false, true);
-            return null;
+    private void putInMemory(String key, BufferedImage image) {
+        long bytes = sizeOf(image);
+        if (bytes > MAX_MEMORY_BYTES / 4) {
+            return;
+        }
+
+        synchronized (_memory) {
+            BufferedImage old = _memory.put(key, image);
+            if (old != null) {
+                _memoryBytes -= sizeOf(old);
+            }
+            _memoryBytes += bytes;
+
+            Iterator<BufferedImage> it = _memory.values().iterator();
+            while (_memoryBytes > MAX_MEMORY_BYTES && it.hasNext()) {
+                _memoryBytes -= sizeOf(it.next());
+                it.remove();
+            }
         }
     }
 
-    private void loadFromUrl(final URL url, final OnLoadedListener listener) {
-        // TODO: may be I must use BackgroundExecutorService
-        new Thread(new Runnable() {
-            public void run() {
-                try {
-                    BufferedImage image = null;
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
 
-                    String userAgent = "FrostWire/" + OSUtils.getOS() + "/" + FrostWireUtils.getFrostWireVersion();
-                    HttpFetcher fetcher = new HttpFetcher(url.toURI(), userAgent);
-                    Object[] result = fetcher.fetch(false);
+    private BufferedImage loadFromDisk(URL url) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage image = ImageIO.read(getCacheFile(url));
+        _diskHits.incrementAndGet();
+        _diskNanos.addAndGet(System.nanoTime() - start);
+        return image;
+    }
 
-                    if (result == null) {
-                        throw new IOException("HttpFetcher.fetch() got nothing at " + url.toString());
-                    }
+    /**
+     * Returns the decoded image and its original bytes (with the date of the
+     * response) in <code>download</code>, so they can be saved as they came.
+     */
+    private BufferedImage download(URL url, Object[] download) throws Exception {
+        long start = System.nanoTime();
 
-                    byte[] data = (byte[]) result[0];
-                    long date = (Long) result[1];
-                    if (data != null) {
-                        image = ImageIO.read(new ByteArrayInputStream(data));
-                        saveToCache(url, image, date);
-                    }
-                    if (listener != null && image != null) {
-                        listener.onLoaded(url, image, false, false);
-                    }
-                } catch (Throwable e) {
-                    LOG.error("Failed to load image from: " + url, e);
-                    listener.onLoaded(url, null, false, true);
-                }
+        byte[] data;
+        long date = 0;
+
+        if (url.getProtocol().equals("http")) {
+            String userAgent = "FrostWire/" + OSUtils.getOS() + "/" + FrostWireUtils.getFrostWireVersion();
+            HttpFetcher fetcher = new HttpFetcher(url.toURI(), userAgent);
+            Object[] result = fetcher.fetch(false);
+
+            if (result == null || result[0] == null) {
+                throw new IOException("HttpFetcher.fetch() got nothing at " + url.toString());
+            }
+
+            data = (byte[]) result[0];
+            date = (Long) result[1];
+        } else {
+            data = readResource(url);
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+
+        _downloads.incrementAndGet();
+        _downloadNanos.addAndGet(System.nanoTime() - start);
+
+        download[0] = data;
+        download[1] = date;
+
+        return image;
+    }
+
+    private static byte[] readResource(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
             }
-        }).start();
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
     }
 
-    private void saveToCache(URL url, BufferedImage image, long date) {
+    /**
+     * Writes the bytes as downloaded, no decoding and encoding again.
+     */
+    private void saveToCache(URL url, byte[] data, long date) {
         try {
             File file = getCacheFile(url);
+            File parent = file.getParentFile();
 
-            if (file.exists()) {
-                file.delete();
+            if (!parent.exists()) {
+                parent.mkdirs();
             }
 
-            String filename = file.getName();
-            int dotIndex = filename.lastIndexOf('.');
-            String ext = filename.substring(dotIndex + 1);
+            // readers of the cache never see a half written file
+            File temp = new File(parent, file.getName() + ".tmp");
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
 
-            String formatName = ImageIO.getImageReadersBySuffix(ext).next().getFormatName();
+            if (file.exists()) {
+                file.delete();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
 
-            if (!file.getParentFile().exists()) {
-                file.mkdirs();
+            if (date > 0) {
+                file.setLastModified(date);
             }
-            ImageIO.write(image, formatName, file);
-            file.setLastModified(date);
         } catch (Throwable e) {
             LOG.error("Failed to save image to cache: " + url, e);
         }
     }
 
+    private final class LoadTask implements Runnable {
+
+        private final URL _url;
+        private final String _key;
+
+        public LoadTask(URL url, String key) {
+            _url = url;
+            _key = key;
+        }
+
+        public void run() {
+            BufferedImage image = null;
+            boolean fromCache = false;
+            Object[] download = null;
+
+            try {
+                // it may have been loaded between the memory miss and this task
+                image = getFromMemory(_key);
+                if (image != null) {
+                    fromCache = true;
+                } else if (isCached(_url)) {
+                    image = loadFromDisk(_url);
+                    fromCache = true;
+                } else {
+                    download = new Object[2];
+                    image = download(_url, download);
+                }
+
+                if (image != null) {
+                    putInMemory(_key, image);
+                } else {
+                    _failures.incrementAndGet();
+                    LOG.info("Unable to decode image: " + _url);
+                }
+            } catch (Throwable e) {
+                _failures.incrementAndGet();
+                LOG.error("Failed to load image from: " + _url, e);
+                image = null;
+            }
+
+            List<OnLoadedListener> listeners;
+            synchronized (_pending) {
+                listeners = _pending.remove(_key);
+            }
+
+            if (listeners != null) {
+                for (OnLoadedListener listener : listeners) {
+                    if (listener != null) {
+                        try {
+                            listener.onLoaded(_url, image, fromCache, image == null);
+                        } catch (Throwable e) {
+                            LOG.error("Error in image listener: " + _url, e);
+                        }
+                    }
+                }
+            }
+
+            if (image != null && download != null) {
+                saveToCache(_url, (byte[]) download[0], (Long) download[1]);
+            }
+        }
+    }
+
     public interface OnLoadedListener {
 
         /**
@@ -0,0 +1,427 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire;
+
+import java.io.IOException;
+
+/**
+ * Pull parser over a JSON document, one token at a time, no tree and no
+ * reflection. Use it when only a few fields of a large document are needed.
+ *
+ * It's lenient the way search engines need it: numbers can come quoted,
+ * strings can come as numbers and null reads as null, 0 or false.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class JsonStreamReader {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int CONTEXT_DOCUMENT = 0;
+    private static final int CONTEXT_EMPTY_OBJECT = 1;
+    private static final int CONTEXT_OBJECT_NAME = 2;
+    private static final int CONTEXT_OBJECT_VALUE = 3;
+    private static final int CONTEXT_EMPTY_ARRAY = 4;
+    private static final int CONTEXT_ARRAY = 5;
+
+    private final CharSequence _in;
+    private final int _length;
+    private int _pos;
+
+    private int[] _stack;
+    private int _depth;
+
+    private Token _peeked;
+
+    private final StringBuilder _buffer;
+
+    public JsonStreamReader(CharSequence in) {
+        _in = in;
+        _length = in.length();
+        _stack = new int[16];
+        _stack[0] = CONTEXT_DOCUMENT;
+        _depth = 1;
+        _buffer = new StringBuilder();
+    }
+
+    public Token peek() throws IOException {
+        if (_peeked != null) {
+            return _peeked;
+        }
+
+        int context = _stack[_depth - 1];
+
+        switch (context) {
+        case CONTEXT_EMPTY_OBJECT:
+        case CONTEXT_OBJECT_NAME: {
+            int c = nextNonWhitespace();
+            if (c == '}') {
+                return _peeked = Token.END_OBJECT;
+            }
+            if (context == CONTEXT_OBJECT_NAME) {
+                if (c != ',') {
+                    throw syntaxError("Expected , or }");
+                }
+                c = nextNonWhitespace();
+            }
+            if (c != '"' && c != '\'') {
+                throw syntaxError("Expected name");
+            }
+            _pos--;
+            _stack[_depth - 1] = CONTEXT_OBJECT_VALUE;
+            return _peeked = Token.NAME;
+        }
+        case CONTEXT_EMPTY_ARRAY:
+        case CONTEXT_ARRAY: {
+            int c = nextNonWhitespace();
+            if (c == ']') {
+                return _peeked = Token.END_ARRAY;
+            }
+            if (context == CONTEXT_ARRAY) {
+                if (c != ',') {
+                    throw syntaxError("Expected , or ]");
+                }
+            } else {
+                _pos--;
+            }
+            _stack[_depth - 1] = CONTEXT_ARRAY;
+            return _peeked = peekValue();
+        }
+        case CONTEXT_OBJECT_VALUE: {
+            // the name was consumed, so is the colon
+            return _peeked = peekValue();
+        }
+        default: {
+            if (skipWhitespace() == -1) {
+                return _peeked = Token.END_DOCUMENT;
+            }
+            return _peeked = peekValue();
+        }
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        _pos++;
+        push(CONTEXT_EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        pop();
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        _pos++;
+        push(CONTEXT_EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        pop();
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        String name = readString(_in.charAt(_pos++));
+        if (nextNonWhitespace() != ':') {
+            throw syntaxError("Expected :");
+        }
+        return name;
+    }
+
+    /**
+     * @return the string, the literal text of a number or boolean, or null
+     */
+    public String nextString() throws IOException {
+        Token t = peek();
+        _peeked = null;
+        afterValue();
+
+        switch (t) {
+        case STRING:
+            return readString(_in.charAt(_pos++));
+        case NUMBER:
+        case BOOLEAN:
+            return readLiteral();
+        case NULL:
+            readLiteral();
+            return null;
+        default:
+            _peeked = t;
+            throw syntaxError("Expected a string but was " + t);
+        }
+    }
+
+    /**
+     * Quoted numbers are parsed too, null and malformed numbers are 0.
+     */
+    public long nextLong() throws IOException {
+        String s = nextString();
+        if (s == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(s.trim());
+            } catch (NumberFormatException e2) {
+                return 0;
+            }
+        }
+    }
+
+    public int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        String s = nextString();
+        return s != null && (s.equals("true") || s.equals("1"));
+    }
+
+    /**
+     * Skips the next value, with all its children if it's an object or array.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                depth++;
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                depth++;
+                break;
+            case END_OBJECT:
+                endObject();
+                depth--;
+                break;
+            case END_ARRAY:
+                endArray();
+                depth--;
+                break;
+            case NAME:
+                nextName();
+                break;
+            case END_DOCUMENT:
+                throw syntaxError("Unexpected end of document");
+            default:
+                skipScalar();
+                break;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Reads until the value of <code>name</code> in the current object, skipping
+     * any other member.
+     *
+     * @return false if the object has no such member, the reader is then at the
+     * end of the object
+     */
+    public boolean seek(String name) throws IOException {
+        while (hasNext()) {
+            if (nextName().equals(name)) {
+                return true;
+            }
+            skipValue();
+        }
+        return false;
+    }
+
+    private void skipScalar() throws IOException {
+        Token t = peek();
+        _peeked = null;
+        afterValue();
+        if (t == Token.STRING) {
+            char quote = _in.charAt(_pos++);
+            while (_pos < _length) {
+                char c = _in.charAt(_pos++);
+                if (c == '\\') {
+                    _pos++;
+                } else if (c == quote) {
+                    return;
+                }
+            }
+            throw syntaxError("Unterminated string");
+        } else {
+            readLiteral();
+        }
+    }
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace();
+        _pos--;
+        switch (c) {
+        case '{':
+            return Token.BEGIN_OBJECT;
+        case '[':
+            return Token.BEGIN_ARRAY;
+        case '"':
+        case '\'':
+            return Token.STRING;
+        case 't':
+        case 'f':
+            return Token.BOOLEAN;
+        case 'n':
+            return Token.NULL;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return Token.NUMBER;
+            }
+            throw syntaxError("Unexpected character " + (char) c);
+        }
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token t = peek();
+        if (t != expected) {
+            throw syntaxError("Expected " + expected + " but was " + t);
+        }
+        _peeked = null;
+        if (expected == Token.BEGIN_OBJECT || expected == Token.BEGIN_ARRAY) {
+            afterValue();
+        }
+    }
+
+    /**
+     * After a member value the object expects a comma or the end again.
+     */
+    private void afterValue() {
+        if (_stack[_depth - 1] == CONTEXT_OBJECT_VALUE) {
+            _stack[_depth - 1] = CONTEXT_OBJECT_NAME;
+        }
+    }
+
+    private void push(int context) {
+        if (_depth == _stack.length) {
+            int[] stack = new int[_depth * 2];
+            System.arraycopy(_stack, 0, stack, 0, _depth);
+            _stack = stack;
+        }
+        _stack[_depth++] = context;
+    }
+
+    private void pop() {
+        _depth--;
+    }
+
+    private String readString(char quote) throws IOException {
+        _buffer.setLength(0);
+        while (_pos < _length) {
+            char c = _in.charAt(_pos++);
+            if (c == quote) {
+                return _buffer.toString();
+            }
+            if (c == '\\') {
+                if (_pos >= _length) {
+                    break;
+                }
+                char e = _in.charAt(_pos++);
+                switch (e) {
+                case 'u':
+                    if (_pos + 4 > _length) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    try {
+                        _buffer.append((char) Integer.parseInt(_in.subSequence(_pos, _pos + 4).toString(), 16));
+                    } catch (NumberFormatException ex) {
+                        throw syntaxError("Invalid escape sequence");
+                    }
+                    _pos += 4;
+                    break;
+                case 't':
+                    _buffer.append('\t');
+                    break;
+                case 'b':
+                    _buffer.append('\b');
+                    break;
+                case 'n':
+                    _buffer.append('\n');
+                    break;
+                case 'r':
+                    _buffer.append('\r');
+                    break;
+                case 'f':
+                    _buffer.append('\f');
+                    break;
+                default:
+                    _buffer.append(e);
+                    break;
+                }
+            } else {
+                _buffer.append(c);
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private String readLiteral() {
+        int start = _pos;
+        while (_pos < _length) {
+            char c = _in.charAt(_pos);
+            if (c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+                break;
+            }
+            _pos++;
+        }
+        return _in.subSequence(start, _pos).toString();
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = skipWhitespace();
+        if (c == -1) {
+            throw syntaxError("Unexpected end of document");
+        }
+        _pos++;
+        return c;
+    }
+
+    /**
+     * @return the next non whitespace char without consuming it, -1 at the end
+     */
+    private int skipWhitespace() {
+        while (_pos < _length) {
+            char c = _in.charAt(_pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+            _pos++;
+        }
+        return -1;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at position " + _pos);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent.websearch;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.frostwire.HttpFetcher;
+
+/**
+ * Fetches the search page of an engine and parses it over a {@link CharSequence}
+ * view of the response, keeping {@link ParseStats} of every parse.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public abstract class AbstractWebSearchPerformer implements WebSearchPerformer {
+
+    private static final Log LOG = LogFactory.getLog(AbstractWebSearchPerformer.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ParseStats _parseStats = new ParseStats();
+
+    public List<WebSearchResult> search(String keywords) throws IOException {
+        String encodedKeywords = keywords;
+        try {
+            encodedKeywords = URLEncoder.encode(keywords, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            LOG.error("Can't UTF-8 encode keywords: " + keywords, e);
+        }
+
+        URI uri;
+        try {
+            uri = getURI(encodedKeywords);
+        } catch (URISyntaxException e) {
+            LOG.error("Can't create search uri for keywords: " + keywords, e);
+            return new ArrayList<WebSearchResult>();
+        }
+
+        return parse(new HttpFetcher(uri, HTTP_TIMEOUT).fetchBody());
+    }
+
+    /**
+     * Parses a response of the engine, fetched or saved.
+     * 
+     * @throws IOException if the response is malformed and not a single result
+     * could be read from it
+     */
+    public List<WebSearchResult> parse(byte[] body) throws IOException {
+        long start = System.nanoTime();
+        long allocated = ParseStats.getAllocatedBytes();
+
+        List<WebSearchResult> results = new ArrayList<WebSearchResult>();
+
+        try {
+            parse(UTF8.decode(ByteBuffer.wrap(body)), results, getMaxResults());
+        } catch (IOException e) {
+            if (results.isEmpty()) {
+                throw e;
+            }
+            LOG.warn("Malformed response from " + getClass().getSimpleName() + ", keeping " + results.size() + " results", e);
+        } finally {
+            long bytes = allocated >= 0 ? ParseStats.getAllocatedBytes() - allocated : -1;
+            _parseStats.record(results.size(), System.nanoTime() - start, bytes);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(getClass().getSimpleName() + " parse stats: " + _parseStats);
+        }
+
+        return results;
+    }
+
+    public ParseStats getParseStats() {
+        return _parseStats;
+    }
+
+    /** Returns the URI of the search engine search command */
+    protected abstract URI getURI(String encodedKeywords) throws URISyntaxException;
+
+    /**
+     * Adds the results found in <code>text</code> to <code>results</code>, up to
+     * <code>max</code>.
+     */
+    protected abstract void parse(CharSequence text, List<WebSearchResult> results, int max) throws IOException;
+
+    protected int getMaxResults() {
+        return Integer.MAX_VALUE;
+    }
+}
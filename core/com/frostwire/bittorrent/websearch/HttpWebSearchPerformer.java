@@ -1,86 +1,98 @@
 package com.frostwire.bittorrent.websearch;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.limewire.util.StringUtils;
-
-import com.frostwire.HttpFetcher;
-
 /**
  * Extend this for engines that don't provide JSON APIs.
  *
+ * The pattern is compiled once per performer. If the engine gives the text
+ * every result row starts with, the page is cut in rows and the pattern is
+ * only tried anchored at the start of each row, so its lazy groups can't
+ * backtrack past the end of the row.
+ *
  * @author gubatron
  *
  */
-public abstract class HttpWebSearchPerformer implements WebSearchPerformer {
+public abstract class HttpWebSearchPerformer extends AbstractWebSearchPerformer {
 
-    public List<WebSearchResult> search(String keywords) {
-        List<WebSearchResult> result = new ArrayList<WebSearchResult>();
-        
-        try {
-            keywords = URLEncoder.encode(keywords, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+    private Pattern _pattern;
+    private Pattern _rowPattern;
+
+    @Override
+    protected void parse(CharSequence page, List<WebSearchResult> results, int max) {
+        Matcher matcher = getPattern().matcher(page);
+        Pattern rowPattern = getRowPattern();
+
+        if (rowPattern == null) {
+            while (results.size() < max && matcher.find()) {
+                addResult(matcher, results);
+            }
+        } else {
+            Matcher rows = rowPattern.matcher(page);
+            if (!rows.find()) {
+                return;
+            }
+
+            int start = rows.start();
+            while (start != -1 && results.size() < max) {
+                int end;
+                if (rows.find()) {
+                    end = rows.start();
+                } else {
+                    end = page.length();
+                }
+
+                matcher.region(start, end);
+                if (matcher.lookingAt()) {
+                    addResult(matcher, results);
+                }
+
+                start = end < page.length() ? end : -1;
+            }
         }
+    }
 
-        HttpFetcher fetcher = null;
+    private void addResult(Matcher matcher, List<WebSearchResult> results) {
         try {
-            fetcher = new HttpFetcher(getURI(keywords), HTTP_TIMEOUT);
-        } catch (URISyntaxException e) {
-            e.printStackTrace();
-            return result;
+            WebSearchResult sr = getNextSearchResult(matcher);
+            if (sr != null) {
+                results.add(sr);
+            }
+        } catch (Exception e) {
+            // do nothing
         }
-        byte[] htmlBytes = fetcher.fetch();
+    }
 
-        if (htmlBytes == null) {
-            return result;
+    private synchronized Pattern getPattern() {
+        if (_pattern == null) {
+            _pattern = Pattern.compile(getRegex());
         }
+        return _pattern;
+    }
 
-        String html = StringUtils.getUTF8String(htmlBytes);
-
-        String regex = getRegex();
-        
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(html);
-        
-        //System.out.println(html);
-        
-        int max = getMaxResults();
-        
-        int i = 0;
-        
-        while (matcher.find() && i < max) {
-            try {
-                WebSearchResult sr = getNextSearchResult(matcher);
-                if (sr != null) {
-                    result.add(sr);
-                    i++;
-                }
-            } catch (Exception e) {
-                // do nothing
+    private synchronized Pattern getRowPattern() {
+        if (_rowPattern == null) {
+            String rowStart = getRowStart();
+            if (rowStart != null) {
+                _rowPattern = Pattern.compile(rowStart, Pattern.LITERAL);
             }
         }
-        
-        return result;
+        return _rowPattern;
     }
 
-    /** Returns the URI of the search engine search command */
-	protected abstract URI getURI(String keywords) throws URISyntaxException;
-	
-	/** This method should return an implementation of WebSearchResult using a matcher that is able to find all the torrent fields*/
+    /** This method should return an implementation of WebSearchResult using a matcher that is able to find all the torrent fields*/
     protected abstract WebSearchResult getNextSearchResult(Matcher matcher);
 
     /** This function must return the regex necessary for a pattern matcher to find the necessary fields of a SearchResult*/
     protected abstract String getRegex();
-    
-    protected int getMaxResults() {
-        return Integer.MAX_VALUE;
+
+    /**
+     * The literal text every result row starts with, the regex must match from
+     * there. Null (the default) scans the whole page with the regex.
+     */
+    protected String getRowStart() {
+        return null;
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent.websearch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time and memory spent parsing the responses of a search engine.
+ *
+ * Allocation is only measured when the JVM supports per thread allocation
+ * counters, otherwise {@link #getBytesPerResult()} is -1.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class ParseStats {
+
+    private static final ThreadMXBean ALLOCATION_BEAN = getAllocationBean();
+
+    private final AtomicLong _parses = new AtomicLong();
+    private final AtomicLong _results = new AtomicLong();
+    private final AtomicLong _nanos = new AtomicLong();
+    private final AtomicLong _bytes = new AtomicLong();
+
+    /**
+     * @param bytes allocated bytes, -1 if unknown
+     */
+    public void record(int results, long nanos, long bytes) {
+        _parses.incrementAndGet();
+        _results.addAndGet(results);
+        _nanos.addAndGet(nanos);
+        if (bytes >= 0) {
+            _bytes.addAndGet(bytes);
+        }
+    }
+
+    public long getParses() {
+        return _parses.get();
+    }
+
+    public long getResults() {
+        return _results.get();
+    }
+
+    public double getMillisPerParse() {
+        long parses = _parses.get();
+        return parses > 0 ? _nanos.get() / 1000000.0 / parses : 0;
+    }
+
+    public double getMicrosPerResult() {
+        long results = _results.get();
+        return results > 0 ? _nanos.get() / 1000.0 / results : 0;
+    }
+
+    public long getBytesPerResult() {
+        long results = _results.get();
+        if (ALLOCATION_BEAN == null) {
+            return -1;
+        }
+        return results > 0 ? _bytes.get() / results : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d parses, %d results, %.2f ms/parse, %.1f us/result, %d bytes/result", getParses(), getResults(), getMillisPerParse(), getMicrosPerResult(), getBytesPerResult());
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, -1 if unsupported
+     */
+    public static long getAllocatedBytes() {
+        if (ALLOCATION_BEAN == null) {
+            return -1;
+        }
+        try {
+            return ((com.sun.management.ThreadMXBean) ALLOCATION_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } catch (Throwable e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The HotSpot bean is only referenced inside try blocks, so other JVMs
+     * still load this class.
+     */
+    private static ThreadMXBean getAllocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
+                }
+            }
+        } catch (Throwable e) {
+            // not a HotSpot JVM
+        }
+        return null;
+    }
+}
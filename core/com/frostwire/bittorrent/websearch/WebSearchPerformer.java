@@ -1,10 +1,15 @@
 package com.frostwire.bittorrent.websearch;
 
+import java.io.IOException;
 import java.util.List;
 
 public interface WebSearchPerformer {
     
     public static final int HTTP_TIMEOUT = 5000;
     
-    public List<WebSearchResult> search(String keywords);
+    /**
+     * @throws IOException if the engine couldn't be reached, as opposed to a
+     * query without results
+     */
+    public List<WebSearchResult> search(String keywords) throws IOException;
 }
@@ -1,70 +1,80 @@
 package com.frostwire.bittorrent.websearch.clearbits;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
 
-import com.frostwire.HttpFetcher;
-import com.frostwire.JsonEngine;
-import com.frostwire.bittorrent.websearch.WebSearchPerformer;
+import com.frostwire.JsonStreamReader;
+import com.frostwire.bittorrent.websearch.AbstractWebSearchPerformer;
 import com.frostwire.bittorrent.websearch.WebSearchResult;
 
-public class ClearBitsWebSearchPerformer implements WebSearchPerformer {
+public class ClearBitsWebSearchPerformer extends AbstractWebSearchPerformer {
 
-    public List<WebSearchResult> search(String keywords) {
-        List<WebSearchResult> result = new ArrayList<WebSearchResult>();
-
-        ClearBitsResponse response = searchClearBits(keywords);
-
-        if (response != null && response.results != null)
-            for (ClearBitsItem bucket : response.results) {
-
-                WebSearchResult sr = new ClearBitsWebSearchResult(bucket);
-
-                result.add(sr);
-            }
-
-        return result;
+    @Override
+    protected URI getURI(String encodedKeywords) throws URISyntaxException {
+        return new URI("http://www.clearbits.net/home/search/index.json?query=" + encodedKeywords);
     }
 
-    private ClearBitsResponse searchClearBits(String keywords) {
-        String iha = null;
-        try {
-            iha = URLEncoder.encode(keywords, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    /**
+     * {"results": [{"title": ..., "hashstr": ..., ...}, ...]}, older responses
+     * wrap every result in {"torrent": {...}}.
+     */
+    @Override
+    protected void parse(CharSequence json, List<WebSearchResult> results, int max) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(json);
+
+        reader.beginObject();
+        if (!reader.seek("results")) {
+            return;
         }
 
-        HttpFetcher fetcher = null;
-        try {
-            fetcher = new HttpFetcher(new URI("http://www.clearbits.net/home/search/index.json?query=" + iha), HTTP_TIMEOUT);
-        } catch (URISyntaxException e) {
-
+        reader.beginArray();
+        while (reader.hasNext() && results.size() < max) {
+            ClearBitsItem item = new ClearBitsItem();
+            readItem(reader, item);
+            try {
+                item.fixItem();
+            } catch (Exception e) {
+                // no torrent url and no file name to build it from
+                continue;
+            }
+            results.add(new ClearBitsWebSearchResult(item));
         }
-        byte[] jsonBytes = fetcher.fetch();
-
-        if (jsonBytes == null)
-            return null;
-
-        String json = new String(jsonBytes);
+    }
 
-        // Feel the power of reflection
-        JsonEngine engine = new JsonEngine();
-        
-        ClearBitsResponse response = null;
-        
-        try {
-        	response = engine.toObject(json, ClearBitsResponse.class);
-        } catch (Exception e) {
-        	return null;
+    private static void readItem(JsonStreamReader reader, ClearBitsItem item) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("torrent") && reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                readItem(reader, item);
+            } else if (name.equals("id")) {
+                item.id = reader.nextInt();
+            } else if (name.equals("filename")) {
+                item.filename = reader.nextString();
+            } else if (name.equals("leechers")) {
+                item.leechers = reader.nextInt();
+            } else if (name.equals("created_at")) {
+                item.created_at = reader.nextString();
+            } else if (name.equals("title")) {
+                item.title = reader.nextString();
+            } else if (name.equals("seeds")) {
+                item.seeds = reader.nextInt();
+            } else if (name.equals("hashstr")) {
+                item.hashstr = reader.nextString();
+            } else if (name.equals("mb_size")) {
+                item.mb_size = reader.nextInt();
+            } else if (name.equals("license_url")) {
+                item.license_url = reader.nextString();
+            } else if (name.equals("torrent_url")) {
+                item.torrent_url = reader.nextString();
+            } else if (name.equals("location")) {
+                item.location = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
         }
-
-        response.fixItems();
-
-        return response;
+        reader.endObject();
     }
 }
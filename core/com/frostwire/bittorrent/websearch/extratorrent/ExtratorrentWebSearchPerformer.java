@@ -1,62 +1,79 @@
 package com.frostwire.bittorrent.websearch.extratorrent;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
 
-import com.frostwire.HttpFetcher;
-import com.frostwire.JsonEngine;
-import com.frostwire.bittorrent.websearch.WebSearchPerformer;
+import com.frostwire.JsonStreamReader;
+import com.frostwire.bittorrent.websearch.AbstractWebSearchPerformer;
 import com.frostwire.bittorrent.websearch.WebSearchResult;
 
-public class ExtratorrentWebSearchPerformer implements WebSearchPerformer {
+public class ExtratorrentWebSearchPerformer extends AbstractWebSearchPerformer {
 
     @Override
-    public List<WebSearchResult> search(String keywords) {
-        List<WebSearchResult> result = new ArrayList<WebSearchResult>();
-
-        ExtratorrentResponse response = searchExtratorrent(keywords);
-
-        if (response != null && response.list != null)
-            for (ExtratorrentItem item : response.list) {
-
-                WebSearchResult sr = new ExtratorrentResponseWebSearchResult(item);
-
-                result.add(sr);
-            }
-
-        return result;
+    protected URI getURI(String encodedKeywords) throws URISyntaxException {
+        return new URI("http://extratorrent.com/json/?search=" + encodedKeywords);
     }
 
-    private ExtratorrentResponse searchExtratorrent(String keywords) {
-        String iha = null;
-        try {
-            iha = URLEncoder.encode(keywords, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    /**
+     * {"title": ..., "total_results": 224, "list": [{"title": ..., "hash": ..., ...}, ...]}
+     */
+    @Override
+    protected void parse(CharSequence json, List<WebSearchResult> results, int max) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(json);
 
-        HttpFetcher fetcher = null;
-        try {
-            fetcher = new HttpFetcher(new URI("http://extratorrent.com/json/?search=" + iha), HTTP_TIMEOUT);
-        } catch (URISyntaxException e) {
+        reader.beginObject();
+        if (!reader.seek("list")) {
+            return;
+        }
 
+        reader.beginArray();
+        while (reader.hasNext() && results.size() < max) {
+            results.add(new ExtratorrentResponseWebSearchResult(readItem(reader)));
         }
-        byte[] jsonBytes = fetcher.fetch();
+    }
 
-        if (jsonBytes == null)
-            return null;
+    private static ExtratorrentItem readItem(JsonStreamReader reader) throws IOException {
+        ExtratorrentItem item = new ExtratorrentItem();
 
-        String json = new String(jsonBytes);
-        
-        // Feel the power of reflection
-        JsonEngine engine = new JsonEngine();
-        ExtratorrentResponse response = engine.toObject(json, ExtratorrentResponse.class);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("title")) {
+                item.title = reader.nextString();
+            } else if (name.equals("category")) {
+                item.category = reader.nextString();
+            } else if (name.equals("subcategory")) {
+                item.subcategory = reader.nextString();
+            } else if (name.equals("link")) {
+                item.link = reader.nextString();
+            } else if (name.equals("guid")) {
+                item.guid = reader.nextString();
+            } else if (name.equals("pubDate")) {
+                item.pubDate = reader.nextString();
+            } else if (name.equals("torrentLink")) {
+                item.torrentLink = reader.nextString();
+            } else if (name.equals("files")) {
+                item.files = reader.nextInt();
+            } else if (name.equals("comments")) {
+                item.comments = reader.nextInt();
+            } else if (name.equals("hash")) {
+                item.hash = reader.nextString();
+            } else if (name.equals("peers")) {
+                item.peers = reader.nextInt();
+            } else if (name.equals("seeds")) {
+                item.seeds = reader.nextInt();
+            } else if (name.equals("leechs")) {
+                item.leechs = reader.nextInt();
+            } else if (name.equals("size")) {
+                item.size = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-        return response;
+        return item;
     }
 }
@@ -1,7 +0,0 @@
-package com.frostwire.bittorrent.websearch.isohunt;
-
-import java.util.List;
-
-public class ISOHuntList {
-	public List<ISOHuntItem > list;
-}
@@ -1,64 +1,86 @@
 package com.frostwire.bittorrent.websearch.isohunt;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
 
-import com.frostwire.HttpFetcher;
-import com.frostwire.JsonEngine;
-import com.frostwire.bittorrent.websearch.WebSearchPerformer;
+import com.frostwire.JsonStreamReader;
+import com.frostwire.bittorrent.websearch.AbstractWebSearchPerformer;
 import com.frostwire.bittorrent.websearch.WebSearchResult;
 
-public class ISOHuntWebSearchPerformer implements WebSearchPerformer {
+public class ISOHuntWebSearchPerformer extends AbstractWebSearchPerformer {
 
-    public List<WebSearchResult> search(String keywords) {
-        List<WebSearchResult> result = new ArrayList<WebSearchResult>();
-
-        ISOHuntResponse response = searchISOHunt(keywords);
-
-        if (response != null && response.items != null && response.items.list != null)
-            for (ISOHuntItem item : response.items.list) {
-
-                WebSearchResult sr = new ISOHuntWebSearchResult(item);
-
-                result.add(sr);
-            }
-
-        return result;
+    @Override
+    protected URI getURI(String encodedKeywords) throws URISyntaxException {
+        return new URI("http://isohunt.com/js/json.php?ihq=" + encodedKeywords + "&start=1&rows=100&sort=seeds");
     }
 
     /**
-     * @see com.frostwire.bittorrent.websearch.isohunt.ISOHuntResponse
-     * @param keywords
-     * @return
+     * {"title": ..., "total_results": 705, "items": {"list": [{"title": ..., "hash": ..., ...}, ...]}}
      */
-    public static ISOHuntResponse searchISOHunt(String keywords) {
-        String iha = null;
-        try {
-            iha = URLEncoder.encode(keywords, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+    @Override
+    protected void parse(CharSequence json, List<WebSearchResult> results, int max) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(json);
+
+        reader.beginObject();
+        if (!reader.seek("items")) {
+            return;
         }
 
-        HttpFetcher fetcher = null;
-        try {
-            fetcher = new HttpFetcher(new URI("http://isohunt.com/js/json.php?ihq=" + iha + "&start=1&rows=100&sort=seeds"), HTTP_TIMEOUT);
-        } catch (URISyntaxException e) {
+        reader.beginObject();
+        if (!reader.seek("list")) {
+            return;
         }
-        byte[] jsonBytes = fetcher.fetch();
 
-        if (jsonBytes == null)
-            return null;
+        reader.beginArray();
+        while (reader.hasNext() && results.size() < max) {
+            results.add(new ISOHuntWebSearchResult(readItem(reader)));
+        }
+    }
 
-        String json = new String(jsonBytes);
+    private static ISOHuntItem readItem(JsonStreamReader reader) throws IOException {
+        ISOHuntItem item = new ISOHuntItem();
 
-        // Feel the power of reflection
-        JsonEngine engine = new JsonEngine();
-        ISOHuntResponse response = engine.toObject(json, ISOHuntResponse.class);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("title")) {
+                item.title = reader.nextString();
+            } else if (name.equals("link")) {
+                item.link = reader.nextString();
+            } else if (name.equals("guid")) {
+                item.guid = reader.nextString();
+            } else if (name.equals("enclosure_url")) {
+                item.enclosure_url = reader.nextString();
+            } else if (name.equals("length")) {
+                item.length = reader.nextString();
+            } else if (name.equals("type")) {
+                item.type = reader.nextString();
+            } else if (name.equals("tracker")) {
+                item.tracker = reader.nextString();
+            } else if (name.equals("tracker_url")) {
+                item.tracker_url = reader.nextString();
+            } else if (name.equals("original_link")) {
+                item.original_link = reader.nextString();
+            } else if (name.equals("size")) {
+                item.size = reader.nextString();
+            } else if (name.equals("files")) {
+                item.files = reader.nextString();
+            } else if (name.equals("Seeds")) {
+                item.Seeds = reader.nextString();
+            } else if (name.equals("leechers")) {
+                item.leechers = reader.nextString();
+            } else if (name.equals("pubDate")) {
+                item.pubDate = reader.nextString();
+            } else if (name.equals("hash")) {
+                item.hash = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-        return response;
+        return item;
     }
 }
@@ -1,81 +1,86 @@
 package com.frostwire.bittorrent.websearch.kat;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
 
-import com.frostwire.HttpFetcher;
-import com.frostwire.JsonEngine;
-import com.frostwire.bittorrent.websearch.WebSearchPerformer;
+import org.limewire.util.StringUtils;
+
+import com.frostwire.JsonStreamReader;
+import com.frostwire.bittorrent.websearch.AbstractWebSearchPerformer;
 import com.frostwire.bittorrent.websearch.WebSearchResult;
 import com.limegroup.gnutella.settings.SearchEnginesSettings;
 
-public class KATWebSearchPerformer implements WebSearchPerformer {
-
-    public List<WebSearchResult> search(String keywords) {
-        List<WebSearchResult> result = new ArrayList<WebSearchResult>();
-
-        KATResponse response = searchKAT(keywords);
-
-        if (response != null && response.list != null) {
-            int n = 0;
-
-            for (KATItem bucket : response.list) {
+public class KATWebSearchPerformer extends AbstractWebSearchPerformer {
 
-                WebSearchResult sr = new KATWebSearchResult(bucket);
-
-                result.add(sr);
-                n++;
-                if (n > getMaxResults()) {
-                    break;
-                }
-            }
-        }
-
-        return result;
+    @Override
+    protected URI getURI(String encodedKeywords) throws URISyntaxException {
+        return new URI("http://www.kat.ph/json.php?q=" + encodedKeywords);
     }
 
-    private int getMaxResults() {
+    @Override
+    protected int getMaxResults() {
         return SearchEnginesSettings.KAT_WEBSEARCHPERFORMER_MAX_RESULTS.getValue();
     }
 
-    private KATResponse searchKAT(String keywords) {
-        String iha = null;
-        try {
-            iha = URLEncoder.encode(keywords, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-        }
-
-        HttpFetcher fetcher = null;
-        try {
-            fetcher = new HttpFetcher(new URI("http://www.kat.ph/json.php?q=" + iha), HTTP_TIMEOUT);
-        } catch (URISyntaxException e) {
+    /**
+     * {"title": ..., "list": [{"title": ..., "hash": ..., ...}, ...]}
+     */
+    @Override
+    protected void parse(CharSequence json, List<WebSearchResult> results, int max) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(json);
 
+        reader.beginObject();
+        if (!reader.seek("list")) {
+            return;
         }
-        byte[] jsonBytes = fetcher.fetch();
-
-        if (jsonBytes == null)
-            return null;
-
-        String json = new String(jsonBytes);
 
-        // Feel the power of reflection
-        JsonEngine engine = new JsonEngine();
-
-        KATResponse response = null;
+        reader.beginArray();
+        while (reader.hasNext() && results.size() < max) {
+            KATItem item = readItem(reader);
+            if (isValid(item)) {
+                results.add(new KATWebSearchResult(item));
+            }
+        }
+    }
 
-        try {
-            response = engine.toObject(json, KATResponse.class);
-        } catch (Exception e) {
-            return null;
+    private static KATItem readItem(JsonStreamReader reader) throws IOException {
+        KATItem item = new KATItem();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("title")) {
+                item.title = reader.nextString();
+            } else if (name.equals("link")) {
+                item.link = reader.nextString();
+            } else if (name.equals("pubDate")) {
+                item.pubDate = reader.nextString();
+            } else if (name.equals("torrentLink")) {
+                item.torrentLink = reader.nextString();
+            } else if (name.equals("hash")) {
+                item.hash = reader.nextString();
+            } else if (name.equals("seeds")) {
+                item.seeds = reader.nextInt();
+            } else if (name.equals("size")) {
+                item.size = reader.nextLong();
+            } else if (name.equals("verified")) {
+                item.verified = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
         }
+        reader.endObject();
 
-        response.fixItems();
+        return item;
+    }
 
-        return response;
+    /**
+     * Include only verified results to keep users safe, and only the ones
+     * with all the mandatory data.
+     */
+    private static boolean isValid(KATItem item) {
+        return item.verified != 0 && !StringUtils.isNullOrEmpty(item.title) && !StringUtils.isNullOrEmpty(item.hash) && !StringUtils.isNullOrEmpty(item.torrentLink) && !StringUtils.isNullOrEmpty(item.link) && item.size > 0;
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.frostwire.bittorrent.websearch.mininova;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -14,7 +15,7 @@ import com.frostwire.bittorrent.websearch.WebSearchResult;
 
 public class MininovaWebSearchPerformer implements WebSearchPerformer {
 
-    public List<WebSearchResult> search(String keywords) {
+    public List<WebSearchResult> search(String keywords) throws IOException {
 
         List<WebSearchResult> result = new ArrayList<WebSearchResult>();
 
@@ -31,7 +32,7 @@ public class MininovaWebSearchPerformer implements WebSearchPerformer {
         return result;
     }
 
-    public static MininovaVuzeResponse searchMininovaVuze(String keywords) {
+    public static MininovaVuzeResponse searchMininovaVuze(String keywords) throws IOException {
         String iha = null;
         try {
             iha = URLEncoder.encode(keywords, "UTF-8");
@@ -46,10 +47,7 @@ public class MininovaWebSearchPerformer implements WebSearchPerformer {
         } catch (URISyntaxException e) {
         }
 
-        byte[] jsonBytes = fetcher.fetch();
-
-        if (jsonBytes == null)
-            return null;
+        byte[] jsonBytes = fetcher.fetchBody();
 
         String json = new String(jsonBytes);
         //fix what seems to be an intentional JSON syntax typo put ther by mininova
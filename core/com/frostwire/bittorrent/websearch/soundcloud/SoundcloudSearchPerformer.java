@@ -18,6 +18,7 @@
 
 package com.frostwire.bittorrent.websearch.soundcloud;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -47,9 +48,11 @@ public class SoundcloudSearchPerformer implements WebSearchPerformer {
 
     private static final Log LOG = LogFactory.getLog(SoundcloudSearchPerformer.class);
 
+    private static final Pattern PATTERN = Pattern.compile("(?is)<abbr title='(.*?)'.*?window.SC.bufferTracks.push\\((.*?)\\);");
+
     private SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("MMMM, dd yyyy HH:mm:ss Z");
 
-    public List<WebSearchResult> search(String keywords) {
+    public List<WebSearchResult> search(String keywords) throws IOException {
         List<WebSearchResult> result = new ArrayList<WebSearchResult>();
 
         try {
@@ -61,13 +64,21 @@ public class SoundcloudSearchPerformer implements WebSearchPerformer {
         int pages = getMaxResults() / 10;
 
         for (int i = 0; i < pages; i++) {
-            result.addAll(searchPage(i + 1, keywords));
+            try {
+                result.addAll(searchPage(i + 1, keywords));
+            } catch (IOException e) {
+                if (i == 0) {
+                    throw e;
+                }
+                // keep the pages we already have
+                break;
+            }
         }
 
         return result;
     }
 
-    private List<WebSearchResult> searchPage(int page, String keywords) {
+    private List<WebSearchResult> searchPage(int page, String keywords) throws IOException {
         List<WebSearchResult> result = new ArrayList<WebSearchResult>();
 
         HttpFetcher fetcher = null;
@@ -77,18 +88,11 @@ public class SoundcloudSearchPerformer implements WebSearchPerformer {
             LOG.error("Can't create uri", e);
             return result;
         }
-        byte[] htmlBytes = fetcher.fetch();
-
-        if (htmlBytes == null) {
-            return result;
-        }
+        byte[] htmlBytes = fetcher.fetchBody();
 
         String html = StringUtils.getUTF8String(htmlBytes);
 
-        String regex = getRegex();
-
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(html);
+        Matcher matcher = PATTERN.matcher(html);
 
         JsonEngine engine = new JsonEngine();
 
@@ -121,10 +125,6 @@ public class SoundcloudSearchPerformer implements WebSearchPerformer {
         return new URI("http://soundcloud.com/tracks/search?page=" + page + "&q[fulltext]=" + encodedKeywords);
     }
 
-    public String getRegex() {
-        return "(?is)<abbr title='(.*?)'.*?window.SC.bufferTracks.push\\((.*?)\\);";
-    }
-
     protected int getMaxResults() {
         return SearchEnginesSettings.SOUNDCLOUD_WEBSEARCHPERFORMER_MAX_RESULTS.getValue();
     }
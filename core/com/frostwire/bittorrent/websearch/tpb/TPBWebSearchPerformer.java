@@ -26,6 +26,11 @@ public class TPBWebSearchPerformer extends HttpWebSearchPerformer {
         return "(?is)<td class=\"vertTh\">.*?<a href=\"[^\"]*?\" title=\"More from this category\">(.*?)</a>.*?</td>.*?<a href=\"([^\"]*?)\" class=\"detLink\" title=\"Details for ([^\"]*?)\">.*?</a>.*?<a href=\\\"(magnet:\\?xt=urn:btih:.*?)\\\" title=\\\"Download this torrent using magnet\\\">.*?</a>.*?<font class=\"detDesc\">Uploaded ([^,]*?), Size (.*?), ULed.*?<td align=\"right\">(.*?)</td>\\s*<td align=\"right\">(.*?)</td>";
     }
 
+    @Override
+    protected String getRowStart() {
+        return "<td class=\"vertTh\">";
+    }
+
     @Override
     protected int getMaxResults() {
         return SearchEnginesSettings.TPB_WEBSEARCHPERFORMER_MAX_RESULTS.getValue();
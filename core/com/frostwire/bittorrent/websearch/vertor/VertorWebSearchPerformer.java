@@ -1,62 +1,67 @@
 package com.frostwire.bittorrent.websearch.vertor;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
 
-import com.frostwire.HttpFetcher;
-import com.frostwire.JsonEngine;
-import com.frostwire.bittorrent.websearch.WebSearchPerformer;
+import com.frostwire.JsonStreamReader;
+import com.frostwire.bittorrent.websearch.AbstractWebSearchPerformer;
 import com.frostwire.bittorrent.websearch.WebSearchResult;
 
-public class VertorWebSearchPerformer implements WebSearchPerformer {
+public class VertorWebSearchPerformer extends AbstractWebSearchPerformer {
 
     @Override
-    public List<WebSearchResult> search(String keywords) {
-        List<WebSearchResult> result = new ArrayList<WebSearchResult>();
-
-        VertorResponse response = searchExtratorrent(keywords);
-
-        if (response!=null && response.results != null)
-            for (VertorItem item : response.results) {
-
-                WebSearchResult sr = new VertorResponseWebSearchResult(item);
-
-                result.add(sr);
-            }
-
-        return result;
+    protected URI getURI(String encodedKeywords) throws URISyntaxException {
+        return new URI("http://www.vertor.com/index.php?mod=json&search=&words=" + encodedKeywords);
     }
 
-    private VertorResponse searchExtratorrent(String keywords) {
-        String iha = null;
-        try {
-            iha = URLEncoder.encode(keywords, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    /**
+     * {"results": [{"name": ..., "seeds": "733", ...}, ...]}
+     */
+    @Override
+    protected void parse(CharSequence json, List<WebSearchResult> results, int max) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(json);
 
-        HttpFetcher fetcher = null;
-        try {
-            fetcher = new HttpFetcher(new URI("http://www.vertor.com/index.php?mod=json&search=&words=" + iha), HTTP_TIMEOUT);
-        } catch (URISyntaxException e) {
+        reader.beginObject();
+        if (!reader.seek("results")) {
+            return;
+        }
 
+        reader.beginArray();
+        while (reader.hasNext() && results.size() < max) {
+            results.add(new VertorResponseWebSearchResult(readItem(reader)));
         }
-        byte[] jsonBytes = fetcher.fetch();
+    }
 
-        if (jsonBytes == null)
-            return null;
+    private static VertorItem readItem(JsonStreamReader reader) throws IOException {
+        VertorItem item = new VertorItem();
 
-        String json = new String(jsonBytes);
-        
-        // Feel the power of reflection
-        JsonEngine engine = new JsonEngine();
-        VertorResponse response = engine.toObject(json, VertorResponse.class);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("name")) {
+                item.name = reader.nextString();
+            } else if (name.equals("cdate")) {
+                item.cdate = reader.nextString();
+            } else if (name.equals("seeds")) {
+                item.seeds = reader.nextString();
+            } else if (name.equals("leechers")) {
+                item.leechers = reader.nextString();
+            } else if (name.equals("size")) {
+                item.size = reader.nextString();
+            } else if (name.equals("url")) {
+                item.url = reader.nextString();
+            } else if (name.equals("download")) {
+                item.download = reader.nextString();
+            } else if (name.equals("category")) {
+                item.category = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-        return response;
+        return item;
     }
 }
@@ -18,6 +18,7 @@
 
 package com.frostwire.websearch.youtube;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
@@ -37,7 +38,7 @@ import com.limegroup.gnutella.util.UrlUtils;
  */
 public class YouTubeSearchPerformer implements WebSearchPerformer {
 
-    public List<WebSearchResult> search(String keywords) {
+    public List<WebSearchResult> search(String keywords) throws IOException {
         List<WebSearchResult> result = new ArrayList<WebSearchResult>();
 
         YouTubeResponse response = searchYouTube(keywords);
@@ -53,17 +54,13 @@ public class YouTubeSearchPerformer implements WebSearchPerformer {
         return result;
     }
 
-    private YouTubeResponse searchYouTube(String keywords) {
+    private YouTubeResponse searchYouTube(String keywords) throws IOException {
         String q = UrlUtils.encode(keywords);
         int maxResults = SearchEnginesSettings.YOUTUBE_WEBSEARCHPERFORMER_MAX_RESULTS.getValue();
         String url = String.format("https://gdata.youtube.com/feeds/api/videos?q=%s&orderby=relevance&start-index=1&max-results=%d&alt=json&prettyprint=true&v=2", q, maxResults);
 
         HttpFetcher fetcher = new HttpFetcher(url, HTTP_TIMEOUT);
-        byte[] jsonBytes = fetcher.fetch();
-
-        if (jsonBytes == null) {
-            return null;
-        }
+        byte[] jsonBytes = fetcher.fetchBody();
 
         String json = null;
 
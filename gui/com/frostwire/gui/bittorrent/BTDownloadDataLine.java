@@ -57,48 +57,19 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
     private static final String PARTIAL_DOWNLOAD_TEXT = I18n.tr(" (Partial)");
 
     /**
-     * Variable for the status of the download.
+     * The values shown, sampled off the EDT by {@link BTDownloadModel}.
      */
-    private String _status;
-
-    /**
-     * Variable for the amount of the file that has been read.
-     */
-    private long _download = 0;
-
-    private long _upload;
-
-    /**
-     * Variable for the progress made in the progressbar.
-     */
-    private int _progress;
-
-    /**
-     * Variable for the size of the download.
-     */
-    private long _size = -1;
-
-    /**
-     * Variable for the speed of the download.
-     */
-    private double _downloadSpeed;
-
-    private double _uploadSpeed;
-
-    /**
-     * Variable for how much time is left.
-     */
-    private long _timeLeft;
-
-    private String _seeds;
-
-    private String _peers;
-
-    private String _shareRatio;
-
-    private String _seedToPeerRatio;
-    
-    private Date dateCreated;
+    private BTDownloadSnapshot _snapshot;
+
+    // cells built only when their value changes, painting allocates nothing
+    private SizeHolder _sizeHolder;
+    private Integer _progressValue;
+    private SizeHolder _downloadHolder;
+    private SizeHolder _uploadHolder;
+    private Double _downloadSpeedValue;
+    private Double _uploadSpeedValue;
+    private TimeRemainingHolder _timeHolder;
+    private SeedsHolder _seedsHolder;
 
     private boolean _notification;
     /**
@@ -198,11 +169,15 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
     }
 
     public boolean isSeeding() {
-    	if (initializer==null) {
+    	if (_snapshot == null) {
     		return false;
     	}
     		
-    	return initializer.getState() == DownloadManager.STATE_SEEDING;
+    	return _snapshot.state == DownloadManager.STATE_SEEDING;
+    }
+
+    BTDownloadSnapshot getSnapshot() {
+        return _snapshot;
     }
     
     /**
@@ -218,41 +193,31 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
         case FILE_INDEX:
             return new IconAndNameHolderImpl(getIcon(), initializer.getDisplayName());
         case SIZE_INDEX:
-            if (initializer.isPartialDownload()) {
-                return new SizeHolder(_size, PARTIAL_DOWNLOAD_TEXT);
-            } else {
-                return new SizeHolder(_size);
-            }
+            return _sizeHolder;
         case STATUS_INDEX:
-            return _status;
+            return _snapshot.stateString;
         case PROGRESS_INDEX:
-            return Integer.valueOf(_progress);
+            return _progressValue;
         case BYTES_DOWNLOADED_INDEX:
-            return new SizeHolder(_download);
+            return _downloadHolder;
         case BYTES_UPLOADED_INDEX:
-            return new SizeHolder(_upload);
+            return _uploadHolder;
         case DOWNLOAD_SPEED_INDEX:
-            return new Double(_downloadSpeed);
+            return _downloadSpeedValue;
         case UPLOAD_SPEED_INDEX:
-            return new Double(_uploadSpeed);
+            return _uploadSpeedValue;
         case TIME_INDEX:
-            if (initializer.isCompleted()) {
-                return new TimeRemainingHolder(0);
-            } else if (_downloadSpeed < 0.001) {
-                return new TimeRemainingHolder(-1);
-            } else {
-                return new TimeRemainingHolder(_timeLeft);
-            }
+            return _timeHolder;
         case SEEDS_INDEX:
-            return new SeedsHolder(_seeds);
+            return _seedsHolder;
         case PEERS_INDEX:
-            return _peers;
+            return _snapshot.peers;
         case SHARE_RATIO_INDEX:
-            return _shareRatio;
+            return _snapshot.shareRatio;
         case SEED_TO_PEER_RATIO_INDEX:
-            return _seedToPeerRatio;
+            return _snapshot.seedToPeerRatio;
         case DATE_CREATED_INDEX:
-            return dateCreated;
+            return _snapshot.dateCreated;
         }
         return null;
     }
@@ -387,23 +352,61 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
      * @implements DataLine interface
      */
     public void update() {
-        _status = initializer.getStateString();
-        _progress = initializer.getProgress();
-        _download = initializer.getBytesReceived();
-        _upload = initializer.getBytesSent();
-        _downloadSpeed = initializer.getDownloadSpeed();
-        _uploadSpeed = initializer.getUploadSpeed();
-        _timeLeft = initializer.getETA();
-        _seeds = initializer.getSeedsString();
-        _peers = initializer.getPeersString();
-        _shareRatio = initializer.getShareRatio();
-        _seedToPeerRatio = initializer.getSeedToPeerRatio();
-        _size = initializer.getSize();
-        dateCreated = initializer.getDateCreated();
-
-        if (getInitializeObject().isCompleted()) {
+        update(BTDownloadSnapshot.take(initializer));
+    }
+
+    /**
+     * Shows the values of <code>snapshot</code>, must be called in the EDT.
+     *
+     * @return false if nothing shown changed
+     */
+    boolean update(BTDownloadSnapshot snapshot) {
+        BTDownloadSnapshot old = _snapshot;
+        if (snapshot.sameAs(old)) {
+            return false;
+        }
+        _snapshot = snapshot;
+
+        if (old == null || old.size != snapshot.size || old.partial != snapshot.partial) {
+            _sizeHolder = snapshot.partial ? new SizeHolder(snapshot.size, PARTIAL_DOWNLOAD_TEXT) : new SizeHolder(snapshot.size);
+        }
+        if (old == null || old.progress != snapshot.progress) {
+            _progressValue = Integer.valueOf(snapshot.progress);
+        }
+        if (old == null || old.bytesReceived != snapshot.bytesReceived) {
+            _downloadHolder = new SizeHolder(snapshot.bytesReceived);
+        }
+        if (old == null || old.bytesSent != snapshot.bytesSent) {
+            _uploadHolder = new SizeHolder(snapshot.bytesSent);
+        }
+        if (old == null || old.downloadSpeed != snapshot.downloadSpeed) {
+            _downloadSpeedValue = Double.valueOf(snapshot.downloadSpeed);
+        }
+        if (old == null || old.uploadSpeed != snapshot.uploadSpeed) {
+            _uploadSpeedValue = Double.valueOf(snapshot.uploadSpeed);
+        }
+        if (old == null || timeRemaining(old) != timeRemaining(snapshot)) {
+            _timeHolder = new TimeRemainingHolder(timeRemaining(snapshot));
+        }
+        if (old == null || !snapshot.seeds.equals(old.seeds)) {
+            _seedsHolder = new SeedsHolder(snapshot.seeds);
+        }
+
+        if (snapshot.completed) {
             showNotification();
         }
+
+        return true;
+    }
+
+    private static long timeRemaining(BTDownloadSnapshot snapshot) {
+        if (snapshot.completed) {
+            return 0;
+        } else if (snapshot.downloadSpeed < 0.001) {
+            return -1;
+        } else {
+            return snapshot.eta;
+        }
     }
 
     private void showNotification() {
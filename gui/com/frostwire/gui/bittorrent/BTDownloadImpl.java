@@ -171,17 +171,7 @@ public class BTDownloadImpl implements BTDownload {
         boolean started = state == DownloadManager.STATE_SEEDING || state == DownloadManager.STATE_DOWNLOADING;
         boolean hasScrape = lTotalPeers >= 0;
 
-        String tmp;
-        if (started) {
-            tmp = hasScrape ? (lConnectedPeers > lTotalPeers ? "%1" : "%1 " + "/" + " %2") : "%1";
-        } else {
-            tmp = hasScrape ? "%2" : "";
-        }
-
-        tmp = tmp.replaceAll("%1", String.valueOf(lConnectedPeers));
-        tmp = tmp.replaceAll("%2", String.valueOf(totalPeers));
-
-        return tmp;
+        return formatCounts(started, hasScrape, lConnectedPeers, totalPeers, lConnectedPeers > lTotalPeers);
     }
 
     public String getSeedsString() {
@@ -213,21 +203,23 @@ public class BTDownloadImpl implements BTDownload {
         int state = dm.getState();
         boolean started = (state == DownloadManager.STATE_SEEDING || state == DownloadManager.STATE_DOWNLOADING);
         boolean hasScrape = lTotalSeeds >= 0;
-        String tmp;
 
+        return formatCounts(started, hasScrape, lConnectedSeeds, lTotalSeeds, lConnectedSeeds > lTotalSeeds);
+    }
+
+    /**
+     * "connected / total" while started, only the total otherwise, without the
+     * regular expressions of a template replace, it runs for every row and second.
+     */
+    private static String formatCounts(boolean started, boolean hasScrape, long connected, long total, boolean connectedOnly) {
         if (started) {
-            tmp = hasScrape ? (lConnectedSeeds > lTotalSeeds ? "%1" : "%1 " + "/" + " %2") : "%1";
+            if (!hasScrape || connectedOnly) {
+                return String.valueOf(connected);
+            }
+            return new StringBuilder(16).append(connected).append(" / ").append(total).toString();
         } else {
-            tmp = hasScrape ? "%2" : "";
+            return hasScrape ? String.valueOf(total) : "";
         }
-        tmp = tmp.replaceAll("%1", String.valueOf(lConnectedSeeds));
-        String param2 = "?";
-        if (lTotalSeeds != -1) {
-            param2 = String.valueOf(lTotalSeeds);
-        }
-        tmp = tmp.replaceAll("%2", param2);
-
-        return tmp;
     }
 
     public boolean isDeleteTorrentWhenRemove() {
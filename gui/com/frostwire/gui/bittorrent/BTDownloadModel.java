@@ -1,14 +1,25 @@
 package com.frostwire.gui.bittorrent;
 
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.gudy.azureus2.core3.download.DownloadManager;
+import org.limewire.concurrent.ExecutorsHelper;
 
+import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.tables.BasicDataLineModel;
 
 /**
  * This class provides access to the <tt>ArrayList</tt> that stores all of the
  * downloads displayed in the download window.
+ *
+ * The values of the downloads are sampled in a background thread, and only
+ * the rows that changed since the last sample are updated in the table.
  */
 public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDownload> {
 
@@ -17,8 +28,21 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
      */
     private static final long serialVersionUID = 8163563369069283107L;
 
+    private static final Log LOG = LogFactory.getLog(BTDownloadModel.class);
+
+    /**
+     * Takes the snapshots of the downloads, off the EDT.
+     */
+    private static final ExecutorService SAMPLER = ExecutorsHelper.newProcessingQueue("BTDownloadSampler");
+
     private HashSet<String> _hashDownloads;
 
+    /**
+     * True from a refresh until its snapshots are shown, a refresh in between
+     * is skipped instead of queued.
+     */
+    private final AtomicBoolean _sampling = new AtomicBoolean(false);
+
     /**
      * Initialize the model by setting the class of its DataLines.
      */
@@ -39,8 +63,8 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
         int count = 0;
 
         for (int i = 0; i < size; i++) {
-            BTDownload downloader = get(i).getInitializeObject();
-            if (!downloader.isCompleted() && downloader.getState() == DownloadManager.STATE_DOWNLOADING) {
+            BTDownloadSnapshot snapshot = get(i).getSnapshot();
+            if (!snapshot.completed && snapshot.state == DownloadManager.STATE_DOWNLOADING) {
                 count++;
             }
         }
@@ -52,8 +76,8 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
         int count = 0;
 
         for (int i = 0; i < size; i++) {
-            BTDownload downloader = get(i).getInitializeObject();
-            if (downloader.isCompleted() && downloader.getState() == DownloadManager.STATE_SEEDING) {
+            BTDownloadSnapshot snapshot = get(i).getSnapshot();
+            if (snapshot.completed && snapshot.state == DownloadManager.STATE_SEEDING) {
                 count++;
             }
         }
@@ -65,28 +89,83 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
     }
 
     /**
-     * Over-ride the default refresh so that we can
-     * set the CLEAR_BUTTON as appropriate.
+     * Over-ride the default refresh so that the downloads are sampled in the
+     * background and only the rows that changed are updated.
      */
     public Object refresh() {
+        if (!_sampling.compareAndSet(false, true)) {
+            return Boolean.TRUE;
+        }
+
+        int size = getRowCount();
+        final BTDownload[] downloads = new BTDownload[size];
+        for (int i = 0; i < size; i++) {
+            downloads[i] = get(i).getInitializeObject();
+        }
+
+        SAMPLER.execute(new Runnable() {
+            public void run() {
+                final Map<BTDownload, BTDownloadSnapshot> snapshots = new IdentityHashMap<BTDownload, BTDownloadSnapshot>(downloads.length);
+                try {
+                    for (BTDownload downloader : downloads) {
+                        try {
+                            snapshots.put(downloader, BTDownloadSnapshot.take(downloader));
+                        } catch (Throwable e) {
+                            LOG.warn("Error sampling download " + downloader.getDisplayName(), e);
+                        }
+                    }
+                } finally {
+                    GUIMediator.safeInvokeLater(new Runnable() {
+                        public void run() {
+                            try {
+                                update(snapshots);
+                            } finally {
+                                _sampling.set(false);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Shows the snapshots in the rows still there, firing one update per run
+     * of consecutive changed rows.
+     */
+    private void update(Map<BTDownload, BTDownloadSnapshot> snapshots) {
     	try {
             int size = getRowCount();
+            int first = -1;
+            int last = -1;
 
 	        for (int i = 0; i < size; i++) {
-		            BTDownloadDataLine ud = get(i);
-		            ud.update();
+	            BTDownloadDataLine ud = get(i);
+	            BTDownloadSnapshot snapshot = snapshots.get(ud.getInitializeObject());
+
+	            if (snapshot != null && ud.update(snapshot)) {
+	                if (first != -1 && i != last + 1) {
+	                    fireTableRowsUpdated(first, last);
+	                    first = -1;
+	                }
+	                if (first == -1) {
+	                    first = i;
+	                }
+	                last = i;
+	            }
 	        }
 
-	        fireTableRowsUpdated(0, size);
+	        if (first != -1) {
+	            fireTableRowsUpdated(first, last);
+	        }
     	} catch (Exception e) {
     		System.out.println("ATENTION: Send the following output to the FrostWire Development team.");
     		System.out.println("===============================START COPY & PASTE=======================================");
     		e.printStackTrace();
     		System.out.println("===============================END COPY & PASTE=======================================");
-    		return Boolean.FALSE;
     	}
-
-        return Boolean.TRUE;
     }
 
     @Override
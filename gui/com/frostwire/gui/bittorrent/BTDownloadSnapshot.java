@@ -0,0 +1,87 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.bittorrent;
+
+import java.util.Date;
+
+/**
+ * Immutable copy of the values a download shows in the transfers table, taken
+ * off the EDT so painting never calls into the download.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class BTDownloadSnapshot {
+
+    public final int state;
+    public final String stateString;
+    public final boolean completed;
+    public final boolean partial;
+    public final int progress;
+    public final long size;
+    public final long bytesReceived;
+    public final long bytesSent;
+    public final double downloadSpeed;
+    public final double uploadSpeed;
+    public final long eta;
+    public final String seeds;
+    public final String peers;
+    public final String shareRatio;
+    public final String seedToPeerRatio;
+    public final Date dateCreated;
+
+    private BTDownloadSnapshot(BTDownload dl) {
+        state = dl.getState();
+        stateString = dl.getStateString();
+        completed = dl.isCompleted();
+        partial = dl.isPartialDownload();
+        progress = dl.getProgress();
+        size = dl.getSize();
+        bytesReceived = dl.getBytesReceived();
+        bytesSent = dl.getBytesSent();
+        downloadSpeed = dl.getDownloadSpeed();
+        uploadSpeed = dl.getUploadSpeed();
+        eta = dl.getETA();
+        seeds = dl.getSeedsString();
+        peers = dl.getPeersString();
+        shareRatio = dl.getShareRatio();
+        seedToPeerRatio = dl.getSeedToPeerRatio();
+        dateCreated = dl.getDateCreated();
+    }
+
+    public static BTDownloadSnapshot take(BTDownload dl) {
+        return new BTDownloadSnapshot(dl);
+    }
+
+    /**
+     * @return true if the table shows the same for both snapshots
+     */
+    public boolean sameAs(BTDownloadSnapshot other) {
+        return other != null && state == other.state && completed == other.completed && partial == other.partial && progress == other.progress
+                && size == other.size && bytesReceived == other.bytesReceived && bytesSent == other.bytesSent && downloadSpeed == other.downloadSpeed
+                && uploadSpeed == other.uploadSpeed && eta == other.eta && equal(stateString, other.stateString) && equal(seeds, other.seeds)
+                && equal(peers, other.peers) && equal(shareRatio, other.shareRatio) && equal(seedToPeerRatio, other.seedToPeerRatio)
+                && equal(dateCreated, other.dateCreated);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
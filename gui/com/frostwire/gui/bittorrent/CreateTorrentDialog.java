@@ -47,6 +47,8 @@ import org.gudy.azureus2.core3.torrent.TOTorrentFactory;
 import org.gudy.azureus2.core3.torrent.TOTorrentProgressListener;
 import org.gudy.azureus2.core3.util.AEThread2;
 import org.gudy.azureus2.core3.util.Debug;
+import org.gudy.azureus2.core3.util.DisplayFormatters;
+import org.gudy.azureus2.core3.util.TimeFormatter;
 import org.gudy.azureus2.core3.util.TorrentUtils;
 import org.gudy.azureus2.core3.util.TrackersUtil;
 
@@ -713,13 +715,13 @@ public class CreateTorrentDialog extends JDialog implements TOTorrentProgressLis
 			} else {
 				// GUBATRON: I THINK THIS else WILL NEVER HAPPEN
 				// SINCE UI OPTIONS WILL BE A LOT SIMPLER
-				TOTorrentCreator c = TOTorrentFactory
+				creator = TOTorrentFactory
 						.createFromFileOrDirWithFixedPieceLength(f, url,
 								addOtherHashes, getPieceSizeManual());
 
-				c.addListener(this);
+				creator.addListener(this);
 
-				torrent = c.create();
+				torrent = creator.create();
 			}
 
 			if (tracker_type == TT_DECENTRAL) {
@@ -925,11 +927,19 @@ public class CreateTorrentDialog extends JDialog implements TOTorrentProgressLis
 
 	@Override
 	public void reportProgress(final int percent_complete) {
+		final TOTorrentCreator c = creator;
+		final long rate = c != null ? c.getHashRate() : 0;
+		final long eta = c != null ? c.getETA() : -1;
+		
 		SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
-				System.out.println("reportProgress: " + percent_complete);
 				_progressBar.setValue(percent_complete);
+				if (rate > 0) {
+					_progressBar.setString(I18n.tr("Hashing: {0}% ({1}, {2} remaining)", percent_complete,
+							DisplayFormatters.formatByteCountToKiBEtcPerSec(rate),
+							TimeFormatter.format(Math.max(eta, 0))));
+				}
 			}
 		});		
 	}
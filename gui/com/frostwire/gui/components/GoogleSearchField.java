@@ -20,20 +20,30 @@ package com.frostwire.gui.components;
 
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONValue;
+import org.limewire.collection.FixedsizeForgetfulHashMap;
+import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.LCS;
 import org.limewire.util.StringUtils;
 
@@ -43,6 +53,12 @@ import com.limegroup.gnutella.gui.I18n;
 import com.limegroup.gnutella.settings.ApplicationSettings;
 
 /**
+ * Search field with suggestions from the search history, answered right
+ * away, merged with the suggestions from Google once they arrive.
+ * 
+ * Google is asked only after the user stops typing for a moment, one lookup
+ * at a time, and the answers are cached by prefix. Offline, or while waiting,
+ * the cached answers of a shorter prefix are used.
  * 
  * @author gubatron
  * @author aldenml
@@ -55,27 +71,55 @@ public class GoogleSearchField extends SearchField {
     private static final String SUGGESTIONS_URL = buildSuggestionsUrl();
     private static final int HTTP_QUERY_TIMEOUT = 1000;
 
-    private SuggestionsThread suggestionsThread;
+    /** ms without typing before Google is asked */
+    private static final int SUGGESTIONS_DELAY = 250;
+    private static final int MAX_HISTORY_SUGGESTIONS = 5;
+    private static final int SUGGESTIONS_CACHE_SIZE = 256;
+
+    private static final ExecutorService SUGGESTIONS_EXECUTOR = ExecutorsHelper.newProcessingQueue("GoogleSuggestions");
+
+    private final Timer suggestionsTimer;
+
+    /** Google answers by prefix, only used on the EDT */
+    private final Map<String, List<String>> suggestionsCache;
+
+    /** incremented on every keystroke, lookups of an older one are stale */
+    private final AtomicInteger inputVersion;
 
     public GoogleSearchField() {
         this.dict = createDefaultDictionary();
+        this.suggestionsCache = new FixedsizeForgetfulHashMap<String, List<String>>(SUGGESTIONS_CACHE_SIZE);
+        this.inputVersion = new AtomicInteger();
+
+        this.suggestionsTimer = new Timer(SUGGESTIONS_DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                requestSuggestions();
+            }
+        });
+        this.suggestionsTimer.setRepeats(false);
 
         setPrompt(I18n.tr("Hints by Google"));
         setSearchMode(SearchMode.REGULAR);
     }
 
     public void autoCompleteInput() {
+        inputVersion.incrementAndGet();
+
         String input = getText();
         if (input != null && input.length() > 0) {
 
-            if (suggestionsThread != null) {
-                suggestionsThread.cancel();
-            }
+            List<String> cached = getCachedSuggestions(input);
 
-            suggestionsThread = new SuggestionsThread(input, this);
-            suggestionsThread.start();
+            if (cached != null) {
+                suggestionsTimer.stop();
+                showSuggestions(input, cached, false);
+            } else {
+                suggestionsTimer.restart();
+                showSuggestions(input, getCachedSuggestionsByPrefix(input), true);
+            }
 
         } else {
+            suggestionsTimer.stop();
             hidePopup();
         }
     }
@@ -124,65 +168,118 @@ public class GoogleSearchField extends SearchField {
         return "http://suggestqueries.google.com/complete/search?output=firefox&hl=" + lang + "&q=%s";
     }
 
-    private static final class SuggestionsThread extends Thread {
+    private List<String> getCachedSuggestions(String input) {
+        List<String> suggestions = suggestionsCache.remove(input);
+        if (suggestions != null) {
+            // put back as the most recently used
+            suggestionsCache.put(input, suggestions);
+        }
+        return suggestions;
+    }
 
-        private final String constraint;
-        private final GoogleSearchField input;
+    private List<String> getCachedSuggestionsByPrefix(String input) {
+        List<String> suggestions = new ArrayList<String>();
+        String lowerInput = input.toLowerCase();
+        for (int i = input.length() - 1; i > 0; i--) {
+            List<String> cached = suggestionsCache.get(input.substring(0, i));
+            if (cached != null) {
+                for (String s : cached) {
+                    if (s.toLowerCase().startsWith(lowerInput)) {
+                        suggestions.add(s);
+                    }
+                }
+                break;
+            }
+        }
+        return suggestions;
+    }
 
-        private boolean cancelled;
+    /**
+     * Shows the history matches first, then the Google ones.
+     * 
+     * @param pending if a lookup is coming, the current popup is kept rather than hidden
+     */
+    private void showSuggestions(String input, List<String> remote, boolean pending) {
+        List<String> suggestions = new ArrayList<String>();
+        Set<String> seen = new HashSet<String>();
+
+        if (dict != null && getAutoComplete()) {
+            Iterator<String> it = dict.iterator(input);
+            while (it.hasNext() && suggestions.size() < MAX_HISTORY_SUGGESTIONS) {
+                String s = it.next();
+                if (seen.add(s.toLowerCase())) {
+                    suggestions.add(LCS.lcsHtml(input, s));
+                }
+            }
+        }
 
-        public SuggestionsThread(String constraint, GoogleSearchField input) {
-            this.constraint = constraint;
-            this.input = input;
-            this.setName("SuggestionsThread: " + constraint);
-            this.setDaemon(true);
+        for (String s : remote) {
+            if (seen.add(s.toLowerCase())) {
+                suggestions.add(LCS.lcsHtml(input, s));
+            }
         }
 
-        public boolean isCancelled() {
-            return cancelled;
+        if (!suggestions.isEmpty()) {
+            showPopup(suggestions.iterator());
+        } else if (!pending) {
+            hidePopup();
         }
+    }
 
-        public void cancel() {
-            cancelled = true;
+    private void requestSuggestions() {
+        final String input = getText();
+        if (StringUtils.isNullOrEmpty(input, true)) {
+            return;
         }
 
-        public void run() {
-            try {
-                String url = String.format(SUGGESTIONS_URL, URLEncoder.encode(constraint, "UTF-8"));
-
-                HttpFetcher fetcher = new HttpFetcher(new URI(url), HTTP_QUERY_TIMEOUT);
-                String json = StringUtils.getUTF8String(fetcher.fetch());
-
-                if (!isCancelled()) {
-                    final List<String> suggestions = readSuggestions((JSONArray) ((JSONArray) JSONValue.parse(json)).get(1));
-
-                    GUIMediator.safeInvokeLater(new Runnable() {
-                        public void run() {
-                            Iterator<String> it = suggestions.iterator();
-                            if (it.hasNext())
-                                if (!StringUtils.isNullOrEmpty(input.getText(), true)) {
-                                    input.showPopup(it);
-                                }
-                            else
-                                input.hidePopup();
-                        }
-                    });
+        final int version = inputVersion.get();
+
+        SUGGESTIONS_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                if (version != inputVersion.get()) {
+                    // the user kept typing while this one was queued
+                    return;
+                }
+
+                final List<String> suggestions = fetchSuggestions(input);
+                if (suggestions == null) {
+                    // offline, the history and cached suggestions stay
+                    return;
                 }
-            } catch (Throwable e) {
-                // ignore
+
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    public void run() {
+                        suggestionsCache.put(input, suggestions);
+                        if (version == inputVersion.get() && input.equals(getText())) {
+                            showSuggestions(input, suggestions, false);
+                        }
+                    }
+                });
             }
-        }
+        });
+    }
+
+    /**
+     * @return null if Google could not be reached
+     */
+    private static List<String> fetchSuggestions(String input) {
+        try {
+            String url = String.format(SUGGESTIONS_URL, URLEncoder.encode(input, "UTF-8"));
 
-        private List<String> readSuggestions(JSONArray array) {
-            String t = input.getText();
+            HttpFetcher fetcher = new HttpFetcher(new URI(url), HTTP_QUERY_TIMEOUT);
+            byte[] data = fetcher.fetch();
+            if (data == null) {
+                return null;
+            }
+
+            JSONArray array = (JSONArray) ((JSONArray) JSONValue.parse(StringUtils.getUTF8String(data))).get(1);
             List<String> suggestions = new ArrayList<String>(array.size());
-            if (!StringUtils.isNullOrEmpty(t, true)) {
-                for (Object obj : array) {
-                    String s = LCS.lcsHtml(t, (String) obj);
-                    suggestions.add(s);
-                }
+            for (Object obj : array) {
+                suggestions.add((String) obj);
             }
             return suggestions;
+        } catch (Throwable e) {
+            return null;
         }
     }
 }
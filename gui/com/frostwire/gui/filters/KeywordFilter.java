@@ -29,6 +29,9 @@ import com.limegroup.gnutella.gui.search.SearchResult;
  * If <i>any</i> words in a query are in the banned set, the
  * query is disallowed.
  * 
+ * The banned words are compiled in a {@link KeywordMatcher} the first time
+ * a phrase is checked after they change.
+ * 
  * @author gubatron
  * @author aldenml
  * 
@@ -38,6 +41,9 @@ public class KeywordFilter implements SearchFilter {
     /** INVARIANT: strings in ban contain only lowercase */
     private List<String> ban = new ArrayList<String>();
 
+    /** null until the next match after the banned words change */
+    private KeywordMatcher matcher;
+
     /** 
      * @modifies this
      * @effects bans the given phrase.  Capitalization does not matter.
@@ -46,6 +52,7 @@ public class KeywordFilter implements SearchFilter {
         String canonical = phrase.toLowerCase(Locale.US);
         if (!ban.contains(canonical)) {
             ban.add(canonical);
+            matcher = null;
         }
     }
 
@@ -122,12 +129,13 @@ public class KeywordFilter implements SearchFilter {
      * Returns true if phrase matches any of the entries in ban.
      */
     protected boolean matches(String phrase) {
-        String canonical = phrase.toLowerCase(Locale.US);
-        for (int i = 0; i < ban.size(); i++) {
-            String badWord = ban.get(i);
-            if (canonical.indexOf(badWord) != -1)
-                return true;
+        return getMatcher().matchesAny(phrase.toLowerCase(Locale.US));
+    }
+
+    private synchronized KeywordMatcher getMatcher() {
+        if (matcher == null) {
+            matcher = new KeywordMatcher(ban);
         }
-        return false;
+        return matcher;
     }
 }
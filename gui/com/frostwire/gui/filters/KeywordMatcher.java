@@ -0,0 +1,273 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Finds a set of keywords in a text with a single pass over the text
+ * (Aho-Corasick automaton), no matter how many keywords there are.
+ *
+ * The automaton is built once, matching is case sensitive, so keywords and
+ * texts are expected to be normalized the same way by the caller. Instances
+ * are immutable and can be shared by threads.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class KeywordMatcher {
+
+    private static final int[] NO_KEYWORDS = new int[0];
+
+    /** Chars below this have a precomputed transition from every state */
+    private static final int DENSE_CHARS = 128;
+
+    private final int _numKeywords;
+
+    /** Per state, the sorted chars with a transition and their target states */
+    private final char[][] _labels;
+    private final int[][] _targets;
+
+    private final int[] _fail;
+
+    /** Per state, the keywords ending there, directly or through the fail links */
+    private final int[][] _outputs;
+
+    /** The full transition of every state for chars below DENSE_CHARS */
+    private final int[] _dense;
+
+    /**
+     * Empty keywords are ignored, duplicated keywords count once.
+     */
+    public KeywordMatcher(Collection<String> keywords) {
+        Set<String> unique = new LinkedHashSet<String>();
+        for (String keyword : keywords) {
+            if (keyword != null && keyword.length() > 0) {
+                unique.add(keyword);
+            }
+        }
+        _numKeywords = unique.size();
+
+        // trie
+        List<StringBuilder> labels = new ArrayList<StringBuilder>();
+        List<List<Integer>> targets = new ArrayList<List<Integer>>();
+        List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+        newState(labels, targets, outputs);
+
+        int id = 0;
+        for (String keyword : unique) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                int k = labels.get(state).indexOf(String.valueOf(c));
+                if (k == -1) {
+                    int next = newState(labels, targets, outputs);
+                    labels.get(state).append(c);
+                    targets.get(state).add(next);
+                    state = next;
+                } else {
+                    state = targets.get(state).get(k);
+                }
+            }
+            outputs.get(state).add(id++);
+        }
+
+        int numStates = labels.size();
+
+        _labels = new char[numStates][];
+        _targets = new int[numStates][];
+        for (int s = 0; s < numStates; s++) {
+            char[] l = labels.get(s).toString().toCharArray();
+            int[] t = new int[l.length];
+            // sort the transitions by char for the binary search
+            char[] sorted = l.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                t[i] = targets.get(s).get(indexOf(l, sorted[i]));
+            }
+            _labels[s] = sorted;
+            _targets[s] = t;
+        }
+
+        // fail links, breadth first so the fail state of a state is done first
+        _fail = new int[numStates];
+        _outputs = new int[numStates][];
+        _outputs[0] = toArray(outputs.get(0));
+
+        Queue<Integer> queue = new LinkedList<Integer>();
+        for (int next : _targets[0]) {
+            _fail[next] = 0;
+            _outputs[next] = toArray(outputs.get(next));
+            queue.add(next);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < _labels[state].length; i++) {
+                char c = _labels[state][i];
+                int next = _targets[state][i];
+
+                int f = _fail[state];
+                int t;
+                while ((t = transition(f, c)) == -1 && f != 0) {
+                    f = _fail[f];
+                }
+                _fail[next] = t == -1 ? 0 : t;
+
+                _outputs[next] = merge(outputs.get(next), _outputs[_fail[next]]);
+                queue.add(next);
+            }
+        }
+
+        // breadth first again, so the row of the fail state is always ready
+        _dense = new int[numStates * DENSE_CHARS];
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int c = 0; c < DENSE_CHARS; c++) {
+                int t = transition(state, (char) c);
+                if (t == -1) {
+                    t = state == 0 ? 0 : _dense[_fail[state] * DENSE_CHARS + c];
+                }
+                _dense[state * DENSE_CHARS + c] = t;
+            }
+            for (int next : _targets[state]) {
+                queue.add(next);
+            }
+        }
+    }
+
+    public int getNumKeywords() {
+        return _numKeywords;
+    }
+
+    /**
+     * @return true if at least one keyword is in the text
+     */
+    public boolean matchesAny(CharSequence text) {
+        if (_numKeywords == 0) {
+            return false;
+        }
+
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            state = next(state, text.charAt(i));
+            if (_outputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every keyword is in the text, true if there are no keywords
+     */
+    public boolean matchesAll(CharSequence text) {
+        if (_numKeywords == 0) {
+            return true;
+        }
+
+        boolean[] found = new boolean[_numKeywords];
+        int left = _numKeywords;
+
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            state = next(state, text.charAt(i));
+            int[] output = _outputs[state];
+            for (int j = 0; j < output.length; j++) {
+                if (!found[output[j]]) {
+                    found[output[j]] = true;
+                    if (--left == 0) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int next(int state, char c) {
+        if (c < DENSE_CHARS) {
+            return _dense[state * DENSE_CHARS + c];
+        }
+
+        int t;
+        while ((t = transition(state, c)) == -1) {
+            if (state == 0) {
+                return 0;
+            }
+            state = _fail[state];
+        }
+        return t;
+    }
+
+    private int transition(int state, char c) {
+        int k = Arrays.binarySearch(_labels[state], c);
+        return k >= 0 ? _targets[state][k] : -1;
+    }
+
+    private static int newState(List<StringBuilder> labels, List<List<Integer>> targets, List<List<Integer>> outputs) {
+        labels.add(new StringBuilder());
+        targets.add(new ArrayList<Integer>());
+        outputs.add(new ArrayList<Integer>());
+        return labels.size() - 1;
+    }
+
+    private static int indexOf(char[] chars, char c) {
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        if (list.isEmpty()) {
+            return NO_KEYWORDS;
+        }
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static int[] merge(List<Integer> own, int[] inherited) {
+        if (own.isEmpty()) {
+            return inherited;
+        }
+        int[] array = new int[own.size() + inherited.length];
+        for (int i = 0; i < own.size(); i++) {
+            array[i] = own.get(i);
+        }
+        System.arraycopy(inherited, 0, array, own.size(), inherited.length);
+        return array;
+    }
+}
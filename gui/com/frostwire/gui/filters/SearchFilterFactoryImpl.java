@@ -18,6 +18,7 @@
 
 package com.frostwire.gui.filters;
 
+import java.util.Arrays;
 import java.util.Vector;
 
 import com.limegroup.gnutella.settings.FilterSettings;
@@ -30,17 +31,36 @@ import com.limegroup.gnutella.settings.FilterSettings;
  */
 public class SearchFilterFactoryImpl implements SearchFilterFactory {
 
+    /**
+     * The last filter created and the settings it was created with, the filter
+     * is reused while they don't change so its keywords are compiled once.
+     */
+    private SearchFilter _filter;
+    private String[] _badWords;
+    private boolean _filterAdult;
+
     public SearchFilterFactoryImpl() {
     }
 
-    public SearchFilter createFilter() {
-
-        Vector<SearchFilter> buf = new Vector<SearchFilter>();
+    public synchronized SearchFilter createFilter() {
 
         String[] badWords = FilterSettings.BANNED_WORDS.getValue();
 
         boolean filterAdult = FilterSettings.FILTER_ADULT.getValue();
 
+        if (_filter == null || filterAdult != _filterAdult || !Arrays.equals(badWords, _badWords)) {
+            _filter = createFilter(badWords, filterAdult);
+            _badWords = badWords.clone();
+            _filterAdult = filterAdult;
+        }
+
+        return _filter;
+    }
+
+    private static SearchFilter createFilter(String[] badWords, boolean filterAdult) {
+
+        Vector<SearchFilter> buf = new Vector<SearchFilter>();
+
         if (badWords.length != 0 || filterAdult) {
             KeywordFilter kf = new KeywordFilter();
             for (int i = 0; i < badWords.length; i++)
@@ -24,11 +24,14 @@ import java.util.Map;
 import org.limewire.util.FilenameUtils;
 import org.limewire.util.StringUtils;
 
-import com.frostwire.mp3.ID3v2;
-import com.frostwire.mp3.Mp3File;
 import com.frostwire.mplayer.MPlayer;
 
 /**
+ * Title, artist, duration and the rest of the tags of an audio file.
+ * 
+ * The tags are read in process by {@link AudioMetaDataReader} and kept in the
+ * {@link AudioMetaDataCache}, MPlayer is only launched for the formats the
+ * reader doesn't know.
  * 
  * @author gubatron
  * @author aldenml
@@ -36,23 +39,53 @@ import com.frostwire.mplayer.MPlayer;
  */
 public class AudioMetaData {
 
-    private String title;
-    private float durationInSecs;
-    private String artist;
-    private String album;
-    private String bitrate;
-    private String comment;
-    private String genre;
-    private String track;
-    private String year;
+    // package access, filled by AudioMetaDataReader
+    String title;
+    float durationInSecs;
+    String artist;
+    String album;
+    String bitrate;
+    String comment;
+    String genre;
+    String track;
+    String year;
 
     public AudioMetaData(File file) {
-        readUsingMPlayer(file);
-        if (file.getName().endsWith("mp3")) {
-            readUsingMP3Tags(file);
+        AudioMetaDataCache cache = AudioMetaDataCache.instance();
+
+        AudioMetaData cached = cache.get(file);
+        if (cached != null) {
+            title = cached.title;
+            durationInSecs = cached.durationInSecs;
+            artist = cached.artist;
+            album = cached.album;
+            bitrate = cached.bitrate;
+            comment = cached.comment;
+            genre = cached.genre;
+            track = cached.track;
+            year = cached.year;
+            return;
+        }
+
+        if (!AudioMetaDataReader.read(file, this)) {
+            readUsingMPlayer(file);
         }
 
         sanitizeData(file);
+
+        cache.put(file, this);
+    }
+
+    AudioMetaData(String title, float durationInSecs, String artist, String album, String bitrate, String comment, String genre, String track, String year) {
+        this.title = title;
+        this.durationInSecs = durationInSecs;
+        this.artist = artist;
+        this.album = album;
+        this.bitrate = bitrate;
+        this.comment = comment;
+        this.genre = genre;
+        this.track = track;
+        this.year = year;
     }
 
     public String getTitle() {
@@ -111,40 +144,6 @@ public class AudioMetaData {
         }
     }
 
-    private void readUsingMP3Tags(File file) {
-        try {
-            Mp3File mp3 = new Mp3File(file.getAbsolutePath());
-            if (mp3.hasId3v2Tag()) {
-                ID3v2 tag = mp3.getId3v2Tag();
-                if (!StringUtils.isNullOrEmpty(tag.getTitle(), true)) {
-                    title = tag.getTitle();
-                }
-                if (!StringUtils.isNullOrEmpty(tag.getArtist(), true)) {
-                    artist = tag.getArtist();
-                }
-                if (!StringUtils.isNullOrEmpty(tag.getAlbum(), true)) {
-                    album = tag.getAlbum();
-                }
-                if (!StringUtils.isNullOrEmpty(tag.getComment(), true) || comment.startsWith("0")) {
-                    comment = tag.getComment();
-                }
-                if (!StringUtils.isNullOrEmpty(tag.getGenreDescription(), true) || genre.trim().equals("Unknown")) {
-                    genre = tag.getGenreDescription();
-                }
-                if (!StringUtils.isNullOrEmpty(tag.getTrack(), true)) {
-                    track = tag.getTrack();
-                }
-                if (!StringUtils.isNullOrEmpty(tag.getYear(), true)) {
-                    year = tag.getYear();
-                }
-
-                durationInSecs = mp3.getLengthInSeconds();
-            }
-        } catch (Exception e) {
-            // ignore
-        }
-    }
-
     private void sanitizeData(File file) {
         if (StringUtils.isNullOrEmpty(title, true)) {
             title = FilenameUtils.getBaseName(file.getAbsolutePath());
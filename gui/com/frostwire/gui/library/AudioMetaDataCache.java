@@ -0,0 +1,233 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.CommonUtils;
+
+/**
+ * Persistent cache of the meta data of audio files, keyed by path and
+ * validated with the size and the last modified time of the file, so a hit
+ * costs a stat and no read.
+ *
+ * The least recently used entries are dropped past {@link #MAX_ENTRIES}, and
+ * changes are saved to disk a few seconds after the last one.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class AudioMetaDataCache {
+
+    private static final Log LOG = LogFactory.getLog(AudioMetaDataCache.class);
+
+    private static final int FILE_MAGIC = 0x4657414d; // FWAM
+    private static final int FILE_VERSION = 1;
+
+    private static final int MAX_ENTRIES = 20000;
+
+    private static final long SAVE_DELAY_MILLIS = 5000;
+
+    /** writeUTF can't take more than 64k bytes */
+    private static final int MAX_STRING_LENGTH = 4096;
+
+    private static AudioMetaDataCache INSTANCE;
+
+    public synchronized static AudioMetaDataCache instance() {
+        if (INSTANCE == null) {
+            INSTANCE = new AudioMetaDataCache(new File(CommonUtils.getUserSettingsDir(), "audio_metadata.dat"));
+        }
+        return INSTANCE;
+    }
+
+    private final File _cacheFile;
+
+    /** Guarded by this */
+    private final Map<String, Entry> _entries;
+    private boolean _saveScheduled;
+
+    private final ScheduledExecutorService _saver;
+
+    private AudioMetaDataCache(File cacheFile) {
+        _cacheFile = cacheFile;
+
+        _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -2416357129433716271L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+        _saver = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("AudioMetaDataCache"));
+
+        load();
+    }
+
+    /**
+     * @return the cached meta data, null if there is none or the file changed
+     */
+    public AudioMetaData get(File file) {
+        Entry entry;
+        synchronized (this) {
+            entry = _entries.get(file.getAbsolutePath());
+        }
+
+        if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified()) {
+            return null;
+        }
+
+        return entry.data;
+    }
+
+    public void put(File file, AudioMetaData data) {
+        Entry entry = new Entry(file.length(), file.lastModified(), data);
+
+        synchronized (this) {
+            _entries.put(file.getAbsolutePath(), entry);
+
+            if (!_saveScheduled) {
+                _saveScheduled = true;
+                _saver.schedule(new Runnable() {
+                    public void run() {
+                        save();
+                    }
+                }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void save() {
+        List<Map.Entry<String, Entry>> entries;
+        synchronized (this) {
+            _saveScheduled = false;
+            entries = new ArrayList<Map.Entry<String, Entry>>(_entries.entrySet());
+        }
+
+        File temp = new File(_cacheFile.getPath() + ".tmp");
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries) {
+                    Entry entry = e.getValue();
+                    AudioMetaData data = entry.data;
+
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+
+                    writeString(out, data.getTitle());
+                    out.writeFloat(data.getDurationInSecs());
+                    writeString(out, data.getArtist());
+                    writeString(out, data.getAlbum());
+                    writeString(out, data.getBitrate());
+                    writeString(out, data.getComment());
+                    writeString(out, data.getGenre());
+                    writeString(out, data.getTrack());
+                    writeString(out, data.getYear());
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!temp.renameTo(_cacheFile)) {
+                _cacheFile.delete();
+                if (!temp.renameTo(_cacheFile)) {
+                    throw new IOException("Can't rename " + temp + " to " + _cacheFile);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Error saving audio meta data cache", e);
+        }
+    }
+
+    private void load() {
+        if (!_cacheFile.exists()) {
+            return;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_cacheFile)));
+            try {
+                if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                    LOG.info("Ignoring audio meta data cache of another version");
+                    return;
+                }
+
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = in.readUTF();
+                    long size = in.readLong();
+                    long lastModified = in.readLong();
+
+                    AudioMetaData data = new AudioMetaData(in.readUTF(), in.readFloat(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+
+                    _entries.put(path, new Entry(size, lastModified, data));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Error loading audio meta data cache, starting a new one", e);
+            _entries.clear();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        out.writeUTF(str.length() > MAX_STRING_LENGTH ? str.substring(0, MAX_STRING_LENGTH) : str);
+    }
+
+    private static final class Entry {
+
+        public final long size;
+        public final long lastModified;
+        public final AudioMetaData data;
+
+        public Entry(long size, long lastModified, AudioMetaData data) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.data = data;
+        }
+    }
+}
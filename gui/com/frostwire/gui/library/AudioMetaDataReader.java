@@ -0,0 +1,594 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.limewire.util.FileUtils;
+
+import com.frostwire.mp3.ID3v1;
+import com.frostwire.mp3.ID3v1Genres;
+import com.frostwire.mp3.Mp3File;
+
+/**
+ * Reads the tags and the duration of MP3, MP4 audio, Ogg (Vorbis and Opus)
+ * and FLAC files in process.
+ *
+ * Only the headers and the tag blocks are read, the MP4 media data and the
+ * Ogg pages in the middle of the file are skipped with a seek. Embedded
+ * pictures are never read.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class AudioMetaDataReader {
+
+    private static final Log LOG = LogFactory.getLog(AudioMetaDataReader.class);
+
+    /** Bigger tag blocks hold pictures, not text */
+    private static final int MAX_TAG_SIZE = 1024 * 1024;
+
+    /** The last Ogg page, with the total number of samples, is in here */
+    private static final int OGG_TAIL_SIZE = 64 * 1024;
+
+    private static final int MOOV = fourCC("moov");
+    private static final int UDTA = fourCC("udta");
+    private static final int META = fourCC("meta");
+    private static final int ILST = fourCC("ilst");
+    private static final int MVHD = fourCC("mvhd");
+    private static final int MDAT = fourCC("mdat");
+    private static final int DATA = fourCC("data");
+    private static final int NAM = fourCC("\u00a9nam");
+    private static final int ART = fourCC("\u00a9ART");
+    private static final int AART = fourCC("aART");
+    private static final int ALB = fourCC("\u00a9alb");
+    private static final int GEN = fourCC("\u00a9gen");
+    private static final int GNRE = fourCC("gnre");
+    private static final int DAY = fourCC("\u00a9day");
+    private static final int CMT = fourCC("\u00a9cmt");
+    private static final int TRKN = fourCC("trkn");
+
+    private AudioMetaDataReader() {
+    }
+
+    /**
+     * Fills <code>data</code> with what's in the file, fields not in the file are
+     * left untouched.
+     * 
+     * @return false if the format is not supported or the file can't be parsed
+     */
+    public static boolean read(File file, AudioMetaData data) {
+        String ext = FileUtils.getFileExtension(file);
+        if (ext == null) {
+            return false;
+        }
+        ext = ext.toLowerCase(Locale.US);
+
+        try {
+            if (ext.equals("mp3")) {
+                return readMP3(file, data);
+            } else if (ext.equals("m4a") || ext.equals("m4b") || ext.equals("mp4")) {
+                return readMP4(file, data);
+            } else if (ext.equals("ogg") || ext.equals("oga") || ext.equals("opus")) {
+                return readOgg(file, data);
+            } else if (ext.equals("flac")) {
+                return readFlac(file, data);
+            }
+        } catch (Throwable e) {
+            LOG.debug("Error reading audio meta data of " + file, e);
+        }
+
+        return false;
+    }
+
+    private static boolean readMP3(File file, AudioMetaData data) throws Exception {
+        Mp3File mp3 = new Mp3File(file.getAbsolutePath());
+
+        ID3v1 tag = null;
+        if (mp3.hasId3v2Tag()) {
+            tag = mp3.getId3v2Tag();
+        } else if (mp3.hasId3v1Tag()) {
+            tag = mp3.getId3v1Tag();
+        }
+
+        if (tag != null) {
+            data.title = tag.getTitle();
+            data.artist = tag.getArtist();
+            data.album = tag.getAlbum();
+            data.comment = tag.getComment();
+            data.genre = tag.getGenreDescription();
+            data.track = tag.getTrack();
+            data.year = tag.getYear();
+        }
+
+        data.durationInSecs = mp3.getLengthInMilliseconds() / 1000f;
+        data.bitrate = mp3.getBitrate() + " kbps";
+
+        return true;
+    }
+
+    private static boolean readMP4(File file, AudioMetaData data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            Mp4Info info = new Mp4Info();
+            readAtoms(raf, 0, raf.length(), data, info);
+
+            if (!info.moov) {
+                return false;
+            }
+
+            if (info.timescale > 0) {
+                data.durationInSecs = (float) info.duration / info.timescale;
+            }
+            setBitrate(data, info.mdatSize);
+
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Walks the atoms in [start, end), only descending into the ones on the way
+     * to the movie header and the iTunes item list.
+     */
+    private static void readAtoms(RandomAccessFile raf, long start, long end, AudioMetaData data, Mp4Info info) throws IOException {
+        long pos = start;
+
+        while (pos + 8 <= end) {
+            raf.seek(pos);
+
+            long size = raf.readInt() & 0xFFFFFFFFL;
+            int type = raf.readInt();
+            int header = 8;
+
+            if (size == 1) {
+                size = raf.readLong();
+                header = 16;
+            } else if (size == 0) {
+                size = end - pos;
+            }
+
+            if (size < header || pos + size > end) {
+                break;
+            }
+
+            long content = pos + header;
+            long next = pos + size;
+
+            if (type == MOOV) {
+                info.moov = true;
+                readAtoms(raf, content, next, data, info);
+            } else if (type == UDTA) {
+                readAtoms(raf, content, next, data, info);
+            } else if (type == META) {
+                // a full box in MP4, a plain one in QuickTime files
+                readAtoms(raf, raf.readInt() == 0 ? content + 4 : content, next, data, info);
+            } else if (type == ILST) {
+                readItems(raf, content, next, data);
+            } else if (type == MVHD) {
+                int version = raf.readInt() >>> 24;
+                if (version == 1) {
+                    raf.skipBytes(16);
+                    info.timescale = raf.readInt() & 0xFFFFFFFFL;
+                    info.duration = raf.readLong();
+                } else {
+                    raf.skipBytes(8);
+                    info.timescale = raf.readInt() & 0xFFFFFFFFL;
+                    info.duration = raf.readInt() & 0xFFFFFFFFL;
+                }
+            } else if (type == MDAT) {
+                info.mdatSize += size - header;
+            }
+
+            pos = next;
+        }
+    }
+
+    private static void readItems(RandomAccessFile raf, long start, long end, AudioMetaData data) throws IOException {
+        long pos = start;
+
+        while (pos + 8 <= end) {
+            raf.seek(pos);
+            long size = raf.readInt() & 0xFFFFFFFFL;
+            int type = raf.readInt();
+
+            if (size < 8 || pos + size > end) {
+                break;
+            }
+
+            byte[] value = null;
+            if (type == NAM || type == ART || type == AART || type == ALB || type == GEN || type == GNRE || type == DAY || type == CMT || type == TRKN) {
+                value = readItemData(raf, pos + 8, pos + size);
+            }
+
+            if (value != null) {
+                if (type == NAM) {
+                    data.title = utf8(value);
+                } else if (type == ART) {
+                    data.artist = utf8(value);
+                } else if (type == AART) {
+                    if (data.artist == null) {
+                        data.artist = utf8(value);
+                    }
+                } else if (type == ALB) {
+                    data.album = utf8(value);
+                } else if (type == GEN) {
+                    data.genre = utf8(value);
+                } else if (type == GNRE) {
+                    // an ID3v1 genre, plus one
+                    if (value.length >= 2) {
+                        int genre = ((value[0] & 0xFF) << 8 | (value[1] & 0xFF)) - 1;
+                        if (genre >= 0 && genre < ID3v1Genres.GENRES.length && data.genre == null) {
+                            data.genre = ID3v1Genres.GENRES[genre];
+                        }
+                    }
+                } else if (type == DAY) {
+                    data.year = year(utf8(value));
+                } else if (type == CMT) {
+                    data.comment = utf8(value);
+                } else if (type == TRKN) {
+                    if (value.length >= 4) {
+                        data.track = String.valueOf((value[2] & 0xFF) << 8 | (value[3] & 0xFF));
+                    }
+                }
+            }
+
+            pos += size;
+        }
+    }
+
+    /**
+     * @return the value of the first data atom of the item, without the type and
+     * locale fields
+     */
+    private static byte[] readItemData(RandomAccessFile raf, long start, long end) throws IOException {
+        long pos = start;
+
+        while (pos + 16 <= end) {
+            raf.seek(pos);
+            long size = raf.readInt() & 0xFFFFFFFFL;
+            int type = raf.readInt();
+
+            if (size < 16 || pos + size > end) {
+                return null;
+            }
+
+            if (type == DATA) {
+                long length = size - 16;
+                if (length > MAX_TAG_SIZE) {
+                    return null;
+                }
+                raf.skipBytes(8);
+                byte[] value = new byte[(int) length];
+                raf.readFully(value);
+                return value;
+            }
+
+            pos += size;
+        }
+
+        return null;
+    }
+
+    private static boolean readOgg(File file, AudioMetaData data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            List<byte[]> packets = readOggHeaderPackets(raf);
+            if (packets.isEmpty()) {
+                return false;
+            }
+
+            byte[] id = packets.get(0);
+
+            long sampleRate;
+            long preSkip = 0;
+            int nominalBitrate = 0;
+            int commentOffset;
+
+            if (startsWith(id, 1, "vorbis") && id.length >= 24) {
+                ByteBuffer buf = ByteBuffer.wrap(id).order(ByteOrder.LITTLE_ENDIAN);
+                sampleRate = buf.getInt(12) & 0xFFFFFFFFL;
+                nominalBitrate = buf.getInt(20);
+                commentOffset = 7;
+            } else if (startsWith(id, 0, "OpusHead") && id.length >= 12) {
+                // the granule positions of Opus are always in 48 kHz samples
+                sampleRate = 48000;
+                preSkip = ByteBuffer.wrap(id).order(ByteOrder.LITTLE_ENDIAN).getShort(10) & 0xFFFF;
+                commentOffset = 8;
+            } else {
+                return false;
+            }
+
+            if (packets.size() > 1) {
+                parseVorbisComment(packets.get(1), commentOffset, data);
+            }
+
+            long granule = readLastGranulePosition(raf);
+            if (granule > preSkip && sampleRate > 0) {
+                data.durationInSecs = (float) (granule - preSkip) / sampleRate;
+            }
+
+            if (nominalBitrate > 0) {
+                data.bitrate = (nominalBitrate / 1000) + " kbps";
+            } else {
+                setBitrate(data, raf.length());
+            }
+
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the identification and comment packets, only the first one if the
+     * comment packet is too big
+     */
+    private static List<byte[]> readOggHeaderPackets(RandomAccessFile raf) throws IOException {
+        List<byte[]> packets = new ArrayList<byte[]>(2);
+        ByteBuffer packet = ByteBuffer.allocate(4096);
+
+        byte[] header = new byte[27];
+        byte[] lacing = new byte[255];
+
+        long pos = 0;
+        long length = raf.length();
+
+        while (packets.size() < 2 && pos + 27 <= length) {
+            raf.seek(pos);
+            raf.readFully(header);
+            if (!startsWith(header, 0, "OggS")) {
+                break;
+            }
+
+            int numSegments = header[26] & 0xFF;
+            raf.readFully(lacing, 0, numSegments);
+
+            int pageSize = 0;
+            for (int i = 0; i < numSegments; i++) {
+                pageSize += lacing[i] & 0xFF;
+            }
+
+            byte[] page = new byte[pageSize];
+            raf.readFully(page);
+
+            int offset = 0;
+            for (int i = 0; i < numSegments && packets.size() < 2; i++) {
+                int segment = lacing[i] & 0xFF;
+
+                if (packet.remaining() < segment) {
+                    if (packet.capacity() * 2 > MAX_TAG_SIZE) {
+                        return packets;
+                    }
+                    ByteBuffer bigger = ByteBuffer.allocate(packet.capacity() * 2);
+                    packet.flip();
+                    bigger.put(packet);
+                    packet = bigger;
+                }
+
+                packet.put(page, offset, segment);
+                offset += segment;
+
+                // a lacing value under 255 ends the packet
+                if (segment < 255) {
+                    byte[] p = new byte[packet.position()];
+                    packet.flip();
+                    packet.get(p);
+                    packet.clear();
+                    packets.add(p);
+                }
+            }
+
+            pos += 27 + numSegments + pageSize;
+        }
+
+        return packets;
+    }
+
+    private static long readLastGranulePosition(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        int tailSize = (int) Math.min(length, OGG_TAIL_SIZE);
+
+        byte[] tail = new byte[tailSize];
+        raf.seek(length - tailSize);
+        raf.readFully(tail);
+
+        ByteBuffer buf = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = tailSize - 27; i >= 0; i--) {
+            if (startsWith(tail, i, "OggS")) {
+                long granule = buf.getLong(i + 6);
+                if (granule > 0) {
+                    return granule;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean readFlac(File file, AudioMetaData data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long pos = skipID3v2(raf);
+
+            byte[] magic = new byte[4];
+            raf.seek(pos);
+            raf.readFully(magic);
+            if (!startsWith(magic, 0, "fLaC")) {
+                return false;
+            }
+            pos += 4;
+
+            long sampleRate = 0;
+            long totalSamples = 0;
+
+            boolean last = false;
+            while (!last) {
+                raf.seek(pos);
+                int blockHeader = raf.readInt();
+                last = (blockHeader & 0x80000000) != 0;
+                int type = (blockHeader >>> 24) & 0x7F;
+                int blockSize = blockHeader & 0xFFFFFF;
+
+                if (type == 0 && blockSize >= 18) {
+                    // STREAMINFO: 20 bits of sample rate, 3 of channels, 5 of bits per sample and 36 of samples
+                    byte[] info = new byte[18];
+                    raf.readFully(info);
+                    sampleRate = (info[10] & 0xFF) << 12 | (info[11] & 0xFF) << 4 | (info[12] & 0xFF) >>> 4;
+                    totalSamples = (long) (info[13] & 0x0F) << 32 | (ByteBuffer.wrap(info).getInt(14) & 0xFFFFFFFFL);
+                } else if (type == 4 && blockSize <= MAX_TAG_SIZE) {
+                    byte[] comment = new byte[blockSize];
+                    raf.readFully(comment);
+                    parseVorbisComment(comment, 0, data);
+                }
+
+                pos += 4 + blockSize;
+            }
+
+            if (sampleRate > 0 && totalSamples > 0) {
+                data.durationInSecs = (float) totalSamples / sampleRate;
+            }
+            setBitrate(data, raf.length() - pos);
+
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the position after the ID3v2 tag some taggers put before the
+     * FLAC stream, 0 if there is none
+     */
+    private static long skipID3v2(RandomAccessFile raf) throws IOException {
+        byte[] header = new byte[10];
+        if (raf.length() < 10) {
+            return 0;
+        }
+        raf.seek(0);
+        raf.readFully(header);
+        if (!startsWith(header, 0, "ID3")) {
+            return 0;
+        }
+        int size = (header[6] & 0x7F) << 21 | (header[7] & 0x7F) << 14 | (header[8] & 0x7F) << 7 | (header[9] & 0x7F);
+        boolean footer = (header[5] & 0x10) != 0;
+        return 10 + size + (footer ? 10 : 0);
+    }
+
+    /**
+     * Vorbis comments, as in Ogg Vorbis, Opus and FLAC: little endian lengths
+     * and KEY=value strings in UTF-8.
+     */
+    private static void parseVorbisComment(byte[] bytes, int offset, AudioMetaData data) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes, offset, bytes.length - offset).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buf.remaining() < 8) {
+            return;
+        }
+        int vendorLength = buf.getInt();
+        if (vendorLength < 0 || vendorLength > buf.remaining() - 4) {
+            return;
+        }
+        buf.position(buf.position() + vendorLength);
+
+        int count = buf.getInt();
+        for (int i = 0; i < count && buf.remaining() >= 4; i++) {
+            int length = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                return;
+            }
+
+            String comment = new String(bytes, buf.position(), length, "UTF-8");
+            buf.position(buf.position() + length);
+
+            int eq = comment.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+
+            String key = comment.substring(0, eq).toUpperCase(Locale.US);
+            String value = comment.substring(eq + 1);
+
+            // the first value wins when a key is repeated
+            if (key.equals("TITLE") && data.title == null) {
+                data.title = value;
+            } else if (key.equals("ARTIST") && data.artist == null) {
+                data.artist = value;
+            } else if (key.equals("ALBUM") && data.album == null) {
+                data.album = value;
+            } else if (key.equals("GENRE") && data.genre == null) {
+                data.genre = value;
+            } else if (key.equals("TRACKNUMBER") && data.track == null) {
+                data.track = value;
+            } else if (key.equals("DATE") && data.year == null) {
+                data.year = year(value);
+            } else if ((key.equals("COMMENT") || key.equals("DESCRIPTION")) && data.comment == null) {
+                data.comment = value;
+            }
+        }
+    }
+
+    private static void setBitrate(AudioMetaData data, long audioBytes) {
+        if (data.durationInSecs > 0 && audioBytes > 0) {
+            data.bitrate = (int) (audioBytes * 8 / data.durationInSecs / 1000) + " kbps";
+        }
+    }
+
+    private static String year(String date) {
+        return date.length() > 4 ? date.substring(0, 4) : date;
+    }
+
+    private static String utf8(byte[] value) throws IOException {
+        return new String(value, "UTF-8");
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, String ascii) {
+        if (offset + ascii.length() > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes[offset + i] != (byte) ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int fourCC(String type) {
+        return (type.charAt(0) & 0xFF) << 24 | (type.charAt(1) & 0xFF) << 16 | (type.charAt(2) & 0xFF) << 8 | (type.charAt(3) & 0xFF);
+    }
+
+    private static final class Mp4Info {
+        public boolean moov;
+        public long timescale;
+        public long duration;
+        public long mdatSize;
+    }
+}
@@ -45,6 +45,8 @@ import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
+import org.limewire.collection.CollectionUtils;
+
 import com.frostwire.alexandria.InternetRadioStation;
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.gui.bittorrent.TorrentUtil;
@@ -121,7 +123,7 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
         }
     }
 
-    public void refreshSelection(boolean clearCache) {
+    public void refreshSelection(boolean rescan) {
         LibraryNode node = (LibraryNode) tree.getLastSelectedPathComponent();
 
         if (node == null) {
@@ -157,21 +159,19 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
         }
         //FINISHED
         else if (directoryHolder instanceof SavedFilesDirectoryHolder) {
-            if (clearCache) {
-                ((SavedFilesDirectoryHolder) directoryHolder).clearCache();
+            if (rescan) {
+                BackgroundExecutorService.schedule(new RescanSavedFilesRunnable((SavedFilesDirectoryHolder) directoryHolder));
+            } else {
+                LibraryMediator.instance().updateTableFiles(directoryHolder);
             }
-            LibraryMediator.instance().updateTableFiles(directoryHolder);
         }
         //MEDIA TYPES
         else if (directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder) {
             MediaTypeSavedFilesDirectoryHolder mtsfdh = (MediaTypeSavedFilesDirectoryHolder) directoryHolder;
-            if (clearCache) {
-                mtsfdh.clearCache();
-            }
 
             LibraryMediator.instance().updateTableFiles(directoryHolder);
 
-            BackgroundExecutorService.schedule(new SearchByMediaTypeRunnable(mtsfdh));
+            BackgroundExecutorService.schedule(new SearchByMediaTypeRunnable(mtsfdh, rescan));
 
         }
 
@@ -359,94 +359,87 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
 
     private final class SearchByMediaTypeRunnable implements Runnable {
 
+        /** Files handed to the EDT at a time, so the table fills up without freezing it */
+        private static final int BATCH_SIZE = 500;
+
         private final MediaTypeSavedFilesDirectoryHolder _mtsfdh;
+        private final boolean _rescan;
 
-        public SearchByMediaTypeRunnable(MediaTypeSavedFilesDirectoryHolder mtsfdh) {
+        public SearchByMediaTypeRunnable(MediaTypeSavedFilesDirectoryHolder mtsfdh, boolean rescan) {
             _mtsfdh = mtsfdh;
+            _rescan = rescan;
         }
 
         public void run() {
-            GUIMediator.safeInvokeLater(new Runnable() {
-                public void run() {
-                    LibraryMediator.instance().clearLibraryTable();
-                }
-            });
+            try {
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    public void run() {
+                        LibraryMediator.instance().clearLibraryTable();
+                    }
+                });
 
-            final List<File> cache = new ArrayList<File>(_mtsfdh.getCache());
-            if (cache.size() == 0) {
+                LibraryFileIndex index = LibraryFileIndex.instance();
 
                 File torrentDataDirFile = SharingSettings.TORRENT_DATA_DIR_SETTING.getValue();
 
                 Set<File> ignore = TorrentUtil.getIgnorableFiles();
+                Set<File> excludedFolders = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
 
                 Set<File> directories = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
-                directories.removeAll(LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                directories.removeAll(excludedFolders);
 
                 for (File dir : directories) {
                     if (dir == null) {
                         continue;
                     }
-                    if (dir.equals(torrentDataDirFile)) {
-                        search(dir, ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
-                    } else if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER) && !_mtsfdh.getMediaType().equals(MediaType.getAudioMediaType())) {
+                    if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER) && !_mtsfdh.getMediaType().equals(MediaType.getAudioMediaType())) {
                         continue;
-                    } else {
-                        search(dir, new HashSet<File>(), LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
                     }
-                }
-            } else {
-                GUIMediator.safeInvokeLater(new Runnable() {
-                    public void run() {
-                        LibraryMediator.instance().addFilesToLibraryTable(cache);
+
+                    if (_rescan) {
+                        index.refresh(dir);
                     }
-                });
-            }
 
-            LibraryExplorer.this.executePendingRunnables();
-        }
+                    if (!_mtsfdh.equals(getSelectedDirectoryHolder())) {
+                        return;
+                    }
 
-        private void search(File file, Set<File> ignore, Set<File> exludedSubFolders) {
+                    List<File> files = index.getFiles(dir, excludedFolders, dir.equals(torrentDataDirFile) ? ignore : null, null, _mtsfdh);
 
-            if (file == null || !file.isDirectory() || !file.exists()) {
-                return;
+                    for (final List<File> batch : CollectionUtils.split(BATCH_SIZE, files)) {
+                        GUIMediator.safeInvokeLater(new Runnable() {
+                            public void run() {
+                                if (_mtsfdh.equals(getSelectedDirectoryHolder())) {
+                                    LibraryMediator.instance().addFilesToLibraryTable(batch);
+                                }
+                            }
+                        });
+                    }
+                }
+            } finally {
+                LibraryExplorer.this.executePendingRunnables();
             }
+        }
+    }
 
-            List<File> directories = new ArrayList<File>();
-            final List<File> files = new ArrayList<File>();
+    private final class RescanSavedFilesRunnable implements Runnable {
 
-            for (File child : file.listFiles()) {
+        private final SavedFilesDirectoryHolder _sfdh;
 
-                DirectoryHolder directoryHolder = getSelectedDirectoryHolder();
-                if (!_mtsfdh.equals(directoryHolder)) {
-                    return;
-                }
-
-                if (ignore.contains(child)) {
-                    continue;
-                }
+        public RescanSavedFilesRunnable(SavedFilesDirectoryHolder sfdh) {
+            _sfdh = sfdh;
+        }
 
-                if (child.isHidden()) {
-                    continue;
-                }
+        public void run() {
+            _sfdh.refresh();
 
-                if (child.isDirectory() && !exludedSubFolders.contains(child)) {
-                    directories.add(child);
-                } else if (_mtsfdh.accept(child)) {
-                    files.add(child);
-                }
-            }
-            _mtsfdh.addToCache(files);
-            Runnable r = new Runnable() {
+            GUIMediator.safeInvokeLater(new Runnable() {
                 public void run() {
-                    LibraryMediator.instance().addFilesToLibraryTable(files);
+                    if (_sfdh.equals(getSelectedDirectoryHolder())) {
+                        LibraryMediator.instance().updateTableFiles(_sfdh);
+                    }
                 }
-            };
-
-            GUIMediator.safeInvokeLater(r);
-
-            for (File directory : directories) {
-                search(directory, ignore, exludedSubFolders);
-            }
+            });
         }
     }
 
@@ -577,23 +570,11 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
     }
 
     /**
-     * Cleans the caches of all directory holders and refreshes the current selection.
+     * Rescans the library folders of the current selection and refreshes it,
+     * the file index only lists again the folders that changed.
      */
     public void clearDirectoryHolderCaches() {
-        Enumeration<?> e = root.depthFirstEnumeration();
-        while (e.hasMoreElements()) {
-            LibraryNode node = (LibraryNode) e.nextElement();
-            if (node instanceof DirectoryHolderNode) {
-                DirectoryHolder holder = ((DirectoryHolderNode) node).getDirectoryHolder();
-                if (holder instanceof MediaTypeSavedFilesDirectoryHolder) {
-                    ((MediaTypeSavedFilesDirectoryHolder) holder).clearCache();
-                } else if (holder instanceof SavedFilesDirectoryHolder) {
-                    ((SavedFilesDirectoryHolder) holder).clearCache();
-                }
-            }
-        }
-
-        refreshSelection();
+        refreshSelection(true);
     }
 
     private class RefreshAction extends AbstractAction {
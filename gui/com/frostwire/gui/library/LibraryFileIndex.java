@@ -0,0 +1,501 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.CommonUtils;
+import org.limewire.util.FileUtils;
+
+import com.limegroup.gnutella.settings.LibrarySettings;
+import com.limegroup.gnutella.settings.SharingSettings;
+
+/**
+ * Index of the files under the library folders, so the library searches and
+ * the media type views don't walk the disk every time.
+ *
+ * A folder is listed the first time it's needed and then only when its last
+ * modified time changes, which happens when an entry is added, removed or
+ * renamed in it. A background refresh checks the indexed folders every
+ * minute, one stat per folder, and the index is saved to disk so a restart
+ * doesn't list everything again.
+ *
+ * Queries never touch the disk, they run over the folders as they were at
+ * the last refresh. Roots are always indexed by the background thread, and
+ * the ones that are no longer shared are dropped.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class LibraryFileIndex {
+
+    private static final Log LOG = LogFactory.getLog(LibraryFileIndex.class);
+
+    private static final int FILE_MAGIC = 0x46574c49; // FWLI
+    private static final int FILE_VERSION = 1;
+
+    private static final long REFRESH_INTERVAL_MILLIS = 60 * 1000;
+
+    private static LibraryFileIndex INSTANCE;
+
+    public synchronized static LibraryFileIndex instance() {
+        if (INSTANCE == null) {
+            INSTANCE = new LibraryFileIndex(new File(CommonUtils.getUserSettingsDir(), "library.idx"));
+        }
+        return INSTANCE;
+    }
+
+    private final File _indexFile;
+
+    private final Map<File, Folder> _folders;
+    private final Set<File> _roots;
+
+    private final ScheduledExecutorService _refresher;
+
+    /** Guarded by the lock of _refresher, like every refresh */
+    private boolean _dirty;
+
+    private LibraryFileIndex(File indexFile) {
+        _indexFile = indexFile;
+        _folders = new ConcurrentHashMap<File, Folder>();
+        _roots = new CopyOnWriteArraySet<File>();
+
+        _refresher = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("LibraryFileIndex"));
+
+        load();
+
+        _refresher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                refreshAll();
+            }
+        }, REFRESH_INTERVAL_MILLIS, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the files under <code>root</code>, in no particular order. The
+     * first time a root is asked for it's indexed in the background, the
+     * calling thread waits for it unless it's the event dispatch thread, which
+     * gets what is indexed so far. See {@link #index(File, Runnable)}.
+     * 
+     * @param excludedFolders folders not to descend into
+     * @param excludedFiles files to leave out, usually incomplete downloads
+     * @param tokens lower case strings that must all be in the path, null for any
+     * @param filter extra condition on the files, null for any
+     */
+    public List<File> getFiles(File root, Set<File> excludedFolders, Set<File> excludedFiles, String[] tokens, FileFilter filter) {
+        List<File> results = new ArrayList<File>();
+
+        if (root == null) {
+            return results;
+        }
+
+        if (!isIndexed(root)) {
+            Future<?> indexing = index(root, null);
+            if (!SwingUtilities.isEventDispatchThread()) {
+                try {
+                    indexing.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return results;
+                } catch (ExecutionException e) {
+                    LOG.warn("Error indexing " + root, e.getCause());
+                }
+            }
+        }
+
+        collect(root, excludedFolders, excludedFiles, tokens, filter, results);
+
+        return results;
+    }
+
+    public boolean isIndexed(File root) {
+        return _folders.containsKey(root);
+    }
+
+    /**
+     * Refreshes <code>root</code> in the background, then runs
+     * <code>onIndexed</code> there, if not null.
+     */
+    public Future<?> index(final File root, final Runnable onIndexed) {
+        return _refresher.submit(new Runnable() {
+            public void run() {
+                refresh(root);
+                if (onIndexed != null) {
+                    onIndexed.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Refreshes the folders under <code>root</code> whose last modified time
+     * changed, and keeps refreshing them from now on.
+     */
+    public void refresh(File root) {
+        synchronized (_refresher) {
+            _roots.add(root);
+            refreshFolder(root);
+            saveIfDirty();
+        }
+    }
+
+    /**
+     * Refreshes in the background the part of the index a new file or folder
+     * belongs to, if any.
+     */
+    public void update(final File location) {
+        _refresher.execute(new Runnable() {
+            public void run() {
+                // a new folder is not indexed yet, its closest indexed ancestor is
+                File folder = location.isDirectory() ? location : location.getParentFile();
+                while (folder != null && !_folders.containsKey(folder)) {
+                    folder = folder.getParentFile();
+                }
+                synchronized (_refresher) {
+                    if (folder != null) {
+                        refreshFolder(folder);
+                        saveIfDirty();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the roots that are no longer shared and refreshes the others.
+     */
+    public void refreshAll() {
+        synchronized (_refresher) {
+            Set<File> shared = getSharedFolders();
+
+            Set<File> kept = new HashSet<File>();
+            for (File root : _roots) {
+                if (isShared(root, shared)) {
+                    kept.add(root);
+                } else {
+                    _roots.remove(root);
+                    _dirty = true;
+                }
+            }
+
+            // the folders of the dropped roots, unless a kept root covers them
+            for (File folder : _folders.keySet()) {
+                if (!isShared(folder, kept)) {
+                    _folders.remove(folder);
+                    _dirty = true;
+                }
+            }
+
+            for (File root : kept) {
+                refresh(root);
+            }
+
+            saveIfDirty();
+        }
+    }
+
+    private static Set<File> getSharedFolders() {
+        Set<File> shared = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
+        shared.add(SharingSettings.TORRENT_DATA_DIR_SETTING.getValue());
+        shared.add(SharingSettings.TORRENTS_DIR_SETTING.getValue());
+        return shared;
+    }
+
+    private static boolean isShared(File folder, Set<File> dirs) {
+        for (File dir : dirs) {
+            if (FileUtils.isAncestor(dir, folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collect(File folder, Set<File> excludedFolders, Set<File> excludedFiles, String[] tokens, FileFilter filter, List<File> results) {
+        Folder entry = _folders.get(folder);
+        if (entry == null) {
+            return;
+        }
+
+        for (Entry file : entry.files) {
+            if (excludedFiles != null && excludedFiles.contains(file.file)) {
+                continue;
+            }
+            if (tokens != null && !file.matches(tokens)) {
+                continue;
+            }
+            if (filter != null && !filter.accept(file.file)) {
+                continue;
+            }
+            results.add(file.file);
+        }
+
+        for (File subfolder : entry.folders) {
+            if (excludedFolders == null || !excludedFolders.contains(subfolder)) {
+                collect(subfolder, excludedFolders, excludedFiles, tokens, filter, results);
+            }
+        }
+    }
+
+    private void refreshFolder(File folder) {
+        long lastModified = folder.lastModified();
+
+        Folder entry = _folders.get(folder);
+
+        if (lastModified == 0) {
+            // gone, or not a folder anymore
+            if (entry != null) {
+                remove(folder);
+            }
+            return;
+        }
+
+        if (entry == null || entry.lastModified != lastModified) {
+            Folder listed = list(folder, lastModified);
+            if (listed == null) {
+                return;
+            }
+
+            if (entry != null) {
+                Set<File> current = new HashSet<File>(listed.folders);
+                for (File subfolder : entry.folders) {
+                    if (!current.contains(subfolder)) {
+                        remove(subfolder);
+                    }
+                }
+            }
+
+            _folders.put(folder, listed);
+            _dirty = true;
+            entry = listed;
+        }
+
+        for (File subfolder : entry.folders) {
+            refreshFolder(subfolder);
+        }
+    }
+
+    private void remove(File folder) {
+        Folder entry = _folders.remove(folder);
+        if (entry != null) {
+            _dirty = true;
+            for (File subfolder : entry.folders) {
+                remove(subfolder);
+            }
+        }
+    }
+
+    private static Folder list(File folder, long lastModified) {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return null;
+        }
+
+        List<Entry> files = new ArrayList<Entry>();
+        List<File> folders = new ArrayList<File>();
+
+        for (File child : children) {
+            if (child.isHidden()) {
+                continue;
+            }
+            if (child.isDirectory()) {
+                folders.add(child);
+            } else if (child.isFile()) {
+                files.add(new Entry(child, child.length(), child.lastModified()));
+            }
+        }
+
+        return new Folder(lastModified, files, folders);
+    }
+
+    private void saveIfDirty() {
+        if (!_dirty) {
+            return;
+        }
+        try {
+            save();
+            _dirty = false;
+        } catch (IOException e) {
+            LOG.warn("Error saving library file index", e);
+        }
+    }
+
+    private void save() throws IOException {
+        File temp = new File(_indexFile.getPath() + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+
+            out.writeInt(_roots.size());
+            for (File root : _roots) {
+                out.writeUTF(root.getPath());
+            }
+
+            // a snapshot, the map can change while it's written
+            List<Map.Entry<File, Folder>> folders = new ArrayList<Map.Entry<File, Folder>>(_folders.entrySet());
+
+            out.writeInt(folders.size());
+            for (Map.Entry<File, Folder> e : folders) {
+                Folder folder = e.getValue();
+
+                out.writeUTF(e.getKey().getPath());
+                out.writeLong(folder.lastModified);
+
+                out.writeInt(folder.files.size());
+                for (Entry file : folder.files) {
+                    out.writeUTF(file.file.getName());
+                    out.writeLong(file.size);
+                    out.writeLong(file.lastModified);
+                }
+
+                out.writeInt(folder.folders.size());
+                for (File subfolder : folder.folders) {
+                    out.writeUTF(subfolder.getName());
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(_indexFile)) {
+            _indexFile.delete();
+            if (!temp.renameTo(_indexFile)) {
+                throw new IOException("Can't rename " + temp + " to " + _indexFile);
+            }
+        }
+    }
+
+    private void load() {
+        if (!_indexFile.exists()) {
+            return;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_indexFile)));
+            try {
+                if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                    LOG.info("Ignoring library file index of another version");
+                    return;
+                }
+
+                int numRoots = in.readInt();
+                for (int i = 0; i < numRoots; i++) {
+                    _roots.add(new File(in.readUTF()));
+                }
+
+                int numFolders = in.readInt();
+                for (int i = 0; i < numFolders; i++) {
+                    File path = new File(in.readUTF());
+                    long lastModified = in.readLong();
+
+                    int numFiles = in.readInt();
+                    List<Entry> files = new ArrayList<Entry>(numFiles);
+                    for (int j = 0; j < numFiles; j++) {
+                        files.add(new Entry(new File(path, in.readUTF()), in.readLong(), in.readLong()));
+                    }
+
+                    int numSubfolders = in.readInt();
+                    List<File> folders = new ArrayList<File>(numSubfolders);
+                    for (int j = 0; j < numSubfolders; j++) {
+                        folders.add(new File(path, in.readUTF()));
+                    }
+
+                    _folders.put(path, new Folder(lastModified, files, folders));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Error loading library file index, starting a new one", e);
+            _roots.clear();
+            _folders.clear();
+        }
+    }
+
+    /**
+     * A listed folder, never modified, a change replaces it.
+     */
+    private static final class Folder {
+
+        public final long lastModified;
+        public final List<Entry> files;
+        public final List<File> folders;
+
+        public Folder(long lastModified, List<Entry> files, List<File> folders) {
+            this.lastModified = lastModified;
+            this.files = Collections.unmodifiableList(files);
+            this.folders = Collections.unmodifiableList(folders);
+        }
+    }
+
+    private static final class Entry {
+
+        public final File file;
+        public final long size;
+        public final long lastModified;
+
+        /** What the search tokens are looked for in */
+        private final String _lowerCasePath;
+
+        public Entry(File file, long size, long lastModified) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            _lowerCasePath = file.getAbsolutePath().toLowerCase(Locale.US);
+        }
+
+        public boolean matches(String[] tokens) {
+            for (String token : tokens) {
+                if (!_lowerCasePath.contains(token)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
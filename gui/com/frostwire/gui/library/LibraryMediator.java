@@ -419,20 +419,7 @@ public class LibraryMediator {
 
     public void scan(int hashCode, File location) {
         idScanned.add(hashCode);
-
-        if (location.isDirectory()) {
-            for (File file : location.listFiles()) {
-                scan(hashCode, file);
-            }
-        } else {
-            List<MediaTypeSavedFilesDirectoryHolder> holders = getLibraryExplorer().getMediaTypeSavedFilesDirectoryHolders();
-            for (MediaTypeSavedFilesDirectoryHolder holder : holders) {
-                Set<File> cache = holder.getCache();
-                if (holder.accept(location) && !cache.isEmpty() && !cache.contains(location)) {
-                    cache.add(location);
-                }
-            }
-        }
+        LibraryFileIndex.instance().update(location);
     }
 
     public long getTotalRadioStations() {
@@ -24,7 +24,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.io.File;
-import java.io.FileFilter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -292,100 +291,46 @@ public class LibrarySearch extends JPanel {
                 }
             });
 
-            if (directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder) {
-                List<File> cache = new ArrayList<File>(((MediaTypeSavedFilesDirectoryHolder) directoryHolder).getCache());
-                if (cache.size() > 0) {
-                    search(cache);
-                    return;
-                }
-            } else if (directoryHolder instanceof SavedFilesDirectoryHolder) {
-                List<File> cache = new ArrayList<File>(((SavedFilesDirectoryHolder) directoryHolder).getCache());
-                if (cache.size() > 0) {
-                    search(cache);
-                    return;
-                }
-            }
+            LibraryFileIndex index = LibraryFileIndex.instance();
 
+            String[] tokens = getTokens(_query);
             Set<File> ignore = TorrentUtil.getIgnorableFiles();
+            Set<File> excludedFolders = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
+
+            final List<File> results;
 
             if (directoryHolder instanceof TorrentDirectoryHolder) {
-                search(((TorrentDirectoryHolder) directoryHolder).getDirectory(), ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
-                return;
-            }
+                results = index.getFiles(directoryHolder.getDirectory(), excludedFolders, ignore, tokens, directoryHolder);
+            } else if (directoryHolder instanceof SavedFilesDirectoryHolder) {
+                results = index.getFiles(directoryHolder.getDirectory(), excludedFolders, ignore, tokens, null);
+            } else {
+                results = new ArrayList<File>();
 
-            if (directoryHolder instanceof SavedFilesDirectoryHolder) {
-                search(((SavedFilesDirectoryHolder) directoryHolder).getDirectory(), ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
-                return;
-            }
+                Set<File> directories = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
+                directories.removeAll(excludedFolders);
+                for (File dir : directories) {
+                    if (canceled) {
+                        return;
+                    }
 
-            Set<File> directories = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
-            directories.removeAll(LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
-            for (File dir : directories) {
-                if (dir == null) {
-                    continue;
-                }
+                    if (dir == null) {
+                        continue;
+                    }
 
-                if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER) && directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder && !((MediaTypeSavedFilesDirectoryHolder) directoryHolder).getMediaType().equals(MediaType.getAudioMediaType())) {
-                    continue;
-                } else {
-                    search(dir, new HashSet<File>(), LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                    if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER) && directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder && !((MediaTypeSavedFilesDirectoryHolder) directoryHolder).getMediaType().equals(MediaType.getAudioMediaType())) {
+                        continue;
+                    } else {
+                        results.addAll(index.getFiles(dir, excludedFolders, ignore, tokens, directoryHolder));
+                    }
                 }
             }
-        }
-
-        /**
-         * It searches _query in haystackDir.
-         * 
-         * @param haystackDir
-         * @param excludeFiles - Usually a list of incomplete files.
-         */
-        private void search(File haystackDir, Set<File> excludeFiles, Set<File> exludedSubFolders) {
-            if (canceled) {
-                return;
-            }
 
-            if (haystackDir == null || !haystackDir.isDirectory() || !haystackDir.exists()) {
+            //Stop search if the user selected another item in the library tree
+            DirectoryHolder currentDirectoryHolder = LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder();
+            if (canceled || !directoryHolder.equals(currentDirectoryHolder)) {
                 return;
             }
 
-            final List<File> directories = new ArrayList<File>();
-            final List<File> results = new ArrayList<File>();
-            SearchFileFilter searchFilter = new SearchFileFilter(_query);
-
-            for (File child : haystackDir.listFiles(searchFilter)) {
-                if (canceled) {
-                    return;
-                }
-
-                /////
-                //Stop search if the user selected another item in the library tree
-                DirectoryHolder currentDirectoryHolder = LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder();
-                if (!directoryHolder.equals(currentDirectoryHolder)) {
-                    return;
-                }
-                /////
-
-                if (excludeFiles.contains(child)) {
-                    continue;
-                }
-
-                if (child.isHidden()) {
-                    continue;
-                }
-
-                if (child.isDirectory() && !exludedSubFolders.contains(child)) {
-                    directories.add(child);
-                } else if (child.isFile()) {
-                    if (directoryHolder instanceof SavedFilesDirectoryHolder) {
-                        if (searchFilter.accept(child, false)) {
-                            results.add(child);
-                        }
-                    } else if (directoryHolder.accept(child)) {
-                        results.add(child);
-                    }
-                }
-            }
-
             Runnable r = new Runnable() {
                 public void run() {
                     LibraryMediator.instance().addFilesToLibraryTable(results);
@@ -396,84 +341,14 @@ public class LibrarySearch extends JPanel {
                 }
             };
             GUIMediator.safeInvokeLater(r);
-
-            for (File directory : directories) {
-                search(directory, excludeFiles, exludedSubFolders);
-            }
-        }
-
-        private void search(List<File> cache) {
-            if (canceled) {
-                return;
-            }
-
-            final List<File> results = new ArrayList<File>();
-            SearchFileFilter searchFilter = new SearchFileFilter(_query);
-
-            for (File file : cache) {
-                if (canceled) {
-                    return;
-                }
-
-                /////
-                //Stop search if the user selected another item in the library tree
-                DirectoryHolder currentDirectoryHolder = LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder();
-                if (!directoryHolder.equals(currentDirectoryHolder)) {
-                    return;
-                }
-                /////
-
-                if (file.isHidden()) {
-                    continue;
-                }
-
-                if (searchFilter.accept(file)) {
-                    results.add(file);
-                }
-            }
-
-            Runnable r = new Runnable() {
-                public void run() {
-                    LibraryMediator.instance().addFilesToLibraryTable(results);
-                }
-            };
-            GUIMediator.safeInvokeLater(r);
         }
     }
 
-    private static final class SearchFileFilter implements FileFilter {
-
-        private final String[] _tokens;
-
-        public SearchFileFilter(String query) {
-            _tokens = StringUtils.removeDoubleSpaces(query).toLowerCase(Locale.US).split(" ");
-        }
-
-        public boolean accept(File pathname) {
-            return accept(pathname, true);
-        }
-
-        /**
-         * 
-         * @param pathname
-         * @param includeAllDirectories - if true, it will say TRUE to any directory
-         * @return
-         */
-        public boolean accept(File pathname, boolean includeAllDirectories) {
-            if (pathname.isDirectory() && includeAllDirectories) {
-                return true;
-            }
-
-            String name = pathname.getAbsolutePath();
-
-            for (String token : _tokens) {
-                if (!name.toLowerCase(Locale.US).contains(token)) {
-                    return false;
-                }
-            }
-
-            return true;
-        }
+    /**
+     * Returns the lower case tokens all the paths found must contain.
+     */
+    private static String[] getTokens(String query) {
+        return StringUtils.removeDoubleSpaces(query).toLowerCase(Locale.US).split(" ");
     }
 
     private final class SearchPlaylistItemsRunnable extends SearchRunnable {
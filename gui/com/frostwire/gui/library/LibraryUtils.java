@@ -452,6 +452,10 @@ public class LibraryUtils {
                 for (int j = 0; j < items.size() && !playlist.isDeleted(); j++) {
                     if (items.get(j).getId() == id) {
                         items.remove(j);
+                        // moved inside the playlist, the row is kept and only its position saved
+                        if (playlistItems[i].getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
+                            playlistItems[i].setId(id);
+                        }
                         break;
                     }
                 }
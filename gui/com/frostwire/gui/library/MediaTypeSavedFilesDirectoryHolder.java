@@ -18,9 +18,6 @@
 package com.frostwire.gui.library;
 
 import java.io.File;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 import javax.swing.Icon;
 
@@ -32,11 +29,8 @@ public class MediaTypeSavedFilesDirectoryHolder implements DirectoryHolder {
 
 	private MediaType type;
 	
-	private Set<File> cache;
-	
 	public MediaTypeSavedFilesDirectoryHolder(MediaType type) {
 		this.type = type;
-		cache = new HashSet<File>();
 	}
 	
 	public MediaType getMediaType() {
@@ -75,16 +69,4 @@ public class MediaTypeSavedFilesDirectoryHolder implements DirectoryHolder {
     public boolean isEmpty() {
         return true;
     }
-    
-    public Set<File> getCache() {
-        return cache;
-    }
-    
-    public void addToCache(List<File> files) {
-        cache.addAll(files);
-    }
-    
-    public void clearCache() {
-        cache.clear();
-    }
 }
\ No newline at end of file
@@ -18,13 +18,10 @@
 package com.frostwire.gui.library;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
 import javax.swing.Icon;
+import javax.swing.SwingUtilities;
 
 import org.limewire.setting.FileSetting;
 
@@ -37,13 +34,10 @@ import com.limegroup.gnutella.settings.SharingSettings;
 public class SavedFilesDirectoryHolder extends FileSettingDirectoryHolder {
     
     private final MediaType type;
-    
-	private Set<File> cache;
 
 	public SavedFilesDirectoryHolder(FileSetting saveDir, String name) {
 		super(saveDir, name);
 		type = MediaType.getAnyTypeMediaType();
-		cache = new HashSet<File>();
 	}
 	
 	public Icon getIcon() {
@@ -54,64 +48,41 @@ public class SavedFilesDirectoryHolder extends FileSettingDirectoryHolder {
         return super.accept(file) && type.matches(file.getName()) && !file.isDirectory();
     }
 	
-	private Set<File> getFilesRecursively(File folder, Set<File> excludeFolders) {
-		
-		if (folder.isDirectory() && excludeFolders.contains(folder)) {
-			return Collections.emptySet();
-		}
-		
-		File[] listFiles = folder.listFiles();
-		
-		if (listFiles == null || listFiles.length == 0) {
-			return Collections.emptySet();
-		}
-		
-		Set<File> results = new HashSet<File>();
-		
-		for (File f : listFiles) {
-			if (!f.isDirectory() && 
-				!_hideFiles.contains(f) &&
-				!f.getName().toLowerCase().contains(".ds_store")) {
-				results.add(f);
-			} else if (f.isDirectory() && !excludeFolders.contains(f)) {
-				results.addAll(getFilesRecursively(f, excludeFolders));
-			}
-		}
-		
-		return results;
+	/**
+	 * Picks up the files added or removed since the last refresh.
+	 */
+	public void refresh() {
+	    LibraryFileIndex.instance().refresh(SharingSettings.TORRENT_DATA_DIR_SETTING.getValue());
 	}
-	
-	public void clearCache() {
-	    if (cache != null) {
-	        cache.clear();
-	    }
-	}
-
 
 	@Override
 	public File[] getFiles() {
-		
-		if (cache != null && cache.size() > 0) {
-			return cache.toArray(new File[0]);
-		}
-		
 		_hideFiles = TorrentUtil.getIgnorableFiles();
 		
-		Set<File> directoriesToNotInclude = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();		
-		Set<File> directoriesToInclude = new HashSet<File>(Arrays.asList(SharingSettings.TORRENT_DATA_DIR_SETTING.getValue()));//LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue();
-		
-		Set<File> files = new HashSet<File>(); 
+		final LibraryFileIndex index = LibraryFileIndex.instance();
+		final File root = SharingSettings.TORRENT_DATA_DIR_SETTING.getValue();
 		
-		for (File directory : directoriesToInclude) {
-			files.addAll(getFilesRecursively(directory,directoriesToNotInclude));
+		if (SwingUtilities.isEventDispatchThread() && !index.isIndexed(root)) {
+		    // show the files once the background indexing is done
+		    index.index(root, new Runnable() {
+		        public void run() {
+		            if (!index.isIndexed(root)) {
+		                return; // not a readable folder, don't ask again
+		            }
+		            GUIMediator.safeInvokeLater(new Runnable() {
+		                public void run() {
+		                    if (SavedFilesDirectoryHolder.this.equals(LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder())) {
+		                        LibraryMediator.instance().updateTableFiles(SavedFilesDirectoryHolder.this);
+		                    }
+		                }
+		            });
+		        }
+		    });
+		    return new File[0];
 		}
 		
-		cache = new HashSet<File>(files);
+		List<File> files = index.getFiles(root, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue(), _hideFiles, null, null);
 		
-		return cache.toArray(new File[0]);
-	}
-	
-	public Collection<File> getCache() {
-		return cache;
+		return files.toArray(new File[0]);
 	}
 }
\ No newline at end of file
@@ -27,10 +27,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.channels.FileChannel;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Random;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 
@@ -78,15 +75,13 @@ public class AudioPlayer implements RefreshListener {
     private MPlayer mplayer;
     private AudioSource currentSong;
     private Playlist currentPlaylist;
-    private List<AudioSource> playlistFilesView;
+    private PlaybackQueue playbackQueue;
     private RepeatMode repeatMode;
     private boolean shuffle;
     private boolean playNextSong;
 
     private double volume;
 
-    private Queue<AudioSource> lastRandomFiles;
-
     private final ExecutorService playExecutor;
 
     private static AudioPlayer instance;
@@ -101,7 +96,6 @@ public class AudioPlayer implements RefreshListener {
     }
 
     private AudioPlayer() {
-        lastRandomFiles = new LinkedList<AudioSource>();
         playExecutor = ExecutorsHelper.newProcessingQueue("AudioPlayer-PlayExecutor");
         String playerPath = "";
 
@@ -184,7 +178,8 @@ public class AudioPlayer implements RefreshListener {
     }
 
     public List<AudioSource> getPlaylistFilesView() {
-        return playlistFilesView;
+        PlaybackQueue queue = playbackQueue;
+        return queue != null ? queue.getItems() : null;
     }
 
     public RepeatMode getRepeatMode() {
@@ -230,7 +225,7 @@ public class AudioPlayer implements RefreshListener {
         currentSong = source;
         this.playNextSong = playNextSong;
         this.currentPlaylist = currentPlaylist;
-        this.playlistFilesView = playlistFilesView;
+        setPlaylistFilesView(playlistFilesView);
         notifyOpened(source);
         if (play) {
             durationInSeconds = -1;
@@ -302,7 +297,7 @@ public class AudioPlayer implements RefreshListener {
     }
 
     public void loadSong(AudioSource source, boolean play, boolean playNextSong) {
-        loadSong(source, play, playNextSong, currentPlaylist, playlistFilesView);
+        loadSong(source, play, playNextSong, currentPlaylist, getPlaylistFilesView());
     }
 
     public void asyncLoadSong(final AudioSource source, final boolean play, final boolean playNextSong) {
@@ -543,7 +538,7 @@ public class AudioPlayer implements RefreshListener {
 
         if (song != null) {
             //System.out.println(song.getFile());
-            asyncLoadSong(song, true, true, currentPlaylist, playlistFilesView);
+            asyncLoadSong(song, true, true, currentPlaylist, getPlaylistFilesView());
         }
     }
 
@@ -607,56 +602,60 @@ public class AudioPlayer implements RefreshListener {
         return false;
     }
 
+    /**
+     * Called with the new view every time the table is sorted or filtered, the
+     * shuffle history is kept for the songs still in it.
+     */
     public synchronized void setPlaylistFilesView(List<AudioSource> playlistFilesView) {
-        this.playlistFilesView = playlistFilesView;
+        PlaybackQueue queue = playbackQueue;
+        if (playlistFilesView == null) {
+            playbackQueue = null;
+        } else if (queue == null || queue.getItems() != playlistFilesView) {
+            playbackQueue = new PlaybackQueue(playlistFilesView, queue);
+        }
     }
 
     public AudioSource getNextRandomSong(AudioSource currentSong) {
-        if (playlistFilesView == null) {
+        PlaybackQueue queue = playbackQueue;
+        if (queue == null) {
             return null;
         }
 
-        AudioSource songFile;
-        int count = 4;
-        while ((songFile = findRandomSongFile(currentSong)) == null && count-- > 0)
-            ;
-
-        if (count > 0) {
-            lastRandomFiles.add(songFile);
-            if (lastRandomFiles.size() > 3) {
-                lastRandomFiles.poll();
+        boolean reshuffle = getRepeatMode() == RepeatMode.All;
+        int n = queue.size();
+        for (int count = 0; count < n; count++) {
+            int i = queue.nextShuffled(currentSong, reshuffle);
+            if (i == -1) {
+                return null;
             }
-        } else {
-            songFile = currentSong;
-            lastRandomFiles.clear();
-            lastRandomFiles.add(songFile);
+            AudioSource file = queue.get(i);
+            if (isPlayableFile(file)) {
+                return file;
+            }
+            currentSong = file;
         }
 
-        return songFile;
+        return null;
     }
 
     public AudioSource getNextContinuousSong(AudioSource currentSong) {
-        if (playlistFilesView == null) {
+        PlaybackQueue queue = playbackQueue;
+        if (queue == null) {
             return null;
         }
 
-        int n = playlistFilesView.size();
+        int n = queue.size();
         if (n == 1) {
-            return playlistFilesView.get(0);
-        }
-        for (int i = 0; i < n; i++) {
-            try {
-                AudioSource f1 = playlistFilesView.get(i);
-                if (currentSong.equals(f1)) {
-                    for (int j = 1; j < n; j++) {
-                        AudioSource file = playlistFilesView.get((j + i) % n);
-                        if (isPlayableFile(file) || file instanceof DeviceAudioSource) {
-                            return file;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                return null;
+            return queue.get(0);
+        }
+        int i = queue.indexOf(currentSong);
+        if (i == -1) {
+            return null;
+        }
+        for (int j = 1; j < n; j++) {
+            AudioSource file = queue.get((j + i) % n);
+            if (isPlayableFile(file) || file instanceof DeviceAudioSource) {
+                return file;
             }
         }
 
@@ -664,35 +663,23 @@ public class AudioPlayer implements RefreshListener {
     }
 
     public AudioSource getNextSong(AudioSource currentSong) {
-        if (playlistFilesView == null) {
+        PlaybackQueue queue = playbackQueue;
+        if (queue == null) {
             return null;
         }
 
-        int n = playlistFilesView.size();
+        int n = queue.size();
         if (n == 1) {
-            return playlistFilesView.get(0);
-        }
-
-        //PlaylistFilesView should probably have a HashTable<AudioSource,Integer>
-        //Where the integer is the index of the AudioSource on playlistFilesView.
-        //This way we could easily find the current song and know the index of the
-        //next or previous song.
-        //When you have lots of files, I think the search below might
-        //be too slow.
-
-        for (int i = 0; i < n; i++) {
-            try {
-                AudioSource f1 = playlistFilesView.get(i);
-                if (currentSong.equals(f1)) {
-                    for (int j = i + 1; j < n; j++) {
-                        AudioSource file = playlistFilesView.get(j);
-                        if (isPlayableFile(file)) {
-                            return file;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                return null;
+            return queue.get(0);
+        }
+        int i = queue.indexOf(currentSong);
+        if (i == -1) {
+            return null;
+        }
+        for (int j = i + 1; j < n; j++) {
+            AudioSource file = queue.get(j);
+            if (isPlayableFile(file)) {
+                return file;
             }
         }
 
@@ -700,49 +687,31 @@ public class AudioPlayer implements RefreshListener {
     }
 
     public AudioSource getPreviousSong(AudioSource currentSong) {
-        if (playlistFilesView == null) {
+        PlaybackQueue queue = playbackQueue;
+        if (queue == null) {
             return null;
         }
 
-        int n = playlistFilesView.size();
-        for (int i = 0; i < n; i++) {
-            try {
-                AudioSource f1 = playlistFilesView.get(i);
-                if (currentSong.equals(f1)) {
-                    for (int j = i - 1; j >= 0; j--) {
-                        AudioSource file = playlistFilesView.get(j);
-                        if (isPlayableFile(file)) {
-                            return file;
-                        }
-                    }
+        if (isShuffle()) {
+            for (int count = queue.size(); count > 0; count--) {
+                int i = queue.previousShuffled(currentSong);
+                if (i == -1) {
+                    return null;
                 }
-            } catch (Exception e) {
-                return null;
+                AudioSource file = queue.get(i);
+                if (isPlayableFile(file)) {
+                    return file;
+                }
+                currentSong = file;
             }
-        }
-
-        return null;
-    }
-
-    private AudioSource findRandomSongFile(AudioSource excludeFile) {
-        if (playlistFilesView == null) {
             return null;
         }
-        int n = playlistFilesView.size();
-        if (n == 1) {
-            return playlistFilesView.get(0);
-        }
-        int index = new Random(System.currentTimeMillis()).nextInt(n);
-
-        for (int i = index; i < n; i++) {
-            try {
-                AudioSource file = playlistFilesView.get(i);
 
-                if (!lastRandomFiles.contains(file) && !file.equals(excludeFile) && isPlayableFile(file)) {
-                    return file;
-                }
-            } catch (Exception e) {
-                return null;
+        int i = queue.indexOf(currentSong);
+        for (int j = i - 1; j >= 0; j--) {
+            AudioSource file = queue.get(j);
+            if (isPlayableFile(file)) {
+                return file;
             }
         }
 
@@ -101,4 +101,15 @@ public class AudioSource {
         }
         return false;
     }
+
+    @Override
+    public int hashCode() {
+        if (file != null) {
+            return file.hashCode();
+        }
+        if (url != null) {
+            return url.hashCode();
+        }
+        return playlistItem.hashCode();
+    }
 }
@@ -0,0 +1,222 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(TM). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The list of songs the player walks through, as sorted and filtered in the
+ * library table.
+ *
+ * Positions are found with a hash index, built the first time it's needed.
+ * The shuffle order is a Fisher-Yates permutation drawn one song at a time,
+ * the drawn part is the history, so next and previous are constant time and
+ * no song is repeated until all of them were played.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class PlaybackQueue {
+
+    private static final Random RANDOM = new Random();
+
+    private final List<AudioSource> _items;
+
+    private Map<AudioSource, Integer> _index;
+
+    /**
+     * _order[0, _drawn) are the indexes of the shuffled songs in play order,
+     * _positions is the inverse permutation.
+     */
+    private int[] _order;
+    private int[] _positions;
+    private int _drawn;
+    private int _cursor;
+
+    /**
+     * @param previous the queue this one replaces, songs it already shuffled
+     * through are kept as played.
+     */
+    public PlaybackQueue(List<AudioSource> items, PlaybackQueue previous) {
+        _items = items != null ? items : Collections.<AudioSource> emptyList();
+
+        if (previous != null) {
+            List<AudioSource> history = previous.getHistory();
+            if (!history.isEmpty()) {
+                restoreHistory(history);
+            }
+        }
+    }
+
+    public List<AudioSource> getItems() {
+        return _items;
+    }
+
+    public int size() {
+        return _items.size();
+    }
+
+    public AudioSource get(int index) {
+        return _items.get(index);
+    }
+
+    /**
+     * @return the position of the song, or -1
+     */
+    public synchronized int indexOf(AudioSource song) {
+        if (song == null) {
+            return -1;
+        }
+        if (_index == null) {
+            int n = _items.size();
+            _index = new HashMap<AudioSource, Integer>(Math.max(16, n * 4 / 3 + 1));
+            for (int i = 0; i < n; i++) {
+                AudioSource item = _items.get(i);
+                if (!_index.containsKey(item)) {
+                    _index.put(item, i);
+                }
+            }
+        }
+        Integer i = _index.get(song);
+        return i != null ? i : -1;
+    }
+
+    /**
+     * @param reshuffle start a new round once all songs were played
+     * @return the position of the next song in shuffle order, or -1
+     */
+    public synchronized int nextShuffled(AudioSource current, boolean reshuffle) {
+        int n = _items.size();
+        if (n == 0) {
+            return -1;
+        }
+        seek(current);
+
+        if (_cursor + 1 < _drawn) {
+            return _order[++_cursor];
+        }
+
+        if (_drawn == n) {
+            if (!reshuffle) {
+                return -1;
+            }
+            // new round, the song that just played goes first so it's not repeated right away
+            int last = _drawn > 0 ? _order[_cursor] : -1;
+            _drawn = 0;
+            if (last != -1 && n > 1) {
+                swap(0, _positions[last]);
+                _drawn = 1;
+            }
+            _cursor = _drawn - 1;
+        }
+
+        int j = _drawn + RANDOM.nextInt(n - _drawn);
+        swap(_drawn, j);
+        _cursor = _drawn++;
+        return _order[_cursor];
+    }
+
+    /**
+     * @return the position of the song played before in shuffle order, or -1
+     */
+    public synchronized int previousShuffled(AudioSource current) {
+        if (_items.isEmpty()) {
+            return -1;
+        }
+        seek(current);
+
+        return _cursor > 0 ? _order[--_cursor] : -1;
+    }
+
+    /**
+     * Moves the cursor to the current song, drawing it if the user picked it
+     * out of the shuffle order.
+     */
+    private void seek(AudioSource current) {
+        ensureOrder();
+
+        int i = indexOf(current);
+        if (i == -1) {
+            return;
+        }
+        if (_cursor >= 0 && _cursor < _drawn && _order[_cursor] == i) {
+            return;
+        }
+
+        int p = _positions[i];
+        if (p < _drawn) {
+            _cursor = p;
+        } else {
+            swap(_drawn, p);
+            _cursor = _drawn++;
+        }
+    }
+
+    private void ensureOrder() {
+        if (_order == null) {
+            int n = _items.size();
+            _order = new int[n];
+            _positions = new int[n];
+            for (int i = 0; i < n; i++) {
+                _order[i] = i;
+                _positions[i] = i;
+            }
+            _drawn = 0;
+            _cursor = -1;
+        }
+    }
+
+    private void swap(int p1, int p2) {
+        int i1 = _order[p1];
+        int i2 = _order[p2];
+        _order[p1] = i2;
+        _order[p2] = i1;
+        _positions[i2] = p1;
+        _positions[i1] = p2;
+    }
+
+    private synchronized List<AudioSource> getHistory() {
+        if (_order == null) {
+            return Collections.emptyList();
+        }
+        List<AudioSource> history = new ArrayList<AudioSource>(_drawn);
+        for (int p = 0; p < _drawn; p++) {
+            history.add(_items.get(_order[p]));
+        }
+        return history;
+    }
+
+    private void restoreHistory(List<AudioSource> history) {
+        ensureOrder();
+
+        for (AudioSource song : history) {
+            int i = indexOf(song);
+            if (i != -1 && _positions[i] >= _drawn) {
+                swap(_drawn, _positions[i]);
+                _cursor = _drawn++;
+            }
+        }
+    }
+}
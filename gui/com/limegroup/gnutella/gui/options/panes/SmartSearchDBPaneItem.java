@@ -23,6 +23,7 @@ public final class SmartSearchDBPaneItem extends AbstractPaneItem {
 
 	private JLabel _numTorrentsLabel;
 	private JLabel _numFilesLabel;
+	private JLabel _indexingSpeedLabel;
 	
 	private long _numTorrents = 0;
 	private long _numFiles = 0;
@@ -41,12 +42,15 @@ public final class SmartSearchDBPaneItem extends AbstractPaneItem {
         Font font = new Font("dialog",Font.BOLD,12);
         _numTorrentsLabel = new JLabel();
         _numFilesLabel = new JLabel();
+        _indexingSpeedLabel = new JLabel();
         
         _numTorrentsLabel.setFont(font);
         _numFilesLabel.setFont(font);
+        _indexingSpeedLabel.setFont(font);
         
         LabeledComponent numTorrentsComp = new LabeledComponent(I18n.tr("Total torrents indexed"), _numTorrentsLabel);
         LabeledComponent numFilesComp = new LabeledComponent(I18n.tr("Total files indexed"), _numFilesLabel);
+        LabeledComponent indexingSpeedComp = new LabeledComponent(I18n.tr("Indexing speed"), _indexingSpeedLabel);
         
         add(getVerticalSeparator());
         
@@ -67,6 +71,7 @@ public final class SmartSearchDBPaneItem extends AbstractPaneItem {
         
         add(numTorrentsComp.getComponent());
         add(numFilesComp.getComponent());
+        add(indexingSpeedComp.getComponent());
         
         add(getVerticalSeparator());
         
@@ -93,6 +98,10 @@ public final class SmartSearchDBPaneItem extends AbstractPaneItem {
     	
     	_numFiles = LocalSearchEngine.instance().getTotalFiles();
     	_numFilesLabel.setText(String.valueOf(_numFiles));
+    	
+    	double torrentsPerSecond = LocalSearchEngine.instance().getIndexingTorrentsPerSecond();
+    	double filesPerSecond = LocalSearchEngine.instance().getIndexingFilesPerSecond();
+    	_indexingSpeedLabel.setText(String.format("%.1f %s, %.1f %s", torrentsPerSecond, I18n.tr("torrents/s"), filesPerSecond, I18n.tr("files/s")));
     }
     
     /**
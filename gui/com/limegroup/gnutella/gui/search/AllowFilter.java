@@ -1,11 +1,13 @@
 package com.limegroup.gnutella.gui.search;
 
+import java.util.BitSet;
+
 import com.frostwire.gui.filters.TableLineFilter;
 
 /**
  * Filter denoting that anything is allowed.
  */
-class AllowFilter implements TableLineFilter<SearchResultDataLine> {
+class AllowFilter implements TableLineFilter<SearchResultDataLine>, ColumnFilter {
     /**
      * The sole instance that can be returned, for convenience.
      */
@@ -24,6 +26,12 @@ class AllowFilter implements TableLineFilter<SearchResultDataLine> {
     public boolean allow(SearchResultDataLine line) {
         return true;
     }
+
+    /**
+     * Leaves every line allowed.
+     */
+    public void filter(SearchResultColumns columns, BitSet allowed) {
+    }
     
     public boolean equals(Object o) {
         return (o instanceof AllowFilter);
@@ -0,0 +1,15 @@
+package com.limegroup.gnutella.gui.search;
+
+import java.util.BitSet;
+
+/**
+ * A search result filter that can run over all the lines of a search at once.
+ */
+interface ColumnFilter {
+
+    /**
+     * Clears in <code>allowed</code> the indexes of <code>columns</code> this
+     * filter doesn't allow, indexes already clear must be left alone.
+     */
+    public void filter(SearchResultColumns columns, BitSet allowed);
+}
@@ -1,6 +1,7 @@
 package com.limegroup.gnutella.gui.search;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import com.frostwire.gui.filters.TableLineFilter;
@@ -8,7 +9,7 @@ import com.frostwire.gui.filters.TableLineFilter;
 /**
  * A filter that takes multiple other filters.
  */
-class CompositeFilter implements TableLineFilter<SearchResultDataLine> {
+class CompositeFilter implements TableLineFilter<SearchResultDataLine>, ColumnFilter {
     /**
      * The underlying filters.
      */
@@ -47,6 +48,25 @@ class CompositeFilter implements TableLineFilter<SearchResultDataLine> {
         return true;
     }
     
+    /**
+     * Runs the filters one after the other, each one only over the lines
+     * the previous ones allowed.
+     */
+    public void filter(SearchResultColumns columns, BitSet allowed) {
+        for (int i = 0; i < delegates.size(); i++) {
+            TableLineFilter<SearchResultDataLine> delegate = delegates.get(i);
+            if (delegate instanceof ColumnFilter) {
+                ((ColumnFilter) delegate).filter(columns, allowed);
+            } else {
+                for (int j = allowed.nextSetBit(0); j >= 0; j = allowed.nextSetBit(j + 1)) {
+                    if (!delegate.allow(columns.getLine(j))) {
+                        allowed.clear(j);
+                    }
+                }
+            }
+        }
+    }
+    
     /**
      * Sets the filter at the specified depth.
      */
@@ -18,7 +18,13 @@
 
 package com.limegroup.gnutella.gui.search;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
 import com.frostwire.gui.components.LabeledRangeSlider;
+import com.frostwire.gui.filters.KeywordMatcher;
 import com.frostwire.gui.filters.TableLineFilter;
 import com.limegroup.gnutella.gui.GUIUtils;
 import com.limegroup.gnutella.gui.LabeledTextField;
@@ -29,7 +35,7 @@ import com.limegroup.gnutella.gui.LabeledTextField;
  * @author aldenml
  *
  */
-public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine> {
+public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine>, ColumnFilter {
 
     private SearchResultMediator _rp;
     private LabeledRangeSlider _rangeSliderSeeds;
@@ -47,6 +53,9 @@ public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine
 
     private String _keywords;
 
+    /** The keywords compiled, null if there are none */
+    private KeywordMatcher _keywordMatcher;
+
     public GeneralResultFilter(SearchResultMediator rp, LabeledRangeSlider rangeSliderSeeds, LabeledRangeSlider rangeSliderSize, LabeledTextField keywordTextField) {
         _rp = rp;
         _rangeSliderSeeds = rangeSliderSeeds;
@@ -64,9 +73,57 @@ public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine
     }
 
     public boolean allow(SearchResultDataLine node) {
+        int seeds = node.getSeeds();
+        long size = node.getSize();
+
+        updateResultsRange(seeds, size);
+
+        return inSeedRange(seeds) && inSizeRange(size) && hasKeywords(node);
+    }
+
+    /**
+     * Same as {@link #allow(SearchResultDataLine)} for every allowed line, but
+     * the ranges of the results are updated once, before any line is checked.
+     */
+    public void filter(SearchResultColumns columns, BitSet allowed) {
+        if (allowed.isEmpty()) {
+            return;
+        }
+
+        int minSeeds = _minResultsSeeds;
+        int maxSeeds = _maxResultsSeeds;
+        long minSize = _minResultsSize;
+        long maxSize = _maxResultsSize;
+
+        for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+            int seeds = columns.getSeeds(i);
+            long size = columns.getSize(i);
+            if (seeds < minSeeds) {
+                minSeeds = seeds;
+            }
+            if (seeds > maxSeeds) {
+                maxSeeds = seeds;
+            }
+            if (size < minSize) {
+                minSize = size;
+            }
+            if (size > maxSize) {
+                maxSize = size;
+            }
+        }
+
+        updateResultsRange(minSeeds, minSize);
+        updateResultsRange(maxSeeds, maxSize);
+
+        for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+            if (!inSeedRange(columns.getSeeds(i)) || !inSizeRange(columns.getSize(i)) || !hasKeywords(columns.getLine(i))) {
+                allowed.clear(i);
+            }
+        }
+    }
 
+    private void updateResultsRange(int seeds, long size) {
         boolean seedsNeedUpdate = false;
-        int seeds = node.getSeeds();
         if (seeds < _minResultsSeeds) {
             _minResultsSeeds = seeds;
             seedsNeedUpdate = true;
@@ -76,7 +133,6 @@ public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine
             seedsNeedUpdate = true;
         }
         boolean sizeNeedUpdate = false;
-        long size = node.getSize();
         if (size < _minResultsSize) {
             _minResultsSize = size;
             sizeNeedUpdate = true;
@@ -94,7 +150,9 @@ public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine
             _rangeSliderSize.getMinimumValueLabel().setText(GUIUtils.toUnitbytes(_minResultsSize));
             _rangeSliderSize.getMaximumValueLabel().setText(GUIUtils.toUnitbytes(_maxResultsSize));
         }
+    }
 
+    private boolean inSeedRange(int seeds) {
         boolean inSeedRange = false;
 
         if (_maxResultsSeeds > _minResultsSeeds) {
@@ -113,6 +171,10 @@ public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine
             inSeedRange = seeds == _maxResultsSeeds;
         }
 
+        return inSeedRange;
+    }
+
+    private boolean inSizeRange(long size) {
         boolean inSizeRange = false;
 
         if (_maxResultsSize > _minResultsSize) {
@@ -131,35 +193,15 @@ public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine
             inSizeRange = size == _maxResultsSize;
         }
 
-        boolean hasKeywords = hasKeywords(node.getDisplayName());
-
-        return inSeedRange && inSizeRange && hasKeywords;
+        return inSizeRange;
     }
 
-    private boolean hasKeywords(String filename) {
-
-        String keywordText = _keywords;
-
-        if (keywordText == null || keywordText.trim().length() == 0) {
-            return true;
-        }
-
-        //if it's just one keyword.
-        String[] keywords = keywordText.split(" ");
-
-        if (keywords.length == 1) {
-            return filename.toLowerCase().contains(keywordText.toLowerCase());
-        } else {
-            String fname = filename.toLowerCase();
-            //all keywords must be in the file name.
-            for (String k : keywords) {
-                if (!fname.contains(k.toLowerCase())) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
+    /**
+     * All the keywords must be in the name of the line.
+     */
+    private boolean hasKeywords(SearchResultDataLine line) {
+        KeywordMatcher matcher = _keywordMatcher;
+        return matcher == null || matcher.matchesAll(line.getLowerCaseDisplayName());
     }
 
     public int getMinResultsSeeds() {
@@ -208,10 +250,21 @@ public class GeneralResultFilter implements TableLineFilter<SearchResultDataLine
 
     public void updateKeywordFiltering(String text) {
         _keywords = new String(text);
+        _keywordMatcher = createKeywordMatcher(text);
         _rp.filterChanged(this, 1);
     }
 
     public String getKeywordFilterText() {
         return _keywords;
     }
+
+    private static KeywordMatcher createKeywordMatcher(String text) {
+        List<String> keywords = new ArrayList<String>();
+        for (String keyword : text.toLowerCase(Locale.US).split("\\s+")) {
+            if (keyword.length() > 0) {
+                keywords.add(keyword);
+            }
+        }
+        return keywords.isEmpty() ? null : new KeywordMatcher(keywords);
+    }
 }
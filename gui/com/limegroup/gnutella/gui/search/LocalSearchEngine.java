@@ -25,10 +25,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -50,12 +48,10 @@ import org.gudy.azureus2.core3.torrentdownloader.TorrentDownloader;
 import org.gudy.azureus2.core3.torrentdownloader.TorrentDownloaderCallBackInterface;
 import org.gudy.azureus2.core3.torrentdownloader.TorrentDownloaderFactory;
 import org.gudy.azureus2.core3.util.TorrentUtils;
-import org.h2.fulltext.FullTextLucene2;
 import org.jdownloader.controlling.filter.LinkFilterController;
 import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.StringUtils;
 
-import com.frostwire.JsonEngine;
 import com.frostwire.alexandria.LibraryUtils;
 import com.frostwire.bittorrent.websearch.WebSearchResult;
 import com.frostwire.gui.filters.SearchFilter;
@@ -64,7 +60,9 @@ import com.frostwire.websearch.youtube.YouTubeEntryLink;
 import com.frostwire.websearch.youtube.YouTubeSearchResult;
 import com.limegroup.gnutella.GUID;
 import com.limegroup.gnutella.gui.GUIMediator;
+import com.limegroup.gnutella.gui.search.db.InfoHashSet;
 import com.limegroup.gnutella.gui.search.db.SmartSearchDB;
+import com.limegroup.gnutella.gui.search.db.SmartSearchIndex;
 import com.limegroup.gnutella.gui.search.db.TorrentDBPojo;
 import com.limegroup.gnutella.gui.search.db.TorrentFileDBPojo;
 import com.limegroup.gnutella.settings.SearchSettings;
@@ -83,12 +81,9 @@ public class LocalSearchEngine {
     private static final ExecutorService CRAWL_YOUTUBE_LINKS_EXECUTOR;
     private static final int MAX_TORRENT_DOWNLOADS = 10;
 
-    private static final ExecutorService INDEX_TORRENTS_EXECUTOR;
-
     static {
         DOWNLOAD_TORRENTS_EXECUTOR = ExecutorsHelper.newFixedSizePriorityThreadPool(MAX_TORRENT_DOWNLOADS, "DownloadTorrentsExecutor");
         CRAWL_YOUTUBE_LINKS_EXECUTOR = ExecutorsHelper.newFixedSizePriorityThreadPool(2, "CRAWL_YOUTUBE_LINKS_EXECUTOR");
-        INDEX_TORRENTS_EXECUTOR = ExecutorsHelper.newFixedSizeThreadPool(1, "IndexTorrentsExecutor");
     }
 
     private final int DEEP_SEARCH_DELAY;
@@ -106,15 +101,14 @@ public class LocalSearchEngine {
         }
     };
 
+    private static final int MAX_KNOWN_INFO_HASHES = 100000;
+
     /**
      * We'll keep here every info hash we've already processed during the
-     * session
+     * session, what has been indexed is known by the DB.
      */
-    private HashSet<String> KNOWN_INFO_HASHES = new HashSet<String>();
+    private final InfoHashSet KNOWN_INFO_HASHES = new InfoHashSet(MAX_KNOWN_INFO_HASHES);
     private SmartSearchDB DB;
-    private JsonEngine JSON_ENGINE;
-
-    private Queue<IndexTorrentElement> INDEX_TORRENT_QUEUE = new LinkedList<IndexTorrentElement>();
 
     public LocalSearchEngine() {
         DEEP_SEARCH_DELAY = SearchSettings.SMART_SEARCH_START_DELAY.getValue();
@@ -123,7 +117,6 @@ public class LocalSearchEngine {
         LOCAL_SEARCH_RESULTS_LIMIT = SearchSettings.SMART_SEARCH_FULLTEXT_SEARCH_RESULTS_LIMIT.getValue();
 
         DB = new SmartSearchDB(SearchSettings.SMART_SEARCH_DATABASE_FOLDER.getValue());
-        JSON_ENGINE = new JsonEngine();
     }
 
     public static LocalSearchEngine instance() {
@@ -174,111 +167,64 @@ public class LocalSearchEngine {
     public List<SmartSearchResult> search(String query) {
         query = LibraryUtils.fuzzyLuceneQuery(query);
 
-        //FULL TEXT SEARCH, Returns the File IDs we care about.
-        String fullTextIndexSql = "SELECT * FROM FTL_SEARCH(?, ?, 0)";
-
-        //System.out.println(fullTextIndexSql);
-        List<List<Object>> matchedFileRows = DB.query(fullTextIndexSql, query, LOCAL_SEARCH_RESULTS_LIMIT);
-
-        int fileIDStrOffset = " PUBLIC   FILES  WHERE  FILEID =".length();
-
-        StringBuilder fileIDSet = new StringBuilder("(");
-
-        int numFilesFound = matchedFileRows.size();
-        int i = 0;
-
-        for (List<Object> row : matchedFileRows) {
-            String rowStr = (String) row.get(0);
-            fileIDSet.append(rowStr.substring(fileIDStrOffset));
-
-            if (i++ < (numFilesFound - 1)) {
-                fileIDSet.append(",");
-            }
-        }
-        fileIDSet.append(")");
-
-        String sql = "SELECT Torrents.json, Files.json, torrentName, fileName FROM Torrents JOIN Files ON Torrents.torrentId = Files.torrentId WHERE Files.fileId IN " + fileIDSet.toString() + " ORDER BY seeds DESC LIMIT " + LOCAL_SEARCH_RESULTS_LIMIT;
-        //System.out.println(sql);
         long start = System.currentTimeMillis();
-        List<List<Object>> rows = DB.query(sql);
+        List<SmartSearchIndex.Hit> hits = DB.search(query, LOCAL_SEARCH_RESULTS_LIMIT);
         long delta = System.currentTimeMillis() - start;
-        System.out.print("Found " + rows.size() + " local results in " + delta + "ms. ");
-
-        //no query should ever take this long.
-        if (delta > 3000) {
-            System.out.println("\nWarning: Results took too long, there's something wrong with the database, you might want to delete your 'search_db' folder inside the FrostWire preferences folder.");
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Found " + hits.size() + " local results in " + delta + "ms");
         }
 
-        List<SmartSearchResult> results = new ArrayList<SmartSearchResult>();
+        List<SmartSearchResult> results = new ArrayList<SmartSearchResult>(hits.size());
         Map<Integer, SearchEngine> searchEngines = SearchEngine.getSearchEngineMap();
 
-        // GUBENE
-        String torrentJSON = null;
-        for (List<Object> row : rows) {
+        for (SmartSearchIndex.Hit hit : hits) {
             try {
-                torrentJSON = (String) row.get(0);
-                String fileJSON = (String) row.get(1);
+                SearchEngine searchEngine = searchEngines.get(hit.torrent.searchEngineID);
 
-                TorrentDBPojo torrentPojo = JSON_ENGINE.toObject(torrentJSON, TorrentDBPojo.class);
-
-                if (!searchEngines.get(torrentPojo.searchEngineID).isEnabled()) {
+                if (searchEngine == null || !searchEngine.isEnabled()) {
                     continue;
                 }
 
-                TorrentFileDBPojo torrentFilePojo = JSON_ENGINE.toObject(fileJSON, TorrentFileDBPojo.class);
-
-                results.add(new SmartSearchResult(torrentPojo, torrentFilePojo, query));
-                KNOWN_INFO_HASHES.add(torrentPojo.hash);
+                results.add(new SmartSearchResult(hit.torrent, hit.file, query));
+                KNOWN_INFO_HASHES.add(hit.torrent.hash);
             } catch (Throwable e) {
                 // keep going dude
-                LOG.error("Issues with POJO deserialization -> " + torrentJSON, e);
+                LOG.error("Issues creating smart search result -> " + hit.torrent.hash, e);
             }
         }
 
-        System.out.println("Ended up with " + results.size() + " results");
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Ended up with " + results.size() + " results");
+        }
 
         return results;
     }
 
-    public List<DeepSearchResult> deepSearch(byte[] guid, String query) {
-        SearchResultMediator rp = null;
-
-        // Let's wait for enough search results from different search engines.
-        sleep();
-
-        // Wait for enough results or die if the ResultPanel has been closed.
-        int tries = DEEP_SEARCH_ROUNDS;
-
-        boolean scanYouTube = true;
-
-        for (int i = tries; i > 0; i--) {
-            if ((rp = SearchMediator.getResultPanelForGUID(new GUID(guid))) == null) {
-                return null;
-            }
-
-            if (rp.isStopped()) {
-                return null;
-            }
+    public int getDeepSearchDelay() {
+        return DEEP_SEARCH_DELAY;
+    }
 
-            scanAvailableResults(guid, query, rp, scanYouTube);
-            scanYouTube = false;
+    public int getDeepSearchRounds() {
+        return DEEP_SEARCH_ROUNDS;
+    }
 
-            sleep();
-        }
+    /**
+     * Scans the results the panel has so far, the {@link SearchScheduler} runs
+     * {@link #getDeepSearchRounds()} of these spaced by {@link #getDeepSearchDelay()},
+     * to wait for enough search results from different search engines.
+     * 
+     * @return false if the panel has been closed or stopped, nothing left to do
+     */
+    public boolean deepSearchRound(byte[] guid, String query, boolean scanYouTube) {
+        SearchResultMediator rp = SearchMediator.getResultPanelForGUID(new GUID(guid));
 
-        // did they close rp? nothing left to do.
-        if (rp == null) {
-            return null;
+        if (rp == null || rp.isStopped()) {
+            return false;
         }
 
-        return null;
-    }
+        scanAvailableResults(guid, query, rp, scanYouTube);
 
-    public void sleep() {
-        try {
-            Thread.sleep(DEEP_SEARCH_DELAY);
-        } catch (InterruptedException e1) {
-        }
+        return true;
     }
 
     private void scanAvailableResults(byte[] guid, String query, SearchResultMediator rp, boolean scanYouTube) {
@@ -310,8 +256,7 @@ public class LocalSearchEngine {
 
                 WebSearchResult webSearchResult = line.getSearchResult().getWebSearchResult();
 
-                if (!KNOWN_INFO_HASHES.contains(webSearchResult.getHash())) {
-                    KNOWN_INFO_HASHES.add(webSearchResult.getHash());
+                if (markKnown(webSearchResult.getHash())) {
                     SearchEngine searchEngine = line.getSearchEngine();
                     scanDotTorrent(order++, webSearchResult, guid, query, searchEngine);
                 }
@@ -328,6 +273,14 @@ public class LocalSearchEngine {
         }
     }
 
+    /**
+     * @return true if the info hash wasn't processed yet this session. Once the set
+     * is full only the hashes it holds are known, every other one is treated as new.
+     */
+    private boolean markKnown(String infoHash) {
+        return KNOWN_INFO_HASHES.add(infoHash) || (KNOWN_INFO_HASHES.isFull() && !KNOWN_INFO_HASHES.contains(infoHash));
+    }
+
     /**
      * Remove all results that are not torrents and sort them by seed (desc. order)
      * @param allData
@@ -355,7 +308,7 @@ public class LocalSearchEngine {
      * @param searchEngine
      */
     private void scanDotTorrent(int order, WebSearchResult webSearchResult, byte[] guid, String query, SearchEngine searchEngine) {
-        if (!torrentHasBeenIndexed(webSearchResult.getHash())) {
+        if (!DB.isIndexed(webSearchResult.getHash())) {
             // download the torrent
 
             SearchResultMediator rp = SearchMediator.getResultPanelForGUID(new GUID(guid));
@@ -370,11 +323,6 @@ public class LocalSearchEngine {
         }
     }
 
-    private boolean torrentHasBeenIndexed(String infoHash) {
-        List<List<Object>> rows = DB.query("SELECT indexed FROM Torrents WHERE infoHash LIKE ?", infoHash);
-        return rows.size() > 0 && (Boolean) rows.get(0).get(0);
-    }
-
     private void indexTorrent(WebSearchResult searchResult, TOTorrent theTorrent, SearchEngine searchEngine) {
         TorrentDBPojo torrentPojo = new TorrentDBPojo();
         torrentPojo.creationTime = searchResult.getCreationTime();
@@ -389,6 +337,7 @@ public class LocalSearchEngine {
 
         TOTorrentFile[] files = theTorrent.getFiles();
         TorrentFileDBPojo[] tfPojos = new TorrentFileDBPojo[files.length];
+        String[] keywords = new String[files.length];
 
         for (int i = 0; i < files.length; i++) {
             TOTorrentFile f = files[i];
@@ -396,10 +345,10 @@ public class LocalSearchEngine {
             tfPojo.relativePath = f.getRelativePath();
             tfPojo.size = f.getLength();
             tfPojos[i] = tfPojo;
+            keywords[i] = stringSanitize(torrentPojo.fileName + " " + tfPojo.relativePath).toLowerCase();
         }
 
-        INDEX_TORRENT_QUEUE.offer(new IndexTorrentElement(torrentPojo, tfPojos));
-        INDEX_TORRENTS_EXECUTOR.execute(new IndexTorrentTask());
+        DB.index(torrentPojo, tfPojos, keywords);
     }
 
     private class LocalSearchTorrentDownloaderListener implements TorrentDownloaderCallBackInterface {
@@ -522,6 +471,14 @@ public class LocalSearchEngine {
         return query.size() > 0 ? (Long) query.get(0).get(0) : 0;
     }
 
+    public double getIndexingTorrentsPerSecond() {
+        return DB.getIngestTorrentsPerSecond();
+    }
+
+    public double getIndexingFilesPerSecond() {
+        return DB.getIngestFilesPerSecond();
+    }
+
     public void resetDB() {
         DB.reset();
         KNOWN_INFO_HASHES.clear();
@@ -734,76 +691,4 @@ public class LocalSearchEngine {
             }
         }
     }
-
-    private class IndexTorrentTask implements Runnable {
-
-        @Override
-        public void run() {
-            try {
-                int n = 0;
-
-                ArrayList<IndexTorrentElement> list = new ArrayList<IndexTorrentElement>();
-                while (n < 1000) {
-                    IndexTorrentElement e = INDEX_TORRENT_QUEUE.poll();
-                    if (e != null) {
-                        list.add(e);
-                        n += e.files.length;
-                    } else {
-                        break;
-                    }
-                }
-
-                indexElements(list);
-
-                if (n > 0) {
-                    Thread.sleep(1000);
-                }
-            } catch (Throwable e) {
-                LOG.error("General error in torrent index task", e);
-            }
-        }
-
-        private void indexElements(ArrayList<IndexTorrentElement> list) {
-            // disable lucene indexing
-            FullTextLucene2.enableIndexing("FILES", false);
-            for (int i = 0; i < list.size(); i++) {
-                indexElement(list.get(i), i == list.size() - 1);
-            }
-        }
-
-        private void indexElement(IndexTorrentElement indexTorrentElement, boolean enableIndexing) {
-            TorrentDBPojo torrent = indexTorrentElement.torrent;
-            TorrentFileDBPojo[] files = indexTorrentElement.files;
-
-            String torrentJSON = JSON_ENGINE.toJson(torrent);
-
-            int torrentID = DB.insert("INSERT INTO Torrents (infoHash, timestamp, torrentName, seeds, indexed, json) VALUES (?, ?, LEFT(?, 10000), ?, ?, ?)", torrent.hash, System.currentTimeMillis(), torrent.fileName.toLowerCase(), torrent.seeds, false, torrentJSON);
-
-            for (int i = 0; i < files.length; i++) {
-                if (enableIndexing && i == indexTorrentElement.files.length - 1) {
-                    // enable lucene indexing
-                    FullTextLucene2.enableIndexing("FILES", true);
-                }
-
-                TorrentFileDBPojo file = files[i];
-
-                String fileJSON = JSON_ENGINE.toJson(file);
-                String keywords = stringSanitize(torrent.fileName + " " + file.relativePath).toLowerCase();
-
-                DB.insert("INSERT INTO Files (torrentId, fileName, json, keywords) VALUES (?, LEFT(?, 10000), ?, ?)", torrentID, file.relativePath, fileJSON, keywords);
-            }
-
-            DB.update("UPDATE Torrents SET indexed=? WHERE torrentId=?", true, torrentID);
-        }
-    }
-
-    private static class IndexTorrentElement {
-        public final TorrentDBPojo torrent;
-        public final TorrentFileDBPojo files[];
-
-        public IndexTorrentElement(TorrentDBPojo torrent, TorrentFileDBPojo[] files) {
-            this.torrent = torrent;
-            this.files = files;
-        }
-    }
 }
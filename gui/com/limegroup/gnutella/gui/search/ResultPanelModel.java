@@ -192,6 +192,20 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, SearchRe
         remapIndexes(0);
     }
     
+    /**
+     * Recomputes the SHA1 indexes and the number of sources after the
+     * lines were replaced in place, without going through add or remove.
+     */
+    protected void reindex() {
+        _numSources = 0;
+        _numResults = _list.size();
+        for (int i = 0; i < _numResults; i++) {
+            _numSources += _list.get(i).getSeeds();
+        }
+        _indexes.clear();
+        remapIndexes(0);
+    }
+    
     /**
      * Overrides the default clear to erase the indexes HashMap,
      * Metadata and Grouper.
@@ -1,10 +1,33 @@
 package com.limegroup.gnutella.gui.search;
 
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
 import com.frostwire.gui.filters.TableLineFilter;
 
-class SearchEngineFilter implements TableLineFilter<SearchResultDataLine> {
+class SearchEngineFilter implements TableLineFilter<SearchResultDataLine>, ColumnFilter {
 
     public boolean allow(SearchResultDataLine node) {
         return node.getSearchEngine().isEnabled();
     }
+
+    public void filter(SearchResultColumns columns, BitSet allowed) {
+        Set<Integer> disabled = new HashSet<Integer>();
+        for (SearchEngine engine : SearchEngine.getSearchEngines()) {
+            if (!engine.isEnabled()) {
+                disabled.add(engine.getId());
+            }
+        }
+
+        if (disabled.isEmpty()) {
+            return;
+        }
+
+        for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+            if (disabled.contains(columns.getEngineId(i))) {
+                allowed.clear(i);
+            }
+        }
+    }
 }
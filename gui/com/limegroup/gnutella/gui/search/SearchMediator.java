@@ -29,7 +29,6 @@ import org.limewire.util.I18NConvert;
 import com.frostwire.AzureusStarter;
 import com.frostwire.bittorrent.websearch.WebSearchResult;
 import com.frostwire.bittorrent.websearch.soundcloud.SoundcloudTrackSearchResult;
-import com.frostwire.gui.filters.SearchFilter;
 import com.frostwire.gui.filters.SearchFilterFactory;
 import com.frostwire.gui.filters.SearchFilterFactoryImpl;
 import com.frostwire.websearch.youtube.YouTubeSearchResult;
@@ -271,96 +270,18 @@ public final class SearchMediator {
      * 
      */
     private static void doSearch(final byte[] guid, final SearchInformation info) {
-        final String query = info.getQuery();
-
-        List<SearchEngine> searchEngines = SearchEngine.getSearchEngines();
-
-        for (final SearchEngine searchEngine : searchEngines) {
-            if (searchEngine.isEnabled()) {
-                Thread t = new Thread(new Runnable() {
-                    public void run() {
-
-                        final SearchResultMediator rp = getResultPanelForGUID(new GUID(guid));
-                        if (rp != null && !rp.isStopped()) {
-                            rp.incrementSearchCount();
-                            List<WebSearchResult> webResults = searchEngine.getPerformer().search(query);
-
-                            if (webResults.size() > 0) {
-                                final List<SearchResult> results = normalizeWebResults(webResults, searchEngine, info);
-
-                                GUIMediator.safeInvokeAndWait(new Runnable() {
-                                    public void run() {
-                                        try {
-                                            SearchFilter filter = getSearchFilterFactory().createFilter();
-                                            for (SearchResult sr : results) {
-                                                if (filter.allow(sr)) {
-                                                    getSearchResultDisplayer().addQueryResult(guid, sr, rp);
-                                                }
-                                            }
-                                        } catch (Exception e) {
-                                            e.printStackTrace();
-                                        } finally {
-                                            SearchResultMediator trp = getResultPanelForGUID(new GUID(guid));
-                                            if (trp != null) {
-                                                trp.decrementSearchCount();
-                                            }
-                                        }
-                                    }
-                                });
-                            }
-                        }
-                    }
-                });
-                t.setDaemon(true);
-                t.start();
-            }
-        }
+        SearchScheduler.instance().searchEngines(guid, info);
 
         //start local search.
-        doLocalSearch(guid, query, info);
+        doLocalSearch(guid, info.getQuery(), info);
     }
 
     public static void doLocalSearch(final byte[] guid, final String query, final SearchInformation info) {
-        Thread t = new Thread(new Runnable() {
-            public void run() {
-
-                final SearchResultMediator rp = getResultPanelForGUID(new GUID(guid));
-                if (rp != null && !rp.isStopped()) {
-                    rp.incrementSearchCount();
-                    final List<SmartSearchResult> localResults = LocalSearchEngine.instance().search(query);
-
-                    final SearchFilter filter = getSearchFilterFactory().createFilter();
-
-                    if (localResults.size() > 0) {
-                        GUIMediator.safeInvokeLater(new Runnable() {
-                            public void run() {
-                                try {
-                                    for (SearchResult sr : localResults) {
-                                        if (filter.allow(sr)) {
-                                            getSearchResultDisplayer().addQueryResult(guid, sr, rp);
-                                        }
-                                    }
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                } finally {
-                                    SearchResultMediator trp = getResultPanelForGUID(new GUID(guid));
-                                    if (trp != null) {
-                                        trp.decrementSearchCount();
-                                    }
-                                }
-                            }
-                        });
-                    }
-                }
-
-                LocalSearchEngine.instance().deepSearch(guid, query);
-            }
-        });
-        t.setDaemon(true);
-        t.start();
+        SearchScheduler.instance().searchLocal(guid, query);
+        SearchScheduler.instance().deepSearch(guid, query);
     }
 
-    private static List<SearchResult> normalizeWebResults(List<WebSearchResult> webResults, SearchEngine engine, SearchInformation info) {
+    static List<SearchResult> normalizeWebResults(List<WebSearchResult> webResults, SearchEngine engine, SearchInformation info) {
 
         List<SearchResult> result = new ArrayList<SearchResult>();
 
@@ -0,0 +1,122 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search;
+
+/**
+ * Every line of a search in arrival order, with the values the filters look
+ * at kept in primitive columns, so a filter pass over thousands of results
+ * touches arrays instead of lines and results.
+ *
+ * A line keeps its index for the whole search, removed lines leave a hole.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class SearchResultColumns {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private SearchResultDataLine[] _lines;
+    private int[] _seeds;
+    private long[] _sizes;
+    private int[] _engineIds;
+
+    private int _size;
+
+    public SearchResultColumns() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return the index of the line
+     */
+    public int add(SearchResultDataLine line) {
+        if (_size == _lines.length) {
+            grow();
+        }
+
+        int index = _size++;
+
+        _lines[index] = line;
+        _seeds[index] = line.getSeeds();
+        _sizes[index] = line.getSize();
+        _engineIds[index] = line.getSearchEngine().getId();
+
+        return index;
+    }
+
+    public void remove(int index) {
+        _lines[index] = null;
+    }
+
+    public void clear() {
+        for (int i = 0; i < _size; i++) {
+            _lines[i] = null;
+        }
+        _size = 0;
+    }
+
+    /**
+     * @return the number of indexes used, including the removed lines
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return the line, null if it was removed
+     */
+    public SearchResultDataLine getLine(int index) {
+        return _lines[index];
+    }
+
+    public int getSeeds(int index) {
+        return _seeds[index];
+    }
+
+    public long getSize(int index) {
+        return _sizes[index];
+    }
+
+    public int getEngineId(int index) {
+        return _engineIds[index];
+    }
+
+    private void allocate(int capacity) {
+        _lines = new SearchResultDataLine[capacity];
+        _seeds = new int[capacity];
+        _sizes = new long[capacity];
+        _engineIds = new int[capacity];
+    }
+
+    private void grow() {
+        SearchResultDataLine[] lines = _lines;
+        int[] seeds = _seeds;
+        long[] sizes = _sizes;
+        int[] engineIds = _engineIds;
+
+        allocate(lines.length * 2);
+
+        System.arraycopy(lines, 0, _lines, 0, _size);
+        System.arraycopy(seeds, 0, _seeds, 0, _size);
+        System.arraycopy(sizes, 0, _sizes, 0, _size);
+        System.arraycopy(engineIds, 0, _engineIds, 0, _size);
+    }
+}
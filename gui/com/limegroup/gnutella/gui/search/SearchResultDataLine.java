@@ -20,6 +20,7 @@ import java.awt.event.ActionListener;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -75,6 +76,11 @@ public final class SearchResultDataLine extends AbstractDataLine<SearchResult> {
     private SizeHolder size;
     private ActionIconAndNameHolder source;
 
+    /**
+     * The display name in lower case, for the keyword filters.
+     */
+    private String _lowerCaseDisplayName;
+
     public SearchResultDataLine(SearchTableColumns stc) {
         COLUMNS = stc;
     }
@@ -201,6 +207,17 @@ public final class SearchResultDataLine extends AbstractDataLine<SearchResult> {
         return RESULT.getDisplayName();
     }
 
+    /**
+     * Returns the display name in lower case, computed once.
+     */
+    public String getLowerCaseDisplayName() {
+        if (_lowerCaseDisplayName == null) {
+            String name = getDisplayName();
+            _lowerCaseDisplayName = name != null ? name.toLowerCase(Locale.US) : "";
+        }
+        return _lowerCaseDisplayName;
+    }
+
     /**
      * Gets the size of this TableLine.
      */
@@ -0,0 +1,364 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.limewire.concurrent.ExecutorsHelper;
+
+import com.frostwire.gui.filters.SearchFilter;
+import com.limegroup.gnutella.GUID;
+import com.limegroup.gnutella.gui.GUIMediator;
+
+/**
+ * Runs the searches of every engine on a shared, bounded pool of workers.
+ *
+ * Each engine search has a timeout, and an engine that keeps failing is
+ * skipped for a cool-down period (circuit breaker), after which a single
+ * search is let through to probe it.
+ *
+ * Results are queued as they arrive and handed to the EDT in one batch per
+ * frame, so no worker ever waits for the UI.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class SearchScheduler {
+
+    private static final Log LOG = LogFactory.getLog(SearchScheduler.class);
+
+    private static final int MAX_WORKERS = 6;
+
+    private static final long SEARCH_TIMEOUT_MILLIS = 30000;
+
+    /** Consecutive failures that open the circuit of an engine */
+    private static final int BREAKER_FAILURES = 3;
+    private static final long BREAKER_COOL_DOWN_MILLIS = 5 * 60 * 1000;
+
+    /** Minimum time between two deliveries of results to the EDT */
+    private static final long FRAME_MILLIS = 40;
+
+    private static SearchScheduler INSTANCE;
+
+    public synchronized static SearchScheduler instance() {
+        if (INSTANCE == null) {
+            INSTANCE = new SearchScheduler();
+        }
+        return INSTANCE;
+    }
+
+    private final ExecutorService _workers;
+    private final ScheduledExecutorService _timer;
+
+    private final Map<Integer, CircuitBreaker> _breakers;
+
+    private final Queue<Delivery> _deliveries;
+    private final AtomicBoolean _deliveryScheduled;
+
+    private SearchScheduler() {
+        _workers = ExecutorsHelper.newFixedSizeThreadPool(MAX_WORKERS, "SearchScheduler");
+        _timer = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("SearchSchedulerTimer"));
+
+        _breakers = new HashMap<Integer, CircuitBreaker>();
+        for (SearchEngine engine : SearchEngine.getSearchEngines()) {
+            _breakers.put(engine.getId(), new CircuitBreaker(engine.getName()));
+        }
+
+        _deliveries = new ConcurrentLinkedQueue<Delivery>();
+        _deliveryScheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Schedules the search in every enabled engine whose circuit is closed.
+     */
+    public void searchEngines(final byte[] guid, final SearchInformation info) {
+        final String query = info.getQuery();
+
+        for (final SearchEngine engine : SearchEngine.getSearchEngines()) {
+            if (!engine.isEnabled()) {
+                continue;
+            }
+
+            CircuitBreaker breaker = _breakers.get(engine.getId());
+            if (!breaker.allowRequest()) {
+                LOG.debug("Skipping search engine " + engine.getName() + ", circuit open");
+                continue;
+            }
+
+            submit(new Job(guid, engine.getName(), breaker) {
+                protected List<? extends SearchResult> perform() throws Exception {
+                    return SearchMediator.normalizeWebResults(engine.getPerformer().search(query), engine, info);
+                }
+            });
+        }
+    }
+
+    public void searchLocal(final byte[] guid, final String query) {
+        submit(new Job(guid, "Local", null) {
+            protected List<? extends SearchResult> perform() throws Exception {
+                return LocalSearchEngine.instance().search(query);
+            }
+        });
+    }
+
+    /**
+     * Runs the rounds of the deep search spaced by the deep search delay,
+     * without holding a worker between rounds.
+     */
+    public void deepSearch(final byte[] guid, final String query) {
+        scheduleDeepSearchRound(guid, query, 0);
+    }
+
+    private void scheduleDeepSearchRound(final byte[] guid, final String query, final int round) {
+        final LocalSearchEngine engine = LocalSearchEngine.instance();
+
+        if (round >= engine.getDeepSearchRounds()) {
+            return;
+        }
+
+        _timer.schedule(new Runnable() {
+            public void run() {
+                _workers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (engine.deepSearchRound(guid, query, round == 0)) {
+                                scheduleDeepSearchRound(guid, query, round + 1);
+                            }
+                        } catch (Throwable e) {
+                            LOG.error("Error in deep search round", e);
+                        }
+                    }
+                });
+            }
+        }, engine.getDeepSearchDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    private void submit(final Job job) {
+        SearchResultMediator rp = SearchMediator.getResultPanelForGUID(new GUID(job.guid));
+        if (rp == null || rp.isStopped()) {
+            return;
+        }
+
+        rp.incrementSearchCount();
+
+        _workers.execute(job);
+    }
+
+    /**
+     * Queues the results of a finished job, <code>results</code> can be null.
+     */
+    private void deliver(byte[] guid, List<? extends SearchResult> results) {
+        _deliveries.add(new Delivery(guid, results));
+
+        if (_deliveryScheduled.compareAndSet(false, true)) {
+            _timer.schedule(new Runnable() {
+                public void run() {
+                    GUIMediator.safeInvokeLater(new Runnable() {
+                        public void run() {
+                            drainDeliveries();
+                        }
+                    });
+                }
+            }, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drainDeliveries() {
+        _deliveryScheduled.set(false);
+
+        SearchFilter filter = SearchMediator.getSearchFilterFactory().createFilter();
+
+        Delivery delivery;
+        while ((delivery = _deliveries.poll()) != null) {
+            // the panel may be gone, or reused by a new search with another guid
+            SearchResultMediator rp = SearchMediator.getResultPanelForGUID(new GUID(delivery.guid));
+            if (rp == null) {
+                continue;
+            }
+
+            try {
+                if (delivery.results != null && !rp.isStopped()) {
+                    for (SearchResult sr : delivery.results) {
+                        if (filter.allow(sr)) {
+                            SearchMediator.getSearchResultDisplayer().addQueryResult(delivery.guid, sr, rp);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                LOG.error("Error adding search results", e);
+            } finally {
+                rp.decrementSearchCount();
+            }
+        }
+    }
+
+    private abstract class Job implements Runnable {
+
+        public final byte[] guid;
+        public final String name;
+        public final CircuitBreaker breaker;
+
+        private final AtomicBoolean _finished;
+
+        public Job(byte[] guid, String name, CircuitBreaker breaker) {
+            this.guid = guid;
+            this.name = name;
+            this.breaker = breaker;
+            _finished = new AtomicBoolean(false);
+        }
+
+        /**
+         * @return true only for the first caller, the job completing or the timeout
+         */
+        public boolean finish() {
+            return _finished.compareAndSet(false, true);
+        }
+
+        public void run() {
+            // the timeout counts from the start, not from the time the job was queued.
+            // it only marks the job finished, so what the search still returns is dropped.
+            // the worker is shared and never interrupted: an interrupt would close the NIO
+            // channels of the local index, and the HTTP connect, read and pool timeouts of
+            // the performers already bound a stuck request
+            ScheduledFuture<?> timeout = _timer.schedule(new Runnable() {
+                public void run() {
+                    if (finish()) {
+                        LOG.info("Search in " + name + " timed out");
+                        if (breaker != null) {
+                            breaker.onFailure();
+                        }
+                        deliver(guid, null);
+                    }
+                }
+            }, SEARCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+            try {
+                runSearch();
+            } finally {
+                timeout.cancel(false);
+            }
+        }
+
+        private void runSearch() {
+            List<? extends SearchResult> results = null;
+            boolean performed = false;
+            boolean failed = false;
+
+            try {
+                // the user closed or stopped the search while this job was queued
+                SearchResultMediator rp = SearchMediator.getResultPanelForGUID(new GUID(guid));
+                if (rp != null && !rp.isStopped()) {
+                    performed = true;
+                    results = perform();
+                }
+            } catch (Throwable e) {
+                failed = true;
+                LOG.info("Search in " + name + " failed: " + e.getMessage());
+            }
+
+            if (finish()) {
+                if (breaker != null) {
+                    if (!performed) {
+                        breaker.onCancel();
+                    } else if (failed) {
+                        breaker.onFailure();
+                    } else {
+                        breaker.onSuccess();
+                    }
+                }
+                deliver(guid, results);
+            }
+        }
+
+        protected abstract List<? extends SearchResult> perform() throws Exception;
+    }
+
+    private static final class Delivery {
+
+        public final byte[] guid;
+        public final List<? extends SearchResult> results;
+
+        public Delivery(byte[] guid, List<? extends SearchResult> results) {
+            this.guid = guid;
+            this.results = results;
+        }
+    }
+
+    private static final class CircuitBreaker {
+
+        private final String _name;
+
+        private int _failures;
+        private long _openUntil;
+        private boolean _probing;
+
+        public CircuitBreaker(String name) {
+            _name = name;
+        }
+
+        /**
+         * Closed: always. Open: never until the cool-down is over, then only one
+         * probe search at a time until one of them succeeds.
+         */
+        public synchronized boolean allowRequest() {
+            if (_failures < BREAKER_FAILURES) {
+                return true;
+            }
+            if (_probing || System.currentTimeMillis() < _openUntil) {
+                return false;
+            }
+            _probing = true;
+            return true;
+        }
+
+        public synchronized void onSuccess() {
+            _failures = 0;
+            _probing = false;
+        }
+
+        /**
+         * The search was not performed, so it says nothing about the engine.
+         */
+        public synchronized void onCancel() {
+            _probing = false;
+        }
+
+        public synchronized void onFailure() {
+            _failures++;
+            _probing = false;
+            if (_failures >= BREAKER_FAILURES) {
+                _openUntil = System.currentTimeMillis() + BREAKER_COOL_DOWN_MILLIS;
+                LOG.info("Search engine " + _name + " failed " + _failures + " times in a row, skipping it for " + BREAKER_COOL_DOWN_MILLIS / 1000 + "s");
+            }
+        }
+    }
+}
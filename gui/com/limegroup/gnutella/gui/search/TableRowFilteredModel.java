@@ -16,9 +16,8 @@
 package com.limegroup.gnutella.gui.search;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 
 import com.frostwire.gui.filters.TableLineFilter;
 import com.limegroup.gnutella.settings.SearchSettings;
@@ -26,6 +25,13 @@ import com.limegroup.gnutella.settings.SearchSettings;
 /**
  * Filters out certain rows from the data model.
  *
+ * Every line, shown or hidden, is kept in a {@link SearchResultColumns} and
+ * in a permutation of its indexes in display order. The shown lines are the
+ * ones set in a bit set over the same indexes, so a filter change is a pass
+ * over primitive columns plus a walk of the permutation, no line is copied,
+ * re-sorted or re-added, and only the rows that appear or disappear are
+ * notified to the table.
+ *
  * @author Sumeet Thadani, Sam Berlin
  */
 public class TableRowFilteredModel extends ResultPanelModel {
@@ -35,6 +41,15 @@ public class TableRowFilteredModel extends ResultPanelModel {
      */
     private static final long serialVersionUID = -7810977044778830969L;
 
+    /**
+     * Above this number of row insertions and deletions a filter change is
+     * notified as a full data change.
+     */
+    private static final int MAX_ROW_EVENTS = 64;
+
+    private static final int ROWS_INSERTED = 1;
+    private static final int ROWS_DELETED = 2;
+
     /**
      * The filter to use in this row filter.
      */
@@ -46,17 +61,35 @@ public class TableRowFilteredModel extends ResultPanelModel {
     private TableLineFilter<SearchResultDataLine> junkFilter = AllowFilter.instance();
     
     /**
-     * A list of all filtered results.
+     * All the lines of the search, shown or hidden.
+     */
+    private final SearchResultColumns _columns;
+
+    /**
+     * The indexes of the lines in _columns, in display order.
+     */
+    private int[] _order;
+    private int _orderSize;
+
+    /**
+     * The indexes of the lines in _columns currently shown.
      */
-    protected final List<SearchResultDataLine> HIDDEN;
+    private final BitSet _visible;
     
     /**
-     * The number of sources in the hidden list.
+     * The number of sources in the hidden lines.
      */
     private int _numSources;
     
     private int _numResults;
 
+    /**
+     * The number of sources and results dropped as junk, they are not kept.
+     */
+    private int _numJunkSources;
+    
+    private int _numJunkResults;
+
     /**
      * Constructs a TableRowFilter with the specified TableLineFilter.
      */
@@ -67,7 +100,10 @@ public class TableRowFilteredModel extends ResultPanelModel {
             throw new NullPointerException("null filter");
 
         FILTER = f;
-        HIDDEN = new ArrayList<SearchResultDataLine>();
+        _columns = new SearchResultColumns();
+        _order = new int[256];
+        _orderSize = 0;
+        _visible = new BitSet();
         _numSources = 0;
         _numResults = 0;
     }
@@ -101,39 +137,159 @@ public class TableRowFilteredModel extends ResultPanelModel {
      */
     public int add(SearchResultDataLine tl, int row) {
         boolean isNotJunk = junkFilter.allow(tl);
-        boolean allow = allow(tl);
              
-        if(isNotJunk || !SearchSettings.hideJunk()) {
-            if (allow) {
-                return super.add(tl, row);
-            } else {
-                HIDDEN.add(tl);
-                _numSources += tl.getSeeds();
-                _numResults += 1;
-            }
+        if(!isNotJunk && SearchSettings.hideJunk()) {
+            _numJunkSources += tl.getSeeds();
+            _numJunkResults += 1;
+            _numSources += tl.getSeeds();
+            _numResults += 1;
+            return -1;
+        }
+
+        int index = _columns.add(tl);
+
+        if (allow(tl)) {
+            insertOrder(getOrderPosition(row), index);
+            _visible.set(index);
+            return super.add(tl, row);
         } else {
+            insertOrder(isSorted() ? getSortedOrderPosition(tl) : _orderSize, index);
             _numSources += tl.getSeeds();
             _numResults += 1;
+            return -1;
         }
-        return -1;
+    }
+
+    /**
+     * Removes the line from the permutation and the columns too.
+     */
+    public void remove(int row) {
+        int position = getOrderPosition(row);
+        int index = _order[position];
+
+        removeOrder(position);
+        _visible.clear(index);
+        _columns.remove(index);
+
+        super.remove(row);
     }
     
     /**
-     * Intercepts to clear the hidden map.
+     * Intercepts to clear the hidden lines.
      */
     protected void simpleClear() {
         _numSources = 0;
         _numResults = 0;
-        HIDDEN.clear();
+        _numJunkSources = 0;
+        _numJunkResults = 0;
+        _columns.clear();
+        _orderSize = 0;
+        _visible.clear();
         super.simpleClear();
     }
+
+    /**
+     * Sorts the permutation of all the lines, hidden ones included, and
+     * takes the shown lines from it.
+     */
+    protected void doResort() {
+        sortOrder(0, _orderSize, new int[_orderSize]);
+
+        _list.clear();
+        for (int i = 0; i < _orderSize; i++) {
+            int index = _order[i];
+            if (_visible.get(index)) {
+                _list.add(_columns.getLine(index));
+            }
+        }
+
+        reindex();
+    }
     
     /**
      * Notification that the filters have changed.
      */
     void filtersChanged() {
-        rebuild();
-        fireTableDataChanged();
+        BitSet allowed = new BitSet(_columns.size());
+        for (int i = 0; i < _orderSize; i++) {
+            allowed.set(_order[i]);
+        }
+        filter(allowed);
+
+        // one walk of the permutation takes the new lines and the runs of
+        // rows that appear or disappear, each run in the row coordinates the
+        // table has after the events of the previous runs
+        int[] events = new int[3 * MAX_ROW_EVENTS];
+        int numEvents = 0;
+        boolean overflow = false;
+
+        int row = 0;
+        int runType = 0;
+        int runStart = 0;
+        int runLength = 0;
+
+        _list.clear();
+        _numSources = _numJunkSources;
+        _numResults = _numJunkResults;
+
+        for (int i = 0; i < _orderSize; i++) {
+            int index = _order[i];
+            boolean was = _visible.get(index);
+            boolean is = allowed.get(index);
+
+            if (was || is) {
+                int type = was == is ? 0 : (is ? ROWS_INSERTED : ROWS_DELETED);
+                if (type != runType) {
+                    if (runType != 0) {
+                        if (numEvents < MAX_ROW_EVENTS) {
+                            setEvent(events, numEvents++, runType, runStart, runLength);
+                        } else {
+                            overflow = true;
+                        }
+                    }
+                    runType = type;
+                    runStart = row;
+                    runLength = 0;
+                }
+                runLength++;
+            }
+
+            if (is) {
+                _list.add(_columns.getLine(index));
+                row++;
+            } else {
+                _numSources += _columns.getSeeds(index);
+                _numResults += 1;
+            }
+        }
+
+        if (runType != 0) {
+            if (numEvents < MAX_ROW_EVENTS) {
+                setEvent(events, numEvents++, runType, runStart, runLength);
+            } else {
+                overflow = true;
+            }
+        }
+
+        _visible.clear();
+        _visible.or(allowed);
+
+        reindex();
+
+        if (overflow) {
+            fireTableDataChanged();
+        } else {
+            for (int i = 0; i < numEvents; i++) {
+                int type = events[3 * i];
+                int first = events[3 * i + 1];
+                int last = first + events[3 * i + 2] - 1;
+                if (type == ROWS_INSERTED) {
+                    fireTableRowsInserted(first, last);
+                } else {
+                    fireTableRowsDeleted(first, last);
+                }
+            }
+        }
     }
 	
     /**
@@ -153,54 +309,27 @@ public class TableRowFilteredModel extends ResultPanelModel {
     private boolean allow(SearchResultDataLine line) {
         return FILTER.allow(line);
     }
-    
+
     /**
-     * Rebuilds the internal map to denote a new filter.
-     */
-    private void rebuild(){
-        List<SearchResultDataLine> existing = new ArrayList<SearchResultDataLine>(_list);
-        List<SearchResultDataLine> hidden = new ArrayList<SearchResultDataLine>(HIDDEN);
-        simpleClear();
-        
-        // For stuff in _list, we can just re-add the DataLines as-is.
-        if(isSorted()) {
-            for(int i = 0; i < existing.size(); i++) {
-                addSorted(existing.get(i));
-            }
-        } else {
-            for(int i = 0; i < existing.size(); i++) {
-                add(existing.get(i));
+     * Clears in <code>allowed</code> the lines the filters don't allow.
+     */
+    private void filter(BitSet allowed) {
+        if (SearchSettings.hideJunk()) {
+            for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+                if (!junkFilter.allow(_columns.getLine(i))) {
+                    allowed.clear(i);
+                }
             }
         }
-        
-        // Merge the hidden TableLines
-        Map<String, SearchResultDataLine> mergeMap = new HashMap<String, SearchResultDataLine>();
-        for(int i = 0; i < hidden.size(); i++) {
-            SearchResultDataLine tl = hidden.get(i);
-            //SearchResult sr = tl.getInitializeObject();
-            //String urn = sr.getHash();
-            
-            if(isSorted()) {
-                addSorted(tl);
-            } else {
-                add(tl);
-            }
-            
-//            TableLine tableLine = mergeMap.get(urn);
-//            if (tableLine == null) {
-//                mergeMap.put(urn, tl); // re-use TableLines
-//            } else {
-//                tableLine.addNewResult(sr, METADATA);
-//            }
-        }
-        
-        // And add them
-        if(isSorted()) {
-            for(SearchResultDataLine line : mergeMap.values())
-                addSorted(line);
+
+        if (FILTER instanceof ColumnFilter) {
+            ((ColumnFilter) FILTER).filter(_columns, allowed);
         } else {
-            for(SearchResultDataLine line : mergeMap.values())
-                add(line);
+            for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+                if (!allow(_columns.getLine(i))) {
+                    allowed.clear(i);
+                }
+            }
         }
     }
 
@@ -208,14 +337,128 @@ public class TableRowFilteredModel extends ResultPanelModel {
         return super.getTotalResults();
     }
     
-   public int getTotalResults() {
+    public int getTotalResults() {
         return getFilteredResults() + _numResults;
     }
-   
-	public List<SearchResultDataLine> getAllData() {
-		List<SearchResultDataLine> results = new ArrayList<SearchResultDataLine>(HIDDEN);
-		results.addAll(_list);
-		return results;
-	}
 
+    /**
+     * Returns all the lines, shown and hidden, in display order.
+     */
+    public List<SearchResultDataLine> getAllData() {
+        List<SearchResultDataLine> results = new ArrayList<SearchResultDataLine>(_orderSize);
+        for (int i = 0; i < _orderSize; i++) {
+            results.add(_columns.getLine(_order[i]));
+        }
+        return results;
+    }
+
+    private static void setEvent(int[] events, int n, int type, int first, int length) {
+        events[3 * n] = type;
+        events[3 * n + 1] = first;
+        events[3 * n + 2] = length;
+    }
+
+    /**
+     * Returns the position in the permutation for a line shown at
+     * <code>row</code>, right before the line shown there now.
+     */
+    private int getOrderPosition(int row) {
+        if (row >= getRowCount()) {
+            return _orderSize;
+        }
+
+        int count = 0;
+        for (int i = 0; i < _orderSize; i++) {
+            if (_visible.get(_order[i])) {
+                if (count == row) {
+                    return i;
+                }
+                count++;
+            }
+        }
+
+        return _orderSize;
+    }
+
+    /**
+     * Returns the position in the sorted permutation for a line, after all
+     * the lines equal to it.
+     */
+    private int getSortedOrderPosition(SearchResultDataLine line) {
+        int low = 0;
+        int high = _orderSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(_columns.getLine(_order[mid]), line) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void insertOrder(int position, int index) {
+        if (_orderSize == _order.length) {
+            int[] order = new int[_order.length * 2];
+            System.arraycopy(_order, 0, order, 0, _orderSize);
+            _order = order;
+        }
+        System.arraycopy(_order, position, _order, position + 1, _orderSize - position);
+        _order[position] = index;
+        _orderSize++;
+    }
+
+    private void removeOrder(int position) {
+        System.arraycopy(_order, position + 1, _order, position, _orderSize - position - 1);
+        _orderSize--;
+    }
+
+    /**
+     * Stable merge sort of the permutation between <code>from</code> and
+     * <code>to</code> with the comparator of the lines, like the sort of the
+     * shown lines was.
+     */
+    private void sortOrder(int from, int to, int[] buffer) {
+        if (to - from < 8) {
+            for (int i = from + 1; i < to; i++) {
+                int index = _order[i];
+                SearchResultDataLine line = _columns.getLine(index);
+                int j = i;
+                while (j > from && compare(_columns.getLine(_order[j - 1]), line) > 0) {
+                    _order[j] = _order[j - 1];
+                    j--;
+                }
+                _order[j] = index;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        sortOrder(from, mid, buffer);
+        sortOrder(mid, to, buffer);
+
+        if (compare(_columns.getLine(_order[mid - 1]), _columns.getLine(_order[mid])) <= 0) {
+            return;
+        }
+
+        System.arraycopy(_order, from, buffer, from, to - from);
+
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            if (compare(_columns.getLine(buffer[j]), _columns.getLine(buffer[i])) < 0) {
+                _order[k++] = buffer[j++];
+            } else {
+                _order[k++] = buffer[i++];
+            }
+        }
+        while (i < mid) {
+            _order[k++] = buffer[i++];
+        }
+        while (j < to) {
+            _order[k++] = buffer[j++];
+        }
+    }
 }
@@ -0,0 +1,371 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.gudy.azureus2.core3.util.Base32;
+
+/**
+ * Bounded, thread safe set of 20 bytes torrent info hashes.
+ *
+ * A bloom filter on the heap answers most misses without touching the exact set,
+ * which is an open addressing table of raw hashes kept in a direct buffer, so a
+ * few hundred thousand hashes cost 20 bytes each and no objects.
+ *
+ * Once {@link #getMaxSize()} hashes are stored, new hashes are rejected and
+ * {@link #isFull()} tells the caller a miss is no longer conclusive.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class InfoHashSet {
+
+    private static final int HASH_LENGTH = 20;
+
+    private static final int FILE_MAGIC = 0x46574948; // FWIH
+    private static final int FILE_VERSION = 1;
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final int _maxSize;
+    private final ReentrantReadWriteLock _lock;
+
+    private final long[] _bloom;
+    private final int _bloomBits;
+
+    private ByteBuffer _table;
+    private int _mask;
+    private int _size;
+    private boolean _containsZero;
+
+    public InfoHashSet(int maxSize) {
+        _maxSize = maxSize;
+        _lock = new ReentrantReadWriteLock();
+
+        _bloomBits = Math.max(64, maxSize * BLOOM_BITS_PER_ENTRY);
+        _bloom = new long[(_bloomBits + 63) / 64];
+
+        allocate(INITIAL_SLOTS);
+    }
+
+    public int getMaxSize() {
+        return _maxSize;
+    }
+
+    public int size() {
+        _lock.readLock().lock();
+        try {
+            return _size;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    public boolean isFull() {
+        return size() >= _maxSize;
+    }
+
+    public boolean contains(String infoHash) {
+        byte[] hash = toBytes(infoHash);
+        return hash != null && contains(hash);
+    }
+
+    /**
+     * @return true if the hash was added, false if it was already there, invalid
+     * or the set is full
+     */
+    public boolean add(String infoHash) {
+        byte[] hash = toBytes(infoHash);
+        return hash != null && add(hash);
+    }
+
+    public boolean contains(byte[] hash) {
+        _lock.readLock().lock();
+        try {
+            if (!bloomContains(hash)) {
+                return false;
+            }
+            return isZero(hash) ? _containsZero : find(_table, _mask, hash) >= 0;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    public boolean add(byte[] hash) {
+        _lock.writeLock().lock();
+        try {
+            if (_size >= _maxSize) {
+                return false;
+            }
+
+            if (isZero(hash)) {
+                if (_containsZero) {
+                    return false;
+                }
+                _containsZero = true;
+            } else {
+                int slot = find(_table, _mask, hash);
+                if (slot >= 0) {
+                    return false;
+                }
+
+                if ((_size + 1) * 4 > (_mask + 1) * 3) {
+                    rehash();
+                    slot = find(_table, _mask, hash);
+                }
+
+                putAt(_table, -slot - 1, hash);
+            }
+
+            bloomAdd(hash);
+            _size++;
+
+            return true;
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        _lock.writeLock().lock();
+        try {
+            for (int i = 0; i < _bloom.length; i++) {
+                _bloom[i] = 0;
+            }
+            allocate(INITIAL_SLOTS);
+            _size = 0;
+            _containsZero = false;
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    public void writeTo(File file) throws IOException {
+        _lock.readLock().lock();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(_size);
+
+                byte[] hash = new byte[HASH_LENGTH];
+
+                if (_containsZero) {
+                    out.write(hash);
+                }
+
+                int slots = _mask + 1;
+                for (int i = 0; i < slots; i++) {
+                    getAt(_table, i, hash);
+                    if (!isZero(hash)) {
+                        out.write(hash);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all the hashes stored in the file by {@link #writeTo(File)}.
+     */
+    public void readFrom(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not an info hash set file: " + file);
+            }
+
+            int count = in.readInt();
+            byte[] hash = new byte[HASH_LENGTH];
+
+            for (int i = 0; i < count; i++) {
+                in.readFully(hash);
+                add(hash);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts a hex (40 chars) or base32 (32 chars) info hash to its 20 bytes,
+     * any other string is digested to 20 bytes so it still has a stable key.
+     */
+    public static byte[] toBytes(String infoHash) {
+        if (infoHash == null) {
+            return null;
+        }
+
+        String str = infoHash.trim();
+
+        if (str.length() == 2 * HASH_LENGTH) {
+            byte[] hash = decodeHex(str);
+            if (hash != null) {
+                return hash;
+            }
+        }
+
+        if (str.length() == 32) {
+            return Base32.decode(str.toUpperCase());
+        }
+
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(str.toLowerCase().getBytes("UTF-8"));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static byte[] decodeHex(String str) {
+        byte[] hash = new byte[HASH_LENGTH];
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            int hi = Character.digit(str.charAt(2 * i), 16);
+            int lo = Character.digit(str.charAt(2 * i + 1), 16);
+            if (hi == -1 || lo == -1) {
+                return null;
+            }
+            hash[i] = (byte) ((hi << 4) | lo);
+        }
+        return hash;
+    }
+
+    private void allocate(int slots) {
+        _table = ByteBuffer.allocateDirect(slots * HASH_LENGTH);
+        _mask = slots - 1;
+    }
+
+    private void rehash() {
+        ByteBuffer oldTable = _table;
+        int oldSlots = _mask + 1;
+
+        allocate(oldSlots * 2);
+
+        byte[] hash = new byte[HASH_LENGTH];
+        for (int i = 0; i < oldSlots; i++) {
+            getAt(oldTable, i, hash);
+            if (!isZero(hash)) {
+                putAt(_table, -find(_table, _mask, hash) - 1, hash);
+            }
+        }
+    }
+
+    /**
+     * @return the slot of the hash, or (-(insertion slot) - 1) if it's not there
+     */
+    private static int find(ByteBuffer table, int mask, byte[] hash) {
+        int slot = slotOf(hash) & mask;
+
+        while (true) {
+            int base = slot * HASH_LENGTH;
+
+            boolean empty = true;
+            boolean equal = true;
+            for (int i = 0; i < HASH_LENGTH; i++) {
+                byte b = table.get(base + i);
+                if (b != 0) {
+                    empty = false;
+                }
+                if (b != hash[i]) {
+                    equal = false;
+                }
+            }
+
+            if (equal) {
+                return slot;
+            }
+            if (empty) {
+                return -slot - 1;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void getAt(ByteBuffer table, int slot, byte[] hash) {
+        int base = slot * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            hash[i] = table.get(base + i);
+        }
+    }
+
+    private static void putAt(ByteBuffer table, int slot, byte[] hash) {
+        int base = slot * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            table.put(base + i, hash[i]);
+        }
+    }
+
+    private static int slotOf(byte[] hash) {
+        // info hashes are already uniformly distributed
+        return ((hash[0] & 0xFF) << 24) | ((hash[1] & 0xFF) << 16) | ((hash[2] & 0xFF) << 8) | (hash[3] & 0xFF);
+    }
+
+    private static boolean isZero(byte[] hash) {
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            if (hash[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void bloomAdd(byte[] hash) {
+        int h1 = intAt(hash, 4);
+        int h2 = intAt(hash, 8);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & 0x7FFFFFFF) % _bloomBits;
+            _bloom[bit >>> 6] |= 1L << (bit & 63);
+        }
+    }
+
+    private boolean bloomContains(byte[] hash) {
+        int h1 = intAt(hash, 4);
+        int h2 = intAt(hash, 8);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & 0x7FFFFFFF) % _bloomBits;
+            if ((_bloom[bit >>> 6] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int intAt(byte[] hash, int offset) {
+        return ((hash[offset] & 0xFF) << 24) | ((hash[offset + 1] & 0xFF) << 16) | ((hash[offset + 2] & 0xFF) << 8) | (hash[offset + 3] & 0xFF);
+    }
+}
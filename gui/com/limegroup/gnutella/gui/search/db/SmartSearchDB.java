@@ -1,16 +1,11 @@
 package com.limegroup.gnutella.gui.search.db;
 
 import java.io.File;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -18,6 +13,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.limewire.util.FileUtils;
 
+import com.frostwire.JsonEngine;
+import com.frostwire.alexandria.db.ConnectionPool;
+import com.frostwire.alexandria.db.ConnectionPool.PooledConnection;
+import com.frostwire.alexandria.db.ConnectionPool.RowHandler;
+
 public class SmartSearchDB {
     
     private static final Log LOG = LogFactory.getLog(SmartSearchDB.class);
@@ -25,12 +25,19 @@ public class SmartSearchDB {
     public static final int OBJECT_NOT_SAVED_ID = -1;
     public static final int OBJECT_INVALID_ID = -2;
     
-    public static final int SMART_SEARCH_DATABASE_VERSION = 6;
+    public static final int SMART_SEARCH_DATABASE_VERSION = 7;
+
+    private static final int MAX_KNOWN_INFO_HASHES = 500000;
+    private static final String KNOWN_INFO_HASHES_FILE = "known_infohashes.dat";
 
     private final File _databaseFile;
     private final String _name;
 
-    private Connection _connection;
+    private volatile ConnectionPool _pool;
+    private final SmartSearchIndex _index;
+    private final SmartSearchIngest _ingest;
+    private final JsonEngine _jsonEngine;
+    private final InfoHashSet _indexedHashes;
 
     private final AtomicBoolean closed = new AtomicBoolean(true);
 
@@ -48,7 +55,15 @@ public class SmartSearchDB {
         File path = databaseFile;
         _name = databaseFile.getName();
 
-        _connection = openOrCreateDatabase(path, _name);
+        _index = new SmartSearchIndex(new File(databaseFile, "index"));
+        _ingest = new SmartSearchIngest(this);
+        _jsonEngine = new JsonEngine();
+        _indexedHashes = new InfoHashSet(MAX_KNOWN_INFO_HASHES);
+
+        _pool = openOrCreateDatabase(path, _name);
+        _index.open();
+        loadIndexedHashes();
+        _ingest.start();
     }
 
     public File getDatabaseFile() {
@@ -62,49 +77,103 @@ public class SmartSearchDB {
     public boolean isClosed() {
         return closed.get();
     }
+
+    public SmartSearchIndex getIndex() {
+        return _index;
+    }
+
+    /**
+     * Full text search over the files index, returns at most <code>limit</code> hits
+     * ordered by seeds, without touching the SQL tables.
+     */
+    public List<SmartSearchIndex.Hit> search(String luceneQuery, int limit) {
+        if (isClosed()) {
+            return new ArrayList<SmartSearchIndex.Hit>();
+        }
+
+        return _index.search(luceneQuery, limit);
+    }
+
+    /**
+     * Queues the torrent and its files to be written and indexed in the background.
+     * 
+     * @param keywords the searchable text of each file, same length as <code>files</code>
+     * @return false if the torrent was dropped because the ingest queue stayed full
+     */
+    public boolean index(TorrentDBPojo torrent, TorrentFileDBPojo[] files, String[] keywords) {
+        if (isClosed()) {
+            return false;
+        }
+
+        return _ingest.offer(new SmartSearchIngest.Entry(torrent, files, keywords));
+    }
+
+    /**
+     * Answers from memory, SQL is only used once the in memory set is full.
+     */
+    public boolean isIndexed(String infoHash) {
+        if (_indexedHashes.contains(infoHash)) {
+            return true;
+        }
+
+        if (!_indexedHashes.isFull()) {
+            return false;
+        }
+
+        List<List<Object>> rows = query("SELECT torrentId FROM Torrents WHERE infoHash = ? AND indexed LIMIT 1", infoHash);
+        return rows.size() > 0;
+    }
+
+    public int getIngestQueueSize() {
+        return _ingest.getQueueSize();
+    }
+
+    public double getIngestTorrentsPerSecond() {
+        return _ingest.getTorrentsPerSecond();
+    }
+
+    public double getIngestFilesPerSecond() {
+        return _ingest.getFilesPerSecond();
+    }
     
     public List<List<Object>> query(String statementSql, Object... arguments) {
-        if (isClosed()) {
+        ConnectionPool pool = _pool;
+        if (isClosed() || pool == null) {
             return new ArrayList<List<Object>>();
         }
 
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
-
         try {
-            synchronized (_connection) {
-                statement = _connection.prepareStatement(statementSql);
-    
-                if (arguments != null) {
-                    for (int i = 0; i < arguments.length; i++) {
-                        statement.setObject(i + 1, arguments[i]);
-                    }
-                }
-    
-                resultSet = statement.executeQuery();
-    
-                return convertResultSetToList(resultSet);
-            }
+            return pool.query(statementSql, arguments);
         } catch (Throwable e) {
             LOG.error("Error performing SQL statement", e);
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
         }
 
         return new ArrayList<List<Object>>();
     }
+
+    /**
+     * Streams the rows to the <code>handler</code> instead of materializing them.
+     */
+    public void query(RowHandler handler, String statementSql, Object... arguments) {
+        ConnectionPool pool = _pool;
+        if (isClosed() || pool == null) {
+            return;
+        }
+
+        try {
+            pool.query(handler, statementSql, arguments);
+        } catch (Throwable e) {
+            LOG.error("Error performing SQL statement", e);
+        }
+    }
     
     /**
      * @param expression
-     * @return
+     * @return the id of the new row
      */
     public int insert(String statementSql, Object... arguments) {
-        if (isClosed()) {
+        ConnectionPool pool = _pool;
+        if (isClosed() || pool == null) {
             return OBJECT_INVALID_ID;
         }
 
@@ -112,70 +181,209 @@ public class SmartSearchDB {
             return OBJECT_INVALID_ID;
         }
 
-        synchronized (_connection) {
-            if (update(_connection, statementSql, arguments) > 0) {
-                return getIdentity(_connection);
-            }
+        try {
+            int id = pool.insert(statementSql, arguments);
+            return id != -1 ? id : OBJECT_INVALID_ID;
+        } catch (Throwable e) {
+            logError(e, statementSql, arguments);
         }
 
         return OBJECT_INVALID_ID;
     }
     
+    /**
+     * @return the number of rows affected
+     */
     public int update(String statementSql, Object... arguments) {
-        if (isClosed()) {
+        ConnectionPool pool = _pool;
+        if (isClosed() || pool == null) {
             return OBJECT_INVALID_ID;
         }
         
-        synchronized (_connection) {
-            if (update(_connection, statementSql, arguments) > 0) {
-                return getIdentity(_connection);
-            }
-        }
-
-        return OBJECT_INVALID_ID;
+        return update(pool, statementSql, arguments);
     }
 
     public void close() {
         if (closed.compareAndSet(false, true)) {
+            _ingest.stop();
+            _index.close();
+            saveIndexedHashes();
             try {
-                Statement statement = _connection.createStatement();
-                statement.execute("SHUTDOWN");
-                _connection.close();
+                if (_pool != null) {
+                    _pool.close(true);
+                }
             } catch (Throwable e) {
                 LOG.error("Error closing the smart search database", e);
             }
         }
     }
     
-    public synchronized Connection reset() {
+    public synchronized void reset() {
         try {
             close();
             FileUtils.deleteRecursive(_databaseFile);
-            _connection = createDatabase(_databaseFile, _name);
-            return _connection; 
+            _indexedHashes.clear();
+            _pool = createDatabase(_databaseFile, _name);
+            _index.open();
+            _ingest.start();
         } catch (Throwable e) {
             LOG.error("Error reseting smart search database", e);
         }
-        
-        return null;
     }
     
-    protected Connection onUpdateDatabase() {
-        return reset();
+    protected ConnectionPool onUpdateDatabase() {
+        reset();
+        return _pool;
     }
 
-    private Connection openConnection(File path, String name, boolean createIfNotExists) {
+    /**
+     * Writes the batch in a single transaction, torrents are inserted not yet indexed
+     * and their files go in one JDBC batch per torrent. Once committed, the files are
+     * added to the full text index, readers keep searching the previous view until the
+     * index commit. Only then are the torrents marked as indexed, a torrent whose
+     * documents didn't make it to the index is ingested again the next time it's seen.
+     */
+    boolean write(final List<SmartSearchIngest.Entry> batch) {
+        ConnectionPool pool = _pool;
+        if (isClosed() || pool == null || batch.isEmpty()) {
+            return false;
+        }
+
+        int[] torrentIds;
+
+        try {
+            torrentIds = pool.transaction(new ConnectionPool.Transaction<int[]>() {
+                public int[] run(PooledConnection connection) throws SQLException {
+                    PreparedStatement torrentStatement = connection.prepareWithKeys("INSERT INTO Torrents (infoHash, timestamp, torrentName, seeds, indexed, json) VALUES (?, ?, LEFT(?, 10000), ?, ?, ?)");
+                    PreparedStatement fileStatement = connection.prepare("INSERT INTO Files (torrentId, fileName, json) VALUES (?, LEFT(?, 10000), ?)");
+
+                    long timestamp = System.currentTimeMillis();
+                    int[] ids = new int[batch.size()];
+
+                    for (int i = 0; i < ids.length; i++) {
+                        SmartSearchIngest.Entry entry = batch.get(i);
+                        TorrentDBPojo torrent = entry.torrent;
+
+                        torrentStatement.setString(1, torrent.hash);
+                        torrentStatement.setLong(2, timestamp);
+                        torrentStatement.setString(3, torrent.fileName.toLowerCase());
+                        torrentStatement.setInt(4, torrent.seeds);
+                        torrentStatement.setBoolean(5, false);
+                        torrentStatement.setString(6, _jsonEngine.toJson(torrent));
+                        torrentStatement.executeUpdate();
+
+                        int torrentId = ConnectionPool.getGeneratedKey(torrentStatement);
+                        ids[i] = torrentId;
+
+                        for (TorrentFileDBPojo file : entry.files) {
+                            fileStatement.setInt(1, torrentId);
+                            fileStatement.setString(2, file.relativePath);
+                            fileStatement.setString(3, _jsonEngine.toJson(file));
+                            fileStatement.addBatch();
+                        }
+                        fileStatement.executeBatch();
+                    }
+
+                    return ids;
+                }
+            });
+        } catch (Throwable e) {
+            LOG.error("Error writing smart search batch, rolled back " + batch.size() + " torrents", e);
+            return false;
+        }
+
+        final List<Object[]> indexed = new ArrayList<Object[]>(batch.size());
+        final List<Object[]> failed = new ArrayList<Object[]>();
+        List<String> indexedHashes = new ArrayList<String>(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            SmartSearchIngest.Entry entry = batch.get(i);
+            if (_index.add(entry.torrent, entry.files, entry.keywords)) {
+                indexed.add(new Object[] { torrentIds[i] });
+                indexedHashes.add(entry.torrent.hash);
+            } else {
+                failed.add(new Object[] { torrentIds[i] });
+            }
+        }
+
+        if (!indexed.isEmpty() && !_index.commit()) {
+            failed.addAll(indexed);
+            indexed.clear();
+            indexedHashes.clear();
+        }
+
+        try {
+            pool.transaction(new ConnectionPool.Transaction<Void>() {
+                public Void run(PooledConnection connection) throws SQLException {
+                    connection.batch("UPDATE Torrents SET indexed = TRUE WHERE torrentId = ?", indexed);
+                    // not searchable, they go so that the next time they are seen they are written again
+                    connection.batch("DELETE FROM Files WHERE torrentId = ?", failed);
+                    connection.batch("DELETE FROM Torrents WHERE torrentId = ?", failed);
+                    return null;
+                }
+            });
+        } catch (Throwable e) {
+            LOG.error("Error updating the indexed state of " + batch.size() + " smart search torrents", e);
+            return false;
+        }
+
+        for (String hash : indexedHashes) {
+            _indexedHashes.add(hash);
+        }
+
+        return !indexed.isEmpty();
+    }
+
+    /**
+     * The saved set is deleted once loaded, so after a crash it's rebuilt from the
+     * Torrents table instead of trusting a stale file.
+     */
+    private void loadIndexedHashes() {
+        File file = new File(_databaseFile, KNOWN_INFO_HASHES_FILE);
+
+        if (file.exists()) {
+            try {
+                _indexedHashes.readFrom(file);
+                return;
+            } catch (Throwable e) {
+                LOG.warn("Error reading known info hashes, rebuilding from database", e);
+                _indexedHashes.clear();
+            } finally {
+                file.delete();
+            }
+        }
+
+        query(new RowHandler() {
+            public boolean handle(ResultSet rs) throws SQLException {
+                return _indexedHashes.add(rs.getString(1)) || !_indexedHashes.isFull();
+            }
+        }, "SELECT infoHash FROM Torrents WHERE indexed");
+    }
+
+    private void saveIndexedHashes() {
+        try {
+            if (_databaseFile.exists()) {
+                _indexedHashes.writeTo(new File(_databaseFile, KNOWN_INFO_HASHES_FILE));
+            }
+        } catch (Throwable e) {
+            LOG.error("Error saving known info hashes", e);
+        }
+    }
+
+    private ConnectionPool openConnectionPool(File path, String name, boolean createIfNotExists) {
         try {
             StringBuilder sb = new StringBuilder();
             sb.append("jdbc:h2:");
             sb.append(new File(path, name).getAbsolutePath());
+            sb.append(";MVCC=TRUE");
 
             if (!createIfNotExists) {
                 sb.append(";ifexists=true");
             }
             
+            ConnectionPool pool = new ConnectionPool(sb.toString(), "SA", "", ConnectionPool.DEFAULT_MAX_READERS);
             closed.set(false);
-            return DriverManager.getConnection(sb.toString(), "SA", "");
+            return pool;
         } catch (Throwable e) {
             if (createIfNotExists) {
                 LOG.error("Error opening the database", e);
@@ -185,123 +393,67 @@ public class SmartSearchDB {
         }
     }
 
-    private Connection createDatabase(File path, String name) {
-        Connection connection = openConnection(path, name, true);
+    private ConnectionPool createDatabase(File path, String name) {
+        ConnectionPool pool = openConnectionPool(path, name, true);
 
-        update(connection, "SET IGNORECASE TRUE");
+        if (pool == null) {
+            return null;
+        }
+
+        update(pool, "SET IGNORECASE TRUE");
         
         //TORRENTS
-        update(connection, "CREATE TABLE TORRENTS (torrentId INTEGER IDENTITY, infoHash VARCHAR(60), timestamp BIGINT, torrentName VARCHAR(10000), seeds INTEGER, indexed BOOLEAN, json VARCHAR(131072))");
-        update(connection, "CREATE INDEX idxTorrents ON TORRENTS (infoHash)");
-        update(connection, "CREATE INDEX idxSeeds ON TORRENTS(seeds)");
-        
-        //FILES
-        update(connection, "CREATE ALIAS IF NOT EXISTS FTL_INIT FOR \"org.h2.fulltext.FullTextLucene2.init\"");
-        update(connection, "CALL FTL_INIT()");
+        update(pool, "CREATE TABLE TORRENTS (torrentId INTEGER IDENTITY, infoHash VARCHAR(60), timestamp BIGINT, torrentName VARCHAR(10000), seeds INTEGER, indexed BOOLEAN, json VARCHAR(131072))");
+        update(pool, "CREATE INDEX idxTorrents ON TORRENTS (infoHash)");
+        update(pool, "CREATE INDEX idxSeeds ON TORRENTS(seeds)");
         
-        update(connection, "CREATE TABLE FILES (fileId INTEGER IDENTITY, torrentId INTEGER, fileName VARCHAR(10000), json VARCHAR(131072), keywords VARCHAR(131072))");
-        //update(connection, "CREATE INDEX idxFiles ON Files (fileName)");
-        update(connection, "CALL FTL_CREATE_INDEX('PUBLIC', 'FILES', 'FILENAME, KEYWORDS')");
-        update(connection, "CREATE INDEX idxTorrentId ON FILES (torrentId)");
+        //FILES (the full text index lives in SmartSearchIndex)
+        update(pool, "CREATE TABLE FILES (fileId INTEGER IDENTITY, torrentId INTEGER, fileName VARCHAR(10000), json VARCHAR(131072))");
+        update(pool, "CREATE INDEX idxTorrentId ON FILES (torrentId)");
         
         //SNAPSHOTS - (Created right before user imports a DB, this way the user can delete (rollback) all new insertions after the snapshot)
-        update(connection, "CREATE TABLE Snapshots (snapshotId INTEGER IDENTITY, timestamp BIGINT)");
+        update(pool, "CREATE TABLE Snapshots (snapshotId INTEGER IDENTITY, timestamp BIGINT)");
 
         /** This table keeps only a single row to identify what version of the database we have */
-        update(connection, "CREATE TABLE SmartSearchMetaData (smartSearchId INTEGER IDENTITY, name VARCHAR(500), version INTEGER)");
-        update(connection, "INSERT INTO SmartSearchMetaData (name , version) VALUES (?, ?)", name, SMART_SEARCH_DATABASE_VERSION);
+        update(pool, "CREATE TABLE SmartSearchMetaData (smartSearchId INTEGER IDENTITY, name VARCHAR(500), version INTEGER)");
+        update(pool, "INSERT INTO SmartSearchMetaData (name , version) VALUES (?, ?)", name, SMART_SEARCH_DATABASE_VERSION);
         
-        return connection;
+        return pool;
     }
 
-    private Connection openOrCreateDatabase(File path, String name) {
-        Connection connection = openConnection(path, name, false);
-        if (connection == null) {
+    private ConnectionPool openOrCreateDatabase(File path, String name) {
+        ConnectionPool pool = openConnectionPool(path, name, false);
+        if (pool == null) {
             return createDatabase(path, name);
         } else {
-            _connection = connection; // not the best solution
+            _pool = pool; // not the best solution
             int databaseVersion = getDatabaseVersion();
             if (databaseVersion < SMART_SEARCH_DATABASE_VERSION) {
                 return onUpdateDatabase();
             } else {
-                return connection;
-            }
-        }
-    }
-
-    private List<List<Object>> convertResultSetToList(ResultSet resultSet) throws SQLException {
-        ResultSetMetaData meta = resultSet.getMetaData();
-        int numColums = meta.getColumnCount();
-        int i;
-
-        List<List<Object>> result = new LinkedList<List<Object>>();
-
-        while (resultSet.next()) {
-            List<Object> row = new ArrayList<Object>(numColums);
-            for (i = 1; i <= numColums; i++) {
-                row.add(resultSet.getObject(i));
+                return pool;
             }
-            result.add(row);
         }
-        return result;
-    }
-
-    private static int getIdentity(Connection connection) {
-        Statement statement = null;
-        ResultSet resultSet = null;
-
-        try {
-            statement = connection.createStatement();
-            resultSet = statement.executeQuery("CALL IDENTITY()");
-
-            resultSet.next();
-
-            return resultSet.getInt(1);
-        } catch (Throwable e) {
-            LOG.error("Error performing SQL statement", e);
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
-        }
-
-        return OBJECT_INVALID_ID;
     }
     
-    private int update(Connection connection, String statementSql, Object... arguments) {
-
-        PreparedStatement statement = null;
-
+    private int update(ConnectionPool pool, String statementSql, Object... arguments) {
         try {
-            statement = connection.prepareStatement(statementSql);
-
-            if (arguments != null) {
-                for (int i = 0; i < arguments.length; i++) {
-                    statement.setObject(i + 1, arguments[i]);
-                }
-            }
-            return statement.executeUpdate();
+            return pool.update(statementSql, arguments);
         } catch (Throwable e) {
-            LOG.error("Error performing SQL statement: ", e);
-            LOG.error("SQL: " + statementSql);
-            LOG.error("Arguments: " + Arrays.asList(arguments));
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
+            logError(e, statementSql, arguments);
         }
 
         return -1;
     }
+
+    private static void logError(Throwable e, String statementSql, Object... arguments) {
+        LOG.error("Error performing SQL statement: ", e);
+        LOG.error("SQL: " + statementSql);
+        LOG.error("Arguments: " + (arguments != null ? Arrays.asList(arguments) : null));
+    }
     
     private int getDatabaseVersion() {
         List<List<Object>> query = query("SELECT version FROM SmartSearchMetaData");
-        return (Integer) query.get(0).get(0);
+        return query.size() > 0 ? (Integer) query.get(0).get(0) : -1;
     }
 }
@@ -0,0 +1,348 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * Lucene index owned by the {@link SmartSearchDB}, one document per torrent file.
+ *
+ * Every field needed to build a search result is stored in the document itself,
+ * so a search is a single pass over the index, no SQL join and no JSON decoding.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class SmartSearchIndex {
+
+    private static final Log LOG = LogFactory.getLog(SmartSearchIndex.class);
+
+    private static final String FIELD_DATA = "data";
+
+    private static final String FIELD_TORRENT_FILE_NAME = "torrentFileName";
+    private static final String FIELD_TORRENT_SIZE = "torrentSize";
+    private static final String FIELD_TORRENT_CREATION_TIME = "creationTime";
+    private static final String FIELD_TORRENT_VENDOR = "vendor";
+    private static final String FIELD_TORRENT_HASH = "hash";
+    private static final String FIELD_TORRENT_URI = "torrentURI";
+    private static final String FIELD_TORRENT_SEEDS = "seeds";
+    private static final String FIELD_TORRENT_DETAILS_URL = "torrentDetailsURL";
+    private static final String FIELD_TORRENT_SEARCH_ENGINE_ID = "searchEngineID";
+
+    private static final String FIELD_FILE_RELATIVE_PATH = "relativePath";
+    private static final String FIELD_FILE_SIZE = "fileSize";
+
+    private static final Comparator<Hit> SEEDS_COMPARATOR = new Comparator<Hit>() {
+        @Override
+        public int compare(Hit o1, Hit o2) {
+            return o2.torrent.seeds - o1.torrent.seeds;
+        }
+    };
+
+    private final File _indexDir;
+
+    private Directory _directory;
+    private IndexWriter _writer;
+    private SearcherManager _searcherManager;
+
+    public SmartSearchIndex(File indexDir) {
+        _indexDir = indexDir;
+    }
+
+    public File getIndexDir() {
+        return _indexDir;
+    }
+
+    public synchronized boolean isOpen() {
+        return _writer != null;
+    }
+
+    public synchronized void open() {
+        if (_writer != null) {
+            return;
+        }
+
+        try {
+            Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_30, Collections.emptySet());
+            IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_35, analyzer);
+            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+
+            _directory = FSDirectory.open(_indexDir);
+            _writer = new IndexWriter(_directory, config);
+            _searcherManager = new SearcherManager(_writer, true, null, null);
+        } catch (Throwable e) {
+            LOG.error("Error opening the smart search index at " + _indexDir, e);
+            close();
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            if (_searcherManager != null) {
+                _searcherManager.close();
+            }
+            if (_writer != null) {
+                _writer.close();
+            }
+            if (_directory != null) {
+                _directory.close();
+            }
+        } catch (Throwable e) {
+            LOG.error("Error closing the smart search index", e);
+        } finally {
+            _searcherManager = null;
+            _writer = null;
+            _directory = null;
+        }
+    }
+
+    /**
+     * Adds one document per file of the torrent, <code>keywords[i]</code> is the
+     * searchable text of <code>files[i]</code>.
+     *
+     * The changes are not visible for searches until {@link #commit()} is called.
+     *
+     * @return false if the index is closed or the documents couldn't be added
+     */
+    public boolean add(TorrentDBPojo torrent, TorrentFileDBPojo[] files, String[] keywords) {
+        IndexWriter writer;
+        synchronized (this) {
+            writer = _writer;
+        }
+
+        if (writer == null) {
+            return false;
+        }
+
+        try {
+            for (int i = 0; i < files.length; i++) {
+                writer.addDocument(createDocument(torrent, files[i], keywords[i]));
+            }
+            return true;
+        } catch (Throwable e) {
+            LOG.error("Error adding torrent to the smart search index: " + torrent.hash, e);
+            return false;
+        }
+    }
+
+    /**
+     * Makes the documents added so far durable and visible to new searches.
+     * Searches in progress keep using the previous point in time view.
+     *
+     * @return false if the index is closed or the commit failed
+     */
+    public boolean commit() {
+        IndexWriter writer;
+        SearcherManager searcherManager;
+        synchronized (this) {
+            writer = _writer;
+            searcherManager = _searcherManager;
+        }
+
+        if (writer == null) {
+            return false;
+        }
+
+        try {
+            writer.commit();
+        } catch (Throwable e) {
+            LOG.error("Error committing the smart search index", e);
+            return false;
+        }
+
+        try {
+            searcherManager.maybeReopen();
+        } catch (Throwable e) {
+            LOG.error("Error reopening the smart search index searcher", e);
+        }
+
+        return true;
+    }
+
+    public int numDocs() {
+        SearcherManager searcherManager;
+        synchronized (this) {
+            searcherManager = _searcherManager;
+        }
+
+        if (searcherManager == null) {
+            return 0;
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return searcher.getIndexReader().numDocs();
+        } finally {
+            release(searcherManager, searcher);
+        }
+    }
+
+    /**
+     * Returns the best <code>limit</code> matches of the lucene <code>query</code>,
+     * ordered by seeds.
+     */
+    public List<Hit> search(String query, int limit) {
+        List<Hit> hits = new ArrayList<Hit>();
+
+        SearcherManager searcherManager;
+        Analyzer analyzer;
+        synchronized (this) {
+            if (_writer == null) {
+                return hits;
+            }
+            searcherManager = _searcherManager;
+            analyzer = _writer.getAnalyzer();
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            QueryParser parser = new QueryParser(Version.LUCENE_30, FIELD_DATA, analyzer);
+            Query q = parser.parse(query);
+
+            TopDocs docs = searcher.search(q, limit);
+
+            for (ScoreDoc sd : docs.scoreDocs) {
+                Document doc = searcher.doc(sd.doc);
+                hits.add(new Hit(readTorrent(doc), readFile(doc), sd.score));
+            }
+        } catch (Throwable e) {
+            LOG.error("Error searching the smart search index: " + query, e);
+        } finally {
+            release(searcherManager, searcher);
+        }
+
+        Collections.sort(hits, SEEDS_COMPARATOR);
+
+        return hits;
+    }
+
+    private static void release(SearcherManager searcherManager, IndexSearcher searcher) {
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException e) {
+            LOG.error("Error releasing smart search index searcher", e);
+        }
+    }
+
+    private static Document createDocument(TorrentDBPojo torrent, TorrentFileDBPojo file, String keywords) {
+        Document doc = new Document();
+
+        doc.add(new Field(FIELD_DATA, file.relativePath + " " + keywords, Field.Store.NO, Field.Index.ANALYZED));
+
+        doc.add(storedString(FIELD_TORRENT_FILE_NAME, torrent.fileName));
+        doc.add(storedLong(FIELD_TORRENT_SIZE, torrent.size));
+        doc.add(storedLong(FIELD_TORRENT_CREATION_TIME, torrent.creationTime));
+        doc.add(storedString(FIELD_TORRENT_VENDOR, torrent.vendor));
+        doc.add(storedString(FIELD_TORRENT_HASH, torrent.hash));
+        doc.add(storedString(FIELD_TORRENT_URI, torrent.torrentURI));
+        doc.add(storedInt(FIELD_TORRENT_SEEDS, torrent.seeds));
+        doc.add(storedString(FIELD_TORRENT_DETAILS_URL, torrent.torrentDetailsURL));
+        doc.add(storedInt(FIELD_TORRENT_SEARCH_ENGINE_ID, torrent.searchEngineID));
+
+        doc.add(storedString(FIELD_FILE_RELATIVE_PATH, file.relativePath));
+        doc.add(storedLong(FIELD_FILE_SIZE, file.size));
+
+        return doc;
+    }
+
+    private static TorrentDBPojo readTorrent(Document doc) {
+        TorrentDBPojo torrent = new TorrentDBPojo();
+
+        torrent.fileName = doc.get(FIELD_TORRENT_FILE_NAME);
+        torrent.size = readLong(doc, FIELD_TORRENT_SIZE);
+        torrent.creationTime = readLong(doc, FIELD_TORRENT_CREATION_TIME);
+        torrent.vendor = doc.get(FIELD_TORRENT_VENDOR);
+        torrent.hash = doc.get(FIELD_TORRENT_HASH);
+        torrent.torrentURI = doc.get(FIELD_TORRENT_URI);
+        torrent.seeds = (int) readLong(doc, FIELD_TORRENT_SEEDS);
+        torrent.torrentDetailsURL = doc.get(FIELD_TORRENT_DETAILS_URL);
+        torrent.searchEngineID = (int) readLong(doc, FIELD_TORRENT_SEARCH_ENGINE_ID);
+
+        return torrent;
+    }
+
+    private static TorrentFileDBPojo readFile(Document doc) {
+        TorrentFileDBPojo file = new TorrentFileDBPojo();
+
+        file.relativePath = doc.get(FIELD_FILE_RELATIVE_PATH);
+        file.size = readLong(doc, FIELD_FILE_SIZE);
+
+        return file;
+    }
+
+    private static Fieldable storedString(String name, String value) {
+        return new Field(name, value != null ? value : "", Field.Store.YES, Field.Index.NO);
+    }
+
+    private static Fieldable storedLong(String name, long value) {
+        return new NumericField(name, Field.Store.YES, false).setLongValue(value);
+    }
+
+    private static Fieldable storedInt(String name, int value) {
+        return new NumericField(name, Field.Store.YES, false).setIntValue(value);
+    }
+
+    private static long readLong(Document doc, String name) {
+        Fieldable f = doc.getFieldable(name);
+        if (f instanceof NumericField) {
+            Number n = ((NumericField) f).getNumericValue();
+            return n != null ? n.longValue() : 0;
+        }
+        return 0;
+    }
+
+    public static final class Hit {
+
+        public final TorrentDBPojo torrent;
+        public final TorrentFileDBPojo file;
+        public final float score;
+
+        public Hit(TorrentDBPojo torrent, TorrentFileDBPojo file, float score) {
+            this.torrent = torrent;
+            this.file = file;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.limewire.concurrent.ExecutorsHelper;
+
+/**
+ * Single writer that drains a bounded queue of torrents into the
+ * {@link SmartSearchDB}, one transaction per batch.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class SmartSearchIngest {
+
+    private static final Log LOG = LogFactory.getLog(SmartSearchIngest.class);
+
+    private static final int QUEUE_CAPACITY = 256;
+
+    /** Soft limit of files written in a single transaction */
+    private static final int MAX_BATCH_FILES = 5000;
+
+    private static final long OFFER_TIMEOUT_MILLIS = 5000;
+    private static final long POLL_TIMEOUT_MILLIS = 1000;
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final SmartSearchDB _db;
+    private final BlockingQueue<Entry> _queue;
+
+    private final AtomicLong _torrents = new AtomicLong();
+    private final AtomicLong _files = new AtomicLong();
+    private final AtomicLong _nanos = new AtomicLong();
+
+    private volatile boolean _running;
+    private Thread _thread;
+
+    public SmartSearchIngest(SmartSearchDB db) {
+        _db = db;
+        _queue = new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+    }
+
+    public synchronized void start() {
+        if (_thread != null) {
+            return;
+        }
+
+        _running = true;
+        _thread = ExecutorsHelper.daemonThreadFactory("SmartSearchIngest").newThread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        });
+        _thread.start();
+    }
+
+    /**
+     * Stops the writer after the batch in progress, anything still queued is discarded.
+     */
+    public synchronized void stop() {
+        if (_thread == null) {
+            return;
+        }
+
+        _running = false;
+        try {
+            _thread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _thread = null;
+        _queue.clear();
+    }
+
+    /**
+     * Blocks while the queue is full, up to a few seconds.
+     *
+     * @return false if the torrent was dropped
+     */
+    public boolean offer(Entry entry) {
+        if (!_running) {
+            return false;
+        }
+
+        try {
+            if (_queue.offer(entry, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        LOG.warn("Smart search ingest queue is full, dropping torrent: " + entry.torrent.hash);
+        return false;
+    }
+
+    public int getQueueSize() {
+        return _queue.size();
+    }
+
+    public long getTotalTorrents() {
+        return _torrents.get();
+    }
+
+    public long getTotalFiles() {
+        return _files.get();
+    }
+
+    /**
+     * Torrents written per second of actual writing time.
+     */
+    public double getTorrentsPerSecond() {
+        return perSecond(_torrents.get());
+    }
+
+    /**
+     * Files written per second of actual writing time.
+     */
+    public double getFilesPerSecond() {
+        return perSecond(_files.get());
+    }
+
+    private double perSecond(long count) {
+        long nanos = _nanos.get();
+        return nanos > 0 ? count * 1000000000.0 / nanos : 0;
+    }
+
+    private void loop() {
+        List<Entry> batch = new ArrayList<Entry>();
+
+        while (_running) {
+            try {
+                Entry entry = _queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    continue;
+                }
+
+                int numFiles = entry.files.length;
+                batch.add(entry);
+
+                while (numFiles < MAX_BATCH_FILES && (entry = _queue.poll()) != null) {
+                    batch.add(entry);
+                    numFiles += entry.files.length;
+                }
+
+                long start = System.nanoTime();
+                if (_db.write(batch)) {
+                    _nanos.addAndGet(System.nanoTime() - start);
+                    _torrents.addAndGet(batch.size());
+                    _files.addAndGet(numFiles);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable e) {
+                LOG.error("General error in smart search ingest", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    public static final class Entry {
+
+        public final TorrentDBPojo torrent;
+        public final TorrentFileDBPojo[] files;
+        public final String[] keywords;
+
+        /**
+         * @param keywords the searchable text of each file, same length as <code>files</code>
+         */
+        public Entry(TorrentDBPojo torrent, TorrentFileDBPojo[] files, String[] keywords) {
+            this.torrent = torrent;
+            this.files = files;
+            this.keywords = keywords;
+        }
+    }
+}
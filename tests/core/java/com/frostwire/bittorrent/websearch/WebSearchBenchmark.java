@@ -0,0 +1,138 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent.websearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.frostwire.bittorrent.websearch.clearbits.ClearBitsWebSearchPerformer;
+import com.frostwire.bittorrent.websearch.extratorrent.ExtratorrentWebSearchPerformer;
+import com.frostwire.bittorrent.websearch.isohunt.ISOHuntWebSearchPerformer;
+import com.frostwire.bittorrent.websearch.kat.KATWebSearchPerformer;
+import com.frostwire.bittorrent.websearch.tpb.TPBWebSearchPerformer;
+import com.frostwire.bittorrent.websearch.vertor.VertorWebSearchPerformer;
+
+/**
+ * Measures the parsers of the search engines against saved response pages.
+ *
+ * Usage: WebSearchBenchmark [-iterations N] [engine=file...]
+ * where engine is one of tpb, kat, isohunt, vertor, extratorrent or clearbits.
+ * Without files every engine parses its sample page from tests/core/resources/websearch,
+ * compile-tests copies them next to the classes.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class WebSearchBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int DEFAULT_ITERATIONS = 1000;
+
+    private WebSearchBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, AbstractWebSearchPerformer> performers = new LinkedHashMap<String, AbstractWebSearchPerformer>();
+        performers.put("tpb", new TPBWebSearchPerformer());
+        performers.put("kat", new KATWebSearchPerformer());
+        performers.put("isohunt", new ISOHuntWebSearchPerformer());
+        performers.put("vertor", new VertorWebSearchPerformer());
+        performers.put("extratorrent", new ExtratorrentWebSearchPerformer());
+        performers.put("clearbits", new ClearBitsWebSearchPerformer());
+
+        Map<String, String> samples = new LinkedHashMap<String, String>();
+        samples.put("tpb", "tpb.html");
+        samples.put("kat", "kat.json");
+        samples.put("isohunt", "isohunt.json");
+        samples.put("vertor", "vertor.json");
+        samples.put("extratorrent", "extratorrent.json");
+        samples.put("clearbits", "clearbits.json");
+
+        int iterations = DEFAULT_ITERATIONS;
+        boolean files = false;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-iterations") && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+                continue;
+            }
+
+            int eq = args[i].indexOf('=');
+            AbstractWebSearchPerformer performer = eq > 0 ? performers.get(args[i].substring(0, eq)) : null;
+            if (performer == null) {
+                System.err.println("Usage: WebSearchBenchmark [-iterations N] engine=file..., engines: " + performers.keySet());
+                System.exit(1);
+            }
+
+            run(args[i].substring(0, eq), performer, read(new FileInputStream(new File(args[i].substring(eq + 1)))), iterations);
+            files = true;
+        }
+
+        if (!files) {
+            for (Map.Entry<String, String> e : samples.entrySet()) {
+                InputStream in = WebSearchBenchmark.class.getResourceAsStream("/websearch/" + e.getValue());
+                if (in == null) {
+                    System.err.println("Sample page websearch/" + e.getValue() + " not in the classpath");
+                    System.exit(1);
+                }
+                run(e.getKey(), performers.get(e.getKey()), read(in), iterations);
+            }
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void run(String name, AbstractWebSearchPerformer performer, byte[] body, int iterations) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            performer.parse(body);
+        }
+
+        // only the measured iterations go to the stats
+        ParseStats stats = new ParseStats();
+        int results = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            long allocated = ParseStats.getAllocatedBytes();
+            long start = System.nanoTime();
+            results = performer.parse(body).size();
+            long nanos = System.nanoTime() - start;
+            stats.record(results, nanos, allocated >= 0 ? ParseStats.getAllocatedBytes() - allocated : -1);
+        }
+
+        System.out.println(name + ": " + body.length + " bytes, " + results + " results, " + stats);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011, 2012, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.filters;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the keyword filter with the loop of indexOf it replaced, over the
+ * lines of a file of result names or over random names.
+ *
+ * Usage: KeywordFilterBenchmark [file]
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class KeywordFilterBenchmark {
+
+    private static final int RANDOM_NAMES = 10000;
+    private static final int ROUNDS = 20;
+
+    private KeywordFilterBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = args.length > 0 ? readNames(args[0]) : randomNames();
+
+        KeywordFilter filter = new KeywordFilter();
+        filter.disallowAdult();
+
+        // same words, same order, as the filter
+        final List<String> ban = new ArrayList<String>();
+        KeywordFilter probe = new KeywordFilter() {
+            public void disallow(String phrase) {
+                ban.add(phrase.toLowerCase(Locale.US));
+            }
+        };
+        probe.disallowAdult();
+
+        int matched = 0;
+        long indexOfNanos = Long.MAX_VALUE;
+        long matcherNanos = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int count = 0;
+            for (String name : names) {
+                if (matchesIndexOf(ban, name)) {
+                    count++;
+                }
+            }
+            indexOfNanos = Math.min(indexOfNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            matched = 0;
+            for (String name : names) {
+                if (filter.matches(name)) {
+                    matched++;
+                }
+            }
+            matcherNanos = Math.min(matcherNanos, System.nanoTime() - start);
+
+            if (count != matched) {
+                throw new IllegalStateException("Filters disagree: " + count + " vs " + matched);
+            }
+        }
+
+        System.out.println(names.size() + " names, " + ban.size() + " words, " + matched + " matched");
+        System.out.println("indexOf: " + (long) (names.size() * 1e9 / indexOfNanos) + " results/s");
+        System.out.println("matcher: " + (long) (names.size() * 1e9 / matcherNanos) + " results/s");
+    }
+
+    private static boolean matchesIndexOf(List<String> ban, String phrase) {
+        String canonical = phrase.toLowerCase(Locale.US);
+        for (int i = 0; i < ban.size(); i++) {
+            if (canonical.indexOf(ban.get(i)) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> readNames(String file) throws IOException {
+        List<String> names = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    names.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return names;
+    }
+
+    private static List<String> randomNames() {
+        String[] words = { "Linux", "Ubuntu", "12.04", "Desktop", "amd64", "iso", "Live", "Concert", "HD", "720p", "Album", "2012", "MP3", "320kbps", "Episode", "Season", "Complete", "Collection", "Remastered", "FLAC", "Crack", "Documentary" };
+        Random random = new Random(1);
+        List<String> names = new ArrayList<String>(RANDOM_NAMES);
+        for (int i = 0; i < RANDOM_NAMES; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = 3 + random.nextInt(6);
+            for (int j = 0; j < n; j++) {
+                if (j > 0) {
+                    sb.append(random.nextBoolean() ? ' ' : '.');
+                }
+                sb.append(words[random.nextInt(words.length)]);
+            }
+            names.add(sb.toString());
+        }
+        return names;
+    }
+}